@@ -1,15 +1,25 @@
 package info.andrewmin.dji.cli;
 
+import info.andrewmin.dji.core.ast.AstPrinter;
 import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.cache.AstCache;
 import info.andrewmin.dji.core.exceptions.BaseUserException;
 import info.andrewmin.dji.core.lexer.FileCharIterator;
 import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.lexer.TokenPrinter;
+import info.andrewmin.dji.core.optimizer.ConstantFolder;
 import info.andrewmin.dji.core.parser.ProgramParser;
+import info.andrewmin.dji.core.runtime.FlatRuntime;
 import info.andrewmin.dji.core.runtime.Runtime;
-import info.andrewmin.dji.core.tokens.Token;
+import info.andrewmin.dji.core.runtime.vm.RegisterMachine;
+import info.andrewmin.dji.core.runtime.vm.VirtualMachine;
 import picocli.CommandLine;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
 import java.util.concurrent.Callable;
 import java.util.logging.*;
 
@@ -17,15 +27,62 @@ import java.util.logging.*;
 public final class Main implements Callable<Integer> {
 
     @SuppressWarnings("unused")
-    @CommandLine.Parameters(index = "0", description = "The source file.")
+    @CommandLine.Parameters(index = "0", description = "The source file (- for standard input).")
     public File file;
 
     @CommandLine.Option(names = "-v", description = "Verbosity level (-v, -vv).")
     public boolean[] verbosity = new boolean[0];
 
+    @CommandLine.Option(names = "--pipeline", description = "Lex on a separate thread while parsing.")
+    public boolean pipeline = false;
+
+    @CommandLine.Option(names = "--parallel", description = "Lex and parse large sources on all cores.")
+    public boolean parallel = false;
+
+    @CommandLine.Option(names = "--cache", paramLabel = "<dir>", description = "Cache parsed programs in a directory.")
+    public File cacheDir = null;
+
+    @CommandLine.Option(names = "--share", description = "Share identical expressions in the syntax tree.")
+    public boolean share = false;
+
+    @CommandLine.Option(names = "--lazy", description = "Parse and check function bodies on their first call (never cached).")
+    public boolean lazy = false;
+
+    @CommandLine.Option(names = {"-O", "--optimize"}, description = "Fold constant expressions before running.")
+    public boolean optimize = false;
+
+    @CommandLine.Option(names = "--engine", paramLabel = "<engine>",
+            description = "The engine to run with: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).")
+    public Engine engine = Engine.TREE;
+
+    @CommandLine.Option(names = "--flat", description = "Run the TREE engine on a flat array-encoded syntax tree.")
+    public boolean flat = false;
+
+    @CommandLine.Option(names = "--json", description = "Print the tokens or abstract syntax tree as JSON.")
+    public boolean json = false;
+
     @CommandLine.ArgGroup
     public OutputFormat outputFormat = new OutputFormat();
 
+    public enum Engine {
+        /**
+         * Walk the syntax tree.
+         */
+        TREE,
+        /**
+         * Compile to bytecode and run on a virtual machine.
+         */
+        VM,
+        /**
+         * Compile to register bytecode and run on a register based virtual machine.
+         */
+        REGISTER,
+        /**
+         * Walk the syntax tree, compiling hot functions to JVM bytecode.
+         */
+        JIT,
+    }
+
     @SuppressWarnings("FieldMayBeFinal")
     public static class OutputFormat {
         @CommandLine.Option(names = "--tokens", description = "Print the tokens.")
@@ -53,33 +110,81 @@ public final class Main implements Callable<Integer> {
             rootLogger.setLevel(Level.OFF);
         }
 
+        // The other engines compile the object tree, they cannot run a flat one
+        if (flat && engine != Engine.TREE) {
+            System.err.println("Error: --flat can only be used with the TREE engine");
+            return 1;
+        }
+
         try {
-            FileCharIterator iter = new FileCharIterator(file);
-            Lexer lexer = new Lexer(iter);
+            FileCharIterator iter = file.getPath().equals("-")
+                    ? new FileCharIterator(Channels.newChannel(System.in), "standard input")
+                    : new FileCharIterator(file);
 
             // Tokens only
             if (outputFormat.tokens) {
+                Lexer lexer = new Lexer(iter);
                 logHandler.flush();
-                while (lexer.hasNext()) {
-                    Token t = lexer.next();
-                    System.out.println(t);
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+                try {
+                    new TokenPrinter(out, json).print(lexer);
+                } finally {
+                    // Print the tokens before any error
+                    out.flush();
                 }
                 return 0;
             }
 
-            ProgramParser parser = new ProgramParser(lexer);
-            ProgramNode node = parser.parse();
+            // Standard input is streamed, so it cannot be hashed up front
+            AstCache cache = cacheDir != null && !iter.getSource().isStreaming()
+                    ? new AstCache(cacheDir.toPath())
+                    : null;
+            String key = cache != null ? AstCache.key(iter.getSource()) : null;
+            ProgramNode node = cache != null ? cache.load(key) : null;
+            if (node == null) {
+                long start = System.nanoTime();
+                ProgramParser parser = new ProgramParser(new Lexer(iter), pipeline, share, parallel);
+                node = lazy ? parser.parseLazily() : parser.parse();
+                // Storing a lazily parsed program would parse every body, losing the laziness
+                if (cache != null && !lazy) {
+                    cache.store(key, node, System.nanoTime() - start);
+                }
+            }
+
+            if (optimize) {
+                node = new ConstantFolder(node).fold();
+            }
 
             // AST only
             if (outputFormat.ast) {
                 logHandler.flush();
-                System.out.println(node);
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+                new AstPrinter(out, json).print(node);
+                out.write('\n');
+                out.flush();
                 return 0;
             }
 
             // Full
-            Runtime runtime = new Runtime(node);
-            String result = runtime.runProgram().toString();
+            String result;
+            if (engine == Engine.VM) {
+                VirtualMachine vm = new VirtualMachine(node);
+                result = vm.runProgram().toString();
+            } else if (engine == Engine.REGISTER) {
+                RegisterMachine vm = new RegisterMachine(node);
+                result = vm.runProgram().toString();
+            } else if (engine == Engine.JIT) {
+                Runtime runtime = new Runtime(node, true);
+                result = runtime.runProgram().toString();
+            } else if (flat) {
+                FlatRuntime runtime = new FlatRuntime(node);
+                // Drop the object tree before running
+                node = null;
+                result = runtime.runProgram().toString();
+            } else {
+                Runtime runtime = new Runtime(node);
+                result = runtime.runProgram().toString();
+            }
 
             logHandler.flush();
             System.out.println("Main returned: " + result);
@@ -96,7 +201,7 @@ public final class Main implements Callable<Integer> {
 
 
     public static void main(String[] args) {
-        int exitCode = new CommandLine(new Main()).execute(args);
+        int exitCode = new CommandLine(new Main()).setCaseInsensitiveEnumValuesAllowed(true).execute(args);
         System.exit(exitCode);
     }
 }
@@ -0,0 +1,111 @@
+package info.andrewmin.dji.cli;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that every engine runs every example like the tree engine.
+ */
+@RunWith(Parameterized.class)
+public class MainTest {
+    private static final File EXAMPLES = new File(System.getProperty("dji.examples", "../examples"));
+    private static final Main.Engine[] ENGINES = {Main.Engine.VM, Main.Engine.REGISTER, Main.Engine.JIT};
+
+    @Parameterized.Parameter
+    public File example;
+
+    @Parameterized.Parameter(1)
+    public Main.Engine engine;
+
+    private PrintStream stdout;
+    private PrintStream stderr;
+
+    /**
+     * Get every example with every engine other than the tree engine.
+     *
+     * @return The examples and engines.
+     */
+    @Parameterized.Parameters(name = "{0} {1}")
+    public static List<Object[]> parameters() {
+        File[] examples = EXAMPLES.listFiles((dir, name) -> name.endsWith(".djava"));
+        assertTrue("No examples in " + EXAMPLES.getAbsolutePath(), examples != null && examples.length > 0);
+        Arrays.sort(examples);
+        List<Object[]> parameters = new ArrayList<>();
+        for (File example : examples) {
+            for (Main.Engine engine : ENGINES) {
+                parameters.add(new Object[]{example, engine});
+            }
+        }
+        return parameters;
+    }
+
+    @Before
+    public void saveStreams() {
+        stdout = System.out;
+        stderr = System.err;
+    }
+
+    @After
+    public void restoreStreams() {
+        System.setOut(stdout);
+        System.setErr(stderr);
+    }
+
+    /**
+     * Run the interpreter, capturing standard output and error.
+     *
+     * @param main The command.
+     * @return The exit code, standard output and standard error.
+     */
+    private static String run(Main main) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+        int exitCode = main.call();
+        System.out.flush();
+        return exitCode + "\n" + out.toString(StandardCharsets.UTF_8) + err.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a command running a file.
+     *
+     * @param file   The source file.
+     * @param engine The engine.
+     * @return The command.
+     */
+    private static Main command(File file, Main.Engine engine) {
+        Main main = new Main();
+        main.file = file;
+        main.engine = engine;
+        return main;
+    }
+
+    @Test
+    public void runsLikeTreeEngine() {
+        String expected = run(command(example, Main.Engine.TREE));
+        assertTrue(expected, expected.startsWith("0\nMain returned: "));
+        assertEquals(expected, run(command(example, engine)));
+    }
+
+    @Test
+    public void rejectsFlat() {
+        Main main = command(example, engine);
+        main.flat = true;
+        assertEquals("1\nError: --flat can only be used with the TREE engine" + System.lineSeparator(), run(main));
+    }
+}
@@ -0,0 +1,245 @@
+package info.andrewmin.dji.core.ast;
+
+import info.andrewmin.dji.core.lexer.TokenPrinter;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.runtime.Var;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Prints an abstract syntax tree, either as indented text or as JSON.
+ * <p>
+ * Nodes are written straight to the writer with a running indent, so printing takes time linear in the output
+ * and only holds the properties of the nodes on the current path in memory.
+ * The writer should be buffered, and it is not flushed or closed.
+ * In JSON, every type is written as its source keyword (e.g. "int").
+ *
+ * @see Node
+ * @see NodeProp
+ */
+public final class AstPrinter {
+    private static final String SPACES = " ".repeat(64);
+
+    private final Writer out;
+    private final boolean json;
+    // Text output state, the indent is written lazily at the start of each line
+    private int indent;
+    private boolean lineStart;
+
+    /**
+     * Construct a new abstract syntax tree printer.
+     *
+     * @param out  The writer to print to.
+     * @param json If the tree should be printed as JSON.
+     */
+    public AstPrinter(Writer out, boolean json) {
+        this.out = out;
+        this.json = json;
+        this.indent = 0;
+        this.lineStart = true;
+    }
+
+    /**
+     * Print a program abstract syntax tree.
+     * <p>
+     * Printing parses any lazily parsed function bodies.
+     *
+     * @param program The program abstract syntax tree.
+     * @throws IOException If the writer could not be written.
+     */
+    public void print(ProgramNode program) throws IOException {
+        print((Node) program);
+    }
+
+    /**
+     * Print a node and its children.
+     *
+     * @param node The node.
+     * @throws IOException If the writer could not be written.
+     */
+    void print(Node node) throws IOException {
+        if (json) {
+            printJsonNode(node);
+        } else {
+            printNode(node, 0);
+        }
+    }
+
+    /**
+     * Print a node as text.
+     *
+     * @param node        The node.
+     * @param indentLevel The indent level of the node in the tree output.
+     * @throws IOException If the writer could not be written.
+     */
+    private void printNode(Node node, int indentLevel) throws IOException {
+        write(node.getNodeName());
+        List<NodeProp> props = node.getProps();
+        if (!props.isEmpty()) {
+            write(" {\n");
+            for (NodeProp prop : props) {
+                printProp(prop, indentLevel + 1);
+                write("\n");
+            }
+            write("}");
+        }
+    }
+
+    /**
+     * Print a node property as text.
+     * <p>
+     * Single values are printed inline, lists of values are printed one per line.
+     *
+     * @param prop        The node property.
+     * @param indentLevel The indent level of the property in the tree output.
+     * @throws IOException If the writer could not be written.
+     */
+    private void printProp(NodeProp prop, int indentLevel) throws IOException {
+        List<?> objs = prop.getObjs();
+        indent += 4 * indentLevel;
+        write(prop.getKey());
+        write(": ");
+        if (objs.isEmpty()) {
+            write("[]");
+        } else if (objs.size() == 1) {
+            Object o = objs.get(0);
+            if (o instanceof Node) {
+                printNode((Node) o, 0);
+            } else {
+                write(String.valueOf(o));
+            }
+        } else {
+            write("[\n");
+            for (Object o : objs) {
+                indent += 4 * indentLevel;
+                if (o instanceof Node) {
+                    printNode((Node) o, indentLevel - 1);
+                } else {
+                    write(o.toString());
+                }
+                indent -= 4 * indentLevel;
+                write("\n");
+            }
+            write("]");
+        }
+        indent -= 4 * indentLevel;
+    }
+
+    /**
+     * Write text, indenting every line.
+     * <p>
+     * Line breaks in the text (e.g. in string literals) are written as newlines.
+     *
+     * @param s The text.
+     * @throws IOException If the writer could not be written.
+     */
+    private void write(String s) throws IOException {
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c != '\n' && c != '\r') {
+                continue;
+            }
+            writeLine(s, start, i);
+            out.write('\n');
+            lineStart = true;
+            if (c == '\r' && i + 1 < s.length() && s.charAt(i + 1) == '\n') {
+                i++;
+            }
+            start = i + 1;
+        }
+        if (start < s.length()) {
+            writeLine(s, start, s.length());
+        }
+    }
+
+    /**
+     * Write part of a line, with the indent first if it starts the line.
+     *
+     * @param s     The text.
+     * @param start The starting offset (inclusive).
+     * @param end   The ending offset (exclusive).
+     * @throws IOException If the writer could not be written.
+     */
+    private void writeLine(String s, int start, int end) throws IOException {
+        if (lineStart) {
+            for (int n = indent; n > 0; n -= SPACES.length()) {
+                out.write(SPACES, 0, Math.min(n, SPACES.length()));
+            }
+            lineStart = false;
+        }
+        out.write(s, start, end - start);
+    }
+
+    /**
+     * Print a node as a JSON object of its name and properties.
+     *
+     * @param node The node.
+     * @throws IOException If the writer could not be written.
+     */
+    private void printJsonNode(Node node) throws IOException {
+        out.write("{\"node\":");
+        TokenPrinter.writeJsonString(out, node.getNodeName());
+        for (NodeProp prop : node.getProps()) {
+            out.write(',');
+            TokenPrinter.writeJsonString(out, prop.getKey());
+            out.write(':');
+            List<?> objs = prop.getObjs();
+            if (prop.isList()) {
+                out.write('[');
+                for (int i = 0; i < objs.size(); i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    printJsonValue(objs.get(i));
+                }
+                out.write(']');
+            } else {
+                printJsonValue(objs.get(0));
+            }
+        }
+        out.write('}');
+    }
+
+    /**
+     * Print a property value as JSON.
+     *
+     * @param o The property value, may be null.
+     * @throws IOException If the writer could not be written.
+     */
+    private void printJsonValue(Object o) throws IOException {
+        if (o == null) {
+            out.write("null");
+        } else if (o instanceof Node) {
+            printJsonNode((Node) o);
+        } else if (o instanceof Value) {
+            Value<?> value = (Value<?>) o;
+            out.write("{\"type\":");
+            TokenPrinter.writeJsonString(out, value.getType().type);
+            out.write(",\"value\":");
+            Object raw = value.getValue();
+            if (raw instanceof Boolean || raw instanceof Integer
+                    || (raw instanceof Double && Double.isFinite((Double) raw))) {
+                out.write(raw.toString());
+            } else {
+                TokenPrinter.writeJsonString(out, raw.toString());
+            }
+            out.write('}');
+        } else if (o instanceof Var) {
+            Var var = (Var) o;
+            out.write("{\"name\":");
+            TokenPrinter.writeJsonString(out, var.getName());
+            out.write(",\"type\":");
+            TokenPrinter.writeJsonString(out, var.getType().type);
+            out.write('}');
+        } else if (o instanceof TypeTokenVariant) {
+            // Types are always written as their keyword
+            TokenPrinter.writeJsonString(out, ((TypeTokenVariant) o).type);
+        } else {
+            TokenPrinter.writeJsonString(out, o.toString());
+        }
+    }
+}
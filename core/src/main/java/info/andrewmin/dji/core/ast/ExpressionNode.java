@@ -16,10 +16,9 @@ public abstract class ExpressionNode extends Node {
      * To be invoked by subclass constructors only.
      *
      * @param nodeName The name of the expression node.
-     * @param props    The node properties.
      */
-    private ExpressionNode(String nodeName, NodeProp... props) {
-        super("Expression." + nodeName, props);
+    private ExpressionNode(String nodeName) {
+        super("Expression." + nodeName);
     }
 
     /**
@@ -34,10 +33,15 @@ public abstract class ExpressionNode extends Node {
          * @param value The literal value.
          */
         public Literal(Value<?> value) {
-            super("Literal", new NodeProp("value", value));
+            super("Literal");
             this.value = value;
         }
 
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(new NodeProp("value", value));
+        }
+
         /**
          * Get the literal value.
          *
@@ -53,15 +57,36 @@ public abstract class ExpressionNode extends Node {
      */
     public static final class VariableReference extends ExpressionNode {
         private final String name;
+        private final int id;
+        private final int slot;
+
+        /**
+         * Construct a new unresolved variable reference expression node.
+         *
+         * @param name The name of the variable.
+         * @param id   The identifier ID of the name.
+         */
+        public VariableReference(String name, int id) {
+            this(name, id, -1);
+        }
 
         /**
-         * Construct a new variable reference expression node.
+         * Construct a new variable reference expression node resolved to a frame slot.
          *
          * @param name The name of the variable.
+         * @param id   The identifier ID of the name.
+         * @param slot The frame slot of the variable.
          */
-        public VariableReference(String name) {
-            super("VariableReference", new NodeProp("name", name));
+        public VariableReference(String name, int id, int slot) {
+            super("VariableReference");
             this.name = name;
+            this.id = id;
+            this.slot = slot;
+        }
+
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(new NodeProp("name", name));
         }
 
         /**
@@ -72,6 +97,24 @@ public abstract class ExpressionNode extends Node {
         public String getName() {
             return name;
         }
+
+        /**
+         * Get the variable name identifier ID.
+         *
+         * @return The identifier ID.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Get the frame slot of the variable.
+         *
+         * @return The frame slot, -1 if the reference is unresolved.
+         */
+        public int getSlot() {
+            return slot;
+        }
     }
 
     /**
@@ -79,21 +122,43 @@ public abstract class ExpressionNode extends Node {
      */
     public static final class FunctionCall extends ExpressionNode {
         private final String name;
+        private final int id;
         private final List<ExpressionNode> args;
+        private final FunctionNode target;
 
         /**
-         * Construct a new function call expression node.
+         * Construct a new unlinked function call expression node.
          *
          * @param name The name of the function.
+         * @param id   The identifier ID of the name.
          * @param args The list of expressions to be passed as arguments.
          */
-        public FunctionCall(String name, List<ExpressionNode> args) {
-            super("FunctionCall",
-                    new NodeProp("name", name),
-                    new NodeProp("args", args.toArray())
-            );
+        public FunctionCall(String name, int id, List<ExpressionNode> args) {
+            this(name, id, args, null);
+        }
+
+        /**
+         * Construct a new function call expression node linked to the called function.
+         *
+         * @param name   The name of the function.
+         * @param id     The identifier ID of the name.
+         * @param args   The list of expressions to be passed as arguments.
+         * @param target The called function.
+         */
+        public FunctionCall(String name, int id, List<ExpressionNode> args, FunctionNode target) {
+            super("FunctionCall");
             this.name = name;
+            this.id = id;
             this.args = args;
+            this.target = target;
+        }
+
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(
+                    new NodeProp("name", name),
+                    new NodeProp("args", args)
+            );
         }
 
         /**
@@ -105,6 +170,15 @@ public abstract class ExpressionNode extends Node {
             return name;
         }
 
+        /**
+         * Get the function name identifier ID.
+         *
+         * @return The identifier ID.
+         */
+        public int getId() {
+            return id;
+        }
+
         /**
          * Get the function argument expressions.
          *
@@ -113,6 +187,15 @@ public abstract class ExpressionNode extends Node {
         public List<ExpressionNode> getArgs() {
             return args;
         }
+
+        /**
+         * Get the called function.
+         *
+         * @return The called function, null if the call is not linked.
+         */
+        public FunctionNode getTarget() {
+            return target;
+        }
     }
 
     /**
@@ -131,14 +214,19 @@ public abstract class ExpressionNode extends Node {
          * @param rightExpr The right expression.
          */
         public Binary(SymbolTokenVariant operator, ExpressionNode leftExpr, ExpressionNode rightExpr) {
-            super("Binary",
+            super("Binary");
+            this.operator = operator;
+            this.leftExpr = leftExpr;
+            this.rightExpr = rightExpr;
+        }
+
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(
                     new NodeProp("operator", operator.symbol),
                     new NodeProp("left", leftExpr),
                     new NodeProp("right", rightExpr)
             );
-            this.operator = operator;
-            this.leftExpr = leftExpr;
-            this.rightExpr = rightExpr;
         }
 
         /**
@@ -183,12 +271,17 @@ public abstract class ExpressionNode extends Node {
          * @param expr     The expression.
          */
         public Unary(SymbolTokenVariant operator, ExpressionNode expr) {
-            super("Unary",
+            super("Unary");
+            this.operator = operator;
+            this.expr = expr;
+        }
+
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(
                     new NodeProp("operator", operator.symbol),
                     new NodeProp("expression", expr)
             );
-            this.operator = operator;
-            this.expr = expr;
         }
 
         /**
@@ -0,0 +1,458 @@
+package info.andrewmin.dji.core.ast;
+
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.lexer.SymbolTable;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.runtime.Var;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A program abstract syntax tree stored in primitive arrays instead of node objects.
+ * <p>
+ * Each node is an index with a kind and up to three integer operands.
+ * Child nodes are referenced by index, identifiers by symbol table ID, operators and types by ordinal,
+ * and literal values by index into a constant pool.
+ * Variable length children (block statements and call arguments) are a range of the shared list array.
+ * Nodes are laid out in pre-order, so a function body is one contiguous range of the arrays.
+ * <p>
+ * A large program takes a fraction of the heap of the object tree, and walking it touches a few dense arrays
+ * instead of chasing pointers between small objects.
+ *
+ * <pre>
+ * Kind                  First         Second        Third
+ * BLOCK                 list start    list count
+ * VARIABLE_DECLARATION  identifier    type          expression
+ * IF                    condition     body          else (or NONE)
+ * FOR                   init          condition     list start (post, body)
+ * WHILE                 condition     body
+ * BREAK, CONTINUE
+ * RETURN, EXPRESSION    expression
+ * LITERAL               constant
+ * VARIABLE_REFERENCE    identifier
+ * FUNCTION_CALL         identifier    list start    list count
+ * BINARY                operator      left          right
+ * UNARY                 operator      expression
+ * </pre>
+ *
+ * @see ProgramNode
+ */
+public final class FlatProgram {
+    // Statement kinds
+    public static final byte BLOCK = 0;
+    public static final byte VARIABLE_DECLARATION = 1;
+    public static final byte IF = 2;
+    public static final byte FOR = 3;
+    public static final byte WHILE = 4;
+    public static final byte BREAK = 5;
+    public static final byte CONTINUE = 6;
+    public static final byte RETURN = 7;
+    public static final byte EXPRESSION = 8;
+
+    // Expression kinds
+    public static final byte LITERAL = 9;
+    public static final byte VARIABLE_REFERENCE = 10;
+    public static final byte FUNCTION_CALL = 11;
+    public static final byte BINARY = 12;
+    public static final byte UNARY = 13;
+
+    /**
+     * The index of a missing node (e.g. an if statement without an else).
+     */
+    public static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final SymbolTokenVariant[] SYMBOLS = SymbolTokenVariant.values();
+    private static final TypeTokenVariant[] TYPES = TypeTokenVariant.values();
+
+    private final SymbolTable symbols;
+
+    private byte[] kinds;
+    private int[] first;
+    private int[] second;
+    private int[] third;
+    private int size;
+
+    private int[] lists;
+    private int listSize;
+
+    private Value<?>[] constants;
+    private int constantCount;
+    // Constant indices by raw value while flattening, so equal literals share one value
+    private Map<Object, Integer> constantIndices;
+
+    // Functions indexed by the identifier ID of their name
+    private final int[] functionBodies;
+    private final TypeTokenVariant[] returnTypes;
+    private final List<List<Var>> parameters;
+
+    /**
+     * Construct a new empty flat program.
+     *
+     * @param symbols The symbol table of the program identifiers.
+     */
+    private FlatProgram(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.kinds = new byte[INITIAL_CAPACITY];
+        this.first = new int[INITIAL_CAPACITY];
+        this.second = new int[INITIAL_CAPACITY];
+        this.third = new int[INITIAL_CAPACITY];
+        this.lists = new int[INITIAL_CAPACITY];
+        this.constants = new Value<?>[INITIAL_CAPACITY];
+        this.constantIndices = new HashMap<>();
+        this.functionBodies = new int[symbols.size()];
+        Arrays.fill(functionBodies, NONE);
+        this.returnTypes = new TypeTokenVariant[symbols.size()];
+        this.parameters = new ArrayList<>(symbols.size());
+        for (int i = 0; i < symbols.size(); i++) {
+            parameters.add(null);
+        }
+    }
+
+    /**
+     * Flatten a program abstract syntax tree.
+     * <p>
+     * The object tree is not referenced afterwards, so it can be dropped once flattened.
+     *
+     * @param program The program abstract syntax tree.
+     * @return The flat program.
+     */
+    public static FlatProgram flatten(ProgramNode program) {
+        // Lazy bodies may intern new identifiers, so they must be parsed before the tables are sized
+        program.parseAll();
+        FlatProgram flat = new FlatProgram(program.getSymbols());
+        for (FunctionNode function : program.getFunctions().values()) {
+            flat.returnTypes[function.getId()] = function.getReturnType();
+            flat.parameters.set(function.getId(), function.getParameters());
+            flat.functionBodies[function.getId()] = flat.addBlock(function.getStatements());
+        }
+        flat.trim();
+        return flat;
+    }
+
+    /**
+     * Get the symbol table of the program identifiers.
+     *
+     * @return The symbol table.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Get the number of nodes.
+     *
+     * @return The number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the body of a function.
+     *
+     * @param id The identifier ID of the function name.
+     * @return The index of the function block statement, {@link #NONE} if the function does not exist.
+     */
+    public int getFunctionBody(int id) {
+        return id >= 0 && id < functionBodies.length ? functionBodies[id] : NONE;
+    }
+
+    /**
+     * Get the return type of a function.
+     *
+     * @param id The identifier ID of the function name.
+     * @return The return type.
+     */
+    public TypeTokenVariant getReturnType(int id) {
+        return returnTypes[id];
+    }
+
+    /**
+     * Get the parameters of a function.
+     *
+     * @param id The identifier ID of the function name.
+     * @return The parameters.
+     */
+    public List<Var> getParameters(int id) {
+        return parameters.get(id);
+    }
+
+    /**
+     * Get the kind of a node.
+     *
+     * @param node The node index.
+     * @return The node kind.
+     */
+    public byte kind(int node) {
+        return kinds[node];
+    }
+
+    /**
+     * Get the first operand of a node.
+     *
+     * @param node The node index.
+     * @return The first operand.
+     */
+    public int first(int node) {
+        return first[node];
+    }
+
+    /**
+     * Get the second operand of a node.
+     *
+     * @param node The node index.
+     * @return The second operand.
+     */
+    public int second(int node) {
+        return second[node];
+    }
+
+    /**
+     * Get the third operand of a node.
+     *
+     * @param node The node index.
+     * @return The third operand.
+     */
+    public int third(int node) {
+        return third[node];
+    }
+
+    /**
+     * Get an entry of the shared child list array.
+     *
+     * @param index The list index.
+     * @return The child node index.
+     */
+    public int list(int index) {
+        return lists[index];
+    }
+
+    /**
+     * Get a literal value from the constant pool.
+     *
+     * @param index The constant index.
+     * @return The literal value.
+     */
+    public Value<?> constant(int index) {
+        return constants[index];
+    }
+
+    /**
+     * Get the operator of a binary or unary node.
+     *
+     * @param node The node index.
+     * @return The operator.
+     */
+    public SymbolTokenVariant operator(int node) {
+        return SYMBOLS[first[node]];
+    }
+
+    /**
+     * Get the declared type of a variable declaration node.
+     *
+     * @param node The node index.
+     * @return The type.
+     */
+    public TypeTokenVariant type(int node) {
+        return TYPES[second[node]];
+    }
+
+    /**
+     * Add a block of statements.
+     *
+     * @param statements The statement nodes.
+     * @return The node index.
+     */
+    private int addBlock(List<StatementNode> statements) {
+        int node = addNode(BLOCK);
+        int[] children = new int[statements.size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = add(statements.get(i));
+        }
+        return setOperands(node, addList(children), children.length, NONE);
+    }
+
+    /**
+     * Add a statement.
+     *
+     * @param statement The statement node, may be null.
+     * @return The node index, {@link #NONE} if the statement is null.
+     */
+    private int add(StatementNode statement) {
+        if (statement == null) {
+            return NONE;
+        } else if (statement instanceof StatementNode.Block) {
+            return addBlock(((StatementNode.Block) statement).getStatements());
+        } else if (statement instanceof StatementNode.VariableDeclaration) {
+            StatementNode.VariableDeclaration declaration = (StatementNode.VariableDeclaration) statement;
+            int node = addNode(VARIABLE_DECLARATION);
+            int expr = add(declaration.getExpr());
+            return setOperands(node, declaration.getId(), declaration.getType().ordinal(), expr);
+        } else if (statement instanceof StatementNode.If) {
+            StatementNode.If _if = (StatementNode.If) statement;
+            int node = addNode(IF);
+            int condition = add(_if.getCondition());
+            int body = add(_if.getBody());
+            int _else = add(_if.getElse());
+            return setOperands(node, condition, body, _else);
+        } else if (statement instanceof StatementNode.For) {
+            StatementNode.For _for = (StatementNode.For) statement;
+            int node = addNode(FOR);
+            int init = add(_for.getInit());
+            int condition = add(_for.getCondition());
+            int post = add(_for.getPost());
+            int body = add(_for.getBody());
+            return setOperands(node, init, condition, addList(new int[]{post, body}));
+        } else if (statement instanceof StatementNode.While) {
+            StatementNode.While _while = (StatementNode.While) statement;
+            int node = addNode(WHILE);
+            int condition = add(_while.getCondition());
+            int body = add(_while.getBody());
+            return setOperands(node, condition, body, NONE);
+        } else if (statement instanceof StatementNode.Break) {
+            return addNode(BREAK);
+        } else if (statement instanceof StatementNode.Continue) {
+            return addNode(CONTINUE);
+        } else if (statement instanceof StatementNode.Return) {
+            int node = addNode(RETURN);
+            int expr = add(((StatementNode.Return) statement).getExpr());
+            return setOperands(node, expr, NONE, NONE);
+        } else if (statement instanceof StatementNode.Expression) {
+            int node = addNode(EXPRESSION);
+            int expr = add(((StatementNode.Expression) statement).getExpr());
+            return setOperands(node, expr, NONE, NONE);
+        }
+        throw new InternalException("Unhandled statement: " + statement.getNodeName());
+    }
+
+    /**
+     * Add an expression.
+     *
+     * @param expr The expression node, may be null.
+     * @return The node index, {@link #NONE} if the expression is null.
+     */
+    private int add(ExpressionNode expr) {
+        if (expr == null) {
+            return NONE;
+        } else if (expr instanceof ExpressionNode.Literal) {
+            int node = addNode(LITERAL);
+            return setOperands(node, addConstant(((ExpressionNode.Literal) expr).getValue()), NONE, NONE);
+        } else if (expr instanceof ExpressionNode.VariableReference) {
+            int node = addNode(VARIABLE_REFERENCE);
+            return setOperands(node, ((ExpressionNode.VariableReference) expr).getId(), NONE, NONE);
+        } else if (expr instanceof ExpressionNode.FunctionCall) {
+            ExpressionNode.FunctionCall call = (ExpressionNode.FunctionCall) expr;
+            int node = addNode(FUNCTION_CALL);
+            int[] args = new int[call.getArgs().size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = add(call.getArgs().get(i));
+            }
+            return setOperands(node, call.getId(), addList(args), args.length);
+        } else if (expr instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) expr;
+            int node = addNode(BINARY);
+            int left = add(binary.getLeftExpr());
+            int right = add(binary.getRightExpr());
+            return setOperands(node, binary.getOperator().ordinal(), left, right);
+        } else if (expr instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) expr;
+            int node = addNode(UNARY);
+            int operand = add(unary.getExpr());
+            return setOperands(node, unary.getOperator().ordinal(), operand, NONE);
+        }
+        throw new InternalException("Unhandled expression: " + expr.getNodeName());
+    }
+
+    /**
+     * Add a node before its children, so nodes are laid out in pre-order.
+     * <p>
+     * The operands are set once the children have been added, adding a child may grow the arrays.
+     *
+     * @param kind The node kind.
+     * @return The node index.
+     */
+    private int addNode(byte kind) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            first = Arrays.copyOf(first, size * 2);
+            second = Arrays.copyOf(second, size * 2);
+            third = Arrays.copyOf(third, size * 2);
+        }
+        kinds[size] = kind;
+        first[size] = NONE;
+        second[size] = NONE;
+        third[size] = NONE;
+        return size++;
+    }
+
+    /**
+     * Set the operands of a node.
+     *
+     * @param node The node index.
+     * @param a    The first operand.
+     * @param b    The second operand.
+     * @param c    The third operand.
+     * @return The node index.
+     */
+    private int setOperands(int node, int a, int b, int c) {
+        first[node] = a;
+        second[node] = b;
+        third[node] = c;
+        return node;
+    }
+
+    /**
+     * Add a range of child nodes to the shared list array.
+     *
+     * @param children The child node indices.
+     * @return The list start.
+     */
+    private int addList(int[] children) {
+        while (listSize + children.length > lists.length) {
+            lists = Arrays.copyOf(lists, lists.length * 2);
+        }
+        System.arraycopy(children, 0, lists, listSize, children.length);
+        listSize += children.length;
+        return listSize - children.length;
+    }
+
+    /**
+     * Add a literal value to the constant pool.
+     * <p>
+     * Values are immutable, so equal literals (by type and value) are only added once.
+     *
+     * @param value The literal value.
+     * @return The constant index.
+     */
+    private int addConstant(Value<?> value) {
+        Integer index = constantIndices.putIfAbsent(value.getValue(), constantCount);
+        if (index != null) {
+            return index;
+        }
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        return constantCount++;
+    }
+
+    /**
+     * Release the unused capacity of the arrays once the program is complete.
+     */
+    private void trim() {
+        kinds = Arrays.copyOf(kinds, size);
+        first = Arrays.copyOf(first, size);
+        second = Arrays.copyOf(second, size);
+        third = Arrays.copyOf(third, size);
+        lists = Arrays.copyOf(lists, listSize);
+        constants = Arrays.copyOf(constants, constantCount);
+        constantIndices = null;
+    }
+}
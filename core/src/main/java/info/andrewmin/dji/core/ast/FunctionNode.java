@@ -4,37 +4,64 @@ import info.andrewmin.dji.core.runtime.Var;
 import info.andrewmin.dji.core.tokens.TypeTokenVariant;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * A function node that contains the function's information (name, return type, parameters) and a body.
+ * <p>
+ * The body may be parsed lazily, on the first request for its statements.
  *
  * @see StatementNode
  */
 public final class FunctionNode extends Node {
     private final String name;
+    private final int id;
     private final TypeTokenVariant returnType;
     private final List<Var> parameters;
-    private final StatementNode.Block body;
+    private StatementNode.Block body;
+    // Parses the body on first use, null once the body is parsed
+    private Supplier<StatementNode.Block> bodyParser;
 
     /**
      * Construct a new function node.
      *
      * @param name       The function name.
+     * @param id         The identifier ID of the name.
      * @param returnType The function return type.
      * @param parameters The function parameters.
      * @param body       The function block statement.
      */
-    public FunctionNode(String name, TypeTokenVariant returnType, List<Var> parameters, StatementNode.Block body) {
-        super("Function",
-                new NodeProp("name", name),
-                new NodeProp("return", returnType.type),
-                new NodeProp("parameters", parameters.toArray()),
-                new NodeProp("body", body.getStatements().toArray())
-        );
+    public FunctionNode(String name, int id, TypeTokenVariant returnType, List<Var> parameters, StatementNode.Block body) {
+        super("Function");
         this.name = name;
+        this.id = id;
         this.returnType = returnType;
         this.parameters = parameters;
         this.body = body;
+        this.bodyParser = null;
+    }
+
+    /**
+     * Construct a new function node with a lazily parsed body.
+     * <p>
+     * The body is parsed the first time its statements are requested (e.g. the first call or printing the node),
+     * so syntax errors in the body are only reported then.
+     *
+     * @param name       The function name.
+     * @param id         The identifier ID of the name.
+     * @param returnType The function return type.
+     * @param parameters The function parameters.
+     * @param bodyParser The parser of the function block statement.
+     */
+    public FunctionNode(String name, int id, TypeTokenVariant returnType, List<Var> parameters,
+                        Supplier<StatementNode.Block> bodyParser) {
+        super("Function");
+        this.name = name;
+        this.id = id;
+        this.returnType = returnType;
+        this.parameters = parameters;
+        this.body = null;
+        this.bodyParser = bodyParser;
     }
 
     /**
@@ -46,6 +73,15 @@ public final class FunctionNode extends Node {
         return name;
     }
 
+    /**
+     * Get the function name identifier ID.
+     *
+     * @return The identifier ID.
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * Get the function return type.
      *
@@ -70,6 +106,30 @@ public final class FunctionNode extends Node {
      * @return The function body statements.
      */
     public List<StatementNode> getStatements() {
+        if (bodyParser != null) {
+            body = bodyParser.get();
+            bodyParser = null;
+        }
         return body.getStatements();
     }
+
+    /**
+     * Check if the body has been parsed.
+     *
+     * @return If the body is parsed.
+     */
+    public boolean isParsed() {
+        return bodyParser == null;
+    }
+
+    @Override
+    List<NodeProp> getProps() {
+        // Printing a lazy function parses its body
+        return List.of(
+                new NodeProp("name", name),
+                new NodeProp("return", returnType.type),
+                new NodeProp("parameters", parameters),
+                new NodeProp("body", getStatements())
+        );
+    }
 }
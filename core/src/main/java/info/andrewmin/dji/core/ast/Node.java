@@ -1,24 +1,29 @@
 package info.andrewmin.dji.core.ast;
 
-import java.util.Arrays;
+import info.andrewmin.dji.core.exceptions.InternalException;
+
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.List;
 
 /**
  * A node in the program abstract syntax tree.
+ * <p>
+ * Node properties are only used for printing, so they are built from the node fields when printed
+ * rather than stored with every node.
+ *
+ * @see AstPrinter
  */
 abstract class Node {
     private final String nodeName;
-    private final List<NodeProp> props;
 
     /**
      * Construct a new node.
      *
      * @param nodeName The node name.
-     * @param props    The node properties for logging.
      */
-    public Node(String nodeName, NodeProp... props) {
+    public Node(String nodeName) {
         this.nodeName = nodeName;
-        this.props = Arrays.asList(props);
     }
 
     /**
@@ -31,29 +36,20 @@ abstract class Node {
     }
 
     /**
-     * The string representation given the current indent level.
+     * Build the node properties for logging.
      *
-     * @param indentLevel The indent level of the node in the tree output.
-     * @return The string representation.
+     * @return The node properties.
      */
-    String toStringIndented(int indentLevel) {
-        StringBuilder builder = new StringBuilder().append(nodeName);
-        if (!props.isEmpty()) {
-            builder
-                    .append(" {")
-                    .append("\n");
-            for (NodeProp prop : props) {
-                builder
-                        .append(prop.toStringIndented(indentLevel + 1))
-                        .append("\n");
-            }
-            builder.append("}");
-        }
-        return builder.toString();
-    }
+    abstract List<NodeProp> getProps();
 
     @Override
     public String toString() {
-        return toStringIndented(0);
+        StringWriter out = new StringWriter();
+        try {
+            new AstPrinter(out, false).print(this);
+        } catch (IOException e) {
+            throw new InternalException("Unable to print node " + nodeName);
+        }
+        return out.toString();
     }
-}
\ No newline at end of file
+}
@@ -2,15 +2,16 @@ package info.andrewmin.dji.core.ast;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * A node property used for logging.
+ *
+ * @see AstPrinter
  */
 final class NodeProp {
     private final String key;
     private final List<?> objs;
+    private final boolean list;
 
     /**
      * Construct a new node property.
@@ -21,52 +22,45 @@ final class NodeProp {
     public NodeProp(String key, Object... objs) {
         this.key = key;
         this.objs = Arrays.asList(objs);
+        this.list = false;
     }
 
     /**
-     * The string representation given the current indent level.
+     * Construct a new list node property.
      *
-     * @param indentLevel The indent level of the property in the tree output.
-     * @return The string representation.
+     * @param key  The property name.
+     * @param objs The property values.
      */
-    String toStringIndented(int indentLevel) {
-        StringBuilder builder = new StringBuilder()
-                .append(key)
-                .append(": ");
+    public NodeProp(String key, List<?> objs) {
+        this.key = key;
+        this.objs = objs;
+        this.list = true;
+    }
 
-        if (objs.isEmpty()) {
-            builder.append("[]");
-        } else if (objs.size() == 1) {
-            builder.append(objs.get(0));
-        } else {
-            builder
-                    .append("[")
-                    .append("\n");
-            for (Object o : objs) {
-                String objStr = (o instanceof Node) ? ((Node) o).toStringIndented(indentLevel - 1) : o.toString();
-                objStr = indent(objStr, indentLevel);
-                builder
-                        .append(objStr)
-                        .append("\n");
-            }
-            builder.append("]");
-        }
-        return indent(builder.toString(), indentLevel);
+    /**
+     * Get the property name.
+     *
+     * @return The property name.
+     */
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * Get the property value(s).
+     *
+     * @return The property value(s).
+     */
+    List<?> getObjs() {
+        return objs;
     }
 
     /**
-     * Indent a given string a certain level.
-     * <p>
-     * The indent will be the indent level * 4 spaces.
+     * Check if the property is a list, even if it has a single value.
      *
-     * @param str The string to indent.
-     * @param n   The indent level.
-     * @return The indented string.
+     * @return If the property is a list.
      */
-    private String indent(String str, int n) {
-        Stream<String> stream = str.lines();
-        String spaces = " ".repeat(4 * n);
-        stream = stream.map(s -> spaces + s);
-        return stream.collect(Collectors.joining("\n", "", ""));
+    boolean isList() {
+        return list;
     }
 }
@@ -1,5 +1,9 @@
 package info.andrewmin.dji.core.ast;
 
+import info.andrewmin.dji.core.lexer.SymbolTable;
+
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -13,16 +17,34 @@ public final class ProgramNode extends Node {
      */
     private static final String MAIN_FUNC = "main";
 
+    // Functions in declaration order
+    private final List<FunctionNode> declared;
     private final Map<String, FunctionNode> functions;
+    private final SymbolTable symbols;
+    // Functions indexed by the identifier ID of their name
+    private final FunctionNode[] functionTable;
 
     /**
      * Construct a new program node.
      *
-     * @param functions the program functions.
+     * @param functions the program functions in declaration order, with distinct names.
+     * @param symbols   The symbol table of the program identifiers.
      */
-    public ProgramNode(Map<String, FunctionNode> functions) {
-        super("Program", new NodeProp("functions", functions.values().toArray()));
-        this.functions = functions;
+    public ProgramNode(List<FunctionNode> functions, SymbolTable symbols) {
+        super("Program");
+        this.declared = List.copyOf(functions);
+        this.functions = new HashMap<>();
+        this.symbols = symbols;
+        this.functionTable = new FunctionNode[symbols.size()];
+        for (FunctionNode function : functions) {
+            this.functions.put(function.getName(), function);
+            functionTable[function.getId()] = function;
+        }
+    }
+
+    @Override
+    List<NodeProp> getProps() {
+        return List.of(new NodeProp("functions", List.copyOf(functions.values())));
     }
 
     /**
@@ -37,9 +59,47 @@ public final class ProgramNode extends Node {
     /**
      * Get all the program functions.
      *
-     * @return The program functions.
+     * @return The program functions by name.
      */
     public Map<String, FunctionNode> getFunctions() {
         return functions;
     }
+
+    /**
+     * Get all the program functions in declaration order.
+     *
+     * @return The program functions.
+     */
+    public List<FunctionNode> getDeclaredFunctions() {
+        return declared;
+    }
+
+    /**
+     * Get a function by the identifier ID of its name.
+     *
+     * @param id The identifier ID.
+     * @return The function, null if it does not exist.
+     */
+    public FunctionNode getFunction(int id) {
+        // Identifiers interned after the program was built (e.g. in lazily parsed bodies) are not functions
+        return id < functionTable.length ? functionTable[id] : null;
+    }
+
+    /**
+     * Parse every lazily parsed function body, so the symbol table holds all the program identifiers.
+     */
+    public void parseAll() {
+        for (FunctionNode function : functions.values()) {
+            function.getStatements();
+        }
+    }
+
+    /**
+     * Get the symbol table of the program identifiers.
+     *
+     * @return The symbol table.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
 }
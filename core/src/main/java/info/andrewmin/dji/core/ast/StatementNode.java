@@ -15,10 +15,9 @@ public abstract class StatementNode extends Node {
      * To be invoked by subclass constructors only.
      *
      * @param nodeName The name of the statement node.
-     * @param props    The node properties
      */
-    private StatementNode(String nodeName, NodeProp... props) {
-        super("Statement." + nodeName, props);
+    private StatementNode(String nodeName) {
+        super("Statement." + nodeName);
     }
 
     /**
@@ -35,10 +34,15 @@ public abstract class StatementNode extends Node {
          * @param statements The list of statements
          */
         public Block(List<StatementNode> statements) {
-            super("Block", new NodeProp("statements", statements.toArray()));
+            super("Block");
             this.statements = statements;
         }
 
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(new NodeProp("statements", statements));
+        }
+
         /**
          * Get the list of statements.
          *
@@ -54,25 +58,48 @@ public abstract class StatementNode extends Node {
      */
     public static class VariableDeclaration extends StatementNode {
         private final String name;
+        private final int id;
         private final TypeTokenVariant type;
         private final ExpressionNode expr;
+        private final int slot;
 
         /**
-         * Construct a new variable declaration statement node.
+         * Construct a new unresolved variable declaration statement node.
          *
          * @param name The name of the variable.
+         * @param id   The identifier ID of the name.
          * @param type The variable type.
          * @param expr The variable value expression.
          */
-        public VariableDeclaration(String name, TypeTokenVariant type, ExpressionNode expr) {
-            super("VariableDeclaration",
+        public VariableDeclaration(String name, int id, TypeTokenVariant type, ExpressionNode expr) {
+            this(name, id, type, expr, -1);
+        }
+
+        /**
+         * Construct a new variable declaration statement node resolved to a frame slot.
+         *
+         * @param name The name of the variable.
+         * @param id   The identifier ID of the name.
+         * @param type The variable type.
+         * @param expr The variable value expression.
+         * @param slot The frame slot of the variable.
+         */
+        public VariableDeclaration(String name, int id, TypeTokenVariant type, ExpressionNode expr, int slot) {
+            super("VariableDeclaration");
+            this.name = name;
+            this.id = id;
+            this.type = type;
+            this.expr = expr;
+            this.slot = slot;
+        }
+
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(
                     new NodeProp("name", name),
                     new NodeProp("type", type),
                     new NodeProp("value", expr)
             );
-            this.name = name;
-            this.type = type;
-            this.expr = expr;
         }
 
         /**
@@ -84,6 +111,15 @@ public abstract class StatementNode extends Node {
             return name;
         }
 
+        /**
+         * Get the variable name identifier ID.
+         *
+         * @return The identifier ID.
+         */
+        public int getId() {
+            return id;
+        }
+
         /**
          * Get the variable type.
          *
@@ -101,6 +137,15 @@ public abstract class StatementNode extends Node {
         public ExpressionNode getExpr() {
             return expr;
         }
+
+        /**
+         * Get the frame slot of the variable.
+         *
+         * @return The frame slot, -1 if the declaration is unresolved.
+         */
+        public int getSlot() {
+            return slot;
+        }
     }
 
     /**
@@ -119,14 +164,19 @@ public abstract class StatementNode extends Node {
          * @param _else     The else statement (usually a block statement).
          */
         public If(ExpressionNode condition, StatementNode body, StatementNode _else) {
-            super("If",
+            super("If");
+            this.condition = condition;
+            this.body = body;
+            this._else = _else;
+        }
+
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(
                     new NodeProp("condition", condition),
                     new NodeProp("body", body),
                     new NodeProp("else", _else)
             );
-            this.condition = condition;
-            this.body = body;
-            this._else = _else;
         }
 
         /**
@@ -175,16 +225,21 @@ public abstract class StatementNode extends Node {
          * @param body      The body statement.
          */
         public For(StatementNode init, ExpressionNode condition, ExpressionNode post, StatementNode body) {
-            super("For",
+            super("For");
+            this.init = init;
+            this.condition = condition;
+            this.post = post;
+            this.body = body;
+        }
+
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(
                     new NodeProp("init", init),
                     new NodeProp("condition", condition),
                     new NodeProp("post", post),
                     new NodeProp("body", body)
             );
-            this.init = init;
-            this.condition = condition;
-            this.post = post;
-            this.body = body;
         }
 
         /**
@@ -238,12 +293,17 @@ public abstract class StatementNode extends Node {
          * @param body      The body statement (usually a block statement).
          */
         public While(ExpressionNode condition, StatementNode body) {
-            super("If",
+            super("If");
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(
                     new NodeProp("condition", condition),
                     new NodeProp("body", body)
             );
-            this.condition = condition;
-            this.body = body;
         }
 
         /**
@@ -275,6 +335,11 @@ public abstract class StatementNode extends Node {
         public Break() {
             super("Break");
         }
+
+        @Override
+        List<NodeProp> getProps() {
+            return List.of();
+        }
     }
 
     /**
@@ -287,6 +352,11 @@ public abstract class StatementNode extends Node {
         public Continue() {
             super("Continue");
         }
+
+        @Override
+        List<NodeProp> getProps() {
+            return List.of();
+        }
     }
 
     /**
@@ -301,10 +371,15 @@ public abstract class StatementNode extends Node {
          * @param expr The return expression.
          */
         public Return(ExpressionNode expr) {
-            super("Return", new NodeProp("expr", expr));
+            super("Return");
             this.expr = expr;
         }
 
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(new NodeProp("expr", expr));
+        }
+
         /**
          * Get the return expression.
          *
@@ -329,10 +404,15 @@ public abstract class StatementNode extends Node {
          * @param expr The stand-alone expression.
          */
         public Expression(ExpressionNode expr) {
-            super("Expression", new NodeProp("expr", expr));
+            super("Expression");
             this.expr = expr;
         }
 
+        @Override
+        List<NodeProp> getProps() {
+            return List.of(new NodeProp("expr", expr));
+        }
+
         /**
          * Get the stand-alone expression.
          *
@@ -0,0 +1,216 @@
+package info.andrewmin.dji.core.cache;
+
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.exceptions.BaseUserException;
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.lexer.SourceBuffer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * An on-disk cache of parsed programs, so repeated runs of the same source skip lexing and parsing.
+ * <p>
+ * Each program is stored in its own file named by a SHA-256 hash of the interpreter version, the cache format
+ * version and the source text, so editing the source or upgrading the interpreter never loads a stale tree.
+ * The cache is best effort: unreadable or corrupt files are treated as misses and write failures are only logged.
+ *
+ * @see AstWriter
+ * @see AstReader
+ */
+public final class AstCache {
+    private static final Logger LOGGER = Logger.getLogger(AstCache.class.getName());
+
+    private static final String EXTENSION = ".ast";
+    private static final int HASH_CHUNK = 1 << 13;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final String VERSION = interpreterVersion();
+
+    private final Path directory;
+
+    /**
+     * Construct a new abstract syntax tree cache.
+     *
+     * @param directory The cache directory, created when the first program is stored.
+     */
+    public AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Compute the cache key of a source.
+     *
+     * @param source The source buffer, must not be streaming.
+     * @return The cache key.
+     */
+    public static String key(SourceBuffer source) {
+        return key(source, VERSION);
+    }
+
+    /**
+     * Compute the cache key of a source for an interpreter version.
+     *
+     * @param source  The source buffer, must not be streaming.
+     * @param version The interpreter version.
+     * @return The cache key.
+     */
+    static String key(SourceBuffer source, String version) {
+        if (source.isStreaming()) {
+            throw new InternalException("Streaming sources cannot be cached");
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalException("SHA-256 is not available");
+        }
+        digest.update((version + "/" + AstFormat.VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+
+        // Hash the UTF-16 code units, so the key does not depend on the source encoding
+        byte[] chunk = new byte[HASH_CHUNK];
+        int length = source.length();
+        for (int offset = 0; offset < length; ) {
+            int n = Math.min(HASH_CHUNK / 2, length - offset);
+            for (int i = 0; i < n; i++) {
+                char c = source.charAt(offset + i);
+                chunk[2 * i] = (byte) (c >>> 8);
+                chunk[2 * i + 1] = (byte) c;
+            }
+            digest.update(chunk, 0, 2 * n);
+            offset += n;
+        }
+
+        byte[] hash = digest.digest();
+        char[] hex = new char[2 * hash.length];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX[(hash[i] >>> 4) & 0xF];
+            hex[2 * i + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Load a cached program.
+     *
+     * @param key The cache key.
+     * @return The program abstract syntax tree, null if it is not cached.
+     */
+    public ProgramNode load(String key) {
+        long start = System.nanoTime();
+        Path file = directory.resolve(key + EXTENSION);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            LOGGER.info("Cache miss " + key);
+            return null;
+        } catch (IOException e) {
+            LOGGER.warning("Unable to read cache file " + file + ": " + e);
+            return null;
+        }
+
+        AstReader reader = new AstReader(ByteBuffer.wrap(bytes));
+        ProgramNode program;
+        try {
+            program = reader.read();
+        } catch (IOException e) {
+            LOGGER.warning("Ignoring corrupt cache file " + file + ": " + e.getMessage());
+            return null;
+        }
+
+        long loadTime = System.nanoTime() - start;
+        LOGGER.info(String.format("Loaded cached program in %.2f ms, saved %.2f ms of lexing and parsing",
+                loadTime / 1e6, (reader.getParseTime() - loadTime) / 1e6));
+        return program;
+    }
+
+    /**
+     * Store a parsed program.
+     * <p>
+     * The file is written under a temporary name and moved into place, so concurrent runs never read a partial file.
+     * Writing a program parses all of its lazily parsed function bodies, so lazily parsed programs should not be
+     * stored unless that is acceptable, and a program with a syntax error in a body is not cached at all
+     * (the error is left to be reported when the function is called).
+     *
+     * @param key       The cache key.
+     * @param program   The program abstract syntax tree.
+     * @param parseTime The time it took to lex and parse the program in nanoseconds, reported on later loads.
+     */
+    public void store(String key, ProgramNode program, long parseTime) {
+        Path file = directory.resolve(key + EXTENSION);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, key, ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                new AstWriter(out).write(program, parseTime);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOGGER.info("Cached program as " + file);
+        } catch (BaseUserException e) {
+            LOGGER.info("Not caching program with an invalid function body: " + e.getMessage());
+            deleteTemp(temp);
+        } catch (IOException e) {
+            LOGGER.warning("Unable to write cache file " + file + ": " + e);
+            deleteTemp(temp);
+        }
+    }
+
+    /**
+     * Delete the temporary file of a failed store.
+     *
+     * @param temp The temporary file, null if it was not created.
+     */
+    private static void deleteTemp(Path temp) {
+        if (temp != null) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Get the interpreter version, so upgrading the interpreter invalidates the cache.
+     * <p>
+     * The version is read from the {@code version.properties} resource generated by the build, which survives
+     * shading into a single jar and native images unlike the module descriptor,
+     * falling back to the jar manifest's {@code Implementation-Version}.
+     *
+     * @return The interpreter version, or "dev" if the build did not record one.
+     */
+    private static String interpreterVersion() {
+        try (InputStream in = AstCache.class.getResourceAsStream("version.properties")) {
+            if (in != null) {
+                Properties properties = new Properties();
+                properties.load(in);
+                String version = properties.getProperty("version");
+                // The resource is only expanded by the build
+                if (version != null && !version.isEmpty() && !version.startsWith("$")) {
+                    return version;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Unable to read the interpreter version: " + e);
+        }
+        String version = AstCache.class.getPackage().getImplementationVersion();
+        return version != null ? version : "dev";
+    }
+}
@@ -0,0 +1,54 @@
+package info.andrewmin.dji.core.cache;
+
+/**
+ * The binary abstract syntax tree format shared by the writer and reader.
+ * <p>
+ * A file starts with the magic number and format version, followed by the parse time,
+ * the symbol table names (in ID order) and the program functions.
+ * Nodes are written depth first as a tag byte followed by their fields,
+ * counts and identifier IDs are variable-length integers and enums are written by ordinal.
+ * The file ends with a CRC-32 checksum of everything before it.
+ *
+ * @see AstWriter
+ * @see AstReader
+ */
+final class AstFormat {
+    /**
+     * The magic number at the start of every cache file ("DJIA").
+     */
+    static final int MAGIC = 0x444A4941;
+
+    /**
+     * The format version, must be bumped whenever the format or the parser output changes.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The tag of a missing (null) node.
+     */
+    static final byte NULL = 0;
+
+    // Statement tags
+    static final byte BLOCK = 1;
+    static final byte VARIABLE_DECLARATION = 2;
+    static final byte IF = 3;
+    static final byte FOR = 4;
+    static final byte WHILE = 5;
+    static final byte BREAK = 6;
+    static final byte CONTINUE = 7;
+    static final byte RETURN = 8;
+    static final byte EXPRESSION = 9;
+
+    // Expression tags
+    static final byte LITERAL = 16;
+    static final byte VARIABLE_REFERENCE = 17;
+    static final byte FUNCTION_CALL = 18;
+    static final byte BINARY = 19;
+    static final byte UNARY = 20;
+
+    /**
+     * Utility class.
+     */
+    private AstFormat() {
+    }
+}
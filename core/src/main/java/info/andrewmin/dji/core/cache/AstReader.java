@@ -0,0 +1,350 @@
+package info.andrewmin.dji.core.cache;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.lexer.SymbolTable;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.runtime.Var;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a program abstract syntax tree in the binary cache format.
+ * <p>
+ * The symbol table is rebuilt first, so identifier IDs and names match the parsed program exactly.
+ * Malformed or corrupt input is reported as an IO exception, never as a partially read tree.
+ *
+ * @see AstFormat
+ * @see AstWriter
+ */
+final class AstReader {
+    private static final TypeTokenVariant[] TYPES = TypeTokenVariant.values();
+    private static final SymbolTokenVariant[] SYMBOLS = SymbolTokenVariant.values();
+
+    private final ByteBuffer in;
+    private SymbolTable symbols;
+    private long parseTime;
+
+    /**
+     * Construct a new abstract syntax tree reader.
+     *
+     * @param in The buffer holding the whole cache file.
+     */
+    AstReader(ByteBuffer in) {
+        this.in = in;
+    }
+
+    /**
+     * Read a whole program.
+     *
+     * @return The program abstract syntax tree.
+     * @throws IOException If the buffer is not a valid cache file.
+     */
+    ProgramNode read() throws IOException {
+        try {
+            return readProgram();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated cache file");
+        }
+    }
+
+    /**
+     * Read a whole program from the buffer.
+     *
+     * @return The program abstract syntax tree.
+     * @throws IOException If the buffer is not a valid cache file.
+     */
+    private ProgramNode readProgram() throws IOException {
+        if (in.remaining() < Integer.BYTES) {
+            throw new IOException("Truncated cache file");
+        }
+        int end = in.limit() - Integer.BYTES;
+        CRC32 checksum = new CRC32();
+        checksum.update(in.array(), in.arrayOffset() + in.position(), end - in.position());
+        if ((int) checksum.getValue() != in.getInt(end)) {
+            throw new IOException("Checksum mismatch");
+        }
+        in.limit(end);
+
+        if (in.getInt() != AstFormat.MAGIC || in.getInt() != AstFormat.VERSION) {
+            throw new IOException("Not a cache file of version " + AstFormat.VERSION);
+        }
+        parseTime = in.getLong();
+
+        symbols = new SymbolTable();
+        int symbolCount = readLength();
+        for (int id = 0; id < symbolCount; id++) {
+            String name = readString();
+            if (symbols.intern(name) != id) {
+                throw new IOException("Duplicate symbol " + name);
+            }
+        }
+
+        int functionCount = readLength();
+        List<FunctionNode> functions = new ArrayList<>();
+        for (int i = 0; i < functionCount; i++) {
+            functions.add(readFunction());
+        }
+        if (in.hasRemaining()) {
+            throw new IOException("Trailing data");
+        }
+        return new ProgramNode(functions, symbols);
+    }
+
+    /**
+     * Get the time it originally took to lex and parse the program.
+     * <p>
+     * Only valid after {@link #read()}.
+     *
+     * @return The parse time in nanoseconds.
+     */
+    long getParseTime() {
+        return parseTime;
+    }
+
+    /**
+     * Read a function.
+     *
+     * @return The function node.
+     * @throws IOException If the buffer is malformed.
+     */
+    private FunctionNode readFunction() throws IOException {
+        int id = readId();
+        TypeTokenVariant returnType = readType();
+        int paramCount = readLength();
+        List<Var> params = new ArrayList<>(paramCount);
+        for (int i = 0; i < paramCount; i++) {
+            TypeTokenVariant type = readType();
+            int paramId = readId();
+            params.add(new Var(type, symbols.name(paramId), paramId));
+        }
+        return new FunctionNode(symbols.name(id), id, returnType, params, new StatementNode.Block(readStatements()));
+    }
+
+    /**
+     * Read a list of statements.
+     *
+     * @return The statement nodes.
+     * @throws IOException If the buffer is malformed.
+     */
+    private List<StatementNode> readStatements() throws IOException {
+        int count = readLength();
+        List<StatementNode> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            statements.add(readStatement());
+        }
+        return statements;
+    }
+
+    /**
+     * Read a statement.
+     *
+     * @return The statement node, may be null.
+     * @throws IOException If the buffer is malformed.
+     */
+    private StatementNode readStatement() throws IOException {
+        byte tag = in.get();
+        switch (tag) {
+            case AstFormat.NULL:
+                return null;
+            case AstFormat.BLOCK:
+                return new StatementNode.Block(readStatements());
+            case AstFormat.VARIABLE_DECLARATION: {
+                int id = readId();
+                TypeTokenVariant type = readType();
+                return new StatementNode.VariableDeclaration(symbols.name(id), id, type, readExpression());
+            }
+            case AstFormat.IF: {
+                ExpressionNode condition = readExpression();
+                StatementNode body = readStatement();
+                return new StatementNode.If(condition, body, readStatement());
+            }
+            case AstFormat.FOR: {
+                StatementNode init = readStatement();
+                ExpressionNode condition = readExpression();
+                ExpressionNode post = readExpression();
+                return new StatementNode.For(init, condition, post, readStatement());
+            }
+            case AstFormat.WHILE: {
+                ExpressionNode condition = readExpression();
+                return new StatementNode.While(condition, readStatement());
+            }
+            case AstFormat.BREAK:
+                return new StatementNode.Break();
+            case AstFormat.CONTINUE:
+                return new StatementNode.Continue();
+            case AstFormat.RETURN:
+                return new StatementNode.Return(readExpression());
+            case AstFormat.EXPRESSION:
+                return new StatementNode.Expression(readExpression());
+            default:
+                throw new IOException("Unknown statement tag " + tag);
+        }
+    }
+
+    /**
+     * Read an expression.
+     *
+     * @return The expression node, may be null.
+     * @throws IOException If the buffer is malformed.
+     */
+    private ExpressionNode readExpression() throws IOException {
+        byte tag = in.get();
+        switch (tag) {
+            case AstFormat.NULL:
+                return null;
+            case AstFormat.LITERAL:
+                return new ExpressionNode.Literal(readValue());
+            case AstFormat.VARIABLE_REFERENCE: {
+                int id = readId();
+                return new ExpressionNode.VariableReference(symbols.name(id), id);
+            }
+            case AstFormat.FUNCTION_CALL: {
+                int id = readId();
+                int argCount = readLength();
+                List<ExpressionNode> args = new ArrayList<>(argCount);
+                for (int i = 0; i < argCount; i++) {
+                    args.add(readExpression());
+                }
+                return new ExpressionNode.FunctionCall(symbols.name(id), id, args);
+            }
+            case AstFormat.BINARY: {
+                SymbolTokenVariant op = readSymbol();
+                ExpressionNode left = readExpression();
+                return new ExpressionNode.Binary(op, left, readExpression());
+            }
+            case AstFormat.UNARY: {
+                SymbolTokenVariant op = readSymbol();
+                return new ExpressionNode.Unary(op, readExpression());
+            }
+            default:
+                throw new IOException("Unknown expression tag " + tag);
+        }
+    }
+
+    /**
+     * Read a literal value.
+     *
+     * @return The value.
+     * @throws IOException If the buffer is malformed.
+     */
+    private Value<?> readValue() throws IOException {
+        TypeTokenVariant type = readType();
+        switch (type) {
+            case BOOLEAN:
+                return new Value.Boolean(in.get() != 0);
+            case CHAR:
+                return new Value.Char(in.getChar());
+            case INT:
+                return new Value.Int(in.getInt());
+            case DOUBLE:
+                return new Value.Double(in.getDouble());
+            case STRING:
+                return new Value.String(readString());
+            default:
+                throw new IOException("Unknown literal type " + type.type);
+        }
+    }
+
+    /**
+     * Read a type by ordinal.
+     *
+     * @return The type.
+     * @throws IOException If the ordinal is invalid.
+     */
+    private TypeTokenVariant readType() throws IOException {
+        int ordinal = Byte.toUnsignedInt(in.get());
+        if (ordinal >= TYPES.length) {
+            throw new IOException("Unknown type " + ordinal);
+        }
+        return TYPES[ordinal];
+    }
+
+    /**
+     * Read an operator by ordinal.
+     *
+     * @return The operator.
+     * @throws IOException If the ordinal is invalid.
+     */
+    private SymbolTokenVariant readSymbol() throws IOException {
+        int ordinal = Byte.toUnsignedInt(in.get());
+        if (ordinal >= SYMBOLS.length) {
+            throw new IOException("Unknown operator " + ordinal);
+        }
+        return SYMBOLS[ordinal];
+    }
+
+    /**
+     * Read a symbol table ID.
+     *
+     * @return The identifier ID.
+     * @throws IOException If the ID is not in the symbol table.
+     */
+    private int readId() throws IOException {
+        int id = readCount();
+        if (id >= symbols.size()) {
+            throw new IOException("Unknown identifier " + id);
+        }
+        return id;
+    }
+
+    /**
+     * Read a string written as its UTF-8 byte count and bytes.
+     *
+     * @return The string.
+     * @throws IOException If the buffer is malformed.
+     */
+    private String readString() throws IOException {
+        int length = readLength();
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    /**
+     * Read a count of elements that each take at least one byte.
+     * <p>
+     * Checking the count against the remaining bytes avoids huge allocations for a corrupt count.
+     *
+     * @return The count.
+     * @throws IOException If the count exceeds the remaining bytes.
+     */
+    private int readLength() throws IOException {
+        int length = readCount();
+        if (length > in.remaining()) {
+            throw new IOException("Truncated cache file");
+        }
+        return length;
+    }
+
+    /**
+     * Read a non-negative integer written in 7-bit groups.
+     *
+     * @return The integer.
+     * @throws IOException If the integer is too long.
+     */
+    private int readCount() throws IOException {
+        int n = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = Byte.toUnsignedInt(in.get());
+            n |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (n < 0) {
+                    break;
+                }
+                return n;
+            }
+        }
+        throw new IOException("Malformed count");
+    }
+}
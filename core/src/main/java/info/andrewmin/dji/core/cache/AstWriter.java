@@ -0,0 +1,246 @@
+package info.andrewmin.dji.core.cache;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.lexer.SymbolTable;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.runtime.Var;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes a program abstract syntax tree in the binary cache format.
+ * <p>
+ * Names are not written with the nodes, they are restored from the symbol table by identifier ID.
+ *
+ * @see AstFormat
+ * @see AstReader
+ */
+final class AstWriter {
+    private final CRC32 checksum;
+    private final DataOutputStream out;
+
+    /**
+     * Construct a new abstract syntax tree writer.
+     *
+     * @param out The output stream.
+     */
+    AstWriter(OutputStream out) {
+        this.checksum = new CRC32();
+        this.out = new DataOutputStream(new CheckedOutputStream(out, checksum));
+    }
+
+    /**
+     * Write a whole program.
+     *
+     * @param program   The program abstract syntax tree.
+     * @param parseTime The time it took to lex and parse the program in nanoseconds.
+     * @throws IOException If the stream could not be written.
+     */
+    void write(ProgramNode program, long parseTime) throws IOException {
+        out.writeInt(AstFormat.MAGIC);
+        out.writeInt(AstFormat.VERSION);
+        out.writeLong(parseTime);
+
+        // Lazy bodies may intern new identifiers, so they must be parsed before the symbols are written
+        program.parseAll();
+        SymbolTable symbols = program.getSymbols();
+        writeCount(symbols.size());
+        for (int id = 0; id < symbols.size(); id++) {
+            writeString(symbols.name(id));
+        }
+
+        writeCount(program.getFunctions().size());
+        for (FunctionNode function : program.getDeclaredFunctions()) {
+            writeFunction(function);
+        }
+        out.writeInt((int) checksum.getValue());
+        out.flush();
+    }
+
+    /**
+     * Write a function.
+     *
+     * @param function The function node.
+     * @throws IOException If the stream could not be written.
+     */
+    private void writeFunction(FunctionNode function) throws IOException {
+        writeCount(function.getId());
+        out.writeByte(function.getReturnType().ordinal());
+        writeCount(function.getParameters().size());
+        for (Var param : function.getParameters()) {
+            out.writeByte(param.getType().ordinal());
+            writeCount(param.getId());
+        }
+        writeStatements(function.getStatements());
+    }
+
+    /**
+     * Write a list of statements.
+     *
+     * @param statements The statement nodes.
+     * @throws IOException If the stream could not be written.
+     */
+    private void writeStatements(List<StatementNode> statements) throws IOException {
+        writeCount(statements.size());
+        for (StatementNode statement : statements) {
+            writeStatement(statement);
+        }
+    }
+
+    /**
+     * Write a statement.
+     *
+     * @param node The statement node, may be null.
+     * @throws IOException If the stream could not be written.
+     */
+    private void writeStatement(StatementNode node) throws IOException {
+        if (node == null) {
+            out.writeByte(AstFormat.NULL);
+        } else if (node instanceof StatementNode.Block) {
+            out.writeByte(AstFormat.BLOCK);
+            writeStatements(((StatementNode.Block) node).getStatements());
+        } else if (node instanceof StatementNode.VariableDeclaration) {
+            StatementNode.VariableDeclaration declaration = (StatementNode.VariableDeclaration) node;
+            out.writeByte(AstFormat.VARIABLE_DECLARATION);
+            writeCount(declaration.getId());
+            out.writeByte(declaration.getType().ordinal());
+            writeExpression(declaration.getExpr());
+        } else if (node instanceof StatementNode.If) {
+            StatementNode.If _if = (StatementNode.If) node;
+            out.writeByte(AstFormat.IF);
+            writeExpression(_if.getCondition());
+            writeStatement(_if.getBody());
+            writeStatement(_if.getElse());
+        } else if (node instanceof StatementNode.For) {
+            StatementNode.For _for = (StatementNode.For) node;
+            out.writeByte(AstFormat.FOR);
+            writeStatement(_for.getInit());
+            writeExpression(_for.getCondition());
+            writeExpression(_for.getPost());
+            writeStatement(_for.getBody());
+        } else if (node instanceof StatementNode.While) {
+            StatementNode.While _while = (StatementNode.While) node;
+            out.writeByte(AstFormat.WHILE);
+            writeExpression(_while.getCondition());
+            writeStatement(_while.getBody());
+        } else if (node instanceof StatementNode.Break) {
+            out.writeByte(AstFormat.BREAK);
+        } else if (node instanceof StatementNode.Continue) {
+            out.writeByte(AstFormat.CONTINUE);
+        } else if (node instanceof StatementNode.Return) {
+            out.writeByte(AstFormat.RETURN);
+            writeExpression(((StatementNode.Return) node).getExpr());
+        } else if (node instanceof StatementNode.Expression) {
+            out.writeByte(AstFormat.EXPRESSION);
+            writeExpression(((StatementNode.Expression) node).getExpr());
+        } else {
+            throw new InternalException("Unknown statement node " + node.getNodeName());
+        }
+    }
+
+    /**
+     * Write an expression.
+     *
+     * @param node The expression node, may be null.
+     * @throws IOException If the stream could not be written.
+     */
+    private void writeExpression(ExpressionNode node) throws IOException {
+        if (node == null) {
+            out.writeByte(AstFormat.NULL);
+        } else if (node instanceof ExpressionNode.Literal) {
+            out.writeByte(AstFormat.LITERAL);
+            writeValue(((ExpressionNode.Literal) node).getValue());
+        } else if (node instanceof ExpressionNode.VariableReference) {
+            out.writeByte(AstFormat.VARIABLE_REFERENCE);
+            writeCount(((ExpressionNode.VariableReference) node).getId());
+        } else if (node instanceof ExpressionNode.FunctionCall) {
+            ExpressionNode.FunctionCall call = (ExpressionNode.FunctionCall) node;
+            out.writeByte(AstFormat.FUNCTION_CALL);
+            writeCount(call.getId());
+            writeCount(call.getArgs().size());
+            for (ExpressionNode arg : call.getArgs()) {
+                writeExpression(arg);
+            }
+        } else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            out.writeByte(AstFormat.BINARY);
+            out.writeByte(binary.getOperator().ordinal());
+            writeExpression(binary.getLeftExpr());
+            writeExpression(binary.getRightExpr());
+        } else if (node instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+            out.writeByte(AstFormat.UNARY);
+            out.writeByte(unary.getOperator().ordinal());
+            writeExpression(unary.getExpr());
+        } else {
+            throw new InternalException("Unknown expression node " + node.getNodeName());
+        }
+    }
+
+    /**
+     * Write a literal value.
+     *
+     * @param value The value.
+     * @throws IOException If the stream could not be written.
+     */
+    private void writeValue(Value<?> value) throws IOException {
+        out.writeByte(value.getType().ordinal());
+        switch (value.getType()) {
+            case BOOLEAN:
+                out.writeBoolean((Boolean) value.getValue());
+                break;
+            case CHAR:
+                out.writeChar((Character) value.getValue());
+                break;
+            case INT:
+                out.writeInt((Integer) value.getValue());
+                break;
+            case DOUBLE:
+                out.writeDouble((Double) value.getValue());
+                break;
+            case STRING:
+                writeString((String) value.getValue());
+                break;
+            default:
+                throw new InternalException("Unknown literal type " + value.getType().type);
+        }
+    }
+
+    /**
+     * Write a string as its UTF-8 byte count and bytes.
+     * <p>
+     * Unlike {@link DataOutputStream#writeUTF(String)}, strings are not limited to 64 KiB.
+     *
+     * @param s The string.
+     * @throws IOException If the stream could not be written.
+     */
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeCount(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Write a non-negative integer in 7-bit groups, so small counts and IDs take a single byte.
+     *
+     * @param n The integer.
+     * @throws IOException If the stream could not be written.
+     */
+    private void writeCount(int n) throws IOException {
+        while ((n & ~0x7F) != 0) {
+            out.writeByte((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        out.writeByte(n);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * This package provides the on-disk cache of parsed abstract syntax trees.
+ */
+package info.andrewmin.dji.core.cache;
\ No newline at end of file
@@ -0,0 +1,515 @@
+package info.andrewmin.dji.core.checker;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.exceptions.*;
+import info.andrewmin.dji.core.runtime.Var;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The inferred types of a function.
+ * <p>
+ * Variables may be reassigned to values of another type, so the type of a variable is the set of types of all its
+ * declarations and assignments in the function, regardless of where they are.
+ * Types are sets of type bits, an empty set means an expression never evaluates without an error,
+ * and the {@link #UNKNOWN} bit means it may be anything (e.g. the missing value of a void function call).
+ * <p>
+ * Errors are only reported where an operation fails for every possible type of its operands,
+ * so checking never rejects a statement that could run.
+ * A function is checked if the types of all its variables, operands and returned values are exactly known and valid,
+ * then the runtime does not need to check them again.
+ *
+ * @see TypeChecker
+ */
+public final class FunctionTypes {
+    private static final int UNKNOWN = bit(TypeTokenVariant.VOID);
+    private static final int BOOLEAN = bit(TypeTokenVariant.BOOLEAN);
+    private static final int INT = bit(TypeTokenVariant.INT);
+    private static final int DOUBLE = bit(TypeTokenVariant.DOUBLE);
+    private static final int STRING = bit(TypeTokenVariant.STRING);
+    private static final TypeTokenVariant[] TYPES = TypeTokenVariant.values();
+
+    private final ProgramNode program;
+    private final FunctionNode function;
+    // Possible types by variable identifier ID
+    private final Map<Integer, Integer> variables;
+    private final List<BaseUserException> errors;
+    private boolean changed;
+    private boolean checked;
+
+    /**
+     * Infer and check the types of a function.
+     * <p>
+     * Inferring parses the body if it is lazily parsed.
+     *
+     * @param program  The program node.
+     * @param function The function node.
+     */
+    FunctionTypes(ProgramNode program, FunctionNode function) {
+        this.program = program;
+        this.function = function;
+        this.variables = new HashMap<>();
+        this.errors = new ArrayList<>();
+
+        for (Var parameter : function.getParameters()) {
+            addVariableTypes(parameter.getId(), bit(parameter.getType()) & ~UNKNOWN);
+        }
+        // Variable types only grow, so this ends after at most a few passes per variable
+        do {
+            changed = false;
+            infer(function.getStatements());
+        } while (changed);
+
+        checked = true;
+        for (int types : variables.values()) {
+            checked &= isExact(types);
+        }
+        check(function.getStatements(), true);
+    }
+
+    /**
+     * Get the function node.
+     *
+     * @return The function node.
+     */
+    public FunctionNode getFunction() {
+        return function;
+    }
+
+    /**
+     * Check if all the variable, operand and returned value types of the function are exactly known and valid.
+     *
+     * @return If the function is checked.
+     */
+    public boolean isChecked() {
+        return checked;
+    }
+
+    /**
+     * Get the type of a variable.
+     *
+     * @param id The variable name identifier ID.
+     * @return The type, null if the variable may have more than one type (or none).
+     */
+    public TypeTokenVariant getVariableType(int id) {
+        return toType(variables.getOrDefault(id, 0));
+    }
+
+    /**
+     * Get the type of an expression in the function.
+     *
+     * @param node The expression node.
+     * @return The type, null if the expression may have more than one type (or none).
+     */
+    public TypeTokenVariant getType(ExpressionNode node) {
+        return toType(typeOf(node));
+    }
+
+    /**
+     * Get the errors found in the function.
+     *
+     * @return The errors, in program order.
+     */
+    List<BaseUserException> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Infer the variable types assigned in a list of statements.
+     *
+     * @param statements The statement nodes.
+     */
+    private void infer(List<StatementNode> statements) {
+        for (StatementNode statement : statements) {
+            infer(statement);
+        }
+    }
+
+    /**
+     * Infer the variable types assigned in a statement.
+     *
+     * @param node The statement node, may be null.
+     */
+    private void infer(StatementNode node) {
+        if (node instanceof StatementNode.Block) {
+            infer(((StatementNode.Block) node).getStatements());
+        } else if (node instanceof StatementNode.VariableDeclaration) {
+            StatementNode.VariableDeclaration declaration = (StatementNode.VariableDeclaration) node;
+            infer(declaration.getExpr());
+            // The declaration fails unless the value has the declared type
+            addVariableTypes(declaration.getId(), bit(declaration.getType()) & ~UNKNOWN);
+        } else if (node instanceof StatementNode.If) {
+            StatementNode.If _if = (StatementNode.If) node;
+            infer(_if.getCondition());
+            infer(_if.getBody());
+            infer(_if.getElse());
+        } else if (node instanceof StatementNode.For) {
+            StatementNode.For _for = (StatementNode.For) node;
+            infer(_for.getInit());
+            infer(_for.getCondition());
+            infer(_for.getPost());
+            infer(_for.getBody());
+        } else if (node instanceof StatementNode.While) {
+            infer(((StatementNode.While) node).getCondition());
+            infer(((StatementNode.While) node).getBody());
+        } else if (node instanceof StatementNode.Return) {
+            infer(((StatementNode.Return) node).getExpr());
+        } else if (node instanceof StatementNode.Expression) {
+            infer(((StatementNode.Expression) node).getExpr());
+        }
+    }
+
+    /**
+     * Infer the variable types assigned in an expression.
+     *
+     * @param node The expression node.
+     * @return The possible types of the expression.
+     */
+    private int infer(ExpressionNode node) {
+        if (node instanceof ExpressionNode.FunctionCall) {
+            for (ExpressionNode arg : ((ExpressionNode.FunctionCall) node).getArgs()) {
+                infer(arg);
+            }
+        } else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            int types = binaryType(binary, infer(binary.getLeftExpr()), infer(binary.getRightExpr()));
+            if (isAssignment(binary.getOperator())
+                    && binary.getLeftExpr() instanceof ExpressionNode.VariableReference) {
+                addVariableTypes(((ExpressionNode.VariableReference) binary.getLeftExpr()).getId(), types);
+            }
+            return types;
+        } else if (node instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+            return unaryType(unary.getOperator(), infer(unary.getExpr()));
+        }
+        return typeOf(node);
+    }
+
+    /**
+     * Add possible types to a variable.
+     *
+     * @param id    The variable name identifier ID.
+     * @param types The possible types.
+     */
+    private void addVariableTypes(int id, int types) {
+        int oldTypes = variables.getOrDefault(id, 0);
+        if ((oldTypes | types) != oldTypes) {
+            variables.put(id, oldTypes | types);
+            changed = true;
+        }
+    }
+
+    /**
+     * Get the possible types of an expression.
+     *
+     * @param node The expression node.
+     * @return The possible types.
+     */
+    private int typeOf(ExpressionNode node) {
+        if (node instanceof ExpressionNode.Literal) {
+            return bit(((ExpressionNode.Literal) node).getValue().getType());
+        } else if (node instanceof ExpressionNode.VariableReference) {
+            return variables.getOrDefault(((ExpressionNode.VariableReference) node).getId(), 0);
+        } else if (node instanceof ExpressionNode.FunctionCall) {
+            FunctionNode callee = program.getFunction(((ExpressionNode.FunctionCall) node).getId());
+            // Return values are checked against the return type, void functions return no value
+            return callee == null ? 0 : bit(callee.getReturnType());
+        } else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            return binaryType(binary, typeOf(binary.getLeftExpr()), typeOf(binary.getRightExpr()));
+        } else if (node instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+            return unaryType(unary.getOperator(), typeOf(unary.getExpr()));
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Get the possible types of a binary expression.
+     *
+     * @param node  The binary expression node.
+     * @param left  The possible left types.
+     * @param right The possible right types.
+     * @return The possible types.
+     */
+    private static int binaryType(ExpressionNode.Binary node, int left, int right) {
+        SymbolTokenVariant op = node.getOperator();
+        if (isAssignment(op) && !(node.getLeftExpr() instanceof ExpressionNode.VariableReference)) {
+            return 0;
+        } else if (op == SymbolTokenVariant.ASSIGN) {
+            return left == 0 ? 0 : right;
+        }
+        return binaryType(operation(op), left, right);
+    }
+
+    /**
+     * Get the possible result types of a binary operation.
+     *
+     * @param op    The operation (not an assignment).
+     * @param left  The possible left types.
+     * @param right The possible right types.
+     * @return The possible result types.
+     */
+    private static int binaryType(SymbolTokenVariant op, int left, int right) {
+        if (((left | right) & UNKNOWN) != 0) {
+            return left == 0 || right == 0 ? 0 : UNKNOWN;
+        }
+        // Operands must have the same type
+        int same = left & right;
+        switch (op) {
+            case ADD:
+                return same & (INT | DOUBLE | STRING);
+            case SUB:
+            case MUL:
+            case QUO:
+            case REM:
+                return same & (INT | DOUBLE);
+            case EQL:
+                return same != 0 ? BOOLEAN : 0;
+            case LSS:
+            case GTR:
+                return (same & (INT | DOUBLE)) != 0 ? BOOLEAN : 0;
+            case LAND:
+            case LOR:
+                return same & BOOLEAN;
+            default:
+                // e.g. increment, which the runtime does not support
+                return left == 0 || right == 0 ? 0 : UNKNOWN;
+        }
+    }
+
+    /**
+     * Get the possible result types of a unary operation.
+     *
+     * @param op   The unary operator.
+     * @param expr The possible operand types.
+     * @return The possible result types.
+     */
+    private static int unaryType(SymbolTokenVariant op, int expr) {
+        if ((expr & UNKNOWN) != 0) {
+            return UNKNOWN;
+        } else if (op == SymbolTokenVariant.SUB) {
+            return expr & (INT | DOUBLE);
+        } else if (op == SymbolTokenVariant.NOT) {
+            return expr & BOOLEAN;
+        }
+        return expr == 0 ? 0 : UNKNOWN;
+    }
+
+    /**
+     * Check the statements of the function and mark the function unchecked if any type is not exactly known.
+     *
+     * @param statements The statement nodes.
+     * @param top        If the statements are the function body.
+     */
+    private void check(List<StatementNode> statements, boolean top) {
+        for (StatementNode statement : statements) {
+            check(statement, top);
+        }
+    }
+
+    /**
+     * Check a statement.
+     *
+     * @param node The statement node, may be null.
+     * @param top  If the statement is in the function body.
+     */
+    private void check(StatementNode node, boolean top) {
+        if (node instanceof StatementNode.Block) {
+            // Blocks do not end at a return, only the function body does
+            check(((StatementNode.Block) node).getStatements(), false);
+        } else if (node instanceof StatementNode.VariableDeclaration) {
+            StatementNode.VariableDeclaration declaration = (StatementNode.VariableDeclaration) node;
+            int types = checkOperand(declaration.getExpr());
+            if (types != 0 && declaration.getType() == TypeTokenVariant.VOID) {
+                errors.add(new VoidTypeException(declaration.getName()));
+            } else if (isExact(types) && types != bit(declaration.getType())) {
+                errors.add(new TypeMismatchException(declaration.getType(), toType(types)));
+            }
+        } else if (node instanceof StatementNode.If) {
+            StatementNode.If _if = (StatementNode.If) node;
+            checkCondition(_if.getCondition());
+            check(_if.getBody(), false);
+            check(_if.getElse(), false);
+        } else if (node instanceof StatementNode.For) {
+            StatementNode.For _for = (StatementNode.For) node;
+            check(_for.getInit(), false);
+            checkCondition(_for.getCondition());
+            checkOperand(_for.getPost());
+            check(_for.getBody(), false);
+        } else if (node instanceof StatementNode.While) {
+            checkCondition(((StatementNode.While) node).getCondition());
+            check(((StatementNode.While) node).getBody(), false);
+        } else if (node instanceof StatementNode.Return) {
+            int types = check(((StatementNode.Return) node).getExpr());
+            // A return in a nested statement may be replaced by a later one before the function ends
+            TypeTokenVariant returnType = function.getReturnType();
+            if (top && isExact(types) && types != bit(returnType)) {
+                errors.add(new TypeMismatchException(returnType, toType(types)));
+            }
+            // Returned values are not checked again, a void call returns no value
+            checked &= (types & ~UNKNOWN) == 0 || types == bit(returnType);
+        } else if (node instanceof StatementNode.Expression) {
+            check(((StatementNode.Expression) node).getExpr());
+        }
+    }
+
+    /**
+     * Check a condition expression.
+     *
+     * @param node The condition expression node.
+     */
+    private void checkCondition(ExpressionNode node) {
+        int types = checkOperand(node);
+        if (isExact(types) && types != BOOLEAN) {
+            errors.add(new TypeMismatchException(TypeTokenVariant.BOOLEAN, toType(types)));
+        }
+    }
+
+    /**
+     * Check an expression whose value is used, so its type must be known for the function to be checked.
+     *
+     * @param node The expression node.
+     * @return The possible types of the expression.
+     */
+    private int checkOperand(ExpressionNode node) {
+        int types = check(node);
+        checked &= types == 0 || isExact(types);
+        return types;
+    }
+
+    /**
+     * Check an expression.
+     *
+     * @param node The expression node.
+     * @return The possible types of the expression.
+     */
+    private int check(ExpressionNode node) {
+        if (node instanceof ExpressionNode.FunctionCall) {
+            ExpressionNode.FunctionCall funcCall = (ExpressionNode.FunctionCall) node;
+            FunctionNode callee = program.getFunction(funcCall.getId());
+            List<ExpressionNode> args = funcCall.getArgs();
+            TypeTokenVariant[] argTypes = new TypeTokenVariant[args.size()];
+            boolean exact = true;
+            boolean valid = callee != null && callee.getParameters().size() == args.size();
+            for (int i = 0; i < args.size(); i++) {
+                int types = checkOperand(args.get(i));
+                argTypes[i] = toType(types);
+                exact &= isExact(types);
+                if (valid && (types & bit(callee.getParameters().get(i).getType())) == 0) {
+                    valid = false;
+                }
+            }
+            if (callee != null && exact && !valid) {
+                errors.add(new InvalidArgumentException(callee.getName(), callee.getParameters(), argTypes));
+            }
+            // A void function call is only checked if its missing value is not used
+            return typeOf(node);
+        } else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            SymbolTokenVariant op = binary.getOperator();
+            int left = checkOperand(binary.getLeftExpr());
+            int right = checkOperand(binary.getRightExpr());
+            int types = binaryType(binary, left, right);
+            if (left == 0 || right == 0) {
+                // The operation never runs
+                return 0;
+            } else if (isAssignment(op) && !(binary.getLeftExpr() instanceof ExpressionNode.VariableReference)) {
+                errors.add(new ExpectedVariableException(op));
+            } else if (types == 0 && isExact(left) && isExact(right)) {
+                // Operations fail with the name of the operator that implements them, e.g. == for !=
+                errors.add(new BinaryTypeMismatchException(operation(op), toType(left), toType(right)));
+            }
+            checked &= (types & UNKNOWN) == 0;
+            return types;
+        } else if (node instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+            int operand = checkOperand(unary.getExpr());
+            int types = unaryType(unary.getOperator(), operand);
+            if (types == 0 && isExact(operand)) {
+                errors.add(new UnaryTypeMismatchException(unary.getOperator(), toType(operand)));
+            }
+            checked &= (types & UNKNOWN) == 0;
+            return types;
+        }
+        return typeOf(node);
+    }
+
+    /**
+     * Get the operation a binary operator performs.
+     *
+     * @param op The binary operator.
+     * @return The operation, e.g. addition for both + and +=.
+     */
+    private static SymbolTokenVariant operation(SymbolTokenVariant op) {
+        switch (op) {
+            case ADD_ASSIGN:
+                return SymbolTokenVariant.ADD;
+            case SUB_ASSIGN:
+                return SymbolTokenVariant.SUB;
+            case MUL_ASSIGN:
+                return SymbolTokenVariant.MUL;
+            case QUO_ASSIGN:
+                return SymbolTokenVariant.QUO;
+            case REM_ASSIGN:
+                return SymbolTokenVariant.REM;
+            case NEQ:
+                return SymbolTokenVariant.EQL;
+            case LEQ:
+                return SymbolTokenVariant.GTR;
+            case GEQ:
+                return SymbolTokenVariant.LSS;
+            default:
+                return op;
+        }
+    }
+
+    /**
+     * Check if a binary operator assigns to its left operand.
+     *
+     * @param op The binary operator.
+     * @return If the operator is an assignment.
+     */
+    private static boolean isAssignment(SymbolTokenVariant op) {
+        return op.ordinal() >= SymbolTokenVariant.ADD_ASSIGN.ordinal()
+                && op.ordinal() <= SymbolTokenVariant.ASSIGN.ordinal();
+    }
+
+    /**
+     * Check if a set of types holds exactly one known type.
+     *
+     * @param types The possible types.
+     * @return If the type is exactly known.
+     */
+    private static boolean isExact(int types) {
+        return types != 0 && (types & UNKNOWN) == 0 && (types & (types - 1)) == 0;
+    }
+
+    /**
+     * Get the type of an exactly known set of types.
+     *
+     * @param types The possible types.
+     * @return The type, null if it is not exactly known.
+     */
+    private static TypeTokenVariant toType(int types) {
+        return isExact(types) ? TYPES[Integer.numberOfTrailingZeros(types)] : null;
+    }
+
+    /**
+     * Get the type bit of a type, void values are unknown.
+     *
+     * @param type The type.
+     * @return The type bit.
+     */
+    private static int bit(TypeTokenVariant type) {
+        return 1 << type.ordinal();
+    }
+}
@@ -0,0 +1,102 @@
+package info.andrewmin.dji.core.checker;
+
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.exceptions.BaseUserException;
+import info.andrewmin.dji.core.exceptions.TypeCheckException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A static type checker for the functions of a program.
+ * <p>
+ * Type errors are reported before a function runs, all at once,
+ * instead of when the failing statement runs.
+ * The results are kept, so each function is only checked once.
+ *
+ * @see FunctionTypes
+ */
+public final class TypeChecker {
+    private static final Logger LOGGER = Logger.getLogger(TypeChecker.class.getName());
+
+    private final ProgramNode program;
+    private final Map<FunctionNode, FunctionTypes> functions;
+
+    /**
+     * Construct a new type checker.
+     *
+     * @param program The program node.
+     */
+    public TypeChecker(ProgramNode program) {
+        this.program = program;
+        this.functions = new HashMap<>();
+    }
+
+    /**
+     * Check every parsed function of the program, in declaration order.
+     * <p>
+     * Lazily parsed functions are left to be checked on their first call.
+     *
+     * @throws BaseUserException If any function has type errors.
+     */
+    public void checkAll() {
+        List<BaseUserException> errors = new ArrayList<>();
+        int checked = 0;
+        for (FunctionNode function : program.getDeclaredFunctions()) {
+            if (function.isParsed()) {
+                FunctionTypes types = infer(function);
+                errors.addAll(types.getErrors());
+                checked += types.isChecked() ? 1 : 0;
+            }
+        }
+        LOGGER.info("Checked " + checked + "/" + program.getFunctions().size() + " functions");
+        throwErrors(errors);
+    }
+
+    /**
+     * Check a function.
+     *
+     * @param function The function node.
+     * @return The types of the function.
+     * @throws BaseUserException If the function has type errors.
+     */
+    public FunctionTypes check(FunctionNode function) {
+        FunctionTypes types = infer(function);
+        throwErrors(types.getErrors());
+        return types;
+    }
+
+    /**
+     * Get the types of a function, inferring them on first use.
+     *
+     * @param function The function node.
+     * @return The types of the function.
+     */
+    private FunctionTypes infer(FunctionNode function) {
+        FunctionTypes types = functions.get(function);
+        if (types == null) {
+            types = new FunctionTypes(program, function);
+            functions.put(function, types);
+        }
+        return types;
+    }
+
+    /**
+     * Throw the errors found by checking, if there are any.
+     * <p>
+     * A single error is thrown as is, so it reads the same as if it was found while running.
+     *
+     * @param errors The errors, in program order.
+     */
+    private static void throwErrors(List<BaseUserException> errors) {
+        if (errors.size() == 1) {
+            throw errors.get(0);
+        } else if (!errors.isEmpty()) {
+            throw new TypeCheckException(errors);
+        }
+    }
+}
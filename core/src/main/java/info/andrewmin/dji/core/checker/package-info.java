@@ -0,0 +1,4 @@
+/**
+ * This package provides static type checking of the abstract syntax tree.
+ */
+package info.andrewmin.dji.core.checker;
@@ -2,9 +2,12 @@ package info.andrewmin.dji.core.exceptions;
 
 import info.andrewmin.dji.core.runtime.Value;
 import info.andrewmin.dji.core.runtime.Var;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * A user error for invalid arguments during a function call.
@@ -18,17 +21,27 @@ public final class InvalidArgumentException extends BaseUserException {
      * @param actual   The actual arguments.
      */
     public InvalidArgumentException(String func, List<Var> expected, List<Value<?>> actual) {
-        super(generateMessage(func, expected, actual));
+        super(generateMessage(func, expected, actual.stream().map(Value::getType)));
     }
 
-    private static String generateMessage(String func, List<Var> expected, List<Value<?>> actual) {
+    /**
+     * Construct a new invalid argument exception from the argument types.
+     *
+     * @param func     The function name.
+     * @param expected The excepted parameters.
+     * @param actual   The actual argument types, null if unknown.
+     */
+    public InvalidArgumentException(String func, List<Var> expected, TypeTokenVariant... actual) {
+        super(generateMessage(func, expected, Arrays.stream(actual)));
+    }
+
+    private static String generateMessage(String func, List<Var> expected, Stream<TypeTokenVariant> actual) {
         String expectedStr = expected.stream()
                 .map(Var::getType)
                 .map(Object::toString)
                 .collect(Collectors.joining(", "));
-        String actualStr = actual.stream()
-                .map(Value::getType)
-                .map(Object::toString)
+        String actualStr = actual
+                .map(type -> type != null ? type.toString() : "?")
                 .collect(Collectors.joining(", "));
 
         return func + " expected [" + expectedStr + "], but received [" + actualStr + "]";
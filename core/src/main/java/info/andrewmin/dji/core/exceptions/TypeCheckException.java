@@ -0,0 +1,37 @@
+package info.andrewmin.dji.core.exceptions;
+
+import java.util.List;
+
+/**
+ * A user error for multiple errors found by checking the types of a program before running it.
+ */
+public final class TypeCheckException extends BaseUserException {
+    private final List<BaseUserException> errors;
+
+    /**
+     * Construct a new type check exception.
+     *
+     * @param errors The errors, in program order.
+     */
+    public TypeCheckException(List<BaseUserException> errors) {
+        super(generateMessage(errors));
+        this.errors = errors;
+    }
+
+    /**
+     * Get the errors.
+     *
+     * @return The errors, in program order.
+     */
+    public List<BaseUserException> getErrors() {
+        return errors;
+    }
+
+    private static String generateMessage(List<BaseUserException> errors) {
+        StringBuilder message = new StringBuilder("Found " + errors.size() + " type errors");
+        for (BaseUserException error : errors) {
+            message.append("\n    ").append(error.getMessage());
+        }
+        return message.toString();
+    }
+}
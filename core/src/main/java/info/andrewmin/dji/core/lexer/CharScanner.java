@@ -0,0 +1,80 @@
+package info.andrewmin.dji.core.lexer;
+
+import java.util.logging.Logger;
+
+/**
+ * Skips runs of whitespace and identifier characters in a character array.
+ * <p>
+ * The scanner only has to classify ASCII characters and may stop early at any other character,
+ * the caller checks that character with {@link LexerTables} and continues after it.
+ * A vectorized scanner is used if the {@code jdk.incubator.vector} module is available
+ * (e.g. {@code --add-modules jdk.incubator.vector}), otherwise the characters are scanned one at a time.
+ *
+ * @see FileCharIterator
+ * @see VectorCharScanner
+ */
+abstract class CharScanner {
+    private static final Logger LOGGER = Logger.getLogger(CharScanner.class.getName());
+
+    /**
+     * Find the end of a run of whitespace.
+     *
+     * @param chars The characters.
+     * @param from  The starting index (inclusive).
+     * @param to    The ending index (exclusive).
+     * @return The index of the first character that is not ASCII whitespace, or any index of a non-ASCII character,
+     * to if all the characters are whitespace.
+     */
+    abstract int skipWhitespace(char[] chars, int from, int to);
+
+    /**
+     * Find the end of a run of identifier characters.
+     *
+     * @param chars The characters.
+     * @param from  The starting index (inclusive).
+     * @param to    The ending index (exclusive).
+     * @return The index of the first character that is not an ASCII identifier character,
+     * or any index of a non-ASCII character, to if all the characters are identifier characters.
+     */
+    abstract int skipIdentifier(char[] chars, int from, int to);
+
+    /**
+     * Create the fastest scanner supported by the current runtime.
+     *
+     * @return The scanner.
+     */
+    static CharScanner create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                if (VectorCharScanner.isSupported()) {
+                    LOGGER.fine("Using vectorized character scanner");
+                    return new VectorCharScanner();
+                }
+            } catch (LinkageError e) {
+                LOGGER.fine("Vector API unavailable: " + e);
+            }
+        }
+        return new Scalar();
+    }
+
+    /**
+     * A scanner that classifies one character at a time.
+     */
+    static final class Scalar extends CharScanner {
+        @Override
+        int skipWhitespace(char[] chars, int from, int to) {
+            while (from < to && LexerTables.isWhitespace(chars[from])) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        int skipIdentifier(char[] chars, int from, int to) {
+            while (from < to && LexerTables.isIdentifier(chars[from])) {
+                from++;
+            }
+            return from;
+        }
+    }
+}
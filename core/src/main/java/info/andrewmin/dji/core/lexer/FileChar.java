@@ -2,13 +2,18 @@ package info.andrewmin.dji.core.lexer;
 
 /**
  * A character and its location in a source file.
+ * <p>
+ * Characters created by the lexer only store their source offset,
+ * the location is looked up when first requested.
  *
  * @see FileLoc
  * @see FileCharIterator
  */
 public final class FileChar {
     private final char c;
-    private final FileLoc loc;
+    private final SourceBuffer source;
+    private final int offset;
+    private FileLoc loc;
 
     /**
      * Construct a new file character.
@@ -18,9 +23,24 @@ public final class FileChar {
      */
     public FileChar(char c, FileLoc loc) {
         this.c = c;
+        this.source = null;
+        this.offset = -1;
         this.loc = loc;
     }
 
+    /**
+     * Construct a new file character with a lazily located offset.
+     *
+     * @param c      The character.
+     * @param source The source buffer.
+     * @param offset The offset of the character in the source.
+     */
+    public FileChar(char c, SourceBuffer source, int offset) {
+        this.c = c;
+        this.source = source;
+        this.offset = offset;
+    }
+
     /**
      * Construct a new file character.
      *
@@ -56,6 +76,9 @@ public final class FileChar {
      * @return The location
      */
     public FileLoc getLoc() {
+        if (loc == null) {
+            loc = source.locate(offset);
+        }
         return loc;
     }
 
@@ -72,6 +95,6 @@ public final class FileChar {
             default:
                 escaped = Character.toString(c);
         }
-        return escaped + " at " + loc;
+        return escaped + " at " + getLoc();
     }
 }
@@ -1,26 +1,59 @@
 package info.andrewmin.dji.core.lexer;
 
-import info.andrewmin.dji.core.exceptions.FileReadException;
-import info.andrewmin.dji.core.exceptions.InvalidSourceFileException;
-
-import java.io.*;
+import java.io.File;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 /**
- * A peek-able iterator that reads a source file and splits it into [FileChar]s
+ * A peek-able iterator that splits a source file into [FileChar]s
+ * <p>
+ * The characters are scanned by index from a [SourceBuffer].
+ * The lexer uses the primitive {@link #peekChar()} and {@link #nextChar()} methods,
+ * [FileChar]s are only created when requested through the iterator methods, e.g. for error reporting.
+ * Locations are not tracked while scanning, they are looked up from the offset when needed.
+ * A streaming source is refilled when the iterator reaches the end of its window.
  *
  * @see FileChar
+ * @see SourceBuffer
  */
 public final class FileCharIterator implements Iterator<FileChar> {
-    private final String fileName;
-    private final BufferedReader reader;
+    private static final CharScanner SCANNER = CharScanner.create();
+
+    private final SourceBuffer source;
+    private final int start;
+    private char[] chars;
+    private int base;
+    private int end;
 
-    private FileChar buffer;
-    private FileChar current;
+    private int pos;
 
-    private int line = 1;
-    private int column = 1;
+    /**
+     * Construct a new file character iterator from a source buffer.
+     *
+     * @param source The source buffer.
+     */
+    public FileCharIterator(SourceBuffer source) {
+        this(source, 0, source.length());
+    }
+
+    /**
+     * Construct a new file character iterator over a range of a source buffer.
+     * <p>
+     * Offsets and locations are still relative to the start of the source.
+     *
+     * @param source The source buffer.
+     * @param start  The starting offset (inclusive).
+     * @param end    The ending offset (exclusive).
+     */
+    public FileCharIterator(SourceBuffer source, int start, int end) {
+        this.source = source;
+        this.chars = source.chars();
+        this.base = source.base();
+        this.start = start;
+        this.end = end;
+        this.pos = start;
+    }
 
     /**
      * Construct a new file character iterator from a file.
@@ -28,14 +61,17 @@ public final class FileCharIterator implements Iterator<FileChar> {
      * @param file The source file.
      */
     public FileCharIterator(File file) {
-        this.fileName = file.getName();
-        try {
-            this.reader = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
-        } catch (FileNotFoundException e) {
-            throw new InvalidSourceFileException(this.fileName);
-        }
-        updateBuffer();
-        this.current = null;
+        this(SourceBuffer.map(file));
+    }
+
+    /**
+     * Construct a new file character iterator streaming from a channel.
+     *
+     * @param channel The channel, e.g. standard input.
+     * @param name    The source name for error messages.
+     */
+    public FileCharIterator(ReadableByteChannel channel, String name) {
+        this(SourceBuffer.stream(channel, name));
     }
 
     /**
@@ -44,9 +80,16 @@ public final class FileCharIterator implements Iterator<FileChar> {
      * @param raw The raw source text.
      */
     public FileCharIterator(String raw) {
-        this.fileName = "RAW_INPUT";
-        this.reader = new BufferedReader(new StringReader(raw));
-        updateBuffer();
+        this(SourceBuffer.of(raw));
+    }
+
+    /**
+     * Get the source buffer.
+     *
+     * @return The source buffer.
+     */
+    public SourceBuffer getSource() {
+        return source;
     }
 
     /**
@@ -56,7 +99,7 @@ public final class FileCharIterator implements Iterator<FileChar> {
      */
     @Override
     public boolean hasNext() {
-        return buffer != null;
+        return pos < end || refill();
     }
 
     /**
@@ -66,12 +109,11 @@ public final class FileCharIterator implements Iterator<FileChar> {
      */
     @Override
     public FileChar next() {
-        if (buffer == null) {
+        if (!hasNext()) {
             throw new NoSuchElementException();
         }
-        FileChar c = buffer;
-        current = buffer;
-        updateBuffer();
+        FileChar c = new FileChar(chars[pos - base], source, pos);
+        pos++;
         return c;
     }
 
@@ -81,43 +123,117 @@ public final class FileCharIterator implements Iterator<FileChar> {
      * @return The next character.
      */
     public FileChar peek() {
-        if (buffer == null) {
+        if (!hasNext()) {
             throw new NoSuchElementException();
         }
-        return buffer;
+        return new FileChar(chars[pos - base], source, pos);
     }
 
     /**
      * Get the current character (the most recently consumed).
      *
-     * @return The current character.
+     * @return The current character, null if no character has been consumed.
      */
     public FileChar current() {
-        return current;
+        if (pos == start) {
+            return null;
+        }
+        return new FileChar(chars[pos - 1 - base], source, pos - 1);
     }
 
     /**
-     * Read the next character in the file and update the buffer and location.
+     * Get the next raw character without consuming it.
+     * <p>
+     * Should only be called if {@link #hasNext()} is true.
+     *
+     * @return The next raw character.
      */
-    private void updateBuffer() {
-        try {
-            int i = reader.read();
-            if (i == -1) {
-                buffer = null;
-                return;
-            }
+    public char peekChar() {
+        return chars[pos - base];
+    }
+
+    /**
+     * Consume and return the next raw character.
+     * <p>
+     * Should only be called if {@link #hasNext()} is true.
+     *
+     * @return The next raw character.
+     */
+    public char nextChar() {
+        return chars[pos++ - base];
+    }
 
-            char c = (char) i;
-            buffer = new FileChar(c, line, column);
+    /**
+     * Consume characters while they are whitespace.
+     */
+    void skipWhitespace() {
+        while (hasNext()) {
+            pos = base + SCANNER.skipWhitespace(chars, pos - base, end - base);
+            if (pos < end) {
+                // The scanner stops at non-ASCII characters, which may still be whitespace
+                if (!LexerTables.isWhitespace(chars[pos - base])) {
+                    return;
+                }
+                pos++;
+            }
+        }
+    }
 
-            if (c == '\n') {
-                line++;
-                column = 1;
-            } else {
-                column++;
+    /**
+     * Consume characters while they are identifier characters.
+     */
+    void skipIdentifier() {
+        while (hasNext()) {
+            pos = base + SCANNER.skipIdentifier(chars, pos - base, end - base);
+            if (pos < end) {
+                // The scanner stops at non-ASCII characters, which may still be identifier characters
+                if (!LexerTables.isIdentifier(chars[pos - base])) {
+                    return;
+                }
+                pos++;
             }
-        } catch (IOException e) {
-            throw new FileReadException(fileName, e);
         }
     }
+
+    /**
+     * Get the offset of the next character from the start of the source.
+     *
+     * @return The offset of the next character.
+     */
+    public int position() {
+        return pos;
+    }
+
+    /**
+     * Check if the iterator covers the whole source and no characters have been consumed.
+     *
+     * @return If the iterator is at the start of the whole source.
+     */
+    boolean atSourceStart() {
+        return !source.isStreaming() && pos == 0 && end == source.length();
+    }
+
+    /**
+     * Refill a streaming source once the end of the window is reached.
+     *
+     * @return If more characters exist.
+     */
+    private boolean refill() {
+        if (!source.isStreaming() || !source.fill()) {
+            return false;
+        }
+        chars = source.chars();
+        base = source.base();
+        end = source.length();
+        return pos < end;
+    }
+
+    /**
+     * Get the location of the current character (the most recently consumed).
+     *
+     * @return The current location.
+     */
+    public FileLoc currentLoc() {
+        return source.locate(pos - 1);
+    }
 }
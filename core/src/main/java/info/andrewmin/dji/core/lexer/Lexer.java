@@ -1,9 +1,6 @@
 package info.andrewmin.dji.core.lexer;
 
-import info.andrewmin.dji.core.exceptions.ExpectedEntityException;
-import info.andrewmin.dji.core.exceptions.InvalidNumberException;
-import info.andrewmin.dji.core.exceptions.InvalidTokenException;
-import info.andrewmin.dji.core.exceptions.UnexpectedCharacterException;
+import info.andrewmin.dji.core.exceptions.*;
 import info.andrewmin.dji.core.tokens.*;
 
 import java.util.Iterator;
@@ -11,13 +8,32 @@ import java.util.NoSuchElementException;
 
 /**
  * A lexical analyzer that splits a given program into tokens.
+ * <p>
+ * The next token is scanned into primitive fields (kind, variant, offsets, and value).
+ * Line and column numbers are not tracked, they are looked up from the offsets only when needed.
+ * Token objects are only created when iterating over the lexer,
+ * a [TokenBuffer] copies the fields directly instead.
  *
  * @see Token
+ * @see TokenBuffer
  * @see FileCharIterator
  */
 public final class Lexer implements Iterator<Token> {
     private final FileCharIterator chars;
-    private Token buffer;
+    private final SourceBuffer source;
+    private final SymbolTable symbols;
+    private final boolean wholeSource;
+    private boolean consumed;
+
+    // The next (buffered) token
+    private boolean buffered;
+    private TokenKind kind;
+    private int variant;
+    private long value;
+    private int start;
+    private int end;
+
+    private Token peeked;
     private Token current;
 
     /**
@@ -27,10 +43,41 @@ public final class Lexer implements Iterator<Token> {
      */
     public Lexer(FileCharIterator iter) {
         this.chars = iter;
+        this.source = iter.getSource();
+        this.symbols = new SymbolTable();
+        this.wholeSource = iter.atSourceStart();
         updateBuffer();
         this.current = null;
     }
 
+    /**
+     * Get the source buffer being scanned.
+     *
+     * @return The source buffer.
+     */
+    public SourceBuffer getSource() {
+        return source;
+    }
+
+    /**
+     * Get the symbol table of the identifiers scanned so far.
+     *
+     * @return The symbol table.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Check if the lexer scans a whole source and no tokens have been consumed,
+     * so the source can be scanned again from the start instead.
+     *
+     * @return If the source can be scanned again.
+     */
+    public boolean canRescan() {
+        return wholeSource && !consumed;
+    }
+
     /**
      * Check if more tokens exist or not.
      *
@@ -38,7 +85,7 @@ public final class Lexer implements Iterator<Token> {
      */
     @Override
     public boolean hasNext() {
-        return buffer != null;
+        return buffered;
     }
 
     /**
@@ -48,11 +95,14 @@ public final class Lexer implements Iterator<Token> {
      */
     @Override
     public Token next() {
-        if (!chars.hasNext() && buffer == null) {
+        if (!buffered) {
             throw new NoSuchElementException();
         }
-        Token next = buffer;
-        current = buffer;
+        Token next = peek();
+        current = next;
+        consumed = true;
+        // Keep the current token in a streaming source for error reporting
+        source.release(start);
         updateBuffer();
         return next;
     }
@@ -155,10 +205,13 @@ public final class Lexer implements Iterator<Token> {
      * @return The next token.
      */
     public Token peek() {
-        if (buffer == null) {
+        if (!buffered) {
             throw new NoSuchElementException();
         }
-        return buffer;
+        if (peeked == null) {
+            peeked = createToken();
+        }
+        return peeked;
     }
 
     /**
@@ -171,186 +224,309 @@ public final class Lexer implements Iterator<Token> {
     }
 
     /**
-     * Read the next token and update the buffer.
+     * Copy the remaining tokens into a token buffer.
+     * <p>
+     * A user error is recorded in the buffer at the token it occurred instead of being thrown,
+     * so it is reported at the same point as when iterating over the lexer.
+     *
+     * @param tokens The token buffer.
+     * @param limit  The maximum number of tokens to copy.
      */
-    private void updateBuffer() {
-        // Get the first non-whitespace character
-        FileChar firstFileChar = new FileChar(' ');
-        while (Character.isWhitespace(firstFileChar.getC())) {
-            if (!chars.hasNext()) {
-                buffer = null;
-                return;
+    void tokenize(TokenBuffer tokens, int limit) {
+        consumed = true;
+        try {
+            for (int i = 0; i < limit && buffered; i++) {
+                tokens.add(kind, variant, value, start, end);
+                updateBuffer();
             }
-            firstFileChar = chars.next();
+        } catch (BaseUserException e) {
+            buffered = false;
+            tokens.fail(e);
         }
+    }
 
-        if (Character.isDigit(firstFileChar.getC())) {
-            buffer = nextNumberLiteralToken(firstFileChar);
-        } else if (firstFileChar.getC() == '\'') {
-            buffer = nextCharLiteralToken(firstFileChar);
-        } else if (firstFileChar.getC() == '"') {
-            buffer = nextStringLiteralToken(firstFileChar);
-        } else if (isIdentifierCharacter(firstFileChar.getC())) {
-            buffer = nextWordToken(firstFileChar);
-        } else {
-            buffer = nextSymbolToken(firstFileChar);
+    /**
+     * Fill a batch with the next tokens, for a lexer running on its own thread.
+     * <p>
+     * The identifiers first seen in the batch are added to it, and a user error is recorded after the last token.
+     *
+     * @param batch The empty token batch.
+     */
+    void tokenize(TokenBatch batch) {
+        consumed = true;
+        int known = symbols.size();
+        try {
+            while (buffered && !batch.isFull()) {
+                batch.add(kind, variant, value, start, end);
+                updateBuffer();
+            }
+        } catch (BaseUserException e) {
+            buffered = false;
+            batch.error = e;
         }
-
-        if (buffer == null) {
-            throw new InvalidTokenException(firstFileChar);
+        for (int id = known; id < symbols.size(); id++) {
+            batch.addName(symbols.name(id));
         }
+        batch.last = !buffered;
     }
 
     /**
-     * Checks if a character is a valid Java identifier character.
-     * <p>
-     * https://docs.oracle.com/cd/E19798-01/821-1841/bnbuk/index.html
+     * Create a token object from the buffered token fields.
      *
-     * @param c The character.
-     * @return If the character is a valid identifier.
+     * @return The buffered token.
      */
-    private boolean isIdentifierCharacter(char c) {
-        return Character.isAlphabetic(c) || Character.isDigit(c) || c == '_' || c == '$';
+    private Token createToken() {
+        switch (kind) {
+            case IDENTIFIER:
+                return new IdentifierToken(source, start, end, symbols.name(variant));
+            case KEYWORD:
+                return new KeywordToken(source, start, end, TokenBuffer.KEYWORDS[variant]);
+            case SYMBOL:
+                return new SymbolToken(source, start, end, TokenBuffer.SYMBOLS[variant]);
+            case TYPE:
+                return new TypeToken(source, start, end, TokenBuffer.TYPES[variant]);
+            case BOOLEAN_LITERAL:
+                return new LiteralToken.Boolean(source, start, end, variant == KeywordTokenVariant.TRUE.ordinal());
+            case INT_LITERAL:
+                return new LiteralToken.Int(source, start, end, (int) value);
+            case DOUBLE_LITERAL:
+                return new LiteralToken.Double(source, start, end, Double.longBitsToDouble(value));
+            case CHAR_LITERAL:
+                return new LiteralToken.Char(source, start, end, (char) value);
+            case STRING_LITERAL:
+                return new LiteralToken.String(source, start, end, source.slice(start + 1, end - 1));
+            default:
+                throw new InternalException("Unhandled token kind " + kind);
+        }
+    }
+
+    /**
+     * Read the next token and update the buffered token fields.
+     */
+    private void updateBuffer() {
+        peeked = null;
+
+        // Skip to the first non-whitespace character
+        chars.skipWhitespace();
+        if (!chars.hasNext()) {
+            buffered = false;
+            return;
+        }
+
+        start = chars.position();
+        char first = chars.nextChar();
+
+        if (LexerTables.isDigit(first)) {
+            scanNumberLiteral(first);
+        } else if (first == '\'') {
+            scanCharLiteral();
+        } else if (first == '"') {
+            scanStringLiteral();
+        } else if (LexerTables.isIdentifier(first)) {
+            scanWord();
+        } else if (!scanSymbol(first)) {
+            throw new InvalidTokenException(new FileChar(first, source, start));
+        }
+
+        end = chars.position();
+        buffered = true;
     }
 
     /**
-     * Create the next number literal token (integer or double literal).
+     * Scan the next number literal token (integer or double literal).
+     * <p>
+     * The value is accumulated while the digits are scanned, without copying the literal.
+     * A double is computed exactly when its digits fit in the double mantissa and it has at most 22 decimal places,
+     * since both the digits and the power of ten are then exact and a single division rounds correctly.
+     * Otherwise, the literal is parsed by {@link Double#parseDouble(String)}.
      *
-     * @param firstFileChar The first character.
-     * @return The next number literal token.
+     * @param first The first character.
      * @see LiteralToken.Int
      * @see LiteralToken.Double
      */
-    private Token nextNumberLiteralToken(FileChar firstFileChar) {
-        StringBuilder rawLiteralBuilder = new StringBuilder(Character.toString(firstFileChar.getC()));
-
-        // Keep peeking next digits or decimal points (only allow one decimal point)
+    private void scanNumberLiteral(char first) {
+        long mantissa = Character.digit(first, 10);
+        boolean ascii = first < 128;
         boolean hasDecimal = false;
+        int decimalPlaces = 0;
 
-        while (chars.peek() != null
-                && (Character.isDigit(chars.peek().getC()) || chars.peek().getC() == '.' && !hasDecimal)) {
-            hasDecimal = hasDecimal || chars.peek().getC() == '.';
-            rawLiteralBuilder.append(chars.next().getC());
+        // Keep scanning digits or decimal points (only allow one decimal point)
+        while (chars.hasNext()) {
+            char c = chars.peekChar();
+            if (c == '.' && !hasDecimal) {
+                hasDecimal = true;
+            } else if (LexerTables.isDigit(c)) {
+                ascii = ascii && c < 128;
+                // Stop accumulating once the value is too large to matter, the literal is re-parsed or rejected
+                if (mantissa <= LexerTables.MAX_EXACT_MANTISSA) {
+                    mantissa = mantissa * 10 + Character.digit(c, 10);
+                }
+                if (hasDecimal) {
+                    decimalPlaces++;
+                }
+            } else {
+                break;
+            }
+            chars.nextChar();
         }
 
-        String rawLiteral = rawLiteralBuilder.toString();
-
-        try {
-            if (hasDecimal) {
-                return new LiteralToken.Double(firstFileChar.getLoc(), endLoc(), Double.parseDouble(rawLiteral));
+        if (hasDecimal) {
+            kind = TokenKind.DOUBLE_LITERAL;
+            double literal;
+            if (ascii && mantissa <= LexerTables.MAX_EXACT_MANTISSA
+                    && decimalPlaces <= LexerTables.MAX_EXACT_POWER_OF_TEN) {
+                literal = mantissa / LexerTables.powerOfTen(decimalPlaces);
             } else {
-                return new LiteralToken.Int(firstFileChar.getLoc(), endLoc(), Integer.parseInt(rawLiteral));
+                try {
+                    literal = Double.parseDouble(source.slice(start, chars.position()));
+                } catch (NumberFormatException e) {
+                    throw new InvalidNumberException(new FileChar(first, source, start),
+                            source.slice(start, chars.position()));
+                }
+            }
+            value = Double.doubleToRawLongBits(literal);
+        } else {
+            if (mantissa > Integer.MAX_VALUE) {
+                throw new InvalidNumberException(new FileChar(first, source, start),
+                        source.slice(start, chars.position()));
             }
-        } catch (NumberFormatException e) {
-            throw new InvalidNumberException(firstFileChar, rawLiteral);
+            kind = TokenKind.INT_LITERAL;
+            value = mantissa;
         }
     }
 
     /**
-     * Construct the next character literal token.
+     * Scan the next character literal token.
      *
-     * @param firstFileChar The first character.
-     * @return The next character literal token.
      * @see LiteralToken.Char
      */
-    private Token nextCharLiteralToken(FileChar firstFileChar) {
+    private void scanCharLiteral() {
         if (!chars.hasNext()) {
             throw new ExpectedEntityException("a char", endLoc());
         }
-        char rawLiteral = chars.next().getC();
+        char rawLiteral = chars.nextChar();
         if (!chars.hasNext()) {
             throw new ExpectedEntityException("'", endLoc());
         }
-        if (chars.next().getC() != '\'') {
-            throw new UnexpectedCharacterException(Character.toString(chars.current().getC()), chars.current().getLoc());
+        char closing = chars.nextChar();
+        if (closing != '\'') {
+            throw new UnexpectedCharacterException(Character.toString(closing), chars.currentLoc());
         }
 
-        return new LiteralToken.Char(firstFileChar.getLoc(), endLoc(), rawLiteral);
+        kind = TokenKind.CHAR_LITERAL;
+        value = rawLiteral;
     }
 
     /**
-     * Construct the next string literal token.
+     * Scan the next string literal token.
+     * <p>
+     * The value is not copied, it is the source between the quotes.
      *
-     * @param firstFileChar The first character.
-     * @return The next string literal token.
      * @see LiteralToken.String
      */
-    private Token nextStringLiteralToken(FileChar firstFileChar) {
-        StringBuilder rawLiteralBuilder = new StringBuilder();
-        while (chars.peek() != null && chars.peek().getC() != '"') {
-            rawLiteralBuilder.append(chars.peek().getC());
-            chars.next();
+    private void scanStringLiteral() {
+        while (chars.hasNext() && chars.peekChar() != '"') {
+            chars.nextChar();
         }
 
-        if (chars.peek() == null) {
+        if (!chars.hasNext()) {
             throw new ExpectedEntityException("\"", endLoc());
         }
-        chars.next();
+        chars.nextChar();
 
-        return new LiteralToken.String(firstFileChar.getLoc(), endLoc(), rawLiteralBuilder.toString());
+        kind = TokenKind.STRING_LITERAL;
     }
 
     /**
-     * Construct the next "word" token (identifier or keyword).
+     * Skip a string or character literal in a source without lexing it, scanning it the same way as the lexer.
      * <p>
-     * First constructs an identifier, then checks if the text is a keyword instead.
+     * Pre-scans use this to split a source at token boundaries.
+     * An invalid literal is skipped as far as the lexer scans it before failing.
+     *
+     * @param source The source buffer, must not be streaming.
+     * @param quote  The offset of the opening quote.
+     * @return The offset of the closing quote of a valid literal, the source length if a string is not closed.
+     * @see #scanCharLiteral()
+     * @see #scanStringLiteral()
+     */
+    public static int skipLiteral(SourceBuffer source, int quote) {
+        if (source.charAt(quote) == '\'') {
+            // A character literal is always one character between quotes
+            return quote + 2;
+        }
+        int i = quote + 1;
+        while (i < source.length() && source.charAt(i) != '"') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Scan the next "word" token (identifier or keyword).
+     * <p>
+     * The word is scanned by the {@link CharScanner}, then keywords and types are matched by walking a trie,
+     * identifiers are interned into the symbol table and the variant is the identifier ID.
      * If the keyword is a boolean literal (true/false), return a boolean literal instead.
      *
-     * @param firstFileChar The first character.
-     * @return The next keyword, identifier, or literal token.
      * @see KeywordToken
      * @see IdentifierToken
      * @see LiteralToken.Boolean
      */
-    private Token nextWordToken(FileChar firstFileChar) {
-        StringBuilder rawIdentifierBuilder = new StringBuilder(Character.toString(firstFileChar.getC()));
-
-        while (chars.hasNext() && isIdentifierCharacter(chars.peek().getC())) {
-            rawIdentifierBuilder.append(chars.next().getC());
-        }
-
-        String rawIdentifier = rawIdentifierBuilder.toString();
-
-        KeywordTokenVariant keyword = KeywordTokenVariant.map.get(rawIdentifier);
-        // boolean literals are an exception
-        // true/false are keywords, but the token is a LiteralToken.Boolean
-        if (keyword != null) {
-            if (keyword == KeywordTokenVariant.TRUE) {
-                return new LiteralToken.Boolean(firstFileChar.getLoc(), endLoc(), true);
-            } else if (keyword == KeywordTokenVariant.FALSE) {
-                return new LiteralToken.Boolean(firstFileChar.getLoc(), endLoc(), false);
+    private void scanWord() {
+        chars.skipIdentifier();
+
+        // A streaming source may have been refilled, but it keeps the characters of the current token
+        char[] text = source.chars();
+        int wordStart = start - source.base();
+        int wordEnd = chars.position() - source.base();
+
+        int state = LexerTables.START;
+        for (int i = wordStart; i < wordEnd; i++) {
+            state = LexerTables.nextWord(state, text[i]);
+            if (state == LexerTables.NONE) {
+                break;
             }
-            return new KeywordToken(firstFileChar.getLoc(), endLoc(), keyword);
         }
 
-        TypeTokenVariant type = TypeTokenVariant.map.get(rawIdentifier);
-        if (type != null) {
-            return new TypeToken(firstFileChar.getLoc(), endLoc(), type);
+        TokenKind word = LexerTables.wordKind(state);
+        if (word != null) {
+            kind = word;
+            variant = LexerTables.wordVariant(state);
+        } else {
+            kind = TokenKind.IDENTIFIER;
+            variant = symbols.intern(text, wordStart, wordEnd);
         }
-
-        return new IdentifierToken(firstFileChar.getLoc(), endLoc(), rawIdentifier);
     }
 
     /**
-     * Construct the next symbol token.
+     * Scan the next symbol token.
+     * <p>
+     * Symbols are matched by maximal munch, the symbol is extended while the longer text is still a symbol.
      *
-     * @param firstFileChar The first character.
-     * @return The next symbol token.
+     * @param first The first character.
+     * @return If the characters formed a valid symbol.
      */
-    private Token nextSymbolToken(FileChar firstFileChar) {
-        String rawSymbol = Character.toString(firstFileChar.getC());
+    private boolean scanSymbol(char first) {
+        int state = LexerTables.nextSymbol(LexerTables.START, first);
+        if (state == LexerTables.NONE) {
+            return false;
+        }
         while (chars.hasNext()) {
-            rawSymbol += chars.peek().getC();
-            if (SymbolTokenVariant.map.containsKey(rawSymbol)) {
-                chars.next();
-            } else {
-                rawSymbol = rawSymbol.substring(0, rawSymbol.length() - 1);
+            int next = LexerTables.nextSymbol(state, chars.peekChar());
+            if (next == LexerTables.NONE) {
                 break;
             }
+            chars.nextChar();
+            state = next;
         }
 
-        SymbolTokenVariant t = SymbolTokenVariant.map.get(rawSymbol);
-        return t != null ? new SymbolToken(firstFileChar.getLoc(), endLoc(), t) : null;
+        int symbol = LexerTables.symbolVariant(state);
+        if (symbol < 0) {
+            return false;
+        }
+        kind = TokenKind.SYMBOL;
+        variant = symbol;
+        return true;
     }
 
     /**
@@ -359,6 +535,6 @@ public final class Lexer implements Iterator<Token> {
      * @return The end location.
      */
     private FileLoc endLoc() {
-        return chars.current().getLoc().addCol(1);
+        return source.locateEnd(chars.position());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,271 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.tokens.KeywordTokenVariant;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TokenKind;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookup tables used by the lexer to classify characters and recognize symbols, keywords, and types.
+ * <p>
+ * The tables are generated from the token variant maps when the class is initialized,
+ * so they always accept exactly the same tokens as the maps.
+ * Only ASCII characters have table entries, other characters fall back to the {@link Character} methods.
+ *
+ * @see Lexer
+ */
+final class LexerTables {
+    /**
+     * The state a transition table walk starts in.
+     * State 0 is never the target of a transition, so it also marks a missing transition.
+     */
+    static final int START = 0;
+
+    /**
+     * The state with no transitions (no symbol, keyword, or type can be matched).
+     */
+    static final int NONE = 0;
+
+    private static final int ASCII = 128;
+
+    private static final byte WHITESPACE = 1;
+    private static final byte DIGIT = 2;
+    private static final byte IDENTIFIER = 4;
+
+    private static final byte[] CLASSES = new byte[ASCII];
+
+    /**
+     * The largest power of ten that is exactly representable as a double.
+     */
+    static final int MAX_EXACT_POWER_OF_TEN = 22;
+
+    /**
+     * The largest double mantissa (2^53), every integer up to it is exactly representable as a double.
+     */
+    static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER_OF_TEN + 1];
+
+    // Maximal munch DFA for symbols, SYMBOL_TRANSITIONS[state * ASCII + c] is the next state
+    private static final int[] SYMBOL_TRANSITIONS;
+    // The symbol variant ordinal accepted in each state (-1 if not accepting)
+    private static final int[] SYMBOL_ACCEPT;
+
+    // Trie of keywords and types, WORD_TRANSITIONS[state * ASCII + c] is the next state
+    private static final int[] WORD_TRANSITIONS;
+    // The token kind accepted in each state (null if not accepting)
+    private static final TokenKind[] WORD_KINDS;
+    // The variant ordinal accepted in each state
+    private static final int[] WORD_VARIANTS;
+
+    static {
+        for (char c = 0; c < ASCII; c++) {
+            if (Character.isWhitespace(c)) {
+                CLASSES[c] |= WHITESPACE;
+            }
+            if (Character.isDigit(c)) {
+                CLASSES[c] |= DIGIT;
+            }
+            if (Character.isAlphabetic(c) || Character.isDigit(c) || c == '_' || c == '$') {
+                CLASSES[c] |= IDENTIFIER;
+            }
+        }
+
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_EXACT_POWER_OF_TEN; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+
+        // A symbol starts with any character that begins a symbol,
+        // but is only extended while the longer text is itself a symbol
+        List<String> states = new ArrayList<>();
+        states.add("");
+        for (String symbol : SymbolTokenVariant.map.keySet()) {
+            String first = symbol.substring(0, 1);
+            if (!states.contains(first)) {
+                states.add(first);
+            }
+        }
+        for (int i = 1; i < states.size(); i++) {
+            String prefix = states.get(i);
+            for (String symbol : SymbolTokenVariant.map.keySet()) {
+                if (symbol.length() == prefix.length() + 1 && symbol.startsWith(prefix) && !states.contains(symbol)) {
+                    states.add(symbol);
+                }
+            }
+        }
+
+        SYMBOL_TRANSITIONS = new int[states.size() * ASCII];
+        SYMBOL_ACCEPT = new int[states.size()];
+        for (int i = 0; i < states.size(); i++) {
+            String prefix = states.get(i);
+            SymbolTokenVariant variant = SymbolTokenVariant.map.get(prefix);
+            SYMBOL_ACCEPT[i] = variant == null ? -1 : variant.ordinal();
+            if (prefix.length() > 0) {
+                int from = states.indexOf(prefix.substring(0, prefix.length() - 1));
+                SYMBOL_TRANSITIONS[from * ASCII + prefix.charAt(prefix.length() - 1)] = i;
+            }
+        }
+
+        List<String> words = new ArrayList<>();
+        words.add("");
+        List<TokenKind> kinds = new ArrayList<>();
+        kinds.add(null);
+        List<Integer> variants = new ArrayList<>();
+        variants.add(-1);
+        for (Map.Entry<String, KeywordTokenVariant> entry : KeywordTokenVariant.map.entrySet()) {
+            KeywordTokenVariant keyword = entry.getValue();
+            // true/false are keywords, but the token is a boolean literal
+            TokenKind kind = keyword == KeywordTokenVariant.TRUE || keyword == KeywordTokenVariant.FALSE
+                    ? TokenKind.BOOLEAN_LITERAL
+                    : TokenKind.KEYWORD;
+            addWord(words, kinds, variants, entry.getKey(), kind, keyword.ordinal());
+        }
+        for (Map.Entry<String, TypeTokenVariant> entry : TypeTokenVariant.map.entrySet()) {
+            addWord(words, kinds, variants, entry.getKey(), TokenKind.TYPE, entry.getValue().ordinal());
+        }
+
+        WORD_TRANSITIONS = new int[words.size() * ASCII];
+        WORD_KINDS = kinds.toArray(new TokenKind[0]);
+        WORD_VARIANTS = new int[words.size()];
+        for (int i = 1; i < words.size(); i++) {
+            String prefix = words.get(i);
+            int from = words.indexOf(prefix.substring(0, prefix.length() - 1));
+            WORD_TRANSITIONS[from * ASCII + prefix.charAt(prefix.length() - 1)] = i;
+            WORD_VARIANTS[i] = variants.get(i);
+        }
+    }
+
+    /**
+     * Utility class.
+     */
+    private LexerTables() {
+    }
+
+    /**
+     * Add a keyword or type and all of its prefixes to the word trie states.
+     *
+     * @param words    The trie states, by prefix.
+     * @param kinds    The accepted token kind of each state.
+     * @param variants The accepted variant ordinal of each state.
+     * @param word     The keyword or type.
+     * @param kind     The token kind.
+     * @param variant  The variant ordinal.
+     */
+    private static void addWord(List<String> words, List<TokenKind> kinds, List<Integer> variants,
+                                String word, TokenKind kind, int variant) {
+        for (int length = 1; length <= word.length(); length++) {
+            String prefix = word.substring(0, length);
+            if (!words.contains(prefix)) {
+                words.add(prefix);
+                kinds.add(null);
+                variants.add(-1);
+            }
+        }
+        int state = words.indexOf(word);
+        kinds.set(state, kind);
+        variants.set(state, variant);
+    }
+
+    /**
+     * Check if a character is whitespace.
+     *
+     * @param c The character.
+     * @return If the character is whitespace.
+     * @see Character#isWhitespace(char)
+     */
+    static boolean isWhitespace(char c) {
+        return c < ASCII ? (CLASSES[c] & WHITESPACE) != 0 : Character.isWhitespace(c);
+    }
+
+    /**
+     * Check if a character is a digit.
+     *
+     * @param c The character.
+     * @return If the character is a digit.
+     * @see Character#isDigit(char)
+     */
+    static boolean isDigit(char c) {
+        return c < ASCII ? (CLASSES[c] & DIGIT) != 0 : Character.isDigit(c);
+    }
+
+    /**
+     * Checks if a character is a valid Java identifier character.
+     * <p>
+     * https://docs.oracle.com/cd/E19798-01/821-1841/bnbuk/index.html
+     *
+     * @param c The character.
+     * @return If the character is a valid identifier.
+     */
+    static boolean isIdentifier(char c) {
+        return c < ASCII
+                ? (CLASSES[c] & IDENTIFIER) != 0
+                : Character.isAlphabetic(c) || Character.isDigit(c);
+    }
+
+    /**
+     * Get the next symbol state.
+     *
+     * @param state The current symbol state.
+     * @param c     The next character.
+     * @return The next state, {@link #NONE} if the symbol cannot be extended.
+     */
+    static int nextSymbol(int state, char c) {
+        return c < ASCII ? SYMBOL_TRANSITIONS[state * ASCII + c] : NONE;
+    }
+
+    /**
+     * Get the symbol variant ordinal accepted in a symbol state.
+     *
+     * @param state The symbol state.
+     * @return The symbol variant ordinal, -1 if the state is not a complete symbol.
+     */
+    static int symbolVariant(int state) {
+        return SYMBOL_ACCEPT[state];
+    }
+
+    /**
+     * Get the next word state.
+     *
+     * @param state The current word state.
+     * @param c     The next character.
+     * @return The next state, {@link #NONE} if no keyword or type starts with the word.
+     */
+    static int nextWord(int state, char c) {
+        return c < ASCII ? WORD_TRANSITIONS[state * ASCII + c] : NONE;
+    }
+
+    /**
+     * Get the token kind accepted in a word state.
+     *
+     * @param state The word state.
+     * @return The token kind, null if the word is an identifier.
+     */
+    static TokenKind wordKind(int state) {
+        return WORD_KINDS[state];
+    }
+
+    /**
+     * Get the variant ordinal accepted in a word state.
+     *
+     * @param state The word state.
+     * @return The variant ordinal.
+     */
+    static int wordVariant(int state) {
+        return WORD_VARIANTS[state];
+    }
+
+    /**
+     * Get an exact power of ten.
+     *
+     * @param exponent The exponent, at most {@link #MAX_EXACT_POWER_OF_TEN}.
+     * @return The power of ten.
+     */
+    static double powerOfTen(int exponent) {
+        return POWERS_OF_TEN[exponent];
+    }
+}
@@ -0,0 +1,398 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.exceptions.FileReadException;
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.exceptions.InvalidSourceFileException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The decoded text of a source file held in one contiguous character array.
+ * <p>
+ * Files are memory-mapped and decoded in a single pass so the lexer can scan the source by index
+ * instead of pulling one character at a time through a reader.
+ * <p>
+ * Channels (e.g. standard input) are streamed through a fixed-size window instead.
+ * The window is refilled when the lexer reaches its end, discarding the characters before the released offset,
+ * so memory use does not depend on the size of the input.
+ * Offsets are always relative to the start of the source, only characters in the window can be accessed
+ * or located.
+ *
+ * @see FileCharIterator
+ */
+public final class SourceBuffer {
+    /**
+     * The initial number of characters in a streaming window.
+     */
+    static final int STREAM_CAPACITY = 1 << 16;
+
+    private static final int STREAM_BYTES = 1 << 13;
+
+    private final String fileName;
+    private char[] chars;
+    // The offset of the first character in the array
+    private int base;
+    // The offset after the last decoded character
+    private int length;
+
+    // Offsets of the first character of each line, built on the first location lookup
+    // (volatile, so a table built by a pipelined lexer thread is safely published to the parser thread)
+    private volatile int[] lineStarts;
+
+    // Streaming state, the channel is null if the whole source is decoded
+    private final ReadableByteChannel channel;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes;
+    private boolean inputDone;
+    private boolean flushing;
+    private boolean decoded;
+    // Characters before this offset are no longer needed
+    private int released;
+    // The (zero based) line and line start offset of the first character in the window
+    private int baseLine;
+    private int baseLineStart;
+
+    /**
+     * Construct a new source buffer.
+     *
+     * @param fileName The source file name.
+     * @param chars    The decoded characters (may be larger than the source).
+     * @param length   The number of valid characters.
+     * @param channel  The channel to stream the rest of the source from, null if the source is fully decoded.
+     */
+    private SourceBuffer(String fileName, char[] chars, int length, ReadableByteChannel channel) {
+        this.fileName = fileName;
+        this.chars = chars;
+        this.length = length;
+        this.channel = channel;
+        if (channel != null) {
+            this.decoder = newDecoder();
+            this.bytes = ByteBuffer.allocate(STREAM_BYTES);
+        } else {
+            this.decoder = null;
+            this.bytes = null;
+            this.decoded = true;
+        }
+    }
+
+    /**
+     * Memory-map and decode a source file.
+     *
+     * @param file The source file.
+     * @return The source buffer.
+     */
+    public static SourceBuffer map(File file) {
+        String fileName = file.getName();
+        if (!file.isFile()) {
+            throw new InvalidSourceFileException(fileName);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CharBuffer decoded = newDecoder().decode(bytes);
+            return new SourceBuffer(fileName, decoded.array(), decoded.limit(), null);
+        } catch (NoSuchFileException | AccessDeniedException e) {
+            throw new InvalidSourceFileException(fileName);
+        } catch (IOException e) {
+            throw new FileReadException(fileName, e);
+        }
+    }
+
+    /**
+     * Wrap raw text for debugging.
+     *
+     * @param raw The raw source text.
+     * @return The source buffer.
+     */
+    public static SourceBuffer of(String raw) {
+        return new SourceBuffer("RAW_INPUT", raw.toCharArray(), raw.length(), null);
+    }
+
+    /**
+     * Stream a source from a channel, e.g. standard input or a pipe.
+     * <p>
+     * Characters are decoded into a fixed-size window as the lexer reaches them.
+     *
+     * @param channel  The channel.
+     * @param fileName The source name for error messages.
+     * @return The source buffer.
+     */
+    public static SourceBuffer stream(ReadableByteChannel channel, String fileName) {
+        return new SourceBuffer(fileName, new char[STREAM_CAPACITY], 0, channel);
+    }
+
+    /**
+     * Create a decoder for the default charset.
+     *
+     * @return The decoder.
+     */
+    private static CharsetDecoder newDecoder() {
+        // Match InputStreamReader, which substitutes malformed input instead of failing
+        return Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Get the source file name.
+     *
+     * @return The source file name.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Get the number of characters in the source.
+     * <p>
+     * For a streaming source, this is the number of characters decoded so far.
+     *
+     * @return The number of characters.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Check if the source is streamed from a channel.
+     *
+     * @return If the source is streamed.
+     */
+    public boolean isStreaming() {
+        return channel != null;
+    }
+
+    /**
+     * Get the character at an offset.
+     *
+     * @param offset The offset from the start of the source.
+     * @return The character.
+     */
+    public char charAt(int offset) {
+        return chars[offset - base];
+    }
+
+    /**
+     * Copy a range of the source into a new string.
+     *
+     * @param start The starting offset (inclusive).
+     * @param end   The ending offset (exclusive).
+     * @return The source text in the range.
+     */
+    public String slice(int start, int end) {
+        return new String(chars, start - base, end - start);
+    }
+
+    /**
+     * Find the line and column of the character at an offset.
+     * <p>
+     * Locations are only needed for error messages and token dumps,
+     * so the line start table is built on the first call.
+     *
+     * @param offset The offset from the start of the source.
+     * @return The file location.
+     * @throws InternalException If the offset was discarded from a streaming window.
+     */
+    public FileLoc locate(int offset) {
+        if (channel != null) {
+            return locateInWindow(offset, offset);
+        }
+        int line = lineOf(offset);
+        return new FileLoc(line + 1, offset - lineStarts[line] + 1);
+    }
+
+    /**
+     * Find the location just after the character before an offset.
+     * <p>
+     * This is the (exclusive) ending location of a token ending at the offset,
+     * which stays on the line of the last character even if it is a newline.
+     *
+     * @param offset The ending offset, must be greater than 0.
+     * @return The file location.
+     * @throws InternalException If the character before the offset was discarded from a streaming window.
+     */
+    public FileLoc locateEnd(int offset) {
+        if (channel != null) {
+            return locateInWindow(offset - 1, offset);
+        }
+        int line = lineOf(offset - 1);
+        return new FileLoc(line + 1, offset - lineStarts[line] + 1);
+    }
+
+    /**
+     * Find a location by counting the lines from the start of a streaming window.
+     * <p>
+     * Only the line and line start of the first character in the window are kept,
+     * so discarded characters cannot be located.
+     *
+     * @param lineOffset The offset to find the line of.
+     * @param offset     The offset to find the column of.
+     * @return The file location.
+     * @throws InternalException If the line offset was discarded from the window.
+     */
+    private FileLoc locateInWindow(int lineOffset, int offset) {
+        if (lineOffset < base) {
+            throw new InternalException("Cannot locate offset " + lineOffset + " of " + fileName
+                    + ", the window starts at " + base);
+        }
+        int line = baseLine;
+        int lineStart = baseLineStart;
+        for (int i = base; i < lineOffset; i++) {
+            if (chars[i - base] == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        return new FileLoc(line + 1, offset - lineStart + 1);
+    }
+
+    /**
+     * Find the (zero based) line index of an offset.
+     *
+     * @param offset The offset from the start of the source.
+     * @return The line index.
+     */
+    private int lineOf(int offset) {
+        int[] starts = lineStarts;
+        if (starts == null) {
+            starts = buildLineStarts();
+            lineStarts = starts;
+        }
+
+        // Find the last line starting at or before the offset
+        int low = 0;
+        int high = starts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Build the table of line start offsets.
+     *
+     * @return The line start offsets.
+     */
+    private int[] buildLineStarts() {
+        int lines = 1;
+        for (int i = 0; i < length; i++) {
+            if (chars[i] == '\n') {
+                lines++;
+            }
+        }
+
+        int[] starts = new int[lines];
+        int line = 1;
+        for (int i = 0; i < length; i++) {
+            if (chars[i] == '\n') {
+                starts[line++] = i + 1;
+            }
+        }
+        return starts;
+    }
+
+    /**
+     * Get the backing character array for index based scanning.
+     * <p>
+     * The character at an offset is at index {@code offset - base()},
+     * the array is replaced when a streaming window grows.
+     *
+     * @return The backing character array.
+     */
+    char[] chars() {
+        return chars;
+    }
+
+    /**
+     * Get the offset of the first character in the backing array.
+     *
+     * @return The offset of the first character (always 0 if the source is not streamed).
+     */
+    int base() {
+        return base;
+    }
+
+    /**
+     * Allow the characters before an offset to be discarded on the next refill.
+     *
+     * @param offset The offset of the first character still needed.
+     */
+    void release(int offset) {
+        if (offset > released) {
+            released = offset;
+        }
+    }
+
+    /**
+     * Decode more characters from the channel into the window.
+     * <p>
+     * The released characters are discarded first. If the window is still full
+     * (a single token is larger than the window), the window grows.
+     *
+     * @return If more characters were decoded.
+     */
+    boolean fill() {
+        if (decoded) {
+            return false;
+        }
+
+        int discard = released - base;
+        if (discard > 0) {
+            for (int i = 0; i < discard; i++) {
+                if (chars[i] == '\n') {
+                    baseLine++;
+                    baseLineStart = base + i + 1;
+                }
+            }
+            System.arraycopy(chars, discard, chars, 0, length - released);
+            base = released;
+        }
+
+        int used = length - base;
+        if (used == chars.length) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+
+        CharBuffer out = CharBuffer.wrap(chars, used, chars.length - used);
+        try {
+            while (out.position() == used && !decoded) {
+                if (!inputDone && channel.read(bytes) < 0) {
+                    inputDone = true;
+                }
+                if (!flushing) {
+                    bytes.flip();
+                    CoderResult result = decoder.decode(bytes, out, inputDone);
+                    bytes.compact();
+                    flushing = inputDone && result.isUnderflow();
+                }
+                if (flushing && decoder.flush(out).isUnderflow()) {
+                    decoded = true;
+                }
+            }
+        } catch (IOException e) {
+            throw new FileReadException(fileName, e);
+        }
+
+        length = base + out.position();
+        return out.position() > used;
+    }
+}
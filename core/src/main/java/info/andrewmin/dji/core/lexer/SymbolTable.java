@@ -0,0 +1,189 @@
+package info.andrewmin.dji.core.lexer;
+
+import java.util.Arrays;
+
+/**
+ * A table of the distinct identifiers of a program.
+ * <p>
+ * Each identifier is interned once while lexing and given a dense integer ID (in order of first appearance),
+ * so the parser and runtime can compare and index identifiers by ID instead of hashing strings.
+ * Identifiers are matched directly against the source characters, a string is only created for new identifiers.
+ *
+ * @see Lexer
+ */
+public final class SymbolTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] names;
+    private int[] hashes;
+    private int count;
+
+    // Open addressing hash table of IDs + 1 (0 is an empty slot)
+    private int[] slots;
+
+    /**
+     * Construct a new empty symbol table.
+     */
+    public SymbolTable() {
+        this.names = new String[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.slots = new int[INITIAL_CAPACITY * 2];
+    }
+
+    /**
+     * Get the ID of an identifier in a character range, adding it if it is new.
+     *
+     * @param chars The characters.
+     * @param start The starting offset (inclusive).
+     * @param end   The ending offset (exclusive).
+     * @return The identifier ID.
+     */
+    public int intern(char[] chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return add(new String(chars, start, end - start), hash, slot);
+            }
+            if (hashes[id] == hash && matches(names[id], chars, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Get the ID of an identifier, adding it if it is new.
+     *
+     * @param name The identifier.
+     * @return The identifier ID.
+     */
+    public int intern(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return add(name, hash, slot);
+            }
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Get the ID of an identifier without adding it.
+     *
+     * @param name The identifier.
+     * @return The identifier ID, -1 if the identifier is not in the table.
+     */
+    public int lookup(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Get the identifier of an ID.
+     *
+     * @param id The identifier ID.
+     * @return The identifier.
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Get the number of distinct identifiers.
+     *
+     * @return The number of identifiers (one more than the largest ID).
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Add a new identifier.
+     *
+     * @param name The identifier.
+     * @param hash The identifier string hash.
+     * @param slot The empty hash table slot for the identifier.
+     * @return The new identifier ID.
+     */
+    private int add(String name, int hash, int slot) {
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+        int id = count++;
+        names[id] = name;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+
+        // Keep the hash table at most half full
+        if (count * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Double the hash table size and re-insert all the IDs.
+     */
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Spread the bits of a string hash so similar identifiers do not cluster.
+     *
+     * @param hash The string hash.
+     * @return The mixed hash.
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Check if an identifier equals a character range.
+     *
+     * @param name  The identifier.
+     * @param chars The characters.
+     * @param start The starting offset (inclusive).
+     * @param end   The ending offset (exclusive).
+     * @return If the identifier and characters are equal.
+     */
+    private static boolean matches(String name, char[] chars, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,100 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.exceptions.BaseUserException;
+import info.andrewmin.dji.core.tokens.TokenKind;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size batch of tokens handed from a lexer thread to a [TokenBuffer].
+ * <p>
+ * Tokens are stored in parallel arrays the same way as in the token buffer.
+ * The batch also carries the identifiers first seen in it, in ID order,
+ * so the token buffer can build its own copy of the symbol table without sharing the lexer's.
+ * Batches are reused, a batch is only accessed by one thread at a time.
+ *
+ * @see TokenPipeline
+ */
+final class TokenBatch {
+    final int[] kinds;
+    final int[] variants;
+    final long[] values;
+    final int[] starts;
+    final int[] ends;
+    int count;
+
+    String[] names;
+    int nameCount;
+
+    // The user error found after the last token of the batch
+    BaseUserException error;
+    // An unexpected exception thrown by the lexer
+    Throwable failure;
+    // If this is the last batch of the source
+    boolean last;
+
+    /**
+     * Construct a new empty token batch.
+     *
+     * @param capacity The maximum number of tokens.
+     */
+    TokenBatch(int capacity) {
+        this.kinds = new int[capacity];
+        this.variants = new int[capacity];
+        this.values = new long[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.names = new String[16];
+    }
+
+    /**
+     * Remove all the tokens and identifiers.
+     */
+    void clear() {
+        count = 0;
+        Arrays.fill(names, 0, nameCount, null);
+        nameCount = 0;
+        error = null;
+        failure = null;
+        last = false;
+    }
+
+    /**
+     * Check if the batch has no room for more tokens.
+     *
+     * @return If the batch is full.
+     */
+    boolean isFull() {
+        return count == kinds.length;
+    }
+
+    /**
+     * Append a token.
+     *
+     * @param kind    The token kind.
+     * @param variant The variant ordinal or identifier ID.
+     * @param value   The literal value, the raw bits of doubles.
+     * @param start   The starting offset (inclusive).
+     * @param end     The ending offset (exclusive).
+     */
+    void add(TokenKind kind, int variant, long value, int start, int end) {
+        kinds[count] = kind.ordinal();
+        variants[count] = variant;
+        values[count] = value;
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    /**
+     * Append an identifier first seen in this batch.
+     *
+     * @param name The identifier.
+     */
+    void addName(String name) {
+        if (nameCount == names.length) {
+            names = Arrays.copyOf(names, nameCount * 2);
+        }
+        names[nameCount++] = name;
+    }
+}
@@ -0,0 +1,643 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.exceptions.BaseUserException;
+import info.andrewmin.dji.core.exceptions.ExpectedEntityException;
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.exceptions.UnexpectedCharacterException;
+import info.andrewmin.dji.core.tokens.*;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact, peek-able stream of tokens stored in parallel arrays.
+ * <p>
+ * Each token is stored as its kind, variant (the ordinal of keywords, symbols, types, and boolean literals,
+ * or the [SymbolTable] ID of identifiers), value, and its start and end offsets in the source.
+ * Number and character literals keep the value computed by the lexer (the raw bits of doubles),
+ * string literals are slices of the [SourceBuffer].
+ * Token objects are only created for error reporting.
+ * <p>
+ * Tokens of a streaming source are lexed on demand into a sliding window instead,
+ * only the current (most recently consumed) and later tokens are kept.
+ * <p>
+ * A pipelined buffer receives batches of tokens from a lexer running on its own thread.
+ *
+ * @see Lexer
+ * @see TokenKind
+ */
+public final class TokenBuffer {
+    static final KeywordTokenVariant[] KEYWORDS = KeywordTokenVariant.values();
+    static final SymbolTokenVariant[] SYMBOLS = SymbolTokenVariant.values();
+    static final TypeTokenVariant[] TYPES = TypeTokenVariant.values();
+
+    private static final TokenKind[] KINDS = TokenKind.values();
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int WINDOW_SIZE = 1024;
+
+    private final SourceBuffer source;
+    private SymbolTable symbols;
+    // The lexer of a streaming source, null once all tokens have been lexed
+    private Lexer lexer;
+    // The lexer thread of a pipelined buffer, null once all tokens have been received
+    private TokenPipeline pipeline;
+
+    private int[] kinds;
+    private int[] variants;
+    private long[] values;
+    private int[] starts;
+    private int[] ends;
+    // The index of the first token in the arrays
+    private int first;
+    private int count;
+
+    private BaseUserException error;
+    private int errorIndex = -1;
+
+    private int pos;
+
+    /**
+     * Construct a new token buffer with all the remaining tokens of a lexer.
+     * <p>
+     * Tokens of a streaming source are lexed as the buffer advances.
+     *
+     * @param lexer The lexer.
+     */
+    public TokenBuffer(Lexer lexer) {
+        this(lexer.getSource(), lexer.getSymbols());
+        if (source.isStreaming()) {
+            this.lexer = lexer;
+        } else {
+            lexer.tokenize(this, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Construct a new empty token buffer.
+     *
+     * @param source  The source buffer.
+     * @param symbols The symbol table of the identifiers.
+     */
+    private TokenBuffer(SourceBuffer source, SymbolTable symbols) {
+        this.source = source;
+        this.symbols = symbols;
+        this.kinds = new int[INITIAL_CAPACITY];
+        this.variants = new int[INITIAL_CAPACITY];
+        this.values = new long[INITIAL_CAPACITY];
+        this.starts = new int[INITIAL_CAPACITY];
+        this.ends = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Create a token buffer filled by the lexer on its own thread while the tokens are consumed.
+     * <p>
+     * Lexer errors are thrown when the buffer advances to the token they occurred at, the same as
+     * {@link #TokenBuffer(Lexer)}. The buffer should be closed if it is not consumed to the end.
+     * Streaming sources are lexed on demand instead, since their window cannot be shared between threads.
+     *
+     * @param lexer The lexer, must not be used by the caller afterwards.
+     * @return The token buffer.
+     */
+    public static TokenBuffer pipelined(Lexer lexer) {
+        if (lexer.getSource().isStreaming() || !lexer.hasNext()) {
+            return new TokenBuffer(lexer);
+        }
+
+        // Copy the identifiers already seen, the lexer thread sends the later ones with each batch
+        SymbolTable lexed = lexer.getSymbols();
+        SymbolTable symbols = new SymbolTable();
+        for (int id = 0; id < lexed.size(); id++) {
+            symbols.intern(lexed.name(id));
+        }
+        TokenBuffer tokens = new TokenBuffer(lexer.getSource(), symbols);
+        tokens.pipeline = new TokenPipeline(lexer);
+        return tokens;
+    }
+
+    /**
+     * Stop the lexer thread of a pipelined buffer, if it is still running.
+     */
+    public void close() {
+        if (pipeline != null) {
+            pipeline.close();
+            pipeline = null;
+        }
+    }
+
+    /**
+     * Append a token.
+     *
+     * @param kind    The token kind.
+     * @param variant The variant ordinal or identifier ID.
+     * @param value   The literal value, the raw bits of doubles.
+     * @param start   The starting offset (inclusive).
+     * @param end     The ending offset (exclusive).
+     */
+    void add(TokenKind kind, int variant, long value, int start, int end) {
+        int i = count - first;
+        if (i == kinds.length) {
+            int capacity = i * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            variants = Arrays.copyOf(variants, capacity);
+            values = Arrays.copyOf(values, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        kinds[i] = kind.ordinal();
+        variants[i] = variant;
+        values[i] = value;
+        starts[i] = start;
+        ends[i] = end;
+        count++;
+    }
+
+    /**
+     * Record a user error found after the last appended token.
+     * <p>
+     * The error is thrown once the stream advances to where the token would have been.
+     *
+     * @param e The user error.
+     */
+    void fail(BaseUserException e) {
+        error = e;
+        errorIndex = count;
+    }
+
+    /**
+     * Get the symbol table of the identifiers.
+     *
+     * @return The symbol table.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Replace the identifier IDs with the IDs of another symbol table.
+     * <p>
+     * Used to merge token buffers lexed separately into one program.
+     *
+     * @param ids     The new ID of each identifier ID of the current symbol table.
+     * @param symbols The new symbol table.
+     */
+    public void remapIdentifiers(int[] ids, SymbolTable symbols) {
+        int identifier = TokenKind.IDENTIFIER.ordinal();
+        for (int i = 0; i < count - first; i++) {
+            if (kinds[i] == identifier) {
+                variants[i] = ids[variants[i]];
+            }
+        }
+        this.symbols = symbols;
+    }
+
+    /**
+     * Check if the lexer stopped at an error.
+     *
+     * @return If a user error was recorded.
+     */
+    public boolean hasError() {
+        return error != null;
+    }
+
+    /**
+     * Check if more tokens exist or not.
+     *
+     * @return If more tokens exist.
+     */
+    public boolean hasNext() {
+        return pos < count || fill();
+    }
+
+    /**
+     * Get the index of the next token.
+     *
+     * @return The index of the next token.
+     */
+    public int position() {
+        return pos;
+    }
+
+    /**
+     * Consume the next token.
+     */
+    public void advance() {
+        if (pos >= count && !fill()) {
+            throw new NoSuchElementException();
+        }
+        pos++;
+        if (pos == errorIndex) {
+            throw error;
+        }
+    }
+
+    /**
+     * Get the kind of the next token without consuming it.
+     *
+     * @return The next token kind.
+     */
+    public TokenKind peekKind() {
+        checkNext();
+        return KINDS[kinds[pos - first]];
+    }
+
+    /**
+     * Check if the next token is a specific symbol variant without consuming it.
+     *
+     * @param variant The specific symbol variant.
+     * @return If the next token is the symbol variant.
+     */
+    public boolean peekIsSymbol(SymbolTokenVariant variant) {
+        checkNext();
+        return kinds[pos - first] == TokenKind.SYMBOL.ordinal() && variants[pos - first] == variant.ordinal();
+    }
+
+    /**
+     * Check if the next token is a specific keyword variant without consuming it.
+     *
+     * @param variant The specific keyword variant.
+     * @return If the next token is the keyword variant.
+     */
+    public boolean peekIsKeyword(KeywordTokenVariant variant) {
+        checkNext();
+        return kinds[pos - first] == TokenKind.KEYWORD.ordinal() && variants[pos - first] == variant.ordinal();
+    }
+
+    /**
+     * Get the symbol variant of the next token without consuming it.
+     *
+     * @return The symbol variant, null if the next token is not a symbol.
+     */
+    public SymbolTokenVariant peekSymbol() {
+        checkNext();
+        return kinds[pos - first] == TokenKind.SYMBOL.ordinal() ? SYMBOLS[variants[pos - first]] : null;
+    }
+
+    /**
+     * Check if a token exists a number of tokens ahead, without consuming any tokens.
+     *
+     * @param k The number of tokens to look past (0 is the next token).
+     * @return If the token exists.
+     */
+    public boolean has(int k) {
+        return ensure(pos + k);
+    }
+
+    /**
+     * Get the kind of a token ahead without consuming any tokens.
+     *
+     * @param k The number of tokens to look past (0 is the next token).
+     * @return The token kind, null if the token does not exist.
+     */
+    public TokenKind peekKind(int k) {
+        return ensure(pos + k) ? KINDS[kinds[pos + k - first]] : null;
+    }
+
+    /**
+     * Get the symbol variant of a token ahead without consuming any tokens.
+     *
+     * @param k The number of tokens to look past (0 is the next token).
+     * @return The symbol variant, null if the token does not exist or is not a symbol.
+     */
+    public SymbolTokenVariant peekSymbol(int k) {
+        int index = pos + k;
+        return ensure(index) && kinds[index - first] == TokenKind.SYMBOL.ordinal()
+                ? SYMBOLS[variants[index - first]]
+                : null;
+    }
+
+    /**
+     * Get the keyword variant of a token ahead without consuming any tokens.
+     *
+     * @param k The number of tokens to look past (0 is the next token).
+     * @return The keyword variant, null if the token does not exist or is not a keyword.
+     */
+    public KeywordTokenVariant peekKeyword(int k) {
+        int index = pos + k;
+        return ensure(index) && kinds[index - first] == TokenKind.KEYWORD.ordinal()
+                ? KEYWORDS[variants[index - first]]
+                : null;
+    }
+
+    /**
+     * Consume the next identifier.
+     *
+     * @return The identifier ID.
+     */
+    public int nextIdentifier() {
+        return identifier(nextOfKind(TokenKind.IDENTIFIER, "an identifier"));
+    }
+
+    /**
+     * Consume the next type.
+     *
+     * @return The type variant.
+     */
+    public TypeTokenVariant nextType() {
+        return type(nextOfKind(TokenKind.TYPE, "a type"));
+    }
+
+    /**
+     * Consume the next keyword.
+     *
+     * @param keyword The keyword to expect.
+     */
+    public void next(KeywordTokenVariant keyword) {
+        int index = nextOfKind(TokenKind.KEYWORD, "a keyword");
+        if (variants[index - first] != keyword.ordinal()) {
+            throw new UnexpectedCharacterException(token(index));
+        }
+    }
+
+    /**
+     * Consume the next symbol.
+     *
+     * @param symbol The symbol to expect.
+     */
+    public void next(SymbolTokenVariant symbol) {
+        int index = nextOfKind(TokenKind.SYMBOL, "a symbol");
+        if (variants[index - first] != symbol.ordinal()) {
+            throw new UnexpectedCharacterException(token(index));
+        }
+    }
+
+    /**
+     * Get the kind of a token.
+     *
+     * @param index The token index.
+     * @return The token kind.
+     */
+    public TokenKind kind(int index) {
+        return KINDS[kinds[index - first]];
+    }
+
+    /**
+     * Get the symbol variant of a symbol token.
+     *
+     * @param index The token index.
+     * @return The symbol variant.
+     */
+    public SymbolTokenVariant symbol(int index) {
+        return SYMBOLS[variants[index - first]];
+    }
+
+    /**
+     * Get the type variant of a type token.
+     *
+     * @param index The token index.
+     * @return The type variant.
+     */
+    public TypeTokenVariant type(int index) {
+        return TYPES[variants[index - first]];
+    }
+
+    /**
+     * Get the identifier ID of an identifier token.
+     *
+     * @param index The token index.
+     * @return The identifier ID.
+     */
+    public int identifier(int index) {
+        return variants[index - first];
+    }
+
+    /**
+     * Get the value of a boolean literal token.
+     *
+     * @param index The token index.
+     * @return The boolean value.
+     */
+    public boolean booleanValue(int index) {
+        return variants[index - first] == KeywordTokenVariant.TRUE.ordinal();
+    }
+
+    /**
+     * Get the value of an integer literal token.
+     * <p>
+     * The lexer has already rejected literals that do not fit in an integer.
+     *
+     * @param index The token index.
+     * @return The integer value.
+     */
+    public int intValue(int index) {
+        return (int) values[index - first];
+    }
+
+    /**
+     * Get the value of a double literal token.
+     *
+     * @param index The token index.
+     * @return The double value.
+     */
+    public double doubleValue(int index) {
+        return Double.longBitsToDouble(values[index - first]);
+    }
+
+    /**
+     * Get the value of a character literal token.
+     *
+     * @param index The token index.
+     * @return The character value.
+     */
+    public char charValue(int index) {
+        return (char) values[index - first];
+    }
+
+    /**
+     * Get the value of a string literal token.
+     *
+     * @param index The token index.
+     * @return The string value.
+     */
+    public String stringValue(int index) {
+        return source.slice(starts[index - first] + 1, ends[index - first] - 1);
+    }
+
+    /**
+     * Get the end location of a token.
+     *
+     * @param index The token index.
+     * @return The end location.
+     */
+    public FileLoc endLoc(int index) {
+        return source.locateEnd(ends[index - first]);
+    }
+
+    /**
+     * Create the token object of the next token for error reporting.
+     *
+     * @return The next token.
+     */
+    public Token peek() {
+        checkNext();
+        return token(pos);
+    }
+
+    /**
+     * Create the token object of the current token (the most recently consumed) for error reporting.
+     *
+     * @return The current token, null if no tokens have been consumed.
+     */
+    public Token current() {
+        return pos > 0 ? token(pos - 1) : null;
+    }
+
+    /**
+     * Create the token object of a token for error reporting.
+     *
+     * @param index The token index.
+     * @return The token.
+     */
+    public Token token(int index) {
+        int start = starts[index - first];
+        int end = ends[index - first];
+        switch (kind(index)) {
+            case IDENTIFIER:
+                return new IdentifierToken(source, start, end, symbols.name(variants[index - first]));
+            case KEYWORD:
+                return new KeywordToken(source, start, end, KEYWORDS[variants[index - first]]);
+            case SYMBOL:
+                return new SymbolToken(source, start, end, symbol(index));
+            case TYPE:
+                return new TypeToken(source, start, end, type(index));
+            case BOOLEAN_LITERAL:
+                return new LiteralToken.Boolean(source, start, end, booleanValue(index));
+            case INT_LITERAL:
+                return new LiteralToken.Int(source, start, end, intValue(index));
+            case DOUBLE_LITERAL:
+                return new LiteralToken.Double(source, start, end, doubleValue(index));
+            case CHAR_LITERAL:
+                return new LiteralToken.Char(source, start, end, charValue(index));
+            case STRING_LITERAL:
+                return new LiteralToken.String(source, start, end, stringValue(index));
+            default:
+                throw new InternalException("Unhandled token kind " + kind(index));
+        }
+    }
+
+    /**
+     * Consume the next token and check its kind.
+     *
+     * @param kind     The expected token kind.
+     * @param expected The expected entity for the error message.
+     * @return The index of the consumed token.
+     */
+    private int nextOfKind(TokenKind kind, String expected) {
+        if (!hasNext()) {
+            throw new ExpectedEntityException(expected, current().getEndLoc());
+        }
+        int index = pos;
+        advance();
+        if (kinds[index - first] != kind.ordinal()) {
+            throw new UnexpectedCharacterException(token(index));
+        }
+        return index;
+    }
+
+    /**
+     * Throw if there are no more tokens.
+     */
+    private void checkNext() {
+        if (pos >= count && !fill()) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Make sure a token is in the buffer, lexing or receiving more tokens if needed.
+     *
+     * @param index The token index.
+     * @return If the token exists.
+     */
+    private boolean ensure(int index) {
+        while (index >= count) {
+            int filled = count;
+            fill();
+            if (count == filled) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lex the next window of tokens of a streaming source.
+     * <p>
+     * The tokens before the current token are dropped and their source characters released.
+     *
+     * @return If more tokens exist.
+     */
+    private boolean fill() {
+        if (pipeline != null) {
+            return receive();
+        }
+        if (lexer == null) {
+            return false;
+        }
+
+        int keep = Math.max(pos - 1, first);
+        int kept = count - keep;
+        if (keep > first) {
+            int from = keep - first;
+            System.arraycopy(kinds, from, kinds, 0, kept);
+            System.arraycopy(variants, from, variants, 0, kept);
+            System.arraycopy(values, from, values, 0, kept);
+            System.arraycopy(starts, from, starts, 0, kept);
+            System.arraycopy(ends, from, ends, 0, kept);
+            first = keep;
+        }
+        if (kept > 0) {
+            source.release(starts[0]);
+        }
+
+        lexer.tokenize(this, WINDOW_SIZE);
+        if (!lexer.hasNext()) {
+            lexer = null;
+        }
+        return pos < count;
+    }
+
+    /**
+     * Append the next batch from the lexer thread, and more until there is a next token or no more batches.
+     *
+     * @return If more tokens exist.
+     */
+    private boolean receive() {
+        do {
+            TokenBatch batch = pipeline.take();
+            if (batch.failure != null) {
+                pipeline = null;
+                throw new InternalException("Lexer thread failed: " + batch.failure);
+            }
+
+            int capacity = kinds.length;
+            while (capacity - count < batch.count) {
+                capacity *= 2;
+            }
+            if (capacity != kinds.length) {
+                kinds = Arrays.copyOf(kinds, capacity);
+                variants = Arrays.copyOf(variants, capacity);
+                values = Arrays.copyOf(values, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+            System.arraycopy(batch.kinds, 0, kinds, count, batch.count);
+            System.arraycopy(batch.variants, 0, variants, count, batch.count);
+            System.arraycopy(batch.values, 0, values, count, batch.count);
+            System.arraycopy(batch.starts, 0, starts, count, batch.count);
+            System.arraycopy(batch.ends, 0, ends, count, batch.count);
+            count += batch.count;
+            for (int i = 0; i < batch.nameCount; i++) {
+                symbols.intern(batch.names[i]);
+            }
+            if (batch.error != null) {
+                fail(batch.error);
+            }
+            boolean last = batch.last;
+            pipeline.release();
+            if (last) {
+                pipeline = null;
+            }
+        } while (pos >= count && pipeline != null);
+        return pos < count;
+    }
+}
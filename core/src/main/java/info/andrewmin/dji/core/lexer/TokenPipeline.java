@@ -0,0 +1,160 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.exceptions.InternalException;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Runs a lexer on its own thread, so lexing overlaps with parsing.
+ * <p>
+ * The lexer thread fills [TokenBatch]es and publishes them through a lock-free single-producer/single-consumer
+ * ring buffer, which the [TokenBuffer] drains on the parser thread.
+ * The ring slots are allocated once and reused, the producer only waits when the parser falls behind.
+ * Each side only writes its own counter, and a batch is handed over by the release write of a counter
+ * and the acquire read of it on the other side.
+ * <p>
+ * A lexer failure is published as a last batch. Neither side waits forever for the other:
+ * the lexer thread stops once the pipeline is closed, and taking a batch fails if the pipeline is closed
+ * or the lexer thread stopped without publishing a last batch.
+ *
+ * @see TokenBuffer#pipelined(Lexer)
+ */
+final class TokenPipeline implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(TokenPipeline.class.getName());
+
+    private static final int BATCH_SIZE = 1024;
+    // Must be a power of 2
+    private static final int RING_SIZE = 16;
+    private static final int MASK = RING_SIZE - 1;
+
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    // Fills a cleared batch with the next tokens
+    private final Consumer<TokenBatch> producer;
+    private final Thread thread;
+    private final TokenBatch[] ring;
+    // The number of batches consumed (only written by the consumer)
+    private final AtomicLong head;
+    // The number of batches published (only written by the producer)
+    private final AtomicLong tail;
+    private volatile boolean closed;
+    // Set once the lexer thread has returned
+    private volatile boolean stopped;
+
+    /**
+     * Construct a new token pipeline and start the lexer thread.
+     *
+     * @param lexer The lexer, no longer used by the calling thread.
+     */
+    TokenPipeline(Lexer lexer) {
+        this(lexer::tokenize);
+    }
+
+    /**
+     * Construct a new token pipeline and start a thread filling its batches.
+     *
+     * @param producer Fills a cleared batch with the next tokens, and marks the last batch.
+     */
+    TokenPipeline(Consumer<TokenBatch> producer) {
+        this.producer = producer;
+        this.ring = new TokenBatch[RING_SIZE];
+        for (int i = 0; i < RING_SIZE; i++) {
+            ring[i] = new TokenBatch(BATCH_SIZE);
+        }
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+
+        this.thread = new Thread(this, "dji-lexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Lex batches until the end of the source, an error, or the pipeline is closed.
+     */
+    @Override
+    public void run() {
+        try {
+            long published = 0;
+            boolean last = false;
+            while (!last) {
+                // Wait for the consumer to free a slot
+                for (int idle = 0; published - head.get() == RING_SIZE && !closed; idle++) {
+                    idle(idle);
+                }
+                if (closed) {
+                    return;
+                }
+
+                TokenBatch batch = ring[(int) published & MASK];
+                batch.clear();
+                try {
+                    producer.accept(batch);
+                } catch (RuntimeException | Error e) {
+                    LOGGER.warning("Lexer thread failed: " + e);
+                    batch.failure = e;
+                    batch.last = true;
+                }
+                last = batch.last;
+                tail.lazySet(++published);
+            }
+        } finally {
+            stopped = true;
+        }
+    }
+
+    /**
+     * Take the next batch, waiting for the lexer thread if it is not ready.
+     * <p>
+     * The batch must be released with {@link #release()} before taking the next batch.
+     *
+     * @return The next batch.
+     * @throws InternalException If the pipeline is closed or the lexer thread stopped before the last batch.
+     */
+    TokenBatch take() {
+        long consumed = head.get();
+        for (int idle = 0; tail.get() == consumed; idle++) {
+            if (closed) {
+                throw new InternalException("Token pipeline is closed");
+            } else if (stopped && tail.get() == consumed) {
+                throw new InternalException("Lexer thread stopped before the last batch");
+            }
+            idle(idle);
+        }
+        return ring[(int) consumed & MASK];
+    }
+
+    /**
+     * Release the batch returned by {@link #take()}, so the lexer thread can reuse it.
+     */
+    void release() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * Stop the lexer thread after the batch it is filling, waking it if it waits for a free slot.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Wait for the other thread, spinning at first, then yielding, then parking.
+     *
+     * @param idle The number of times this wait has already idled.
+     */
+    private static void idle(int idle) {
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+        } else if (idle < 2 * SPINS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.tokens.Token;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Prints tokens as they are lexed, either one per line or as a JSON array.
+ * <p>
+ * Tokens are written straight to the writer, so printing a large source does not hold its tokens in memory.
+ * The writer should be buffered, and it is not flushed or closed.
+ */
+public final class TokenPrinter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    private final boolean json;
+
+    /**
+     * Construct a new token printer.
+     *
+     * @param out  The writer to print to.
+     * @param json If the tokens should be printed as JSON.
+     */
+    public TokenPrinter(Writer out, boolean json) {
+        this.out = out;
+        this.json = json;
+    }
+
+    /**
+     * Lex and print all the remaining tokens.
+     * <p>
+     * Tokens before a lexing error are still printed.
+     *
+     * @param lexer The lexer.
+     * @throws IOException If the writer could not be written.
+     */
+    public void print(Lexer lexer) throws IOException {
+        if (!json) {
+            while (lexer.hasNext()) {
+                Token token = lexer.next();
+                out.write(token.getName());
+                out.write(": ");
+                out.write(token.rawString());
+                out.write('\n');
+            }
+            return;
+        }
+
+        out.write('[');
+        boolean first = true;
+        while (lexer.hasNext()) {
+            Token token = lexer.next();
+            FileLoc loc = token.getStartLoc();
+            out.write(first ? "\n{\"kind\":" : ",\n{\"kind\":");
+            writeJsonString(out, token.getName());
+            out.write(",\"text\":");
+            writeJsonString(out, token.rawString());
+            out.write(",\"line\":");
+            out.write(Integer.toString(loc.getLine()));
+            out.write(",\"column\":");
+            out.write(Integer.toString(loc.getColumn()));
+            out.write('}');
+            first = false;
+        }
+        out.write("\n]\n");
+    }
+
+    /**
+     * Write a string as a quoted and escaped JSON string.
+     *
+     * @param out The writer.
+     * @param s   The string.
+     * @throws IOException If the writer could not be written.
+     */
+    public static void writeJsonString(Writer out, String s) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            // Copy the run of plain characters before the escape
+            out.write(s, start, i - start);
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    out.write("\\u00");
+                    out.write(HEX[c >>> 4]);
+                    out.write(HEX[c & 0xF]);
+            }
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+}
@@ -0,0 +1,97 @@
+package info.andrewmin.dji.core.lexer;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A scanner that classifies a whole vector of characters per step with the Vector API.
+ * <p>
+ * Characters are loaded as 16-bit lanes (8 to 32 characters per step, depending on the hardware).
+ * Each class of characters is a few ranges, checked with unsigned comparisons ({@code c - low <= high - low}),
+ * so non-ASCII characters are never in a class and stop the scan.
+ * The remaining characters that do not fill a vector are scanned one at a time.
+ * <p>
+ * This class must only be loaded if the {@code jdk.incubator.vector} module is available.
+ *
+ * @see CharScanner
+ */
+final class VectorCharScanner extends CharScanner {
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    /**
+     * Check if the hardware has vectors large enough to be faster than scanning one character at a time.
+     *
+     * @return If the vector scanner should be used.
+     */
+    static boolean isSupported() {
+        return SPECIES.vectorBitSize() >= 128;
+    }
+
+    @Override
+    int skipWhitespace(char[] chars, int from, int to) {
+        // Most runs are shorter than a vector, only load vectors once the run is longer
+        int i = from;
+        int scalarEnd = Math.min(to, from + LANES);
+        while (i < scalarEnd && LexerTables.isWhitespace(chars[i])) {
+            i++;
+        }
+        if (i < scalarEnd) {
+            return i;
+        }
+        for (; i <= to - LANES; i += LANES) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, chars, i);
+            // \t, \n, vertical tab, \f, \r, and the file/group/record/unit separators + space
+            VectorMask<Short> whitespace = inRange(v, '\t', '\r').or(inRange(v, '\u001C', ' '));
+            if (!whitespace.allTrue()) {
+                return i + whitespace.not().firstTrue();
+            }
+        }
+        while (i < to && LexerTables.isWhitespace(chars[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    @Override
+    int skipIdentifier(char[] chars, int from, int to) {
+        // Most runs are shorter than a vector, only load vectors once the run is longer
+        int i = from;
+        int scalarEnd = Math.min(to, from + LANES);
+        while (i < scalarEnd && LexerTables.isIdentifier(chars[i])) {
+            i++;
+        }
+        if (i < scalarEnd) {
+            return i;
+        }
+        for (; i <= to - LANES; i += LANES) {
+            ShortVector v = ShortVector.fromCharArray(SPECIES, chars, i);
+            // Setting bit 0x20 maps upper case letters to lower case and no other characters to letters
+            VectorMask<Short> identifier = inRange(v.or((short) 0x20), 'a', 'z')
+                    .or(inRange(v, '0', '9'))
+                    .or(v.eq((short) '_'))
+                    .or(v.eq((short) '$'));
+            if (!identifier.allTrue()) {
+                return i + identifier.not().firstTrue();
+            }
+        }
+        while (i < to && LexerTables.isIdentifier(chars[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Check which lanes are in a character range.
+     *
+     * @param v    The characters.
+     * @param low  The lowest character in the range.
+     * @param high The highest character in the range.
+     * @return The mask of lanes in the range.
+     */
+    private static VectorMask<Short> inRange(ShortVector v, char low, char high) {
+        return v.sub((short) low).compare(VectorOperators.UNSIGNED_LE, (short) (high - low));
+    }
+}
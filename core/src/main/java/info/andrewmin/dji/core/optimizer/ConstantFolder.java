@@ -0,0 +1,488 @@
+package info.andrewmin.dji.core.optimizer;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * An optimization pass that folds constant expressions, simplifies identities and prunes constant branches.
+ * <p>
+ * Literal-only expressions are evaluated with the same {@link Value} operations as the runtime.
+ * If an operation fails (e.g. a type mismatch or an integer division by zero), the expression is left as is,
+ * so the error is still reported when (and only if) it runs.
+ * <p>
+ * Values are strictly typed (e.g. <code>x * 1</code> is an error if <code>x</code> is a double),
+ * so an identity is only simplified if the other operand always has the matching type when it evaluates,
+ * e.g. an arithmetic expression over a literal or a call to a function returning that type.
+ * Nodes are immutable, so changed nodes are rebuilt and unchanged subtrees are shared with the original tree.
+ * Lazily parsed function bodies are folded when they are parsed.
+ *
+ * @see ProgramNode
+ */
+public final class ConstantFolder {
+    private static final Logger LOGGER = Logger.getLogger(ConstantFolder.class.getName());
+
+    private final ProgramNode program;
+    private int folded;
+    private int simplified;
+    private int pruned;
+
+    /**
+     * Construct a new constant folder.
+     *
+     * @param program The program abstract syntax tree.
+     */
+    public ConstantFolder(ProgramNode program) {
+        this.program = program;
+        this.folded = 0;
+        this.simplified = 0;
+        this.pruned = 0;
+    }
+
+    /**
+     * Fold the program.
+     *
+     * @return The folded program abstract syntax tree.
+     */
+    public ProgramNode fold() {
+        List<FunctionNode> functions = new ArrayList<>();
+        for (FunctionNode function : program.getDeclaredFunctions()) {
+            functions.add(fold(function));
+        }
+        LOGGER.info("Folded " + folded + " expressions, simplified " + simplified + " identities and pruned "
+                + pruned + " branches");
+        return new ProgramNode(functions, program.getSymbols());
+    }
+
+    /**
+     * Fold a function.
+     *
+     * @param function The function node.
+     * @return The folded function node.
+     */
+    private FunctionNode fold(FunctionNode function) {
+        if (!function.isParsed()) {
+            return new FunctionNode(function.getName(), function.getId(), function.getReturnType(),
+                    function.getParameters(), () -> new StatementNode.Block(fold(function.getStatements())));
+        }
+        List<StatementNode> statements = function.getStatements();
+        List<StatementNode> foldedStatements = fold(statements);
+        if (foldedStatements == statements) {
+            return function;
+        }
+        return new FunctionNode(function.getName(), function.getId(), function.getReturnType(),
+                function.getParameters(), new StatementNode.Block(foldedStatements));
+    }
+
+    /**
+     * Fold a list of statements.
+     *
+     * @param statements The statement nodes.
+     * @return The folded statement nodes, the same list if none changed.
+     */
+    private List<StatementNode> fold(List<StatementNode> statements) {
+        List<StatementNode> result = null;
+        for (int i = 0; i < statements.size(); i++) {
+            StatementNode statement = fold(statements.get(i));
+            if (result == null && statement != statements.get(i)) {
+                result = new ArrayList<>(statements.subList(0, i));
+            }
+            if (result != null) {
+                result.add(statement);
+            }
+        }
+        return result != null ? result : statements;
+    }
+
+    /**
+     * Fold a statement.
+     *
+     * @param node The statement node, may be null.
+     * @return The folded statement node, the same node if it did not change.
+     */
+    private StatementNode fold(StatementNode node) {
+        if (node instanceof StatementNode.Block) {
+            List<StatementNode> statements = ((StatementNode.Block) node).getStatements();
+            List<StatementNode> foldedStatements = fold(statements);
+            return foldedStatements == statements ? node : new StatementNode.Block(foldedStatements);
+        } else if (node instanceof StatementNode.VariableDeclaration) {
+            StatementNode.VariableDeclaration declaration = (StatementNode.VariableDeclaration) node;
+            ExpressionNode expr = fold(declaration.getExpr());
+            return expr == declaration.getExpr()
+                    ? node
+                    : new StatementNode.VariableDeclaration(declaration.getName(), declaration.getId(),
+                    declaration.getType(), expr, declaration.getSlot());
+        } else if (node instanceof StatementNode.If) {
+            StatementNode.If _if = (StatementNode.If) node;
+            ExpressionNode condition = fold(_if.getCondition());
+            StatementNode body = fold(_if.getBody());
+            StatementNode _else = fold(_if.getElse());
+
+            // Only blocks in loops push a scope, so a branch can replace the if statement
+            if (isLiteral(condition, TypeTokenVariant.BOOLEAN)) {
+                pruned++;
+                StatementNode branch = ((Value.Boolean) ((ExpressionNode.Literal) condition).getValue()).getValue()
+                        ? body
+                        : _else;
+                return branch != null ? branch : new StatementNode.Block(List.of());
+            }
+            return condition == _if.getCondition() && body == _if.getBody() && _else == _if.getElse()
+                    ? node
+                    : new StatementNode.If(condition, body, _else);
+        } else if (node instanceof StatementNode.For) {
+            StatementNode.For _for = (StatementNode.For) node;
+            StatementNode init = fold(_for.getInit());
+            ExpressionNode condition = fold(_for.getCondition());
+            ExpressionNode post = fold(_for.getPost());
+            StatementNode body = fold(_for.getBody());
+            return init == _for.getInit() && condition == _for.getCondition() && post == _for.getPost()
+                    && body == _for.getBody()
+                    ? node
+                    : new StatementNode.For(init, condition, post, body);
+        } else if (node instanceof StatementNode.While) {
+            StatementNode.While _while = (StatementNode.While) node;
+            ExpressionNode condition = fold(_while.getCondition());
+            StatementNode body = fold(_while.getBody());
+            return condition == _while.getCondition() && body == _while.getBody()
+                    ? node
+                    : new StatementNode.While(condition, body);
+        } else if (node instanceof StatementNode.Return) {
+            ExpressionNode expr = fold(((StatementNode.Return) node).getExpr());
+            return expr == ((StatementNode.Return) node).getExpr() ? node : new StatementNode.Return(expr);
+        } else if (node instanceof StatementNode.Expression) {
+            ExpressionNode expr = fold(((StatementNode.Expression) node).getExpr());
+            return expr == ((StatementNode.Expression) node).getExpr() ? node : new StatementNode.Expression(expr);
+        }
+        // Break, Continue and empty statements
+        return node;
+    }
+
+    /**
+     * Fold an expression.
+     *
+     * @param node The expression node, may be null.
+     * @return The folded expression node, the same node if it did not change.
+     */
+    private ExpressionNode fold(ExpressionNode node) {
+        if (node instanceof ExpressionNode.FunctionCall) {
+            ExpressionNode.FunctionCall call = (ExpressionNode.FunctionCall) node;
+            List<ExpressionNode> args = new ArrayList<>(call.getArgs().size());
+            boolean changed = false;
+            for (ExpressionNode arg : call.getArgs()) {
+                ExpressionNode foldedArg = fold(arg);
+                changed |= foldedArg != arg;
+                args.add(foldedArg);
+            }
+            return changed ? new ExpressionNode.FunctionCall(call.getName(), call.getId(), args, call.getTarget())
+                    : node;
+        } else if (node instanceof ExpressionNode.Binary) {
+            return fold((ExpressionNode.Binary) node);
+        } else if (node instanceof ExpressionNode.Unary) {
+            return fold((ExpressionNode.Unary) node);
+        }
+        // Literals and variable references
+        return node;
+    }
+
+    /**
+     * Fold a binary expression.
+     *
+     * @param node The binary expression node.
+     * @return The folded expression node, the same node if it did not change.
+     */
+    private ExpressionNode fold(ExpressionNode.Binary node) {
+        SymbolTokenVariant op = node.getOperator();
+        ExpressionNode left = fold(node.getLeftExpr());
+        ExpressionNode right = fold(node.getRightExpr());
+
+        if (isAssignment(op)) {
+            // Never turn an invalid assignment target into a variable
+            if (left instanceof ExpressionNode.VariableReference
+                    && !(node.getLeftExpr() instanceof ExpressionNode.VariableReference)) {
+                left = node.getLeftExpr();
+            }
+        } else if (left instanceof ExpressionNode.Literal && right instanceof ExpressionNode.Literal) {
+            Value<?> value = evaluate(op,
+                    ((ExpressionNode.Literal) left).getValue(),
+                    ((ExpressionNode.Literal) right).getValue());
+            if (value != null) {
+                folded++;
+                return new ExpressionNode.Literal(value);
+            }
+        } else {
+            ExpressionNode operand = simplify(op, left, right);
+            if (operand != null) {
+                simplified++;
+                return operand;
+            }
+        }
+        return left == node.getLeftExpr() && right == node.getRightExpr()
+                ? node
+                : new ExpressionNode.Binary(op, left, right);
+    }
+
+    /**
+     * Fold a unary expression.
+     *
+     * @param node The unary expression node.
+     * @return The folded expression node, the same node if it did not change.
+     */
+    private ExpressionNode fold(ExpressionNode.Unary node) {
+        SymbolTokenVariant op = node.getOperator();
+        ExpressionNode expr = fold(node.getExpr());
+
+        if (expr instanceof ExpressionNode.Literal) {
+            Value<?> value = evaluate(op, ((ExpressionNode.Literal) expr).getValue());
+            if (value != null) {
+                folded++;
+                return new ExpressionNode.Literal(value);
+            }
+        } else if (expr instanceof ExpressionNode.Unary && ((ExpressionNode.Unary) expr).getOperator() == op) {
+            // !!b and -(-x)
+            ExpressionNode inner = ((ExpressionNode.Unary) expr).getExpr();
+            TypeTokenVariant type = staticType(inner);
+            if (op == SymbolTokenVariant.NOT
+                    ? type == TypeTokenVariant.BOOLEAN
+                    : type == TypeTokenVariant.INT || type == TypeTokenVariant.DOUBLE) {
+                simplified++;
+                return inner;
+            }
+        }
+        return expr == node.getExpr() ? node : new ExpressionNode.Unary(op, expr);
+    }
+
+    /**
+     * Simplify a binary identity operation to its other operand.
+     * <p>
+     * Only identities that give the exact same value are simplified (e.g. not <code>x + 0.0</code>,
+     * which turns -0.0 into 0.0). The literal operand has no side effects, so it may be on either side.
+     *
+     * @param op    The binary operator.
+     * @param left  The folded left expression.
+     * @param right The folded right expression.
+     * @return The operand the operation is equal to, null if it is not an identity.
+     */
+    private ExpressionNode simplify(SymbolTokenVariant op, ExpressionNode left, ExpressionNode right) {
+        switch (op) {
+            case ADD:
+                if (isIdentity(right, left, new Value.Int(0)) || isIdentity(right, left, new Value.String(""))) {
+                    return left;
+                } else if (isIdentity(left, right, new Value.Int(0)) || isIdentity(left, right, new Value.String(""))) {
+                    return right;
+                }
+                return null;
+            case SUB:
+                if (isIdentity(right, left, new Value.Int(0)) || isIdentity(right, left, new Value.Double(0.0))) {
+                    return left;
+                }
+                return null;
+            case MUL:
+                if (isIdentity(right, left, new Value.Int(1)) || isIdentity(right, left, new Value.Double(1.0))) {
+                    return left;
+                } else if (isIdentity(left, right, new Value.Int(1)) || isIdentity(left, right, new Value.Double(1.0))) {
+                    return right;
+                }
+                return null;
+            case QUO:
+                if (isIdentity(right, left, new Value.Int(1)) || isIdentity(right, left, new Value.Double(1.0))) {
+                    return left;
+                }
+                return null;
+            case LAND:
+                if (isIdentity(right, left, new Value.Boolean(true))) {
+                    return left;
+                } else if (isIdentity(left, right, new Value.Boolean(true))) {
+                    return right;
+                }
+                return null;
+            case LOR:
+                if (isIdentity(right, left, new Value.Boolean(false))) {
+                    return left;
+                } else if (isIdentity(left, right, new Value.Boolean(false))) {
+                    return right;
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Check if an operand is an identity element for another operand.
+     *
+     * @param literal  The possible identity literal.
+     * @param operand  The other operand.
+     * @param identity The identity element.
+     * @return If the literal is the identity element and the other operand always has its type.
+     */
+    private boolean isIdentity(ExpressionNode literal, ExpressionNode operand, Value<?> identity) {
+        return isLiteral(literal, identity.getType())
+                && ((ExpressionNode.Literal) literal).getValue().getValue().equals(identity.getValue())
+                && staticType(operand) == identity.getType();
+    }
+
+    /**
+     * Get the type an expression always has if it evaluates without an error.
+     * <p>
+     * Variables may be reassigned to values of another type, so their type is unknown.
+     *
+     * @param node The expression node.
+     * @return The type, null if it is unknown.
+     */
+    private TypeTokenVariant staticType(ExpressionNode node) {
+        if (node instanceof ExpressionNode.Literal) {
+            return ((ExpressionNode.Literal) node).getValue().getType();
+        } else if (node instanceof ExpressionNode.FunctionCall) {
+            // Return values are checked against the return type
+            FunctionNode function = program.getFunction(((ExpressionNode.FunctionCall) node).getId());
+            return function != null && function.getReturnType() != TypeTokenVariant.VOID
+                    ? function.getReturnType()
+                    : null;
+        } else if (node instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+            if (unary.getOperator() == SymbolTokenVariant.NOT) {
+                return TypeTokenVariant.BOOLEAN;
+            }
+            TypeTokenVariant type = staticType(unary.getExpr());
+            return type == TypeTokenVariant.INT || type == TypeTokenVariant.DOUBLE ? type : null;
+        } else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            SymbolTokenVariant op = binary.getOperator();
+            switch (op) {
+                case EQL:
+                case LSS:
+                case GTR:
+                case NEQ:
+                case LEQ:
+                case GEQ:
+                case LAND:
+                case LOR:
+                    return TypeTokenVariant.BOOLEAN;
+                case ASSIGN:
+                    return staticType(binary.getRightExpr());
+                case ADD:
+                case SUB:
+                case MUL:
+                case QUO:
+                case REM:
+                case ADD_ASSIGN:
+                case SUB_ASSIGN:
+                case MUL_ASSIGN:
+                case QUO_ASSIGN:
+                case REM_ASSIGN:
+                    break;
+                default:
+                    return null;
+            }
+            // Arithmetic operands must have the same type, so either known operand type is the result type
+            TypeTokenVariant type = staticType(binary.getRightExpr());
+            if (type == null && !isAssignment(op)) {
+                type = staticType(binary.getLeftExpr());
+            }
+            if (type == TypeTokenVariant.INT || type == TypeTokenVariant.DOUBLE) {
+                return type;
+            } else if (type == TypeTokenVariant.STRING
+                    && (op == SymbolTokenVariant.ADD || op == SymbolTokenVariant.ADD_ASSIGN)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evaluate a binary operation on two values like the runtime.
+     *
+     * @param op    The binary operator.
+     * @param left  The left value.
+     * @param right The right value.
+     * @return The resulting value, null if the operation fails at runtime.
+     */
+    private static Value<?> evaluate(SymbolTokenVariant op, Value<?> left, Value<?> right) {
+        try {
+            switch (op) {
+                case ADD:
+                    return left.add(right);
+                case SUB:
+                    return left.sub(right);
+                case MUL:
+                    return left.mul(right);
+                case QUO:
+                    return left.quo(right);
+                case REM:
+                    return left.rem(right);
+                case EQL:
+                    return new Value.Boolean(left.eql(right));
+                case LSS:
+                    return new Value.Boolean(left.lss(right));
+                case GTR:
+                    return new Value.Boolean(left.gtr(right));
+                case NEQ:
+                    return new Value.Boolean(left.neq(right));
+                case LEQ:
+                    return new Value.Boolean(left.leq(right));
+                case GEQ:
+                    return new Value.Boolean(left.geq(right));
+                case LAND:
+                    return new Value.Boolean(left.land(right));
+                case LOR:
+                    return new Value.Boolean(left.lor(right));
+                default:
+                    return null;
+            }
+        } catch (RuntimeException e) {
+            // Leave the error to the runtime
+            return null;
+        }
+    }
+
+    /**
+     * Evaluate a unary operation on a value like the runtime.
+     *
+     * @param op    The unary operator.
+     * @param value The value.
+     * @return The resulting value, null if the operation fails at runtime.
+     */
+    private static Value<?> evaluate(SymbolTokenVariant op, Value<?> value) {
+        try {
+            if (op == SymbolTokenVariant.SUB) {
+                return value.negate();
+            } else if (op == SymbolTokenVariant.NOT) {
+                return value.not();
+            }
+            return null;
+        } catch (RuntimeException e) {
+            // Leave the error to the runtime
+            return null;
+        }
+    }
+
+    /**
+     * Check if an expression is a literal of a type.
+     *
+     * @param node The expression node, may be null.
+     * @param type The literal type.
+     * @return If the expression is a literal of the type.
+     */
+    private static boolean isLiteral(ExpressionNode node, TypeTokenVariant type) {
+        return node instanceof ExpressionNode.Literal && ((ExpressionNode.Literal) node).getValue().getType() == type;
+    }
+
+    /**
+     * Check if a binary operator assigns to its left operand.
+     *
+     * @param op The binary operator.
+     * @return If the operator is an assignment.
+     */
+    private static boolean isAssignment(SymbolTokenVariant op) {
+        return op.ordinal() >= SymbolTokenVariant.ADD_ASSIGN.ordinal()
+                && op.ordinal() <= SymbolTokenVariant.ASSIGN.ordinal();
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * This package provides optimization passes over the abstract syntax tree.
+ */
+package info.andrewmin.dji.core.optimizer;
@@ -0,0 +1,198 @@
+package info.andrewmin.dji.core.parser;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash-conses expression nodes, so structurally identical pure expressions share a single node.
+ * <p>
+ * Literals, variable references, and unary and non-assigning binary expressions over interned operands are interned.
+ * Function calls and assignments are always new nodes, and so is any expression containing them.
+ * Since operands are interned first, two expressions are structurally identical
+ * if their own fields are equal and their operands are the same nodes.
+ * <p>
+ * Nodes are immutable, so sharing them is not observable by the runtime,
+ * but later passes must not attach context dependent information (e.g. the enclosing function) to interned nodes.
+ * An interner may be shared by parsers on different threads.
+ */
+final class ExpressionInterner {
+    // Key kinds
+    private static final int LITERAL = 0;
+    private static final int VARIABLE_REFERENCE = 1;
+    private static final int BINARY = 2;
+    private static final int UNARY = 3;
+
+    private final ConcurrentHashMap<Key, ExpressionNode> nodes;
+
+    /**
+     * Construct a new empty expression interner.
+     */
+    ExpressionInterner() {
+        this.nodes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get a literal expression node.
+     *
+     * @param value The literal value.
+     * @return The interned literal expression node.
+     */
+    ExpressionNode literal(Value<?> value) {
+        Key key = new Key(LITERAL, value.getType().ordinal(), value.getValue(), null);
+        ExpressionNode node = nodes.get(key);
+        return node != null ? node : intern(key, new ExpressionNode.Literal(value));
+    }
+
+    /**
+     * Get a variable reference expression node.
+     *
+     * @param name The name of the variable.
+     * @param id   The identifier ID of the name.
+     * @return The interned variable reference expression node.
+     */
+    ExpressionNode variableReference(String name, int id) {
+        Key key = new Key(VARIABLE_REFERENCE, id, null, null);
+        ExpressionNode node = nodes.get(key);
+        return node != null ? node : intern(key, new ExpressionNode.VariableReference(name, id));
+    }
+
+    /**
+     * Get a binary expression node.
+     *
+     * @param operator  The binary operator.
+     * @param leftExpr  The left expression.
+     * @param rightExpr The right expression.
+     * @return The binary expression node, interned if it is pure.
+     */
+    ExpressionNode binary(SymbolTokenVariant operator, ExpressionNode leftExpr, ExpressionNode rightExpr) {
+        ExpressionNode.Binary node = new ExpressionNode.Binary(operator, leftExpr, rightExpr);
+        if (isAssignment(operator) || !isInterned(leftExpr) || !isInterned(rightExpr)) {
+            return node;
+        }
+        return intern(new Key(BINARY, operator.ordinal(), leftExpr, rightExpr), node);
+    }
+
+    /**
+     * Get a unary expression node.
+     *
+     * @param operator The unary operator.
+     * @param expr     The expression.
+     * @return The unary expression node, interned if it is pure.
+     */
+    ExpressionNode unary(SymbolTokenVariant operator, ExpressionNode expr) {
+        ExpressionNode.Unary node = new ExpressionNode.Unary(operator, expr);
+        if (!isInterned(expr)) {
+            return node;
+        }
+        return intern(new Key(UNARY, operator.ordinal(), expr, null), node);
+    }
+
+    /**
+     * Get the number of interned nodes.
+     *
+     * @return The number of interned nodes.
+     */
+    int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Check if a binary operator assigns to its left operand.
+     *
+     * @param operator The binary operator.
+     * @return If the operator is an assignment.
+     */
+    private static boolean isAssignment(SymbolTokenVariant operator) {
+        return operator.ordinal() >= SymbolTokenVariant.ADD_ASSIGN.ordinal()
+                && operator.ordinal() <= SymbolTokenVariant.ASSIGN.ordinal();
+    }
+
+    /**
+     * Intern a node.
+     *
+     * @param key  The structural key of the node.
+     * @param node The new node, used if no identical node is interned.
+     * @return The interned node.
+     */
+    private ExpressionNode intern(Key key, ExpressionNode node) {
+        ExpressionNode existing = nodes.putIfAbsent(key, node);
+        return existing != null ? existing : node;
+    }
+
+    /**
+     * Check if a node is interned.
+     *
+     * @param node The node.
+     * @return If the node is the interned node for its structure.
+     */
+    private boolean isInterned(ExpressionNode node) {
+        Key key;
+        if (node instanceof ExpressionNode.Literal) {
+            Value<?> value = ((ExpressionNode.Literal) node).getValue();
+            key = new Key(LITERAL, value.getType().ordinal(), value.getValue(), null);
+        } else if (node instanceof ExpressionNode.VariableReference) {
+            key = new Key(VARIABLE_REFERENCE, ((ExpressionNode.VariableReference) node).getId(), null, null);
+        } else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            key = new Key(BINARY, binary.getOperator().ordinal(), binary.getLeftExpr(), binary.getRightExpr());
+        } else if (node instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+            key = new Key(UNARY, unary.getOperator().ordinal(), unary.getExpr(), null);
+        } else {
+            return false;
+        }
+        return nodes.get(key) == node;
+    }
+
+    /**
+     * The structural key of an interned node.
+     * <p>
+     * Operand nodes are compared by identity, literal values by value.
+     */
+    private static final class Key {
+        private final int kind;
+        private final int n;
+        private final Object a;
+        private final Object b;
+        private final int hash;
+
+        /**
+         * Construct a new key.
+         *
+         * @param kind The node kind.
+         * @param n    The operator ordinal, literal type ordinal or identifier ID.
+         * @param a    The first operand or literal value, may be null.
+         * @param b    The second operand, may be null.
+         */
+        Key(int kind, int n, Object a, Object b) {
+            this.kind = kind;
+            this.n = n;
+            this.a = a;
+            this.b = b;
+            this.hash = 31 * (31 * (31 * kind + n) + (a == null ? 0 : a.hashCode())) + (b == null ? 0 : b.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            // Nodes do not override equals, so operands are compared by identity
+            return hash == key.hash && kind == key.kind && n == key.n
+                    && Objects.equals(a, key.a) && Objects.equals(b, key.b);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
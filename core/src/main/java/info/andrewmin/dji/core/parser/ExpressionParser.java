@@ -3,7 +3,8 @@ package info.andrewmin.dji.core.parser;
 import info.andrewmin.dji.core.ast.ExpressionNode;
 import info.andrewmin.dji.core.exceptions.ExpectedEntityException;
 import info.andrewmin.dji.core.exceptions.UnexpectedCharacterException;
-import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.lexer.SymbolTable;
+import info.andrewmin.dji.core.lexer.TokenBuffer;
 import info.andrewmin.dji.core.runtime.Value;
 import info.andrewmin.dji.core.tokens.*;
 
@@ -13,19 +14,63 @@ import java.util.logging.Logger;
 
 /**
  * An expression node parser.
+ * <p>
+ * Expressions are parsed by a Pratt parser.
+ * The prefix (operand) and infix (binary operator) rules of each symbol are looked up by its ordinal in tables
+ * built from the [SymbolTokenVariant] operator lists.
+ * All binary operators are left-associative, an operator binds its right operand with one more than its precedence.
  */
 final class ExpressionParser {
     private static final Logger LOGGER = Logger.getLogger(ExpressionParser.class.getName());
 
-    private final Lexer lexer;
+    // Prefix rules of symbols
+    private static final byte NO_PREFIX = 0;
+    private static final byte UNARY = 1;
+    private static final byte PARENTHESIS = 2;
+
+    private static final byte[] PREFIX_RULES;
+    // The precedence of each binary operator (-1 if the symbol is not a binary operator)
+    private static final int[] INFIX_PRECEDENCE;
+
+    static {
+        SymbolTokenVariant[] symbols = SymbolTokenVariant.values();
+        PREFIX_RULES = new byte[symbols.length];
+        INFIX_PRECEDENCE = new int[symbols.length];
+        for (SymbolTokenVariant symbol : symbols) {
+            if (SymbolTokenVariant.unaryOps.contains(symbol)) {
+                PREFIX_RULES[symbol.ordinal()] = UNARY;
+            } else if (symbol == SymbolTokenVariant.LPAREN) {
+                PREFIX_RULES[symbol.ordinal()] = PARENTHESIS;
+            }
+            INFIX_PRECEDENCE[symbol.ordinal()] = SymbolTokenVariant.binaryOps.contains(symbol)
+                    ? SymbolTokenVariant.binaryOpPrecedence(symbol)
+                    : -1;
+        }
+    }
+
+    private final TokenBuffer tokens;
+    private final SymbolTable symbols;
+    private final ExpressionInterner interner;
 
     /**
      * Construct a new expression node parser.
      *
-     * @param lexer The lexer.
+     * @param tokens The token buffer.
+     */
+    ExpressionParser(TokenBuffer tokens) {
+        this(tokens, null);
+    }
+
+    /**
+     * Construct a new expression node parser that shares identical expressions.
+     *
+     * @param tokens   The token buffer.
+     * @param interner The expression interner, null to always create new nodes.
      */
-    ExpressionParser(Lexer lexer) {
-        this.lexer = lexer;
+    ExpressionParser(TokenBuffer tokens, ExpressionInterner interner) {
+        this.tokens = tokens;
+        this.symbols = tokens.getSymbols();
+        this.interner = interner;
     }
 
     /**
@@ -34,10 +79,33 @@ final class ExpressionParser {
      * @return The next expression.
      */
     ExpressionNode parse() {
-        if (!lexer.hasNext()) {
-            throw new ExpectedEntityException("an expression", lexer.current().getEndLoc());
+        if (!tokens.hasNext()) {
+            throw new ExpectedEntityException("an expression", tokens.current().getEndLoc());
+        }
+        return parse(0);
+    }
+
+    /**
+     * Parse the next expression, only including binary operations with at least a minimum precedence.
+     *
+     * @param minPrecedence The minimum binary operation precedence.
+     * @return The next expression.
+     */
+    private ExpressionNode parse(int minPrecedence) {
+        ExpressionNode left = parsePrefix();
+        while (true) {
+            SymbolTokenVariant op = tokens.peekSymbol();
+            int precedence = op == null ? -1 : INFIX_PRECEDENCE[op.ordinal()];
+            if (precedence < minPrecedence) {
+                return left;
+            }
+            LOGGER.fine("Binary");
+            tokens.advance();
+            ExpressionNode right = parse(precedence + 1);
+            left = interner != null
+                    ? interner.binary(op, left, right)
+                    : new ExpressionNode.Binary(op, left, right);
         }
-        return parseBinaryRightExpr(0, parseWithoutBinary());
     }
 
     /**
@@ -45,101 +113,77 @@ final class ExpressionParser {
      *
      * @return The next expression.
      */
-    private ExpressionNode parseWithoutBinary() {
-        Token next = lexer.next();
+    private ExpressionNode parsePrefix() {
+        TokenKind kind = tokens.peekKind();
+        int next = tokens.position();
+        tokens.advance();
 
         // Literal
-        if (next instanceof LiteralToken) {
+        if (kind.isLiteral()) {
             LOGGER.fine("Literal");
-            return new ExpressionNode.Literal(Value.fromToken((LiteralToken<?>) next));
+            Value<?> value = Value.fromToken(tokens, next);
+            return interner != null ? interner.literal(value) : new ExpressionNode.Literal(value);
         }
         // VariableReference or FunctionCall
-        else if (next instanceof IdentifierToken) {
-            String name = ((IdentifierToken) next).getIdentifier();
+        else if (kind == TokenKind.IDENTIFIER) {
+            int id = tokens.identifier(next);
+            String name = symbols.name(id);
 
-            if (lexer.hasNext() && lexer.peek().isSymbol(SymbolTokenVariant.LPAREN)) {
+            if (tokens.peekSymbol(0) == SymbolTokenVariant.LPAREN) {
                 LOGGER.fine("Function call");
-                lexer.next();
+                tokens.advance();
                 List<ExpressionNode> args = new ArrayList<>();
 
                 // Get argument expressions, unless the function call has no args
-                if (!lexer.hasNext()) {
-                    throw new ExpectedEntityException(")", lexer.current().getEndLoc());
-                } else if (lexer.peek().isSymbol(SymbolTokenVariant.RPAREN)) {
-                    lexer.next();
+                if (!tokens.hasNext()) {
+                    throw new ExpectedEntityException(")", tokens.current().getEndLoc());
+                } else if (tokens.peekIsSymbol(SymbolTokenVariant.RPAREN)) {
+                    tokens.advance();
                 } else {
                     while (true) {
                         args.add(parse());
-                        if (!lexer.hasNext()) {
-                            throw new ExpectedEntityException(") or ,", lexer.current().getEndLoc());
-                        } else if (lexer.peek().isSymbol(SymbolTokenVariant.RPAREN)) {
-                            lexer.next();
+                        if (!tokens.hasNext()) {
+                            throw new ExpectedEntityException(") or ,", tokens.current().getEndLoc());
+                        }
+                        SymbolTokenVariant symbol = tokens.peekSymbol(0);
+                        if (symbol == SymbolTokenVariant.RPAREN) {
+                            tokens.advance();
                             break;
-                        } else if (lexer.peek().isSymbol(SymbolTokenVariant.COMMA)) {
-                            lexer.next();
+                        } else if (symbol == SymbolTokenVariant.COMMA) {
+                            tokens.advance();
                         } else {
-                            throw new UnexpectedCharacterException(lexer.peek());
+                            throw new UnexpectedCharacterException(tokens.peek());
                         }
                     }
                 }
 
-                return new ExpressionNode.FunctionCall(name, args);
+                return new ExpressionNode.FunctionCall(name, id, args);
             }
             LOGGER.fine("Variable reference");
-            return new ExpressionNode.VariableReference(name);
+            return interner != null
+                    ? interner.variableReference(name, id)
+                    : new ExpressionNode.VariableReference(name, id);
         }
-        // Unary
-        else if (next instanceof SymbolToken && SymbolTokenVariant.unaryOps.contains(((SymbolToken) next).getVariant())) {
-            LOGGER.fine("Unary");
-            return new ExpressionNode.Unary(((SymbolToken) next).getVariant(), parseWithoutBinary());
-        }
-        // Parenthesis
-        else if (next.isSymbol(SymbolTokenVariant.LPAREN)) {
-            LOGGER.fine("Parenthesis");
-            ExpressionNode node = parse();
-            lexer.next(SymbolTokenVariant.RPAREN);
-            return node;
-        }
-
-        throw new UnexpectedCharacterException(next);
-    }
-
-    /**
-     * Parse any binary operations using the shunting-yard algorithm.
-     *
-     * @param prevPrecedence The previous binary operation precedence
-     * @param leftExpr       The previously parsed expression node.
-     * @return The full expression.
-     */
-    private ExpressionNode parseBinaryRightExpr(int prevPrecedence, ExpressionNode leftExpr) {
-        while (true) {
-            LOGGER.fine("Right expr");
-            Token peek = lexer.peek();
-            if (!(peek instanceof SymbolToken && SymbolTokenVariant.binaryOps.contains(((SymbolToken) peek).getVariant()))) {
-                return leftExpr;
-            }
-
-            SymbolTokenVariant op = ((SymbolToken) peek).getVariant();
-            int precedence = SymbolTokenVariant.binaryOpPrecedence(op);
-
-            if (precedence < prevPrecedence) {
-                return leftExpr;
-            }
-
-            lexer.next(); // eat operator token
-
-            ExpressionNode rightExpr = parseWithoutBinary();
-
-            peek = lexer.peek();
-            int nextPrecedence = (peek instanceof SymbolToken)
-                    ? SymbolTokenVariant.binaryOpPrecedence(((SymbolToken) peek).getVariant())
-                    : -1;
-
-            if (precedence < nextPrecedence) {
-                rightExpr = parseBinaryRightExpr(precedence + 1, rightExpr);
+        // Unary or Parenthesis
+        else if (kind == TokenKind.SYMBOL) {
+            SymbolTokenVariant symbol = tokens.symbol(next);
+            switch (PREFIX_RULES[symbol.ordinal()]) {
+                case UNARY:
+                    LOGGER.fine("Unary");
+                    ExpressionNode expr = parsePrefix();
+                    return interner != null
+                            ? interner.unary(symbol, expr)
+                            : new ExpressionNode.Unary(symbol, expr);
+                case PARENTHESIS:
+                    LOGGER.fine("Parenthesis");
+                    ExpressionNode node = parse();
+                    tokens.next(SymbolTokenVariant.RPAREN);
+                    return node;
+                default:
+                    break;
             }
-
-            leftExpr = new ExpressionNode.Binary(op, leftExpr, rightExpr);
         }
+
+        throw new UnexpectedCharacterException(tokens.token(next));
     }
 }
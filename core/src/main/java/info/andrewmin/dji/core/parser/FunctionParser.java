@@ -5,13 +5,15 @@ import info.andrewmin.dji.core.ast.StatementNode;
 import info.andrewmin.dji.core.exceptions.ExpectedEntityException;
 import info.andrewmin.dji.core.exceptions.UnexpectedCharacterException;
 import info.andrewmin.dji.core.lexer.FileLoc;
-import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.lexer.SymbolTable;
+import info.andrewmin.dji.core.lexer.TokenBuffer;
 import info.andrewmin.dji.core.runtime.Var;
 import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
 import info.andrewmin.dji.core.tokens.TypeTokenVariant;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
@@ -20,17 +22,29 @@ import java.util.logging.Logger;
 final class FunctionParser {
     private static final Logger LOGGER = Logger.getLogger(FunctionParser.class.getName());
 
-    private final Lexer lexer;
+    private final TokenBuffer tokens;
+    private final SymbolTable symbols;
     private final StatementParser statementParser;
 
     /**
      * Construct a new function node parser.
      *
-     * @param lexer The lexer.
+     * @param tokens The token buffer.
      */
-    FunctionParser(Lexer lexer) {
-        this.lexer = lexer;
-        this.statementParser = new StatementParser(lexer);
+    FunctionParser(TokenBuffer tokens) {
+        this(tokens, null);
+    }
+
+    /**
+     * Construct a new function node parser that shares identical expressions.
+     *
+     * @param tokens   The token buffer.
+     * @param interner The expression interner, null to always create new nodes.
+     */
+    FunctionParser(TokenBuffer tokens, ExpressionInterner interner) {
+        this.tokens = tokens;
+        this.symbols = tokens.getSymbols();
+        this.statementParser = new StatementParser(tokens, interner);
     }
 
     /**
@@ -40,46 +54,81 @@ final class FunctionParser {
      */
     FunctionNode parse() {
         LOGGER.fine("Parsing function");
-        TypeTokenVariant type = lexer.nextType().getVariant();
-        String func = lexer.nextIdentifier().getIdentifier();
+        TypeTokenVariant type = tokens.nextType();
+        int id = tokens.nextIdentifier();
+        String func = symbols.name(id);
         LOGGER.fine("Name: " + func);
-        lexer.next(SymbolTokenVariant.LPAREN);
+        tokens.next(SymbolTokenVariant.LPAREN);
+        List<Var> parameters = parseParameters();
+
+        // Find the error location before parsing, the parameter tokens are dropped from a streaming buffer
+        FileLoc blockLoc = null;
+        if (tokens.hasNext() && !tokens.peekIsSymbol(SymbolTokenVariant.LBRACE)) {
+            blockLoc = tokens.endLoc(tokens.position() - 1);
+        }
+        StatementNode statement = statementParser.parse();
+        if (!(statement instanceof StatementNode.Block)) {
+            throw new ExpectedEntityException("a block", blockLoc);
+        }
+
+        LOGGER.info("Parsed function " + func);
+        return new FunctionNode(func, id, type, parameters, (StatementNode.Block) statement);
+    }
 
+    /**
+     * Parse the next function signature with its name, return type, and parameters.
+     * <p>
+     * The body is not part of the tokens, it is parsed on first use.
+     *
+     * @param bodyParser The parser of the function body.
+     * @return The next function.
+     */
+    FunctionNode parseSignature(Supplier<StatementNode.Block> bodyParser) {
+        LOGGER.fine("Parsing function signature");
+        TypeTokenVariant type = tokens.nextType();
+        int id = tokens.nextIdentifier();
+        String func = symbols.name(id);
+        LOGGER.fine("Name: " + func);
+        tokens.next(SymbolTokenVariant.LPAREN);
+        List<Var> parameters = parseParameters();
+
+        return new FunctionNode(func, id, type, parameters, bodyParser);
+    }
+
+    /**
+     * Parse the function parameters after the opening parenthesis, up to and including the closing parenthesis.
+     *
+     * @return The function parameters.
+     */
+    private List<Var> parseParameters() {
         List<Var> parameters = new ArrayList<>();
-        if (!lexer.hasNext()) {
-            throw new ExpectedEntityException(")", lexer.current().getEndLoc());
-        } else if (lexer.peek().isSymbol(SymbolTokenVariant.RPAREN)) {
-            lexer.next();
+        if (!tokens.hasNext()) {
+            throw new ExpectedEntityException(")", tokens.current().getEndLoc());
+        } else if (tokens.peekIsSymbol(SymbolTokenVariant.RPAREN)) {
+            tokens.advance();
         } else {
             while (true) {
-                Var parameter = new Var(
-                        lexer.nextType().getVariant(),
-                        lexer.nextIdentifier().getIdentifier()
-                );
+                TypeTokenVariant parameterType = tokens.nextType();
+                int parameterId = tokens.nextIdentifier();
+                Var parameter = new Var(parameterType, symbols.name(parameterId), parameterId);
                 parameters.add(parameter);
                 LOGGER.fine("Parameter: " + parameter);
 
-                if (!lexer.hasNext()) {
-                    throw new ExpectedEntityException(") or ,", lexer.current().getEndLoc());
-                } else if (lexer.peek().isSymbol(SymbolTokenVariant.RPAREN)) {
-                    lexer.next();
+                if (!tokens.hasNext()) {
+                    throw new ExpectedEntityException(") or ,", tokens.current().getEndLoc());
+                }
+                SymbolTokenVariant symbol = tokens.peekSymbol(0);
+                if (symbol == SymbolTokenVariant.RPAREN) {
+                    tokens.advance();
                     break;
-                } else if (lexer.peek().isSymbol(SymbolTokenVariant.COMMA)) {
-                    lexer.next();
+                } else if (symbol == SymbolTokenVariant.COMMA) {
+                    tokens.advance();
                 } else {
-                    throw new UnexpectedCharacterException(lexer.peek());
+                    throw new UnexpectedCharacterException(tokens.peek());
                 }
             }
         }
-
-        FileLoc loc = lexer.current().getEndLoc();
-        StatementNode statement = statementParser.parse();
-        if (!(statement instanceof StatementNode.Block)) {
-            throw new ExpectedEntityException("a block", loc);
-        }
-
-        LOGGER.info("Parsed function " + func);
-        return new FunctionNode(func, type, parameters, (StatementNode.Block) statement);
+        return parameters;
     }
 
 }
@@ -0,0 +1,196 @@
+package info.andrewmin.dji.core.parser;
+
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.exceptions.BaseUserException;
+import info.andrewmin.dji.core.lexer.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * A program parser that only parses function signatures up front.
+ * <p>
+ * A pre-scan finds the brace-balanced body of each top-level function, only the signature before it is lexed and parsed.
+ * Each body is lexed and parsed from its source span the first time its statements are requested,
+ * so functions that are never called are never parsed.
+ * If the pre-scan or any signature fails, the lazy parse is abandoned,
+ * so the caller can parse sequentially and report the same error.
+ *
+ * @see ProgramParser
+ * @see FunctionNode
+ */
+final class LazyProgramParser {
+    private static final Logger LOGGER = Logger.getLogger(LazyProgramParser.class.getName());
+
+    private final SourceBuffer source;
+    private final SymbolTable symbols;
+    private final ExpressionInterner interner;
+
+    /**
+     * Construct a new lazy program parser.
+     *
+     * @param source   The source buffer, must not be streaming.
+     * @param symbols  The symbol table to intern the program identifiers into.
+     * @param interner The expression interner shared by all bodies, null to always create new nodes.
+     */
+    LazyProgramParser(SourceBuffer source, SymbolTable symbols, ExpressionInterner interner) {
+        this.source = source;
+        this.symbols = symbols;
+        this.interner = interner;
+    }
+
+    /**
+     * Parse the signatures of all the functions of the program.
+     *
+     * @return The program functions in source order, null if the program could not be split or a signature failed.
+     */
+    List<FunctionNode> parse() {
+        List<FunctionNode> functions = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        int pos = 0;
+        while (true) {
+            int open = findBody(pos);
+            if (open < 0) {
+                // No tokens may follow the last function
+                if (!isBlank(pos)) {
+                    return null;
+                }
+                LOGGER.info("Parsed " + functions.size() + " function signatures");
+                return functions;
+            }
+            int close = findBodyEnd(open);
+            if (close < 0) {
+                return null;
+            }
+
+            FunctionNode function = parseSignature(pos, open, close);
+            // Duplicate functions are reported by the sequential parse, after any error before them
+            if (function == null || !names.add(function.getName())) {
+                return null;
+            }
+            functions.add(function);
+            pos = close;
+        }
+    }
+
+    /**
+     * Check if the rest of the source has no tokens.
+     *
+     * @param from The offset to check from.
+     * @return If there are only whitespace characters after the offset.
+     */
+    private boolean isBlank(int from) {
+        try {
+            TokenBuffer tokens = lex(from, source.length());
+            return !tokens.hasError() && !tokens.hasNext();
+        } catch (BaseUserException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parse a function signature.
+     *
+     * @param start     The starting offset of the signature (inclusive).
+     * @param bodyStart The starting offset of the body (the opening brace).
+     * @param bodyEnd   The ending offset of the body (after the closing brace).
+     * @return The function with a lazily parsed body, null if the signature could not be parsed.
+     */
+    private FunctionNode parseSignature(int start, int bodyStart, int bodyEnd) {
+        try {
+            TokenBuffer tokens = lex(start, bodyStart);
+            if (tokens.hasError()) {
+                return null;
+            }
+            FunctionNode function = new FunctionParser(tokens).parseSignature(() -> parseBody(bodyStart, bodyEnd));
+            return tokens.hasNext() ? null : function;
+        } catch (BaseUserException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Lex and parse a function body.
+     * <p>
+     * User errors are thrown as if the body was parsed with the rest of the program.
+     *
+     * @param start The starting offset of the body (the opening brace).
+     * @param end   The ending offset of the body (after the closing brace).
+     * @return The function block statement.
+     */
+    private StatementNode.Block parseBody(int start, int end) {
+        LOGGER.fine("Parsing lazy function body");
+        // The span starts with an opening brace, so the statement is always a block
+        return (StatementNode.Block) new StatementParser(lex(start, end), interner).parse();
+    }
+
+    /**
+     * Lex all the tokens in a range of the source into the program symbol table.
+     *
+     * @param start The starting offset (inclusive).
+     * @param end   The ending offset (exclusive).
+     * @return The tokens.
+     */
+    private TokenBuffer lex(int start, int end) {
+        TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator(source, start, end)));
+        SymbolTable local = tokens.getSymbols();
+        int[] ids = new int[local.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = symbols.intern(local.name(id));
+        }
+        tokens.remapIdentifiers(ids, symbols);
+        return tokens;
+    }
+
+    /**
+     * Find the opening brace of the next function body.
+     * <p>
+     * String and character literals are skipped with {@link Lexer#skipLiteral(SourceBuffer, int)}.
+     *
+     * @param from The offset to start searching from.
+     * @return The offset of the opening brace, -1 if there is none or a closing brace comes first.
+     */
+    private int findBody(int from) {
+        int length = source.length();
+        for (int i = from; i < length; i++) {
+            char c = source.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = Lexer.skipLiteral(source, i);
+            } else if (c == '{') {
+                return i;
+            } else if (c == '}') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the end of a function body.
+     *
+     * @param open The offset of the opening brace.
+     * @return The offset after the matching closing brace, -1 if the braces are not balanced.
+     */
+    private int findBodyEnd(int open) {
+        int length = source.length();
+        int depth = 0;
+        for (int i = open; i < length; i++) {
+            char c = source.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = Lexer.skipLiteral(source, i);
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,160 @@
+package info.andrewmin.dji.core.parser;
+
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.exceptions.BaseUserException;
+import info.andrewmin.dji.core.lexer.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A program parser that lexes and parses large programs on the fork-join pool.
+ * <p>
+ * A pre-scan splits the source into batches of whole top-level functions at brace-balanced boundaries.
+ * The batches are lexed in parallel, their symbol tables are merged in source order,
+ * and then the batches are parsed in parallel.
+ * If any batch has a user error, the parse is abandoned, so the caller can parse sequentially and report the same
+ * error. Internal errors are not hidden by the sequential parse, they are thrown.
+ *
+ * @see ProgramParser
+ */
+final class ParallelProgramParser {
+    /**
+     * The minimum number of characters in a batch.
+     */
+    static final int BATCH_SIZE = 1 << 16;
+
+    private final SourceBuffer source;
+    private final ExpressionInterner interner;
+
+    /**
+     * Construct a new parallel program parser.
+     *
+     * @param source   The source buffer.
+     * @param interner The expression interner shared by all batches, null to always create new nodes.
+     */
+    ParallelProgramParser(SourceBuffer source, ExpressionInterner interner) {
+        this.source = source;
+        this.interner = interner;
+    }
+
+    /**
+     * Parse all the functions of the program.
+     *
+     * @param symbols The symbol table to intern the program identifiers into.
+     * @return The program functions in source order, null if the program could not be split or any batch failed.
+     */
+    List<FunctionNode> parse(SymbolTable symbols) {
+        int[] splits = split();
+        int batches = splits.length - 1;
+        if (batches < 2) {
+            return null;
+        }
+
+        TokenBuffer[] tokens = new TokenBuffer[batches];
+        IntStream.range(0, batches).parallel().forEach(i -> tokens[i] = lexBatch(splits[i], splits[i + 1]));
+        for (TokenBuffer batch : tokens) {
+            if (batch == null) {
+                return null;
+            }
+        }
+
+        // Merge in source order, so identifiers get the same IDs as when lexing sequentially
+        for (TokenBuffer batch : tokens) {
+            SymbolTable local = batch.getSymbols();
+            int[] ids = new int[local.size()];
+            for (int id = 0; id < ids.length; id++) {
+                ids[id] = symbols.intern(local.name(id));
+            }
+            batch.remapIdentifiers(ids, symbols);
+        }
+
+        List<List<FunctionNode>> parsed = new ArrayList<>(batches);
+        for (int i = 0; i < batches; i++) {
+            parsed.add(null);
+        }
+        IntStream.range(0, batches).parallel().forEach(i -> parsed.set(i, parseBatch(tokens[i])));
+
+        List<FunctionNode> functions = new ArrayList<>();
+        for (List<FunctionNode> batch : parsed) {
+            if (batch == null) {
+                return null;
+            }
+            functions.addAll(batch);
+        }
+        return functions;
+    }
+
+    /**
+     * Lex all the tokens of a batch.
+     *
+     * @param start The starting offset of the batch (inclusive).
+     * @param end   The ending offset of the batch (exclusive).
+     * @return The batch tokens, null if the batch could not be lexed.
+     */
+    private TokenBuffer lexBatch(int start, int end) {
+        try {
+            TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator(source, start, end)));
+            return tokens.hasError() ? null : tokens;
+        } catch (BaseUserException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse all the functions of a batch.
+     *
+     * @param tokens The batch tokens.
+     * @return The batch functions, null if the batch could not be parsed.
+     */
+    private List<FunctionNode> parseBatch(TokenBuffer tokens) {
+        FunctionParser functionParser = new FunctionParser(tokens, interner);
+        List<FunctionNode> functions = new ArrayList<>();
+        try {
+            while (tokens.hasNext()) {
+                functions.add(functionParser.parse());
+            }
+        } catch (BaseUserException e) {
+            return null;
+        }
+        return functions;
+    }
+
+    /**
+     * Find the batch boundaries.
+     * <p>
+     * A batch ends after a closing brace at brace depth 0 once it has at least {@link #BATCH_SIZE} characters.
+     * String and character literals are skipped with {@link Lexer#skipLiteral(SourceBuffer, int)},
+     * so every boundary is also a token boundary.
+     *
+     * @return The batch boundary offsets, including the start and end of the source.
+     */
+    private int[] split() {
+        List<Integer> splits = new ArrayList<>();
+        splits.add(0);
+
+        int length = source.length();
+        int depth = 0;
+        int batchStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = Lexer.skipLiteral(source, i);
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0 && i + 1 - batchStart >= BATCH_SIZE) {
+                    batchStart = i + 1;
+                    splits.add(batchStart);
+                }
+            }
+        }
+
+        if (batchStart < length) {
+            splits.add(length);
+        }
+        return splits.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -4,9 +4,13 @@ import info.andrewmin.dji.core.ast.FunctionNode;
 import info.andrewmin.dji.core.ast.ProgramNode;
 import info.andrewmin.dji.core.exceptions.InvalidIdentifierException;
 import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.lexer.SymbolTable;
+import info.andrewmin.dji.core.lexer.TokenBuffer;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.logging.Logger;
 
 /**
  * A program node parser.
@@ -18,8 +22,18 @@ import java.util.Map;
  * @see ExpressionParser
  */
 public final class ProgramParser {
+    private static final Logger LOGGER = Logger.getLogger(ProgramParser.class.getName());
+
+    /**
+     * The minimum number of source characters to lex and parse in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 4 * ParallelProgramParser.BATCH_SIZE;
+
     private final Lexer lexer;
-    private final FunctionParser functionParser;
+    private final boolean pipelined;
+    private final boolean parallel;
+    private final ExpressionInterner interner;
+    private TokenBuffer tokens;
 
     /**
      * Construct a new program node parser.
@@ -27,8 +41,68 @@ public final class ProgramParser {
      * @param lexer The lexer.
      */
     public ProgramParser(Lexer lexer) {
+        this(lexer, false);
+    }
+
+    /**
+     * Construct a new program node parser that can run the lexer on its own thread.
+     *
+     * @param lexer     The lexer.
+     * @param pipelined If the lexer should run on its own thread.
+     * @see TokenBuffer#pipelined(Lexer)
+     */
+    public ProgramParser(Lexer lexer, boolean pipelined) {
+        this(lexer, pipelined, false);
+    }
+
+    /**
+     * Construct a new program node parser that can run the lexer on its own thread and share identical expressions.
+     * <p>
+     * With hash-consing, structurally identical pure expressions (e.g. repeated in generated code)
+     * are parsed into a single shared node.
+     *
+     * @param lexer       The lexer.
+     * @param pipelined   If the lexer should run on its own thread.
+     * @param hashConsing If identical expressions should be shared.
+     * @see ExpressionInterner
+     */
+    public ProgramParser(Lexer lexer, boolean pipelined, boolean hashConsing) {
+        this(lexer, pipelined, hashConsing, false);
+    }
+
+    /**
+     * Construct a new program node parser that can run the lexer on its own thread, share identical expressions
+     * and lex and parse large sources in parallel.
+     * <p>
+     * In parallel, sources of at least 256K characters are lexed and parsed on the fork-join pool
+     * if no tokens have been consumed from the lexer and the source can be rescanned,
+     * otherwise they are parsed on a single thread (pipelined or not).
+     *
+     * @param lexer       The lexer.
+     * @param pipelined   If the lexer should run on its own thread.
+     * @param hashConsing If identical expressions should be shared.
+     * @param parallel    If large sources should be lexed and parsed in parallel.
+     * @see ParallelProgramParser
+     */
+    public ProgramParser(Lexer lexer, boolean pipelined, boolean hashConsing, boolean parallel) {
         this.lexer = lexer;
-        this.functionParser = new FunctionParser(lexer);
+        this.pipelined = pipelined;
+        this.parallel = parallel;
+        this.interner = hashConsing ? new ExpressionInterner() : null;
+        this.tokens = null;
+    }
+
+    /**
+     * Construct a new program node parser from a token buffer.
+     *
+     * @param tokens The token buffer.
+     */
+    public ProgramParser(TokenBuffer tokens) {
+        this.lexer = null;
+        this.pipelined = false;
+        this.parallel = false;
+        this.interner = null;
+        this.tokens = tokens;
     }
 
     /**
@@ -37,14 +111,85 @@ public final class ProgramParser {
      * @return The entire program abstract syntax tree.
      */
     public ProgramNode parse() {
-        Map<String, FunctionNode> functions = new HashMap<>();
-        while (lexer.hasNext()) {
-            FunctionNode function = functionParser.parse();
-            if (functions.containsKey(function.getName())) {
-                throw new InvalidIdentifierException(function.getName());
+        if (tokens == null) {
+            if (parallel && lexer.canRescan() && lexer.getSource().length() >= PARALLEL_THRESHOLD) {
+                SymbolTable symbols = new SymbolTable();
+                List<FunctionNode> parsed = new ParallelProgramParser(lexer.getSource(), interner).parse(symbols);
+                if (parsed != null) {
+                    LOGGER.info("Parsed program in parallel");
+                    Map<String, FunctionNode> functions = new LinkedHashMap<>();
+                    for (FunctionNode function : parsed) {
+                        addFunction(functions, function);
+                    }
+                    logInterned();
+                    return new ProgramNode(List.copyOf(functions.values()), symbols);
+                }
+                // Parse sequentially to report the error
+                LOGGER.info("Parallel parse failed, parsing sequentially");
+            }
+            tokens = pipelined ? TokenBuffer.pipelined(lexer) : new TokenBuffer(lexer);
+        }
+
+        FunctionParser functionParser = new FunctionParser(tokens, interner);
+        Map<String, FunctionNode> functions = new LinkedHashMap<>();
+        try {
+            while (tokens.hasNext()) {
+                addFunction(functions, functionParser.parse());
+            }
+        } finally {
+            // Stop the lexer thread if parsing failed
+            tokens.close();
+        }
+        logInterned();
+        return new ProgramNode(List.copyOf(functions.values()), tokens.getSymbols());
+    }
+
+    /**
+     * Parse the program abstract syntax tree with lazily parsed function bodies.
+     * <p>
+     * Only the function signatures are parsed up front, each body is parsed on its first call,
+     * so syntax errors in a body are only reported once the function is called.
+     * Falls back to a full parse for streaming sources, if tokens have already been consumed from the lexer,
+     * or if the signatures could not be parsed (to report the error).
+     *
+     * @return The program abstract syntax tree.
+     * @see LazyProgramParser
+     */
+    public ProgramNode parseLazily() {
+        if (tokens == null && lexer.canRescan()) {
+            SymbolTable symbols = new SymbolTable();
+            List<FunctionNode> parsed = new LazyProgramParser(lexer.getSource(), symbols, interner).parse();
+            if (parsed != null) {
+                Map<String, FunctionNode> functions = new LinkedHashMap<>();
+                for (FunctionNode function : parsed) {
+                    addFunction(functions, function);
+                }
+                return new ProgramNode(List.copyOf(functions.values()), symbols);
             }
-            functions.put(function.getName(), function);
+            LOGGER.info("Lazy parse failed, parsing sequentially");
+        }
+        return parse();
+    }
+
+    /**
+     * Log the number of shared expressions, if hash-consing.
+     */
+    private void logInterned() {
+        if (interner != null) {
+            LOGGER.info("Shared " + interner.size() + " distinct expressions");
+        }
+    }
+
+    /**
+     * Add a function to the program functions.
+     *
+     * @param functions The program functions.
+     * @param function  The function.
+     */
+    private static void addFunction(Map<String, FunctionNode> functions, FunctionNode function) {
+        if (functions.containsKey(function.getName())) {
+            throw new InvalidIdentifierException(function.getName());
         }
-        return new ProgramNode(functions);
+        functions.put(function.getName(), function);
     }
 }
@@ -3,7 +3,9 @@ package info.andrewmin.dji.core.parser;
 import info.andrewmin.dji.core.ast.ExpressionNode;
 import info.andrewmin.dji.core.ast.StatementNode;
 import info.andrewmin.dji.core.exceptions.ExpectedEntityException;
-import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.lexer.SymbolTable;
+import info.andrewmin.dji.core.lexer.TokenBuffer;
+import info.andrewmin.dji.core.runtime.Value;
 import info.andrewmin.dji.core.tokens.*;
 
 import java.util.ArrayList;
@@ -16,17 +18,31 @@ import java.util.logging.Logger;
 final class StatementParser {
     private static final Logger LOGGER = Logger.getLogger(StatementParser.class.getName());
 
-    private final Lexer lexer;
+    private final TokenBuffer tokens;
+    private final SymbolTable symbols;
     private final ExpressionParser expressionParser;
+    private final ExpressionInterner interner;
 
     /**
      * Construct a new statement node parser.
      *
-     * @param lexer The lexer.
+     * @param tokens The token buffer.
      */
-    StatementParser(Lexer lexer) {
-        this.lexer = lexer;
-        this.expressionParser = new ExpressionParser(lexer);
+    StatementParser(TokenBuffer tokens) {
+        this(tokens, null);
+    }
+
+    /**
+     * Construct a new statement node parser that shares identical expressions.
+     *
+     * @param tokens   The token buffer.
+     * @param interner The expression interner, null to always create new nodes.
+     */
+    StatementParser(TokenBuffer tokens, ExpressionInterner interner) {
+        this.tokens = tokens;
+        this.symbols = tokens.getSymbols();
+        this.expressionParser = new ExpressionParser(tokens, interner);
+        this.interner = interner;
     }
 
     /**
@@ -35,18 +51,21 @@ final class StatementParser {
      * @return The next statement.
      */
     StatementNode parse() {
-        Token peek = lexer.peek();
+        // Classify the next token once, instead of re-checking it for each kind of statement
+        TokenKind kind = tokens.peekKind();
+        SymbolTokenVariant symbol = tokens.peekSymbol(0);
+        KeywordTokenVariant keyword = tokens.peekKeyword(0);
         // Block
-        if (peek.isSymbol(SymbolTokenVariant.LBRACE)) {
+        if (symbol == SymbolTokenVariant.LBRACE) {
             LOGGER.fine("Block statement");
-            lexer.next();
+            tokens.advance();
             List<StatementNode> statements = new ArrayList<>();
             while (true) {
                 statements.add(parse());
-                if (!lexer.hasNext()) {
-                    throw new ExpectedEntityException("}", lexer.current().getEndLoc());
-                } else if (lexer.peek().isSymbol(SymbolTokenVariant.RBRACE)) {
-                    lexer.next();
+                if (!tokens.hasNext()) {
+                    throw new ExpectedEntityException("}", tokens.current().getEndLoc());
+                } else if (tokens.peekIsSymbol(SymbolTokenVariant.RBRACE)) {
+                    tokens.advance();
                     break;
                 }
             }
@@ -54,101 +73,103 @@ final class StatementParser {
             return new StatementNode.Block(statements);
         }
         // VariableDeclaration
-        else if (peek instanceof TypeToken) {
+        else if (kind == TokenKind.TYPE) {
             LOGGER.fine("Variable declaration statement");
-            TypeTokenVariant type = lexer.nextType().getVariant();
-            String var = lexer.nextIdentifier().getIdentifier();
+            TypeTokenVariant type = tokens.nextType();
+            int id = tokens.nextIdentifier();
+            String var = symbols.name(id);
             ExpressionNode expr;
 
-            if (lexer.peek().isSymbol(SymbolTokenVariant.ASSIGN)) {
-                lexer.next();
+            if (tokens.peekIsSymbol(SymbolTokenVariant.ASSIGN)) {
+                tokens.advance();
                 expr = expressionParser.parse();
             } else {
-                expr = new ExpressionNode.Literal(TypeTokenVariant.defaultValue(type));
+                Value<?> value = TypeTokenVariant.defaultValue(type);
+                expr = interner != null ? interner.literal(value) : new ExpressionNode.Literal(value);
             }
 
-            lexer.next(SymbolTokenVariant.SEMICOLON);
+            tokens.next(SymbolTokenVariant.SEMICOLON);
 
-            return new StatementNode.VariableDeclaration(var, type, expr);
+            return new StatementNode.VariableDeclaration(var, id, type, expr);
         }
         // If
-        else if (peek.isKeyword(KeywordTokenVariant.IF)) {
+        else if (keyword == KeywordTokenVariant.IF) {
             LOGGER.fine("If statement");
-            lexer.next();
-            lexer.next(SymbolTokenVariant.LPAREN);
+            tokens.advance();
+            tokens.next(SymbolTokenVariant.LPAREN);
             ExpressionNode condition = expressionParser.parse();
-            lexer.next(SymbolTokenVariant.RPAREN);
+            tokens.next(SymbolTokenVariant.RPAREN);
             StatementNode body = parse();
             StatementNode _else = null;
 
-            if (lexer.peek().isKeyword(KeywordTokenVariant.ELSE)) {
-                lexer.next();
+            if (tokens.peekIsKeyword(KeywordTokenVariant.ELSE)) {
+                tokens.advance();
                 _else = parse();
             }
 
             return new StatementNode.If(condition, body, _else);
         }
         // For
-        else if (peek.isKeyword(KeywordTokenVariant.FOR)) {
+        else if (keyword == KeywordTokenVariant.FOR) {
             LOGGER.fine("For statement");
-            lexer.next();
-            lexer.next(SymbolTokenVariant.LPAREN);
+            tokens.advance();
+            tokens.next(SymbolTokenVariant.LPAREN);
             StatementNode init = parse();
             ExpressionNode condition = expressionParser.parse();
-            lexer.next(SymbolTokenVariant.SEMICOLON);
+            tokens.next(SymbolTokenVariant.SEMICOLON);
             ExpressionNode post = expressionParser.parse();
-            lexer.next(SymbolTokenVariant.RPAREN);
+            tokens.next(SymbolTokenVariant.RPAREN);
             StatementNode body = parse();
 
             return new StatementNode.For(init, condition, post, body);
         }
         // While
-        else if (peek.isKeyword(KeywordTokenVariant.WHILE)) {
+        else if (keyword == KeywordTokenVariant.WHILE) {
             LOGGER.fine("While statement");
-            lexer.next();
-            lexer.next(SymbolTokenVariant.LPAREN);
+            tokens.advance();
+            tokens.next(SymbolTokenVariant.LPAREN);
             ExpressionNode condition = expressionParser.parse();
-            lexer.next(SymbolTokenVariant.RPAREN);
+            tokens.next(SymbolTokenVariant.RPAREN);
             StatementNode body = parse();
 
             return new StatementNode.While(condition, body);
         }
         // Break
-        else if (peek.isKeyword(KeywordTokenVariant.BREAK)) {
+        else if (keyword == KeywordTokenVariant.BREAK) {
             LOGGER.fine("Break statement");
-            lexer.next();
-            lexer.next(SymbolTokenVariant.SEMICOLON);
+            tokens.advance();
+            tokens.next(SymbolTokenVariant.SEMICOLON);
 
             return new StatementNode.Break();
         }
         // Continue
-        else if (peek.isKeyword(KeywordTokenVariant.CONTINUE)) {
+        else if (keyword == KeywordTokenVariant.CONTINUE) {
             LOGGER.fine("Continue statement");
-            lexer.next();
-            lexer.next(SymbolTokenVariant.SEMICOLON);
+            tokens.advance();
+            tokens.next(SymbolTokenVariant.SEMICOLON);
 
             return new StatementNode.Continue();
         }
         // Return
-        else if (peek.isKeyword(KeywordTokenVariant.RETURN)) {
+        else if (keyword == KeywordTokenVariant.RETURN) {
             LOGGER.fine("Return statement");
-            lexer.next();
+            tokens.advance();
             ExpressionNode expr = expressionParser.parse();
-            lexer.next(SymbolTokenVariant.SEMICOLON);
+            tokens.next(SymbolTokenVariant.SEMICOLON);
 
             return new StatementNode.Return(expr);
         }
         // No-op
-        else if (peek.isSymbol(SymbolTokenVariant.SEMICOLON)) {
+        else if (symbol == SymbolTokenVariant.SEMICOLON) {
             LOGGER.fine("Semicolon statement");
-            lexer.next();
+            tokens.advance();
             return parse();
         }
         // Expression
         else {
             LOGGER.fine("Expression statement");
             ExpressionNode expr = expressionParser.parse();
-            lexer.next(SymbolTokenVariant.SEMICOLON);
+            tokens.next(SymbolTokenVariant.SEMICOLON);
 
             return new StatementNode.Expression(expr);
         }
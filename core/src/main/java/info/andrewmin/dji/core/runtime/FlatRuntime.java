@@ -0,0 +1,366 @@
+package info.andrewmin.dji.core.runtime;
+
+import info.andrewmin.dji.core.ast.FlatProgram;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.checker.TypeChecker;
+import info.andrewmin.dji.core.exceptions.*;
+import info.andrewmin.dji.core.lexer.SymbolTable;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A runtime interpreter engine that walks a flat program.
+ * <p>
+ * Runs programs exactly like {@link Runtime} (including its control flow and error behavior),
+ * but dispatches on node kinds stored in arrays instead of node classes.
+ * Only function calls are logged, per node logging is left to the object tree engine.
+ *
+ * @see FlatProgram
+ * @see RuntimeContext
+ */
+public final class FlatRuntime {
+    private static final Logger LOGGER = Logger.getLogger(FlatRuntime.class.getName());
+
+    /**
+     * The name of the main function.
+     */
+    private static final String MAIN_FUNC = "main";
+
+    private final RuntimeContext context;
+    private final FlatProgram program;
+    private final SymbolTable symbols;
+    // Null if the program has no type errors
+    private final BaseUserException typeError;
+
+    /**
+     * Construct a new flat runtime interpreter engine.
+     * <p>
+     * The program is flattened and type checked here, so the object tree can be dropped before running.
+     * Lazily parsed function bodies are all parsed and checked by flattening.
+     *
+     * @param program The program node.
+     */
+    public FlatRuntime(ProgramNode program) {
+        this.context = new RuntimeContext();
+        this.program = FlatProgram.flatten(program);
+        this.symbols = this.program.getSymbols();
+
+        // Reported when running after any error about the main function, like the object tree engine
+        BaseUserException typeError = null;
+        FunctionNode main = program.getMain();
+        if (main != null && main.getParameters().isEmpty()) {
+            try {
+                new TypeChecker(program).checkAll();
+            } catch (BaseUserException e) {
+                typeError = e;
+            }
+        }
+        this.typeError = typeError;
+    }
+
+    /**
+     * Run the program and get the return value of the main function.
+     * <p>
+     * Type errors are reported before the program runs.
+     *
+     * @return The return value of the main function.
+     */
+    public Value<?> runProgram() {
+        int main = symbols.lookup(MAIN_FUNC);
+        if (program.getFunctionBody(main) == FlatProgram.NONE) {
+            throw new NoMainException();
+        } else if (!program.getParameters(main).isEmpty()) {
+            throw new InvalidArgumentException(MAIN_FUNC, program.getParameters(main), List.of());
+        } else if (typeError != null) {
+            throw typeError;
+        }
+        return run(main, List.of());
+    }
+
+    /**
+     * Run a function with arguments.
+     *
+     * @param function The identifier ID of the function name.
+     * @param args     The arguments.
+     * @return The function's return value.
+     */
+    private Value<?> run(int function, List<Value<?>> args) {
+        String name = symbols.name(function);
+        LOGGER.info("Running function " + name);
+        RuntimeStore store = new RuntimeStore(name);
+
+        // Push arguments
+        List<Var> parameters = program.getParameters(function);
+        if (parameters.size() != args.size()) {
+            throw new InvalidArgumentException(name, parameters, args);
+        }
+        for (int i = 0; i < parameters.size(); i++) {
+            Var parameter = parameters.get(i);
+            if (parameter.getType() != args.get(i).getType()) {
+                throw new InvalidArgumentException(name, parameters, args);
+            }
+            store.put(parameter.getId(), parameter.getName(), args.get(i));
+        }
+
+        // Run statements
+        TypeTokenVariant returnType = program.getReturnType(function);
+        int body = program.getFunctionBody(function);
+        int start = program.first(body);
+        int end = start + program.second(body);
+        for (int i = start; i < end; i++) {
+            run(store, program.list(i));
+            if (context.getReturnValue() != null) {
+                Value<?> ret = context.getReturnValue();
+                context.resetReturnValue();
+
+                if (returnType != ret.getType()) {
+                    throw new TypeMismatchException(returnType, ret.getType());
+                }
+                return ret;
+            }
+        }
+
+        if (returnType != TypeTokenVariant.VOID) {
+            throw new MissingReturnException(name);
+        }
+        return null;
+    }
+
+    /**
+     * Run a statement.
+     *
+     * @param store The variable store for the current function.
+     * @param node  The statement node index, may be {@link FlatProgram#NONE}.
+     */
+    private void run(RuntimeStore store, int node) {
+        // Skip statements until end of loop if break or continue is called.
+        RuntimeLoopState loopState = context.getLoopState();
+        if (loopState.getFlowState() != RuntimeLoopState.Flow.NONE || node == FlatProgram.NONE) {
+            return;
+        }
+
+        switch (program.kind(node)) {
+            case FlatProgram.BLOCK: {
+                int start = program.first(node);
+                int end = start + program.second(node);
+                for (int i = start; i < end; i++) {
+                    run(store, program.list(i));
+                }
+                break;
+            }
+            case FlatProgram.VARIABLE_DECLARATION: {
+                int id = program.first(node);
+                TypeTokenVariant type = program.type(node);
+                Value<?> value = eval(store, program.third(node));
+
+                if (type == TypeTokenVariant.VOID) {
+                    throw new VoidTypeException(symbols.name(id));
+                } else if (type != value.getType()) {
+                    throw new TypeMismatchException(type, value.getType());
+                }
+                store.put(id, symbols.name(id), value);
+                break;
+            }
+            case FlatProgram.IF:
+                if (eval(store, program.first(node)).isTrue()) {
+                    run(store, program.second(node));
+                } else {
+                    run(store, program.third(node));
+                }
+                break;
+            case FlatProgram.FOR: {
+                int condition = program.second(node);
+                int post = program.list(program.third(node));
+                int body = program.list(program.third(node) + 1);
+
+                loopState.loopStart();
+                store.pushScope();
+                for (run(store, program.first(node)); eval(store, condition).isTrue(); eval(store, post)) {
+                    if (loopState.getFlowState() == RuntimeLoopState.Flow.BREAK) {
+                        break;
+                    } else if (loopState.getFlowState() == RuntimeLoopState.Flow.CONTINUE) {
+                        loopState.setFlowState(RuntimeLoopState.Flow.NONE);
+                    }
+                    run(store, body);
+                }
+                loopState.loopEnd();
+                store.popScope();
+                break;
+            }
+            case FlatProgram.WHILE: {
+                int condition = program.first(node);
+                int body = program.second(node);
+
+                loopState.loopStart();
+                store.pushScope();
+                while (eval(store, condition).isTrue()) {
+                    if (loopState.getFlowState() == RuntimeLoopState.Flow.BREAK) {
+                        break;
+                    } else if (loopState.getFlowState() == RuntimeLoopState.Flow.CONTINUE) {
+                        loopState.setFlowState(RuntimeLoopState.Flow.NONE);
+                    }
+                    run(store, body);
+                }
+                loopState.loopEnd();
+                store.popScope();
+                break;
+            }
+            case FlatProgram.BREAK:
+                if (!loopState.inLoop()) {
+                    throw new InvalidFlowStatementException("break");
+                }
+                loopState.setFlowState(RuntimeLoopState.Flow.BREAK);
+                break;
+            case FlatProgram.CONTINUE:
+                if (!loopState.inLoop()) {
+                    throw new InvalidFlowStatementException("continue");
+                }
+                loopState.setFlowState(RuntimeLoopState.Flow.CONTINUE);
+                break;
+            case FlatProgram.RETURN:
+                context.setReturnValue(eval(store, program.first(node)));
+                break;
+            case FlatProgram.EXPRESSION:
+                eval(store, program.first(node));
+                break;
+            default:
+                throw new InternalException("Unhandled statement kind: " + program.kind(node));
+        }
+    }
+
+    /**
+     * Run an expression and get it's value.
+     *
+     * @param store The variable store for the current function.
+     * @param node  The expression node index.
+     * @return The expression's value.
+     */
+    private Value<?> eval(RuntimeStore store, int node) {
+        switch (program.kind(node)) {
+            case FlatProgram.LITERAL:
+                return program.constant(program.first(node));
+            case FlatProgram.VARIABLE_REFERENCE: {
+                int id = program.first(node);
+                return store.get(id, symbols.name(id));
+            }
+            case FlatProgram.FUNCTION_CALL: {
+                int id = program.first(node);
+                if (program.getFunctionBody(id) == FlatProgram.NONE) {
+                    throw new UnresolvedIdentifierException(symbols.name(id));
+                }
+
+                int start = program.second(node);
+                int count = program.third(node);
+                List<Value<?>> args = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    args.add(eval(store, program.list(start + i)));
+                }
+
+                return run(id, args);
+            }
+            case FlatProgram.BINARY:
+                return evalBinary(store, node);
+            case FlatProgram.UNARY: {
+                Value<?> value = eval(store, program.second(node));
+                SymbolTokenVariant op = program.operator(node);
+
+                if (op == SymbolTokenVariant.SUB) {
+                    return value.negate();
+                } else if (op == SymbolTokenVariant.NOT) {
+                    return value.not();
+                } else {
+                    throw new InternalException("Unhandled unary: " + op);
+                }
+            }
+            default:
+                throw new InternalException("Unhandled expression kind: " + program.kind(node));
+        }
+    }
+
+    /**
+     * Run a binary expression and get it's value.
+     *
+     * @param store The variable store for the current function.
+     * @param node  The binary node index.
+     * @return The expression's value.
+     */
+    private Value<?> evalBinary(RuntimeStore store, int node) {
+        int left = program.second(node);
+        Value<?> leftValue = eval(store, left);
+        Value<?> rightValue = eval(store, program.third(node));
+        SymbolTokenVariant op = program.operator(node);
+
+        // Left hand variable
+        if (program.kind(left) == FlatProgram.VARIABLE_REFERENCE) {
+            Value<?> newValue;
+            switch (op) {
+                case ADD_ASSIGN:
+                    newValue = leftValue.add(rightValue);
+                    break;
+                case SUB_ASSIGN:
+                    newValue = leftValue.sub(rightValue);
+                    break;
+                case MUL_ASSIGN:
+                    newValue = leftValue.mul(rightValue);
+                    break;
+                case QUO_ASSIGN:
+                    newValue = leftValue.quo(rightValue);
+                    break;
+                case REM_ASSIGN:
+                    newValue = leftValue.rem(rightValue);
+                    break;
+                case ASSIGN:
+                    newValue = rightValue;
+                    break;
+                default:
+                    newValue = null;
+            }
+
+            if (newValue != null) {
+                int id = program.first(left);
+                store.put(id, symbols.name(id), newValue);
+                return newValue;
+            }
+        }
+        // Non-left hand variable
+        switch (op) {
+            case ADD:
+                return leftValue.add(rightValue);
+            case SUB:
+                return leftValue.sub(rightValue);
+            case MUL:
+                return leftValue.mul(rightValue);
+            case QUO:
+                return leftValue.quo(rightValue);
+            case REM:
+                return leftValue.rem(rightValue);
+            case EQL:
+                return new Value.Boolean(leftValue.eql(rightValue));
+            case LSS:
+                return new Value.Boolean(leftValue.lss(rightValue));
+            case GTR:
+                return new Value.Boolean(leftValue.gtr(rightValue));
+            case NEQ:
+                return new Value.Boolean(leftValue.neq(rightValue));
+            case LEQ:
+                return new Value.Boolean(leftValue.leq(rightValue));
+            case GEQ:
+                return new Value.Boolean(leftValue.geq(rightValue));
+            case LAND:
+                return new Value.Boolean(leftValue.land(rightValue));
+            case LOR:
+                return new Value.Boolean(leftValue.lor(rightValue));
+            default:
+                if (op.ordinal() >= SymbolTokenVariant.ADD_ASSIGN.ordinal()
+                        && op.ordinal() <= SymbolTokenVariant.ASSIGN.ordinal()) {
+                    throw new ExpectedVariableException(op);
+                }
+                throw new InternalException("Unhandled binary: " + op);
+        }
+    }
+}
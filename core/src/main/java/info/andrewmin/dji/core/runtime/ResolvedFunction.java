@@ -0,0 +1,91 @@
+package info.andrewmin.dji.core.runtime;
+
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+
+import java.util.List;
+
+/**
+ * A function with its variables resolved to frame slots.
+ *
+ * @see SlotResolver
+ */
+public final class ResolvedFunction {
+    private final FunctionNode function;
+    private final int[] parameterSlots;
+    private final List<StatementNode> statements;
+    private final String[] slotNames;
+    private final boolean checked;
+
+    /**
+     * Construct a new resolved function.
+     *
+     * @param function       The function node.
+     * @param parameterSlots The slots of the parameters.
+     * @param statements     The resolved body statements.
+     * @param slotNames      The variable names indexed by slot.
+     * @param checked        If the types of the function are checked.
+     */
+    ResolvedFunction(FunctionNode function, int[] parameterSlots, List<StatementNode> statements, String[] slotNames,
+                     boolean checked) {
+        this.function = function;
+        this.parameterSlots = parameterSlots;
+        this.statements = statements;
+        this.slotNames = slotNames;
+        this.checked = checked;
+    }
+
+    /**
+     * Get the function node.
+     *
+     * @return The function node.
+     */
+    public FunctionNode getFunction() {
+        return function;
+    }
+
+    /**
+     * Get the slots of the parameters.
+     *
+     * @return The parameter slots, in parameter order.
+     */
+    public int[] getParameterSlots() {
+        return parameterSlots;
+    }
+
+    /**
+     * Get the resolved body statements.
+     *
+     * @return The resolved body statements.
+     */
+    public List<StatementNode> getStatements() {
+        return statements;
+    }
+
+    /**
+     * Get the variable names.
+     *
+     * @return The variable names indexed by slot.
+     */
+    public String[] getSlotNames() {
+        return slotNames;
+    }
+
+    /**
+     * Check if the types of the function are checked, so its values do not need to be checked again.
+     *
+     * @return If the function is checked.
+     */
+    public boolean isChecked() {
+        return checked;
+    }
+
+    /**
+     * Create a new frame for a call of the function.
+     *
+     * @return The new frame, with every variable empty.
+     */
+    RuntimeFrame newFrame() {
+        return new RuntimeFrame(function.getName(), slotNames, checked);
+    }
+}
@@ -4,10 +4,13 @@ import info.andrewmin.dji.core.ast.ExpressionNode;
 import info.andrewmin.dji.core.ast.FunctionNode;
 import info.andrewmin.dji.core.ast.ProgramNode;
 import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.checker.TypeChecker;
 import info.andrewmin.dji.core.exceptions.*;
+import info.andrewmin.dji.core.runtime.jit.JitCompiler;
 import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
 import info.andrewmin.dji.core.tokens.TypeTokenVariant;
 
+import java.lang.invoke.MethodHandle;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
@@ -22,6 +25,11 @@ public final class Runtime {
 
     private final RuntimeContext context;
     private final ProgramNode program;
+    private final TypeChecker checker;
+    // Resolved functions indexed by the identifier ID of their name
+    private final ResolvedFunction[] functions;
+    // Null if hot functions are not compiled
+    private final JitCompiler jit;
 
     /**
      * Construct a new runtime interpreter engine.
@@ -29,12 +37,30 @@ public final class Runtime {
      * @param program The program node.
      */
     public Runtime(ProgramNode program) {
+        this(program, false);
+    }
+
+    /**
+     * Construct a new runtime interpreter engine.
+     *
+     * @param program The program node.
+     * @param jit     If hot functions are compiled to JVM bytecode (see {@link JitCompiler}).
+     */
+    public Runtime(ProgramNode program, boolean jit) {
         this.context = new RuntimeContext();
         this.program = program;
+        this.checker = new TypeChecker(program);
+        this.functions = new ResolvedFunction[program.getSymbols().size()];
+        this.jit = jit ? new JitCompiler(functions.length, id -> functions[id]) : null;
     }
 
     /**
      * Run the program and get the return value of the main function.
+     * <p>
+     * Every parsed function is checked and resolved first,
+     * so type errors, unresolved identifiers and calls with the wrong number of arguments
+     * are reported before the program runs.
+     * Lazily parsed functions are checked and resolved on their first call.
      *
      * @return The return value of the main function.
      */
@@ -42,46 +68,86 @@ public final class Runtime {
         FunctionNode main = program.getMain();
         if (main == null) {
             throw new NoMainException();
+        } else if (!main.getParameters().isEmpty()) {
+            throw new InvalidArgumentException(main.getName(), main.getParameters(), List.of());
         }
-        return run(main, List.of());
+        checker.checkAll();
+        for (FunctionNode function : program.getDeclaredFunctions()) {
+            if (function.isParsed()) {
+                resolve(function);
+            }
+        }
+        return run(main, List.of(), false);
     }
 
     /**
-     * Run a function with arguments.
+     * Get a resolved function, checking and resolving it on first use.
      *
      * @param function The function node.
-     * @param args     The arguments.
+     * @return The resolved function.
+     */
+    private ResolvedFunction resolve(FunctionNode function) {
+        ResolvedFunction resolved = functions[function.getId()];
+        if (resolved == null) {
+            resolved = new SlotResolver(program, function, checker.check(function)).resolve();
+            functions[function.getId()] = resolved;
+        }
+        return resolved;
+    }
+
+    /**
+     * Run a function with arguments.
+     *
+     * @param function    The function node.
+     * @param args        The arguments, as many as the parameters.
+     * @param checkedArgs If the argument types are known to match the parameters (i.e. the caller is checked).
      * @return The function's return value.
      */
-    private Value<?> run(FunctionNode function, List<Value<?>> args) {
+    private Value<?> run(FunctionNode function, List<Value<?>> args, boolean checkedArgs) {
         LOGGER.info("Running function " + function.getName());
-        RuntimeStore store = new RuntimeStore(function.getName());
+        ResolvedFunction resolved = resolve(function);
 
-        // Push arguments
-        if (function.getParameters().size() != args.size()) {
-            throw new InvalidArgumentException(function.getName(), function.getParameters(), args);
-        }
-        for (int i = 0; i < function.getParameters().size(); i++) {
+        // Check arguments, calls are linked to functions with as many parameters
+        for (int i = 0; i < args.size() && !checkedArgs; i++) {
             if (function.getParameters().get(i).getType() != args.get(i).getType()) {
                 throw new InvalidArgumentException(function.getName(), function.getParameters(), args);
             }
-            store.put(function.getParameters().get(i).getName(), args.get(i));
         }
 
+        // Compiled code does not see a pending return value or flow state, so it only runs without them
+        if (jit != null && context.getReturnValue() == null
+                && context.getLoopState().getFlowState() == RuntimeLoopState.Flow.NONE) {
+            MethodHandle compiled = jit.getCompiled(resolved);
+            if (compiled != null) {
+                return JitCompiler.invoke(compiled, args);
+            }
+        }
+
+        // Push arguments
+        RuntimeFrame frame = resolved.newFrame();
+        for (int i = 0; i < args.size(); i++) {
+            frame.put(resolved.getParameterSlots()[i], args.get(i));
+        }
+
+        // Checked functions only return values of their return type,
+        // unless they are called while the caller's return value is pending and return it instead
+        boolean checkReturn = !frame.isChecked() || context.getReturnValue() != null;
+
         // Run statements
-        for (StatementNode statement : function.getStatements()) {
-            run(store, statement);
+        for (StatementNode statement : resolved.getStatements()) {
+            run(frame, statement);
             if (context.getReturnValue() != null) {
                 Value<?> ret = context.getReturnValue();
                 context.resetReturnValue();
 
-                if (function.getReturnType() != ret.getType()) {
+                if (checkReturn && function.getReturnType() != ret.getType()) {
                     throw new TypeMismatchException(function.getReturnType(), ret.getType());
                 }
                 return ret;
             }
         }
 
+        // Checking does not prove that a function returns, so checked functions may still get here
         if (function.getReturnType() != TypeTokenVariant.VOID) {
             throw new MissingReturnException(function.getName());
         }
@@ -91,10 +157,10 @@ public final class Runtime {
     /**
      * Run a statement.
      *
-     * @param store     The variable store for the current function.
+     * @param frame     The variable frame for the current function.
      * @param statement The statement node.
      */
-    private void run(RuntimeStore store, StatementNode statement) {
+    private void run(RuntimeFrame frame, StatementNode statement) {
         // Skip statements until end of loop if break or continue is called.
         if (context.getLoopState().getFlowState() != RuntimeLoopState.Flow.NONE) {
             LOGGER.fine("Skipping statement, flow state is " + context.getLoopState().getFlowState());
@@ -107,7 +173,7 @@ public final class Runtime {
             LOGGER.fine("Running block statement");
 
             for (StatementNode s : block.getStatements()) {
-                run(store, s);
+                run(frame, s);
             }
         }
         // VariableDeclaration
@@ -115,27 +181,29 @@ public final class Runtime {
             StatementNode.VariableDeclaration decl = (StatementNode.VariableDeclaration) statement;
             LOGGER.fine("Running variable declaration: " + decl.getName());
 
-            Var var = new Var(decl.getType(), decl.getName());
-            Value<?> value = run(store, decl.getExpr());
+            Value<?> value = run(frame, decl.getExpr());
 
-            if (var.getType() == TypeTokenVariant.VOID) {
-                throw new VoidTypeException(var.getName());
-            } else if (var.getType() != value.getType()) {
-                throw new TypeMismatchException(var.getType(), value.getType());
+            // Checked functions only declare variables with values of their type
+            if (!frame.isChecked()) {
+                if (decl.getType() == TypeTokenVariant.VOID) {
+                    throw new VoidTypeException(decl.getName());
+                } else if (decl.getType() != value.getType()) {
+                    throw new TypeMismatchException(decl.getType(), value.getType());
+                }
             }
-            store.put(var.getName(), value);
+            frame.put(decl.getSlot(), value);
         }
         // If
         else if (statement instanceof StatementNode.If) {
             StatementNode.If _if = (StatementNode.If) statement;
             LOGGER.fine("Running if statement");
 
-            if (run(store, _if.getCondition()).isTrue()) {
+            if (run(frame, _if.getCondition()).isTrue()) {
                 LOGGER.fine("Pass condition");
-                run(store, _if.getBody());
+                run(frame, _if.getBody());
             } else {
                 LOGGER.fine("Fail condition");
-                run(store, _if.getElse());
+                run(frame, _if.getElse());
             }
         }
         // For
@@ -144,8 +212,8 @@ public final class Runtime {
             LOGGER.fine("Running for statement");
 
             context.getLoopState().loopStart();
-            store.pushScope();
-            for (run(store, _for.getInit()); run(store, _for.getCondition()).isTrue(); run(store, _for.getPost())) {
+            frame.pushScope();
+            for (run(frame, _for.getInit()); run(frame, _for.getCondition()).isTrue(); run(frame, _for.getPost())) {
                 if (context.getLoopState().getFlowState() == RuntimeLoopState.Flow.BREAK) {
                     LOGGER.fine("Breaking for loop");
                     break;
@@ -154,10 +222,10 @@ public final class Runtime {
                     context.getLoopState().setFlowState(RuntimeLoopState.Flow.NONE);
                 }
                 LOGGER.fine("Running for loop");
-                run(store, _for.getBody());
+                run(frame, _for.getBody());
             }
             context.getLoopState().loopEnd();
-            store.popScope();
+            frame.popScope();
         }
         // While
         else if (statement instanceof StatementNode.While) {
@@ -165,8 +233,8 @@ public final class Runtime {
             LOGGER.fine("Running while statement");
 
             context.getLoopState().loopStart();
-            store.pushScope();
-            while (run(store, _while.getCondition()).isTrue()) {
+            frame.pushScope();
+            while (run(frame, _while.getCondition()).isTrue()) {
                 if (context.getLoopState().getFlowState() == RuntimeLoopState.Flow.BREAK) {
                     LOGGER.fine("Breaking while loop");
                     break;
@@ -175,10 +243,10 @@ public final class Runtime {
                     context.getLoopState().setFlowState(RuntimeLoopState.Flow.NONE);
                 }
                 LOGGER.fine("Running while loop");
-                run(store, _while.getBody());
+                run(frame, _while.getBody());
             }
             context.getLoopState().loopEnd();
-            store.popScope();
+            frame.popScope();
         }
         // Break
         else if (statement instanceof StatementNode.Break) {
@@ -201,25 +269,25 @@ public final class Runtime {
             StatementNode.Return ret = (StatementNode.Return) statement;
             LOGGER.fine("Running return statement");
 
-            context.setReturnValue(run(store, ret.getExpr()));
+            context.setReturnValue(run(frame, ret.getExpr()));
         }
         // Expression
         else if (statement instanceof StatementNode.Expression) {
             StatementNode.Expression expr = (StatementNode.Expression) statement;
             LOGGER.fine("Running expression statement: " + statement.getNodeName());
 
-            run(store, expr.getExpr());
+            run(frame, expr.getExpr());
         }
     }
 
     /**
      * Run an expression and get it's value.
      *
-     * @param store The variable store for the current function.
+     * @param frame The variable frame for the current function.
      * @param expr  The expression node.
      * @return The expression's value.
      */
-    private Value<?> run(RuntimeStore store, ExpressionNode expr) {
+    private Value<?> run(RuntimeFrame frame, ExpressionNode expr) {
         // Literal
         if (expr instanceof ExpressionNode.Literal) {
             ExpressionNode.Literal literal = (ExpressionNode.Literal) expr;
@@ -232,32 +300,27 @@ public final class Runtime {
             ExpressionNode.VariableReference varRef = (ExpressionNode.VariableReference) expr;
             LOGGER.fine("Running variable reference: " + varRef.getName());
 
-            return store.get(varRef.getName());
+            return frame.get(varRef.getSlot());
         }
         // FunctionCall
         else if (expr instanceof ExpressionNode.FunctionCall) {
             ExpressionNode.FunctionCall funcCall = (ExpressionNode.FunctionCall) expr;
             LOGGER.fine("Running function call: " + funcCall.getName());
 
-            FunctionNode function = program.getFunctions().get(funcCall.getName());
-            if (function == null) {
-                throw new UnresolvedIdentifierException(funcCall.getName());
-            }
-
-            List<Value<?>> args = new ArrayList<>();
+            List<Value<?>> args = new ArrayList<>(funcCall.getArgs().size());
             for (int i = 0; i < funcCall.getArgs().size(); i++) {
-                args.add(i, run(store, funcCall.getArgs().get(i)));
+                args.add(i, run(frame, funcCall.getArgs().get(i)));
             }
 
-            return run(function, args);
+            return run(funcCall.getTarget(), args, frame.isChecked());
         }
         // Binary
         else if (expr instanceof ExpressionNode.Binary) {
             ExpressionNode.Binary binary = (ExpressionNode.Binary) expr;
             LOGGER.fine("Running binary: " + binary.getOperator());
 
-            Value<?> leftValue = run(store, binary.getLeftExpr());
-            Value<?> rightValue = run(store, binary.getRightExpr());
+            Value<?> leftValue = run(frame, binary.getLeftExpr());
+            Value<?> rightValue = run(frame, binary.getRightExpr());
             SymbolTokenVariant op = binary.getOperator();
 
             // Left hand variable
@@ -279,7 +342,7 @@ public final class Runtime {
                 }
 
                 if (newValue != null) {
-                    store.put(varRef.getName(), newValue);
+                    frame.put(varRef.getSlot(), newValue);
                     return newValue;
                 }
             }
@@ -323,7 +386,7 @@ public final class Runtime {
             ExpressionNode.Unary unary = (ExpressionNode.Unary) expr;
             LOGGER.fine("Running unary: " + unary.getOperator());
 
-            Value<?> value = run(store, unary.getExpr());
+            Value<?> value = run(frame, unary.getExpr());
             SymbolTokenVariant op = unary.getOperator();
 
             if (op == SymbolTokenVariant.SUB) {
@@ -0,0 +1,115 @@
+package info.andrewmin.dji.core.runtime;
+
+import info.andrewmin.dji.core.exceptions.UnresolvedIdentifierException;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * A runtime function variable frame.
+ * <p>
+ * Variables are kept in an array indexed by the frame slots assigned by the {@link SlotResolver},
+ * a slot is empty (null) while its variable does not exist.
+ * The slots of variables created after a scope was pushed are logged, so popping the scope deletes them.
+ */
+final class RuntimeFrame {
+    private static final Logger LOGGER = Logger.getLogger(RuntimeFrame.class.getName());
+    private static final int INITIAL_SCOPES = 4;
+
+    private final Value<?>[] values;
+    private final String[] names;
+
+    // The slots of the existing variables in creation order
+    private final int[] created;
+    private int count;
+
+    // The created variable count when each scope was pushed
+    private int[] scopeStarts;
+    private int scopes;
+
+    private final String name;
+    private final boolean checked;
+
+    /**
+     * Construct a new runtime frame.
+     *
+     * @param name    The function name (for logging).
+     * @param names   The variable names indexed by slot.
+     * @param checked If the types of the function are checked.
+     */
+    public RuntimeFrame(String name, String[] names, boolean checked) {
+        this.values = new Value<?>[names.length];
+        this.names = names;
+        // Each slot holds at most one variable at a time
+        this.created = new int[names.length];
+        this.scopeStarts = new int[INITIAL_SCOPES];
+        this.name = name;
+        this.checked = checked;
+        pushScope();
+    }
+
+    /**
+     * Check if the types of the function are checked, so its values do not need to be checked again.
+     *
+     * @return If the function is checked.
+     */
+    public boolean isChecked() {
+        return checked;
+    }
+
+    /**
+     * Push a new variable scope onto the stack.
+     */
+    public void pushScope() {
+        LOGGER.fine("New scope (" + name + "): #" + (scopes + 1));
+        if (scopes == scopeStarts.length) {
+            scopeStarts = Arrays.copyOf(scopeStarts, scopes * 2);
+        }
+        scopeStarts[scopes++] = count;
+    }
+
+    /**
+     * Pop the most recent variable scope and delete the variables created in it.
+     */
+    public void popScope() {
+        LOGGER.fine("Popped scope (" + name + ") #" + scopes);
+        int start = scopeStarts[--scopes];
+        for (int i = start; i < count; i++) {
+            LOGGER.fine("Deleted variable: " + names[created[i]]);
+            values[created[i]] = null;
+        }
+        count = start;
+    }
+
+    /**
+     * Put a variable into the frame, creating it in the current scope if it does not exist.
+     *
+     * @param slot  The variable slot.
+     * @param value The variable value.
+     */
+    public void put(int slot, Value<?> value) {
+        if (values[slot] == null) {
+            LOGGER.fine("New variable: " + names[slot] + " (" + name + ") #" + scopes);
+            created[count++] = slot;
+        } else {
+            LOGGER.fine("Update variable: " + names[slot] + " (" + name + ")");
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Get a variable's value from the frame.
+     *
+     * @param slot The variable slot.
+     * @return The variable value.
+     */
+    public Value<?> get(int slot) {
+        LOGGER.fine("Get variable: " + names[slot] + " (" + name + ")");
+        Value<?> value = values[slot];
+        if (value == null) {
+            // Declared, but not yet or no longer in scope (e.g. declared in an untaken branch)
+            throw new UnresolvedIdentifierException(names[slot]);
+        }
+        return value;
+    }
+}
@@ -2,17 +2,28 @@ package info.andrewmin.dji.core.runtime;
 
 import info.andrewmin.dji.core.exceptions.UnresolvedIdentifierException;
 
-import java.util.*;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 /**
  * A runtime function variable store.
+ * <p>
+ * Variables are kept in parallel arrays of identifier IDs and values in declaration order,
+ * each scope is the range of variables declared after it was pushed.
+ * Functions only have a few variables, so a linear search by ID is faster than hashing the name.
  */
 final class RuntimeStore {
     private static final Logger LOGGER = Logger.getLogger(RuntimeStore.class.getName());
+    private static final int INITIAL_CAPACITY = 8;
 
-    private final Map<String, Value<?>> varValues;
-    private final Stack<Set<String>> varStack;
+    private int[] ids;
+    private String[] names;
+    private Value<?>[] values;
+    private int count;
+
+    // The variable count when each scope was pushed
+    private int[] scopeStarts;
+    private int scopes;
 
     private final String name;
 
@@ -22,8 +33,10 @@ final class RuntimeStore {
      * @param name The function name (for logging).
      */
     public RuntimeStore(String name) {
-        this.varValues = new HashMap<>();
-        this.varStack = new Stack<>();
+        this.ids = new int[INITIAL_CAPACITY];
+        this.names = new String[INITIAL_CAPACITY];
+        this.values = new Value<?>[INITIAL_CAPACITY];
+        this.scopeStarts = new int[INITIAL_CAPACITY];
         this.name = name;
         pushScope();
     }
@@ -32,50 +45,80 @@ final class RuntimeStore {
      * Push a new variable scope onto the stack.
      */
     public void pushScope() {
-        LOGGER.fine("New scope (" + name + "): #" + (varStack.size() + 1));
-        varStack.push(new HashSet<>());
+        LOGGER.fine("New scope (" + name + "): #" + (scopes + 1));
+        if (scopes == scopeStarts.length) {
+            scopeStarts = Arrays.copyOf(scopeStarts, scopes * 2);
+        }
+        scopeStarts[scopes++] = count;
     }
 
     /**
      * Pop the most recent variable scope and delete its associated values.
      */
     public void popScope() {
-        LOGGER.fine("Popped scope (" + name + ") #" + varStack.size());
-        Set<String> popped = varStack.pop();
-        for (String var : popped) {
-            LOGGER.fine("Deleted variable: " + var);
-            varValues.remove(var);
+        LOGGER.fine("Popped scope (" + name + ") #" + scopes);
+        int start = scopeStarts[--scopes];
+        for (int i = start; i < count; i++) {
+            LOGGER.fine("Deleted variable: " + names[i]);
+            names[i] = null;
+            values[i] = null;
         }
+        count = start;
     }
 
     /**
      * Put a variable into the stack.
      *
+     * @param id    The variable name identifier ID.
      * @param var   The variable name.
      * @param value The variable value.
      */
-    public void put(String var, Value<?> value) {
-        if (!varValues.containsKey(var)) {
-            LOGGER.fine("New variable: " + var + " (" + name + ") #" + varStack.size());
-            varStack.peek().add(var);
+    public void put(int id, String var, Value<?> value) {
+        int index = indexOf(id);
+        if (index < 0) {
+            LOGGER.fine("New variable: " + var + " (" + name + ") #" + scopes);
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                names = Arrays.copyOf(names, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            index = count++;
+            ids[index] = id;
+            names[index] = var;
         } else {
             LOGGER.fine("Update variable: " + var + " (" + name + ")");
         }
-        varValues.put(var, value);
-
+        values[index] = value;
     }
 
     /**
      * Get a variable's value from the stack.
      *
+     * @param id  The variable name identifier ID.
      * @param var The variable name.
      * @return The variable value.
      */
-    public Value<?> get(String var) {
+    public Value<?> get(int id, String var) {
         LOGGER.fine("Get variable: " + var + " (" + name + ")");
-        if (!varValues.containsKey(var)) {
+        int index = indexOf(id);
+        if (index < 0) {
             throw new UnresolvedIdentifierException(var);
         }
-        return varValues.get(var);
+        return values[index];
+    }
+
+    /**
+     * Find the index of a variable, searching the most recently declared first.
+     *
+     * @param id The variable name identifier ID.
+     * @return The variable index, -1 if the variable does not exist.
+     */
+    private int indexOf(int id) {
+        for (int i = count - 1; i >= 0; i--) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
     }
 }
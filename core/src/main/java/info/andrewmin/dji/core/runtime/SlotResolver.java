@@ -0,0 +1,313 @@
+package info.andrewmin.dji.core.runtime;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.checker.FunctionTypes;
+import info.andrewmin.dji.core.exceptions.InvalidArgumentException;
+import info.andrewmin.dji.core.exceptions.UnresolvedIdentifierException;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Resolves the variables of a function to frame slots, and links its function calls to the called functions.
+ * <p>
+ * Declaring a variable that already exists updates it instead of shadowing it,
+ * so at most one variable of each name exists at a time and each name gets a single slot per function.
+ * <p>
+ * A variable declared in a for or while loop only exists until the loop ends,
+ * and one declared outside of loops only exists after its declaration,
+ * but a loop may read a variable declared later in its body on the next iteration.
+ * References that cannot see any declaration of their name are unresolved identifier errors,
+ * the rest may still be unresolved at runtime (e.g. a declaration in a branch that was not taken).
+ * <p>
+ * Calls to functions that do not exist or with the wrong number of arguments are errors,
+ * so the runtime can call the linked function directly.
+ * <p>
+ * Expression nodes may be shared between functions (see {@code ProgramParser}),
+ * so resolved nodes are copies, and shared subtrees are only copied once per function.
+ *
+ * @see RuntimeFrame
+ * @see info.andrewmin.dji.core.runtime.vm.FunctionCompiler
+ */
+public final class SlotResolver {
+    private static final Logger LOGGER = Logger.getLogger(SlotResolver.class.getName());
+
+    private final ProgramNode program;
+    private final FunctionNode function;
+    private final FunctionTypes types;
+    // Slots by variable identifier ID, and names by slot
+    private final Map<Integer, Integer> slots;
+    private final List<String> names;
+    // Identifier IDs of the variables with a visible declaration
+    private final Set<Integer> visible;
+    private final Map<ExpressionNode, ExpressionNode> resolved;
+    private int loopDepth;
+
+    /**
+     * Construct a new slot resolver.
+     *
+     * @param program  The program node.
+     * @param function The function node.
+     * @param types    The checked types of the function.
+     */
+    public SlotResolver(ProgramNode program, FunctionNode function, FunctionTypes types) {
+        this.program = program;
+        this.function = function;
+        this.types = types;
+        this.slots = new HashMap<>();
+        this.names = new ArrayList<>();
+        this.visible = new HashSet<>();
+        this.resolved = new IdentityHashMap<>();
+        this.loopDepth = 0;
+    }
+
+    /**
+     * Resolve the function.
+     * <p>
+     * Resolving parses the body if it is lazily parsed.
+     *
+     * @return The resolved function.
+     */
+    public ResolvedFunction resolve() {
+        List<Var> parameters = function.getParameters();
+        int[] parameterSlots = new int[parameters.size()];
+        for (int i = 0; i < parameters.size(); i++) {
+            Var parameter = parameters.get(i);
+            parameterSlots[i] = slot(parameter.getId(), parameter.getName());
+            visible.add(parameter.getId());
+        }
+
+        List<StatementNode> statements = resolve(function.getStatements());
+        LOGGER.fine("Resolved function " + function.getName() + " to " + names.size() + " slots");
+        return new ResolvedFunction(function, parameterSlots, statements, names.toArray(new String[0]),
+                types.isChecked());
+    }
+
+    /**
+     * Resolve a list of statements.
+     *
+     * @param statements The statement nodes.
+     * @return The resolved statement nodes.
+     */
+    private List<StatementNode> resolve(List<StatementNode> statements) {
+        List<StatementNode> resolvedStatements = new ArrayList<>(statements.size());
+        for (StatementNode statement : statements) {
+            resolvedStatements.add(resolve(statement));
+        }
+        return resolvedStatements;
+    }
+
+    /**
+     * Resolve a statement.
+     *
+     * @param node The statement node, may be null.
+     * @return The resolved statement node.
+     */
+    private StatementNode resolve(StatementNode node) {
+        if (node instanceof StatementNode.Block) {
+            return new StatementNode.Block(resolve(((StatementNode.Block) node).getStatements()));
+        } else if (node instanceof StatementNode.VariableDeclaration) {
+            StatementNode.VariableDeclaration declaration = (StatementNode.VariableDeclaration) node;
+            // The value is evaluated before the variable is created
+            ExpressionNode expr = resolve(declaration.getExpr());
+            int slot = slot(declaration.getId(), declaration.getName());
+            if (loopDepth == 0) {
+                visible.add(declaration.getId());
+            }
+            return new StatementNode.VariableDeclaration(declaration.getName(), declaration.getId(),
+                    declaration.getType(), expr, slot);
+        } else if (node instanceof StatementNode.If) {
+            StatementNode.If _if = (StatementNode.If) node;
+            return new StatementNode.If(resolve(_if.getCondition()), resolve(_if.getBody()), resolve(_if.getElse()));
+        } else if (node instanceof StatementNode.For) {
+            StatementNode.For _for = (StatementNode.For) node;
+            List<Integer> scope = enterScope(node);
+            StatementNode.For resolvedFor = new StatementNode.For(resolve(_for.getInit()),
+                    resolve(_for.getCondition()), resolve(_for.getPost()), resolve(_for.getBody()));
+            exitScope(scope);
+            return resolvedFor;
+        } else if (node instanceof StatementNode.While) {
+            StatementNode.While _while = (StatementNode.While) node;
+            List<Integer> scope = enterScope(node);
+            StatementNode.While resolvedWhile = new StatementNode.While(resolve(_while.getCondition()),
+                    resolve(_while.getBody()));
+            exitScope(scope);
+            return resolvedWhile;
+        } else if (node instanceof StatementNode.Return) {
+            return new StatementNode.Return(resolve(((StatementNode.Return) node).getExpr()));
+        } else if (node instanceof StatementNode.Expression) {
+            return new StatementNode.Expression(resolve(((StatementNode.Expression) node).getExpr()));
+        }
+        // Break, continue or null
+        return node;
+    }
+
+    /**
+     * Resolve an expression.
+     *
+     * @param node The expression node.
+     * @return The resolved expression node.
+     */
+    private ExpressionNode resolve(ExpressionNode node) {
+        ExpressionNode resolvedNode = resolved.get(node);
+        if (resolvedNode != null) {
+            // Visibility depends on where the shared subtree is, so it is checked again
+            check(node);
+            return resolvedNode;
+        }
+
+        if (node instanceof ExpressionNode.VariableReference) {
+            ExpressionNode.VariableReference varRef = (ExpressionNode.VariableReference) node;
+            check(varRef);
+            resolvedNode = new ExpressionNode.VariableReference(varRef.getName(), varRef.getId(),
+                    slots.get(varRef.getId()));
+        } else if (node instanceof ExpressionNode.FunctionCall) {
+            ExpressionNode.FunctionCall funcCall = (ExpressionNode.FunctionCall) node;
+            FunctionNode target = link(funcCall);
+            List<ExpressionNode> args = new ArrayList<>(funcCall.getArgs().size());
+            for (ExpressionNode arg : funcCall.getArgs()) {
+                args.add(resolve(arg));
+            }
+            resolvedNode = new ExpressionNode.FunctionCall(funcCall.getName(), funcCall.getId(), args, target);
+        } else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            resolvedNode = new ExpressionNode.Binary(binary.getOperator(),
+                    resolve(binary.getLeftExpr()), resolve(binary.getRightExpr()));
+        } else if (node instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+            resolvedNode = new ExpressionNode.Unary(unary.getOperator(), resolve(unary.getExpr()));
+        } else {
+            // Literals have no variables
+            return node;
+        }
+        resolved.put(node, resolvedNode);
+        return resolvedNode;
+    }
+
+    /**
+     * Check that every variable referenced in an expression has a visible declaration.
+     *
+     * @param node The expression node.
+     */
+    private void check(ExpressionNode node) {
+        if (node instanceof ExpressionNode.VariableReference) {
+            ExpressionNode.VariableReference varRef = (ExpressionNode.VariableReference) node;
+            if (!visible.contains(varRef.getId())) {
+                throw new UnresolvedIdentifierException(varRef.getName());
+            }
+        } else if (node instanceof ExpressionNode.FunctionCall) {
+            for (ExpressionNode arg : ((ExpressionNode.FunctionCall) node).getArgs()) {
+                check(arg);
+            }
+        } else if (node instanceof ExpressionNode.Binary) {
+            check(((ExpressionNode.Binary) node).getLeftExpr());
+            check(((ExpressionNode.Binary) node).getRightExpr());
+        } else if (node instanceof ExpressionNode.Unary) {
+            check(((ExpressionNode.Unary) node).getExpr());
+        }
+    }
+
+    /**
+     * Link a function call to the called function.
+     * <p>
+     * Argument types are checked by the type checker, or when the call runs if they are not exactly known.
+     *
+     * @param funcCall The function call expression node.
+     * @return The called function.
+     */
+    private FunctionNode link(ExpressionNode.FunctionCall funcCall) {
+        FunctionNode target = program.getFunction(funcCall.getId());
+        if (target == null) {
+            throw new UnresolvedIdentifierException(funcCall.getName());
+        }
+        List<ExpressionNode> args = funcCall.getArgs();
+        if (target.getParameters().size() != args.size()) {
+            TypeTokenVariant[] argTypes = new TypeTokenVariant[args.size()];
+            for (int i = 0; i < args.size(); i++) {
+                argTypes[i] = types.getType(args.get(i));
+            }
+            throw new InvalidArgumentException(target.getName(), target.getParameters(), argTypes);
+        }
+        return target;
+    }
+
+    /**
+     * Enter a loop scope, making the variables declared in it visible for its whole body.
+     *
+     * @param loop The for or while statement node.
+     * @return The identifier IDs of the variables that were made visible.
+     */
+    private List<Integer> enterScope(StatementNode loop) {
+        List<Integer> scope = new ArrayList<>();
+        if (loop instanceof StatementNode.For) {
+            collectDeclarations(((StatementNode.For) loop).getInit(), scope);
+            collectDeclarations(((StatementNode.For) loop).getBody(), scope);
+        } else {
+            collectDeclarations(((StatementNode.While) loop).getBody(), scope);
+        }
+        loopDepth++;
+        return scope;
+    }
+
+    /**
+     * Exit a loop scope, hiding the variables declared in it.
+     *
+     * @param scope The identifier IDs of the variables that were made visible.
+     */
+    private void exitScope(List<Integer> scope) {
+        loopDepth--;
+        visible.removeAll(scope);
+    }
+
+    /**
+     * Make the variables declared directly in a loop scope visible.
+     * <p>
+     * Nested loops are scopes of their own, so they are not searched.
+     *
+     * @param node  The statement node in the loop scope, may be null.
+     * @param scope The identifier IDs of the variables that were made visible.
+     */
+    private void collectDeclarations(StatementNode node, List<Integer> scope) {
+        if (node instanceof StatementNode.Block) {
+            for (StatementNode statement : ((StatementNode.Block) node).getStatements()) {
+                collectDeclarations(statement, scope);
+            }
+        } else if (node instanceof StatementNode.VariableDeclaration) {
+            StatementNode.VariableDeclaration declaration = (StatementNode.VariableDeclaration) node;
+            slot(declaration.getId(), declaration.getName());
+            if (visible.add(declaration.getId())) {
+                scope.add(declaration.getId());
+            }
+        } else if (node instanceof StatementNode.If) {
+            collectDeclarations(((StatementNode.If) node).getBody(), scope);
+            collectDeclarations(((StatementNode.If) node).getElse(), scope);
+        }
+    }
+
+    /**
+     * Get the slot of a variable, assigning the next slot to a new name.
+     *
+     * @param id   The variable name identifier ID.
+     * @param name The variable name.
+     * @return The variable slot.
+     */
+    private int slot(int id, String name) {
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            slot = names.size();
+            slots.put(id, slot);
+            names.add(name);
+        }
+        return slot;
+    }
+}
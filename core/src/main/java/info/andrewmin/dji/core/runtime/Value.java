@@ -4,6 +4,7 @@ import info.andrewmin.dji.core.exceptions.BinaryTypeMismatchException;
 import info.andrewmin.dji.core.exceptions.InternalException;
 import info.andrewmin.dji.core.exceptions.TypeMismatchException;
 import info.andrewmin.dji.core.exceptions.UnaryTypeMismatchException;
+import info.andrewmin.dji.core.lexer.TokenBuffer;
 import info.andrewmin.dji.core.tokens.LiteralToken;
 import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
 import info.andrewmin.dji.core.tokens.TypeTokenVariant;
@@ -52,6 +53,30 @@ public abstract class Value<T> {
         throw new InternalException("Unhandled type");
     }
 
+    /**
+     * Construct a new runtime variable value from a literal token in a token buffer.
+     *
+     * @param tokens The token buffer.
+     * @param index  The literal token index.
+     * @return The runtime variable value.
+     */
+    public static Value<?> fromToken(TokenBuffer tokens, int index) {
+        switch (tokens.kind(index)) {
+            case BOOLEAN_LITERAL:
+                return new Boolean(tokens.booleanValue(index));
+            case INT_LITERAL:
+                return new Int(tokens.intValue(index));
+            case DOUBLE_LITERAL:
+                return new Double(tokens.doubleValue(index));
+            case CHAR_LITERAL:
+                return new Char(tokens.charValue(index));
+            case STRING_LITERAL:
+                return new String(tokens.stringValue(index));
+            default:
+                throw new InternalException("Unhandled type");
+        }
+    }
+
     /**
      * Get the variable type.
      *
@@ -10,16 +10,19 @@ import info.andrewmin.dji.core.tokens.TypeTokenVariant;
 public final class Var {
     private final TypeTokenVariant type;
     private final String name;
+    private final int id;
 
     /**
      * Construct a new runtime variable
      *
      * @param type The variable type.
      * @param name The variable name.
+     * @param id   The variable name identifier ID.
      */
-    public Var(TypeTokenVariant type, String name) {
+    public Var(TypeTokenVariant type, String name, int id) {
         this.type = type;
         this.name = name;
+        this.id = id;
     }
 
     /**
@@ -40,6 +43,15 @@ public final class Var {
         return name;
     }
 
+    /**
+     * Get the variable name identifier ID.
+     *
+     * @return The identifier ID.
+     */
+    public int getId() {
+        return id;
+    }
+
     @Override
     public String toString() {
         return name + "(" + type.type + ")";
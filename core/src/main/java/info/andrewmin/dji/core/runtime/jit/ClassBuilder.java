@@ -0,0 +1,270 @@
+package info.andrewmin.dji.core.runtime.jit;
+
+import info.andrewmin.dji.core.exceptions.InternalException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a JVM class file with static methods.
+ * <p>
+ * Only the parts of the class file format the compiled code uses are supported:
+ * no fields, interfaces, exception handlers or debug attributes.
+ *
+ * @see CodeBuilder
+ */
+final class ClassBuilder {
+    // Java 8, whose verifier requires the stack map frames the methods are written with
+    private static final int VERSION = 52;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    // Constant pool tags
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int METHOD = 10;
+    private static final int INTERFACE_METHOD = 11;
+    private static final int NAME_AND_TYPE = 12;
+
+    private final String name;
+    private final ByteArrayOutputStream pool;
+    private final DataOutputStream poolOut;
+    private int poolCount;
+    // Constant pool indices by tag and value, so each constant is only added once
+    private final Map<String, Integer> poolIndices;
+    private final List<byte[]> methods;
+
+    /**
+     * Construct a new class builder.
+     *
+     * @param name The internal name of the class, e.g. {@code java/lang/Object}.
+     */
+    ClassBuilder(String name) {
+        this.name = name;
+        this.pool = new ByteArrayOutputStream();
+        this.poolOut = new DataOutputStream(pool);
+        this.poolCount = 1;
+        this.poolIndices = new HashMap<>();
+        this.methods = new ArrayList<>();
+    }
+
+    /**
+     * Get the internal name of the class.
+     *
+     * @return The internal name.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Add a static method.
+     *
+     * @param methodName The method name.
+     * @param descriptor The method descriptor.
+     * @param code       The method code.
+     */
+    void addMethod(String methodName, String descriptor, CodeBuilder code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            byte[] frames = code.getFrames();
+            out.writeShort(ACC_STATIC);
+            out.writeShort(utf8(methodName));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(1);
+
+            // Code attribute
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + code.size() + (frames != null ? 8 + frames.length : 0));
+            out.writeShort(code.getMaxStack());
+            out.writeShort(code.getMaxLocals());
+            out.writeInt(code.size());
+            code.writeTo(out);
+            out.writeShort(0);
+            if (frames != null) {
+                out.writeShort(1);
+                out.writeShort(utf8("StackMapTable"));
+                out.writeInt(2 + frames.length);
+                out.writeShort(code.getFrameCount());
+                out.write(frames);
+            } else {
+                out.writeShort(0);
+            }
+        } catch (IOException e) {
+            throw new InternalException("Unable to write method: " + e.getMessage());
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    /**
+     * Get the class file.
+     *
+     * @return The class file bytes.
+     */
+    byte[] toByteArray() {
+        int thisClass = classConstant(name);
+        int superClass = classConstant("java/lang/Object");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new InternalException("Unable to write class: " + e.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Get the constant pool index of a UTF-8 string.
+     *
+     * @param value The string.
+     * @return The constant pool index.
+     */
+    int utf8(String value) {
+        Integer index = poolIndices.get(UTF8 + ":" + value);
+        if (index == null) {
+            index = poolCount++;
+            poolIndices.put(UTF8 + ":" + value, index);
+            try {
+                poolOut.writeByte(UTF8);
+                poolOut.writeUTF(value);
+            } catch (IOException e) {
+                throw new InternalException("Unable to write constant: " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Get the constant pool index of a class.
+     *
+     * @param className The internal class name.
+     * @return The constant pool index.
+     */
+    int classConstant(String className) {
+        return constant(CLASS, className, utf8(className), -1);
+    }
+
+    /**
+     * Get the constant pool index of a string constant.
+     *
+     * @param value The string.
+     * @return The constant pool index.
+     */
+    int stringConstant(String value) {
+        return constant(STRING, value, utf8(value), -1);
+    }
+
+    /**
+     * Get the constant pool index of an int constant.
+     *
+     * @param value The int.
+     * @return The constant pool index.
+     */
+    int intConstant(int value) {
+        String key = INTEGER + ":" + value;
+        Integer index = poolIndices.get(key);
+        if (index == null) {
+            index = poolCount++;
+            poolIndices.put(key, index);
+            try {
+                poolOut.writeByte(INTEGER);
+                poolOut.writeInt(value);
+            } catch (IOException e) {
+                throw new InternalException("Unable to write constant: " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Get the constant pool index of a double constant.
+     *
+     * @param value The double.
+     * @return The constant pool index.
+     */
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        String key = DOUBLE + ":" + bits;
+        Integer index = poolIndices.get(key);
+        if (index == null) {
+            index = poolCount;
+            // Doubles take two entries
+            poolCount += 2;
+            poolIndices.put(key, index);
+            try {
+                poolOut.writeByte(DOUBLE);
+                poolOut.writeLong(bits);
+            } catch (IOException e) {
+                throw new InternalException("Unable to write constant: " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Get the constant pool index of a method.
+     *
+     * @param owner      The internal name of the class that declares the method.
+     * @param methodName The method name.
+     * @param descriptor The method descriptor.
+     * @param isInterface If the owner is an interface.
+     * @return The constant pool index.
+     */
+    int methodConstant(String owner, String methodName, String descriptor, boolean isInterface) {
+        int nameAndType = constant(NAME_AND_TYPE, methodName + " " + descriptor, utf8(methodName), utf8(descriptor));
+        return constant(isInterface ? INTERFACE_METHOD : METHOD, owner + "." + methodName + descriptor,
+                classConstant(owner), nameAndType);
+    }
+
+    /**
+     * Get the constant pool index of a constant that refers to other constants.
+     *
+     * @param tag    The constant tag.
+     * @param key    The constant value, unique for the tag.
+     * @param first  The first referred constant pool index.
+     * @param second The second referred constant pool index, or -1 if there is only one.
+     * @return The constant pool index.
+     */
+    private int constant(int tag, String key, int first, int second) {
+        Integer index = poolIndices.get(tag + ":" + key);
+        if (index == null) {
+            index = poolCount++;
+            poolIndices.put(tag + ":" + key, index);
+            try {
+                poolOut.writeByte(tag);
+                poolOut.writeShort(first);
+                if (second >= 0) {
+                    poolOut.writeShort(second);
+                }
+            } catch (IOException e) {
+                throw new InternalException("Unable to write constant: " + e.getMessage());
+            }
+        }
+        return index;
+    }
+}
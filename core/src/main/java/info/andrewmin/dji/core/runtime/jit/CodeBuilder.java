@@ -0,0 +1,506 @@
+package info.andrewmin.dji.core.runtime.jit;
+
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Builds the code of a JVM method.
+ * <p>
+ * The operand stack is empty at every jump target and all locals are assigned before the first one,
+ * so every stack map frame of the method is the same.
+ * Code after a jump, return or throw is only emitted once a label is bound,
+ * so the method never has unreachable code without a frame.
+ *
+ * @see ClassBuilder
+ */
+final class CodeBuilder {
+    // The largest method whose jumps all fit in 16 bit offsets
+    static final int MAX_SIZE = Short.MAX_VALUE;
+
+    // Opcodes
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int DCONST_0 = 0x0E;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int ISTORE = 0x36;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3A;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP2 = 0x5C;
+    static final int IADD = 0x60;
+    static final int DADD = 0x63;
+    static final int ISUB = 0x64;
+    static final int DSUB = 0x67;
+    static final int IMUL = 0x68;
+    static final int DMUL = 0x6B;
+    static final int IDIV = 0x6C;
+    static final int DDIV = 0x6F;
+    static final int IREM = 0x70;
+    static final int DREM = 0x73;
+    static final int INEG = 0x74;
+    static final int DNEG = 0x77;
+    static final int IAND = 0x7E;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IFLT = 0x9B;
+    static final int IFGE = 0x9C;
+    static final int IFGT = 0x9D;
+    static final int IFLE = 0x9E;
+    static final int IF_ICMPEQ = 0x9F;
+    static final int IF_ICMPNE = 0xA0;
+    static final int IF_ICMPLT = 0xA1;
+    static final int IF_ICMPGE = 0xA2;
+    static final int IF_ICMPGT = 0xA3;
+    static final int IF_ICMPLE = 0xA4;
+    static final int GOTO = 0xA7;
+    static final int IRETURN = 0xAC;
+    static final int DRETURN = 0xAF;
+    static final int ARETURN = 0xB0;
+    static final int RETURN = 0xB1;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESTATIC = 0xB8;
+    static final int INVOKEINTERFACE = 0xB9;
+    static final int ATHROW = 0xBF;
+    private static final int WIDE = 0xC4;
+
+    // Stack map frame types
+    private static final int SAME_FRAME_EXTENDED = 251;
+    private static final int FULL_FRAME = 255;
+    private static final int ITEM_INTEGER = 1;
+    private static final int ITEM_DOUBLE = 3;
+    private static final int ITEM_OBJECT = 7;
+
+    private final ClassBuilder owner;
+    private byte[] code;
+    private int size;
+    private int stack;
+    private int maxStack;
+    private boolean reachable;
+
+    // The types of the locals, one per local (not per word)
+    private final List<TypeTokenVariant> locals;
+    private int maxLocals;
+    // Code offsets of the bound labels
+    private final TreeSet<Integer> frames;
+
+    /**
+     * A jump target that may not be known yet.
+     */
+    static final class Label {
+        private int offset = -1;
+        // Code offsets of the jump instructions waiting for the target
+        private final List<Integer> uses = new ArrayList<>();
+    }
+
+    /**
+     * Construct a new code builder.
+     *
+     * @param owner The class of the method, for its constant pool.
+     */
+    CodeBuilder(ClassBuilder owner) {
+        this.owner = owner;
+        this.code = new byte[256];
+        this.size = 0;
+        this.stack = 0;
+        this.maxStack = 0;
+        this.reachable = true;
+        this.locals = new ArrayList<>();
+        this.maxLocals = 0;
+        this.frames = new TreeSet<>();
+    }
+
+    /**
+     * Add a local.
+     * <p>
+     * Parameters are the first locals, in order.
+     *
+     * @param type The local type, chars and booleans are ints.
+     * @return The local index.
+     */
+    int newLocal(TypeTokenVariant type) {
+        int index = maxLocals;
+        locals.add(type);
+        maxLocals += type == TypeTokenVariant.DOUBLE ? 2 : 1;
+        return index;
+    }
+
+    /**
+     * Emit an instruction without operands.
+     *
+     * @param opcode     The opcode.
+     * @param stackDelta The operand stack size change, in words.
+     */
+    void op(int opcode, int stackDelta) {
+        if (reachable) {
+            u1(opcode);
+            stack(stackDelta);
+            if (opcode >= IRETURN && opcode <= RETURN || opcode == ATHROW) {
+                reachable = false;
+            }
+        }
+    }
+
+    /**
+     * Push an int constant.
+     *
+     * @param value The int.
+     */
+    void pushInt(int value) {
+        if (!reachable) {
+            return;
+        }
+        if (value >= -1 && value <= 5) {
+            u1(ICONST_0 + value);
+        } else if (value == (byte) value) {
+            u1(BIPUSH);
+            u1(value);
+        } else if (value == (short) value) {
+            u1(SIPUSH);
+            u2(value);
+        } else {
+            ldc(owner.intConstant(value));
+        }
+        stack(1);
+    }
+
+    /**
+     * Push a double constant.
+     *
+     * @param value The double.
+     */
+    void pushDouble(double value) {
+        if (!reachable) {
+            return;
+        }
+        // Only positive zero, negative zero is a different value
+        if (Double.doubleToRawLongBits(value) == 0) {
+            u1(DCONST_0);
+        } else {
+            u1(LDC2_W);
+            u2(owner.doubleConstant(value));
+        }
+        stack(2);
+    }
+
+    /**
+     * Push a string constant.
+     *
+     * @param value The string.
+     */
+    void pushString(String value) {
+        if (reachable) {
+            ldc(owner.stringConstant(value));
+            stack(1);
+        }
+    }
+
+    /**
+     * Load a local.
+     *
+     * @param type  The local type.
+     * @param index The local index.
+     */
+    void load(TypeTokenVariant type, int index) {
+        local(type == TypeTokenVariant.DOUBLE ? DLOAD : type == TypeTokenVariant.STRING ? ALOAD : ILOAD, index);
+        if (reachable) {
+            stack(words(type));
+        }
+    }
+
+    /**
+     * Store the top value in a local.
+     *
+     * @param type  The local type.
+     * @param index The local index.
+     */
+    void store(TypeTokenVariant type, int index) {
+        local(type == TypeTokenVariant.DOUBLE ? DSTORE : type == TypeTokenVariant.STRING ? ASTORE : ISTORE, index);
+        if (reachable) {
+            stack(-words(type));
+        }
+    }
+
+    /**
+     * Emit a method call.
+     *
+     * @param opcode     The invoke opcode.
+     * @param className  The internal name of the class that declares the method.
+     * @param methodName The method name.
+     * @param descriptor The method descriptor.
+     */
+    void invoke(int opcode, String className, String methodName, String descriptor) {
+        if (!reachable) {
+            return;
+        }
+        int index = owner.methodConstant(className, methodName, descriptor, opcode == INVOKEINTERFACE);
+        u1(opcode);
+        u2(index);
+        int argWords = argumentWords(descriptor) + (opcode == INVOKESTATIC ? 0 : 1);
+        if (opcode == INVOKEINTERFACE) {
+            u1(argWords);
+            u1(0);
+        }
+        char returnType = descriptor.charAt(descriptor.indexOf(')') + 1);
+        stack(-argWords + (returnType == 'V' ? 0 : returnType == 'D' || returnType == 'J' ? 2 : 1));
+    }
+
+    /**
+     * Emit a jump.
+     *
+     * @param opcode The jump opcode.
+     * @param label  The jump target.
+     */
+    void jump(int opcode, Label label) {
+        if (!reachable) {
+            return;
+        }
+        int at = size;
+        u1(opcode);
+        u2(label.offset >= 0 ? label.offset - at : 0);
+        if (label.offset < 0) {
+            label.uses.add(at);
+        }
+        if (opcode == GOTO) {
+            reachable = false;
+        } else {
+            stack(opcode >= IF_ICMPEQ ? -2 : -1);
+        }
+    }
+
+    /**
+     * Bind a label to the next instruction.
+     *
+     * @param label The label.
+     */
+    void bind(Label label) {
+        if (reachable && stack != 0) {
+            throw new InternalException("Jump target with operands on the stack");
+        }
+        label.offset = size;
+        for (int use : label.uses) {
+            code[use + 1] = (byte) ((size - use) >> 8);
+            code[use + 2] = (byte) (size - use);
+        }
+        label.uses.clear();
+        frames.add(size);
+        reachable = true;
+        stack = 0;
+    }
+
+    /**
+     * Check if the next instruction is reachable.
+     *
+     * @return If the next instruction is reachable, otherwise it is not emitted.
+     */
+    boolean isReachable() {
+        return reachable;
+    }
+
+    /**
+     * Get the code size.
+     *
+     * @return The code size in bytes.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the maximum operand stack size.
+     *
+     * @return The maximum operand stack size, in words.
+     */
+    int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * Get the number of local words.
+     *
+     * @return The number of local words.
+     */
+    int getMaxLocals() {
+        return maxLocals;
+    }
+
+    /**
+     * Get the number of stack map frames.
+     *
+     * @return The number of frames.
+     */
+    int getFrameCount() {
+        return frames.size();
+    }
+
+    /**
+     * Write the code.
+     *
+     * @param out The output.
+     * @throws IOException If writing fails.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.write(code, 0, size);
+    }
+
+    /**
+     * Get the stack map frames of the jump targets.
+     *
+     * @return The stack map frame entries, or null if the method does not jump.
+     */
+    byte[] getFrames() {
+        if (frames.isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int previous = -1;
+            for (int offset : frames) {
+                if (previous < 0) {
+                    // The locals are the same everywhere, so only the first frame lists them
+                    out.writeByte(FULL_FRAME);
+                    out.writeShort(offset);
+                    out.writeShort(locals.size());
+                    for (TypeTokenVariant type : locals) {
+                        if (type == TypeTokenVariant.DOUBLE) {
+                            out.writeByte(ITEM_DOUBLE);
+                        } else if (type == TypeTokenVariant.STRING) {
+                            out.writeByte(ITEM_OBJECT);
+                            out.writeShort(owner.classConstant("java/lang/String"));
+                        } else {
+                            out.writeByte(ITEM_INTEGER);
+                        }
+                    }
+                    out.writeShort(0);
+                } else if (offset - previous - 1 < 64) {
+                    out.writeByte(offset - previous - 1);
+                } else {
+                    out.writeByte(SAME_FRAME_EXTENDED);
+                    out.writeShort(offset - previous - 1);
+                }
+                previous = offset;
+            }
+        } catch (IOException e) {
+            throw new InternalException("Unable to write frames: " + e.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Emit a local load or store.
+     *
+     * @param opcode The opcode.
+     * @param index  The local index.
+     */
+    private void local(int opcode, int index) {
+        if (!reachable) {
+            return;
+        }
+        if (index > 0xFF) {
+            u1(WIDE);
+            u1(opcode);
+            u2(index);
+        } else {
+            u1(opcode);
+            u1(index);
+        }
+    }
+
+    /**
+     * Emit a constant pool load of a one word constant.
+     *
+     * @param index The constant pool index.
+     */
+    private void ldc(int index) {
+        if (index > 0xFF) {
+            u1(LDC_W);
+            u2(index);
+        } else {
+            u1(LDC);
+            u1(index);
+        }
+    }
+
+    /**
+     * Track the operand stack size.
+     *
+     * @param change The number of words pushed, negative if popped.
+     */
+    private void stack(int change) {
+        stack += change;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    /**
+     * Emit a byte.
+     *
+     * @param value The byte.
+     */
+    private void u1(int value) {
+        if (size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+        }
+        code[size++] = (byte) value;
+    }
+
+    /**
+     * Emit a big endian short.
+     *
+     * @param value The short.
+     */
+    private void u2(int value) {
+        u1(value >> 8);
+        u1(value);
+    }
+
+    /**
+     * Get the number of words a value takes on the operand stack or in locals.
+     *
+     * @param type The value type.
+     * @return The number of words.
+     */
+    static int words(TypeTokenVariant type) {
+        return type == TypeTokenVariant.DOUBLE ? 2 : type == TypeTokenVariant.VOID ? 0 : 1;
+    }
+
+    /**
+     * Get the number of words the arguments of a method take.
+     *
+     * @param descriptor The method descriptor.
+     * @return The number of argument words.
+     */
+    private static int argumentWords(String descriptor) {
+        int words = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            words += c == 'D' || c == 'J' ? 2 : 1;
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+        }
+        return words;
+    }
+}
@@ -0,0 +1,520 @@
+package info.andrewmin.dji.core.runtime.jit;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.runtime.ResolvedFunction;
+import info.andrewmin.dji.core.runtime.Var;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks if a resolved function can be compiled to JVM bytecode, and infers the types of its variables and expressions.
+ * <p>
+ * Compiled code keeps each variable in a JVM local of a single type,
+ * and does not touch the return value or flow state of the tree walking engine,
+ * so only functions that cannot tell the difference are supported:
+ * <ul>
+ *     <li>The function is checked, and each variable has a single type.</li>
+ *     <li>Every variable that is read or assigned definitely exists, so it never has to be looked up.</li>
+ *     <li>Breaks and continues are in loops of the function itself,
+ *     and those loops do not call functions in their post expression or condition,
+ *     which are still evaluated while breaking or continuing and would skip the statements of the callee.</li>
+ *     <li>No function is called while a return value may be set, which the callee would return instead.</li>
+ * </ul>
+ *
+ * @see FunctionEmitter
+ */
+final class FunctionAnalysis {
+    // The longest string whose modified UTF-8 encoding always fits in the constant pool
+    private static final int MAX_STRING_LENGTH = 0xFFFF / 3;
+
+    private final ResolvedFunction resolved;
+    // Variable types indexed by slot
+    private final TypeTokenVariant[] slotTypes;
+    private final Map<ExpressionNode, TypeTokenVariant> types;
+    private final Set<FunctionNode> callees;
+
+    // The slots of the variables that definitely exist
+    private BitSet created;
+    private int loopDepth;
+    // If a nested return may have set the return value, which is only returned after the top level statement
+    private boolean returning;
+
+    /**
+     * The reason a function is not supported.
+     */
+    private static final class Unsupported extends RuntimeException {
+        /**
+         * Construct a new unsupported function error.
+         *
+         * @param reason The reason.
+         */
+        Unsupported(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    /**
+     * Construct a new function analysis.
+     *
+     * @param resolved The resolved function.
+     */
+    FunctionAnalysis(ResolvedFunction resolved) {
+        this.resolved = resolved;
+        this.slotTypes = new TypeTokenVariant[resolved.getSlotNames().length];
+        this.types = new IdentityHashMap<>();
+        this.callees = new LinkedHashSet<>();
+        this.created = new BitSet(slotTypes.length);
+        this.loopDepth = 0;
+        this.returning = false;
+    }
+
+    /**
+     * Analyse the function.
+     *
+     * @return The reason the function is not supported, or null if it is.
+     */
+    String analyse() {
+        try {
+            if (!resolved.isChecked()) {
+                throw new Unsupported("types are not checked");
+            }
+            List<Var> parameters = resolved.getFunction().getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                int slot = resolved.getParameterSlots()[i];
+                declare(slot, parameters.get(i).getType());
+                created.set(slot);
+            }
+            for (StatementNode statement : resolved.getStatements()) {
+                returning = false;
+                statement(statement);
+                if (statement instanceof StatementNode.Return) {
+                    // The rest of the function never runs
+                    break;
+                }
+            }
+            for (int slot = 0; slot < slotTypes.length; slot++) {
+                if (slotTypes[slot] == null) {
+                    // Only declared after the function returns, so the local is never used
+                    slotTypes[slot] = TypeTokenVariant.INT;
+                }
+            }
+            return null;
+        } catch (Unsupported e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Get the resolved function.
+     *
+     * @return The resolved function.
+     */
+    ResolvedFunction getResolved() {
+        return resolved;
+    }
+
+    /**
+     * Get the variable types.
+     *
+     * @return The variable types indexed by slot.
+     */
+    TypeTokenVariant[] getSlotTypes() {
+        return slotTypes;
+    }
+
+    /**
+     * Get the type of an expression of the function.
+     *
+     * @param node The expression node.
+     * @return The expression type, void for calls of void functions.
+     */
+    TypeTokenVariant getType(ExpressionNode node) {
+        return types.get(node);
+    }
+
+    /**
+     * Get the functions the function calls.
+     *
+     * @return The called function nodes.
+     */
+    Set<FunctionNode> getCallees() {
+        return callees;
+    }
+
+    /**
+     * Analyse a statement.
+     *
+     * @param node The statement node, may be null.
+     */
+    private void statement(StatementNode node) {
+        // Block
+        if (node instanceof StatementNode.Block) {
+            for (StatementNode statement : ((StatementNode.Block) node).getStatements()) {
+                statement(statement);
+            }
+        }
+        // VariableDeclaration
+        else if (node instanceof StatementNode.VariableDeclaration) {
+            StatementNode.VariableDeclaration decl = (StatementNode.VariableDeclaration) node;
+            expect(decl.getType(), expression(decl.getExpr()));
+            declare(decl.getSlot(), decl.getType());
+            created.set(decl.getSlot());
+        }
+        // If
+        else if (node instanceof StatementNode.If) {
+            StatementNode.If _if = (StatementNode.If) node;
+            expect(TypeTokenVariant.BOOLEAN, expression(_if.getCondition()));
+            BitSet before = (BitSet) created.clone();
+            statement(_if.getBody());
+            BitSet afterBody = created;
+            created = before;
+            statement(_if.getElse());
+            created.and(afterBody);
+        }
+        // For
+        else if (node instanceof StatementNode.For) {
+            StatementNode.For _for = (StatementNode.For) node;
+            loop(_for.getInit(), _for.getCondition(), _for.getPost(), _for.getBody());
+        }
+        // While
+        else if (node instanceof StatementNode.While) {
+            StatementNode.While _while = (StatementNode.While) node;
+            loop(null, _while.getCondition(), null, _while.getBody());
+        }
+        // Break
+        else if (node instanceof StatementNode.Break) {
+            if (loopDepth == 0) {
+                throw new Unsupported("break outside of a loop");
+            }
+        }
+        // Continue
+        else if (node instanceof StatementNode.Continue) {
+            if (loopDepth == 0) {
+                throw new Unsupported("continue outside of a loop");
+            }
+        }
+        // Return
+        else if (node instanceof StatementNode.Return) {
+            TypeTokenVariant returnType = resolved.getFunction().getReturnType();
+            if (returnType == TypeTokenVariant.VOID) {
+                throw new Unsupported("void function returns a value");
+            }
+            expect(returnType, expression(((StatementNode.Return) node).getExpr()));
+            returning = true;
+        }
+        // Expression
+        else if (node instanceof StatementNode.Expression) {
+            expression(((StatementNode.Expression) node).getExpr());
+        }
+    }
+
+    /**
+     * Analyse a for or while loop.
+     * <p>
+     * Variables created in the loop are deleted when it ends, and may not exist on the next iteration,
+     * so only the variables that existed after the init statement definitely exist in the loop.
+     *
+     * @param init      The init statement node, null for while loops.
+     * @param condition The condition expression node.
+     * @param post      The post expression node, null for while loops.
+     * @param body      The body statement node.
+     */
+    private void loop(StatementNode init, ExpressionNode condition, ExpressionNode post, StatementNode body) {
+        BitSet before = (BitSet) created.clone();
+        boolean flow = hasFlow(init) || hasFlow(body);
+        loopDepth++;
+        statement(init);
+        BitSet afterInit = created;
+
+        // A return in the body is still set when the condition and the next iterations run
+        boolean wasReturning = returning;
+        for (int pass = 0; pass < 2; pass++) {
+            created = (BitSet) afterInit.clone();
+            if (expression(condition) != TypeTokenVariant.BOOLEAN) {
+                throw new Unsupported("condition is not a boolean");
+            } else if (flow && hasCall(condition)) {
+                throw new Unsupported("call in the condition of a loop that breaks or continues");
+            }
+            created = (BitSet) afterInit.clone();
+            statement(body);
+            created = (BitSet) afterInit.clone();
+            if (post != null) {
+                expression(post);
+                if (flow && hasCall(post)) {
+                    throw new Unsupported("call in the post expression of a loop that breaks or continues");
+                }
+            }
+            if (returning == wasReturning) {
+                break;
+            }
+            wasReturning = returning;
+        }
+        loopDepth--;
+        created = before;
+    }
+
+    /**
+     * Analyse an expression.
+     *
+     * @param node The expression node.
+     * @return The expression type, void for calls of void functions.
+     */
+    private TypeTokenVariant expression(ExpressionNode node) {
+        TypeTokenVariant type;
+        // Literal
+        if (node instanceof ExpressionNode.Literal) {
+            ExpressionNode.Literal literal = (ExpressionNode.Literal) node;
+            type = literal.getValue().getType();
+            if (type == TypeTokenVariant.STRING && ((String) literal.getValue().getValue()).length() > MAX_STRING_LENGTH) {
+                throw new Unsupported("string literal is too long");
+            }
+        }
+        // VariableReference
+        else if (node instanceof ExpressionNode.VariableReference) {
+            type = variable((ExpressionNode.VariableReference) node);
+        }
+        // FunctionCall
+        else if (node instanceof ExpressionNode.FunctionCall) {
+            ExpressionNode.FunctionCall funcCall = (ExpressionNode.FunctionCall) node;
+            FunctionNode target = funcCall.getTarget();
+            List<ExpressionNode> args = funcCall.getArgs();
+            for (int i = 0; i < args.size(); i++) {
+                expect(target.getParameters().get(i).getType(), expression(args.get(i)));
+            }
+            if (returning) {
+                throw new Unsupported("call of " + target.getName() + " while returning");
+            }
+            callees.add(target);
+            type = target.getReturnType();
+        }
+        // Binary
+        else if (node instanceof ExpressionNode.Binary) {
+            type = binary((ExpressionNode.Binary) node);
+        }
+        // Unary
+        else if (node instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+            type = expression(unary.getExpr());
+            if (unary.getOperator() == SymbolTokenVariant.SUB) {
+                operands(unary.getOperator(), type, TypeTokenVariant.INT, TypeTokenVariant.DOUBLE);
+            } else if (unary.getOperator() == SymbolTokenVariant.NOT) {
+                operands(unary.getOperator(), type, TypeTokenVariant.BOOLEAN);
+            } else {
+                throw new Unsupported("unary " + unary.getOperator());
+            }
+        }
+        // Unhandled
+        else {
+            throw new Unsupported("expression " + node.getNodeName());
+        }
+        types.put(node, type);
+        return type;
+    }
+
+    /**
+     * Analyse a binary expression.
+     *
+     * @param binary The binary expression node.
+     * @return The expression type.
+     */
+    private TypeTokenVariant binary(ExpressionNode.Binary binary) {
+        SymbolTokenVariant op = binary.getOperator();
+        ExpressionNode left = binary.getLeftExpr();
+        boolean assignment = op.ordinal() >= SymbolTokenVariant.ADD_ASSIGN.ordinal()
+                && op.ordinal() <= SymbolTokenVariant.ASSIGN.ordinal();
+
+        // Left hand variable
+        if (assignment) {
+            if (!(left instanceof ExpressionNode.VariableReference)) {
+                throw new Unsupported("assignment to " + left.getNodeName());
+            }
+            TypeTokenVariant type = variable((ExpressionNode.VariableReference) left);
+            types.put(left, type);
+            expect(type, expression(binary.getRightExpr()));
+            if (op == SymbolTokenVariant.ADD_ASSIGN) {
+                operands(op, type, TypeTokenVariant.INT, TypeTokenVariant.DOUBLE, TypeTokenVariant.STRING);
+            } else if (op != SymbolTokenVariant.ASSIGN) {
+                operands(op, type, TypeTokenVariant.INT, TypeTokenVariant.DOUBLE);
+            }
+            return type;
+        }
+
+        TypeTokenVariant type = expression(left);
+        expect(type, expression(binary.getRightExpr()));
+        switch (op) {
+            case ADD:
+                operands(op, type, TypeTokenVariant.INT, TypeTokenVariant.DOUBLE, TypeTokenVariant.STRING);
+                return type;
+            case SUB:
+            case MUL:
+            case QUO:
+            case REM:
+                operands(op, type, TypeTokenVariant.INT, TypeTokenVariant.DOUBLE);
+                return type;
+            case EQL:
+            case NEQ:
+                operands(op, type, TypeTokenVariant.BOOLEAN, TypeTokenVariant.CHAR, TypeTokenVariant.INT,
+                        TypeTokenVariant.DOUBLE, TypeTokenVariant.STRING);
+                return TypeTokenVariant.BOOLEAN;
+            case LSS:
+            case GTR:
+            case LEQ:
+            case GEQ:
+                operands(op, type, TypeTokenVariant.INT, TypeTokenVariant.DOUBLE);
+                return TypeTokenVariant.BOOLEAN;
+            case LAND:
+            case LOR:
+                operands(op, type, TypeTokenVariant.BOOLEAN);
+                return TypeTokenVariant.BOOLEAN;
+            default:
+                throw new Unsupported("binary " + op);
+        }
+    }
+
+    /**
+     * Analyse a variable reference, which must definitely exist.
+     *
+     * @param varRef The variable reference node.
+     * @return The variable type.
+     */
+    private TypeTokenVariant variable(ExpressionNode.VariableReference varRef) {
+        if (!created.get(varRef.getSlot())) {
+            throw new Unsupported("variable " + varRef.getName() + " may not exist");
+        }
+        return slotTypes[varRef.getSlot()];
+    }
+
+    /**
+     * Set the type of a variable.
+     *
+     * @param slot The variable slot.
+     * @param type The variable type.
+     */
+    private void declare(int slot, TypeTokenVariant type) {
+        if (type == TypeTokenVariant.VOID) {
+            throw new Unsupported("void variable " + resolved.getSlotNames()[slot]);
+        } else if (slotTypes[slot] != null && slotTypes[slot] != type) {
+            throw new Unsupported("variable " + resolved.getSlotNames()[slot] + " has more than one type");
+        }
+        slotTypes[slot] = type;
+    }
+
+    /**
+     * Check that a value has the expected type.
+     *
+     * @param expected The expected type.
+     * @param actual   The value type.
+     */
+    private static void expect(TypeTokenVariant expected, TypeTokenVariant actual) {
+        if (actual != expected) {
+            throw new Unsupported(actual + " value where " + expected + " is expected");
+        }
+    }
+
+    /**
+     * Check that an operator supports the type of its operands.
+     *
+     * @param op        The operator.
+     * @param type      The operand type.
+     * @param supported The supported operand types.
+     */
+    private static void operands(SymbolTokenVariant op, TypeTokenVariant type, TypeTokenVariant... supported) {
+        for (TypeTokenVariant t : supported) {
+            if (t == type) {
+                return;
+            }
+        }
+        throw new Unsupported(op + " of " + type + " operands");
+    }
+
+    /**
+     * Check if a statement has a loop.
+     *
+     * @param node The statement node, may be null.
+     * @return If the statement has a for or while loop.
+     */
+    static boolean hasLoops(StatementNode node) {
+        if (node instanceof StatementNode.Block) {
+            for (StatementNode statement : ((StatementNode.Block) node).getStatements()) {
+                if (hasLoops(statement)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (node instanceof StatementNode.If) {
+            return hasLoops(((StatementNode.If) node).getBody()) || hasLoops(((StatementNode.If) node).getElse());
+        }
+        return node instanceof StatementNode.For || node instanceof StatementNode.While;
+    }
+
+    /**
+     * Check if a statement breaks or continues the loop it is in.
+     *
+     * @param node The statement node, may be null.
+     * @return If the statement has a break or continue outside of nested loops.
+     */
+    static boolean hasFlow(StatementNode node) {
+        if (node instanceof StatementNode.Block) {
+            for (StatementNode statement : ((StatementNode.Block) node).getStatements()) {
+                if (hasFlow(statement)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (node instanceof StatementNode.If) {
+            return hasFlow(((StatementNode.If) node).getBody()) || hasFlow(((StatementNode.If) node).getElse());
+        }
+        return node instanceof StatementNode.Break || node instanceof StatementNode.Continue;
+    }
+
+    /**
+     * Check if a statement has a return.
+     *
+     * @param node The statement node, may be null.
+     * @return If the statement is or has a return statement.
+     */
+    static boolean hasReturn(StatementNode node) {
+        if (node instanceof StatementNode.Block) {
+            for (StatementNode statement : ((StatementNode.Block) node).getStatements()) {
+                if (hasReturn(statement)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (node instanceof StatementNode.If) {
+            return hasReturn(((StatementNode.If) node).getBody()) || hasReturn(((StatementNode.If) node).getElse());
+        } else if (node instanceof StatementNode.For) {
+            return hasReturn(((StatementNode.For) node).getInit()) || hasReturn(((StatementNode.For) node).getBody());
+        } else if (node instanceof StatementNode.While) {
+            return hasReturn(((StatementNode.While) node).getBody());
+        }
+        return node instanceof StatementNode.Return;
+    }
+
+    /**
+     * Check if an expression calls a function.
+     *
+     * @param node The expression node.
+     * @return If the expression has a function call.
+     */
+    private static boolean hasCall(ExpressionNode node) {
+        if (node instanceof ExpressionNode.FunctionCall) {
+            return true;
+        } else if (node instanceof ExpressionNode.Binary) {
+            return hasCall(((ExpressionNode.Binary) node).getLeftExpr())
+                    || hasCall(((ExpressionNode.Binary) node).getRightExpr());
+        } else if (node instanceof ExpressionNode.Unary) {
+            return hasCall(((ExpressionNode.Unary) node).getExpr());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,642 @@
+package info.andrewmin.dji.core.runtime.jit;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.runtime.ResolvedFunction;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.runtime.Var;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Emits the JVM methods of an analysed function.
+ * <p>
+ * Each function is a static method with a parameter and local of the JVM type of each of its parameters and variables,
+ * and a bridge method that takes and returns runtime values for the tree walking engine to call.
+ * Calls between compiled functions call their methods directly.
+ * <p>
+ * Like the tree walking engine, a break or continue skips to the post expression or condition of its loop,
+ * and a nested return sets the return value, which is returned after the top level statement ends.
+ *
+ * @see FunctionAnalysis
+ */
+final class FunctionEmitter {
+    private static final String VALUE = "info/andrewmin/dji/core/runtime/Value";
+    private static final String BRIDGE_DESCRIPTOR = "(Ljava/util/List;)L" + VALUE + ";";
+    private static final String BRIDGE_PREFIX = "enter-";
+
+    private final ClassBuilder owner;
+    private final FunctionAnalysis analysis;
+    private final ResolvedFunction resolved;
+    private final TypeTokenVariant returnType;
+    private final CodeBuilder code;
+
+    // Local indices of the variables indexed by slot
+    private final int[] slotLocals;
+    // Locals of the return value set by a nested return, and if it is set
+    private int returnLocal;
+    private int returningLocal;
+    // Local set while breaking out of a loop
+    private int breakLocal;
+
+    // Where statements skip to while breaking or continuing
+    private CodeBuilder.Label skip;
+
+    /**
+     * Construct a new function emitter.
+     *
+     * @param owner    The class to add the methods to.
+     * @param analysis The supported function analysis.
+     */
+    FunctionEmitter(ClassBuilder owner, FunctionAnalysis analysis) {
+        this.owner = owner;
+        this.analysis = analysis;
+        this.resolved = analysis.getResolved();
+        this.returnType = resolved.getFunction().getReturnType();
+        this.code = new CodeBuilder(owner);
+        this.slotLocals = new int[resolved.getSlotNames().length];
+    }
+
+    /**
+     * Emit the function and bridge methods.
+     *
+     * @return If the function fits in a method.
+     */
+    boolean emit() {
+        FunctionNode function = resolved.getFunction();
+        List<Var> parameters = function.getParameters();
+        int[] parameterLocals = new int[parameters.size()];
+        for (int i = 0; i < parameters.size(); i++) {
+            parameterLocals[i] = code.newLocal(parameters.get(i).getType());
+        }
+
+        // Every local is assigned before the first jump target, so all stack map frames are the same
+        TypeTokenVariant[] slotTypes = analysis.getSlotTypes();
+        for (int slot = 0; slot < slotLocals.length; slot++) {
+            slotLocals[slot] = code.newLocal(slotTypes[slot]);
+            zero(slotTypes[slot]);
+            code.store(slotTypes[slot], slotLocals[slot]);
+        }
+        for (int i = 0; i < parameters.size(); i++) {
+            code.load(parameters.get(i).getType(), parameterLocals[i]);
+            code.store(parameters.get(i).getType(), slotLocals[resolved.getParameterSlots()[i]]);
+        }
+        if (returnType != TypeTokenVariant.VOID) {
+            returnLocal = code.newLocal(returnType);
+            zero(returnType);
+            code.store(returnType, returnLocal);
+        }
+        returningLocal = code.newLocal(TypeTokenVariant.BOOLEAN);
+        breakLocal = code.newLocal(TypeTokenVariant.BOOLEAN);
+        code.pushInt(0);
+        code.store(TypeTokenVariant.BOOLEAN, returningLocal);
+        code.pushInt(0);
+        code.store(TypeTokenVariant.BOOLEAN, breakLocal);
+
+        for (StatementNode statement : resolved.getStatements()) {
+            // Top level return
+            if (statement instanceof StatementNode.Return) {
+                expression(((StatementNode.Return) statement).getExpr());
+                code.op(returnOpcode(returnType), -CodeBuilder.words(returnType));
+                break;
+            }
+            statement(statement);
+            if (FunctionAnalysis.hasReturn(statement)) {
+                CodeBuilder.Label next = new CodeBuilder.Label();
+                code.load(TypeTokenVariant.BOOLEAN, returningLocal);
+                code.jump(CodeBuilder.IFEQ, next);
+                code.load(returnType, returnLocal);
+                code.op(returnOpcode(returnType), -CodeBuilder.words(returnType));
+                code.bind(next);
+            }
+        }
+        if (returnType == TypeTokenVariant.VOID) {
+            code.op(CodeBuilder.RETURN, 0);
+        } else {
+            code.pushString(function.getName());
+            code.invoke(CodeBuilder.INVOKESTATIC, JitOperations.NAME, "missingReturn",
+                    "(Ljava/lang/String;)Linfo/andrewmin/dji/core/exceptions/MissingReturnException;");
+            code.op(CodeBuilder.ATHROW, -1);
+        }
+
+        if (code.size() > CodeBuilder.MAX_SIZE || code.getMaxLocals() > 0xFFFF) {
+            return false;
+        }
+        owner.addMethod(function.getName(), descriptor(function), code);
+        emitBridge();
+        return true;
+    }
+
+    /**
+     * Emit the bridge method, which unboxes the arguments, calls the function and boxes the return value.
+     */
+    private void emitBridge() {
+        FunctionNode function = resolved.getFunction();
+        CodeBuilder bridge = new CodeBuilder(owner);
+        // The argument list, a reference like a string
+        int args = bridge.newLocal(TypeTokenVariant.STRING);
+        List<Var> parameters = function.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            TypeTokenVariant type = parameters.get(i).getType();
+            bridge.load(TypeTokenVariant.STRING, args);
+            bridge.pushInt(i);
+            bridge.invoke(CodeBuilder.INVOKESTATIC, JitOperations.NAME, type.name().toLowerCase(Locale.ROOT) + "Arg",
+                    "(Ljava/util/List;I)" + descriptor(type));
+        }
+        bridge.invoke(CodeBuilder.INVOKESTATIC, owner.getName(), function.getName(), descriptor(function));
+        if (returnType == TypeTokenVariant.VOID) {
+            bridge.op(CodeBuilder.ACONST_NULL, 1);
+        } else {
+            bridge.invoke(CodeBuilder.INVOKESTATIC, JitOperations.NAME, "toValue",
+                    "(" + descriptor(returnType) + ")L" + VALUE + ";");
+        }
+        bridge.op(CodeBuilder.ARETURN, -1);
+        owner.addMethod(bridgeName(function), BRIDGE_DESCRIPTOR, bridge);
+    }
+
+    /**
+     * Emit a statement.
+     *
+     * @param node The statement node, may be null.
+     */
+    private void statement(StatementNode node) {
+        // Block
+        if (node instanceof StatementNode.Block) {
+            for (StatementNode statement : ((StatementNode.Block) node).getStatements()) {
+                statement(statement);
+            }
+        }
+        // VariableDeclaration
+        else if (node instanceof StatementNode.VariableDeclaration) {
+            StatementNode.VariableDeclaration decl = (StatementNode.VariableDeclaration) node;
+            expression(decl.getExpr());
+            code.store(decl.getType(), slotLocals[decl.getSlot()]);
+        }
+        // If
+        else if (node instanceof StatementNode.If) {
+            StatementNode.If _if = (StatementNode.If) node;
+            CodeBuilder.Label otherwise = new CodeBuilder.Label();
+            branch(_if.getCondition(), otherwise, false);
+            statement(_if.getBody());
+            if (_if.getElse() != null) {
+                CodeBuilder.Label end = new CodeBuilder.Label();
+                code.jump(CodeBuilder.GOTO, end);
+                code.bind(otherwise);
+                statement(_if.getElse());
+                code.bind(end);
+            } else {
+                code.bind(otherwise);
+            }
+        }
+        // For
+        else if (node instanceof StatementNode.For) {
+            StatementNode.For _for = (StatementNode.For) node;
+            loop(_for.getInit(), _for.getCondition(), _for.getPost(), _for.getBody());
+        }
+        // While
+        else if (node instanceof StatementNode.While) {
+            StatementNode.While _while = (StatementNode.While) node;
+            loop(null, _while.getCondition(), null, _while.getBody());
+        }
+        // Break
+        else if (node instanceof StatementNode.Break) {
+            code.pushInt(1);
+            code.store(TypeTokenVariant.BOOLEAN, breakLocal);
+            code.jump(CodeBuilder.GOTO, skip);
+        }
+        // Continue
+        else if (node instanceof StatementNode.Continue) {
+            code.jump(CodeBuilder.GOTO, skip);
+        }
+        // Return
+        else if (node instanceof StatementNode.Return) {
+            expression(((StatementNode.Return) node).getExpr());
+            code.store(returnType, returnLocal);
+            code.pushInt(1);
+            code.store(TypeTokenVariant.BOOLEAN, returningLocal);
+        }
+        // Expression
+        else if (node instanceof StatementNode.Expression) {
+            discard(((StatementNode.Expression) node).getExpr());
+        }
+    }
+
+    /**
+     * Emit a for or while loop.
+     * <p>
+     * The condition is emitted after the body, so each iteration takes a single conditional jump.
+     * Loops that break check if they are breaking after the condition, like the tree walking engine.
+     *
+     * @param init      The init statement node, null for while loops.
+     * @param condition The condition expression node.
+     * @param post      The post expression node, null for while loops.
+     * @param body      The body statement node.
+     */
+    private void loop(StatementNode init, ExpressionNode condition, ExpressionNode post, StatementNode body) {
+        boolean flow = FunctionAnalysis.hasFlow(init) || FunctionAnalysis.hasFlow(body);
+        CodeBuilder.Label start = new CodeBuilder.Label();
+        CodeBuilder.Label next = new CodeBuilder.Label();
+        CodeBuilder.Label check = new CodeBuilder.Label();
+        CodeBuilder.Label outerSkip = skip;
+
+        // Breaking or continuing in the init statement still checks the condition
+        skip = check;
+        statement(init);
+        skip = post != null ? next : check;
+        code.jump(CodeBuilder.GOTO, check);
+
+        code.bind(start);
+        statement(body);
+        if (post != null) {
+            code.bind(next);
+            discard(post);
+        }
+        code.bind(check);
+        if (flow) {
+            CodeBuilder.Label exit = new CodeBuilder.Label();
+            branch(condition, exit, false);
+            code.load(TypeTokenVariant.BOOLEAN, breakLocal);
+            code.jump(CodeBuilder.IFEQ, start);
+            code.bind(exit);
+            code.pushInt(0);
+            code.store(TypeTokenVariant.BOOLEAN, breakLocal);
+        } else {
+            branch(condition, start, true);
+        }
+        skip = outerSkip;
+    }
+
+    /**
+     * Emit a condition that jumps to a label.
+     *
+     * @param node  The boolean expression node.
+     * @param label The label to jump to.
+     * @param when  The condition value that jumps.
+     */
+    private void branch(ExpressionNode node, CodeBuilder.Label label, boolean when) {
+        if (node instanceof ExpressionNode.Unary
+                && ((ExpressionNode.Unary) node).getOperator() == SymbolTokenVariant.NOT) {
+            branch(((ExpressionNode.Unary) node).getExpr(), label, !when);
+            return;
+        }
+        int opcode = -1;
+        if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            opcode = compare(binary.getOperator(), analysis.getType(binary.getLeftExpr()));
+            if (opcode >= 0) {
+                expression(binary.getLeftExpr());
+                expression(binary.getRightExpr());
+                if (opcode == CodeBuilder.DCMPL || opcode == CodeBuilder.DCMPG) {
+                    code.op(opcode, -3);
+                    opcode = doubleJump(binary.getOperator());
+                }
+            }
+        }
+        if (opcode < 0) {
+            expression(node);
+            opcode = CodeBuilder.IFNE;
+        }
+        // Each jump opcode is paired with its negation
+        code.jump(when ? opcode : (opcode < CodeBuilder.IF_ICMPEQ
+                ? ((opcode - CodeBuilder.IFEQ) ^ 1) + CodeBuilder.IFEQ
+                : ((opcode - CodeBuilder.IF_ICMPEQ) ^ 1) + CodeBuilder.IF_ICMPEQ), label);
+    }
+
+    /**
+     * Get the instruction that compares the operands of a comparison operator.
+     * <p>
+     * A double comparison is true for the ordering operators if either operand is not a number,
+     * so the comparison instruction is chosen to give the result that fails it.
+     *
+     * @param op   The operator.
+     * @param type The operand type.
+     * @return The int comparison jump opcode, double comparison opcode, or -1 if the operator needs a value.
+     */
+    private static int compare(SymbolTokenVariant op, TypeTokenVariant type) {
+        if (type == TypeTokenVariant.DOUBLE) {
+            switch (op) {
+                case LSS:
+                case GEQ:
+                    return CodeBuilder.DCMPG;
+                case GTR:
+                case LEQ:
+                    return CodeBuilder.DCMPL;
+                default:
+                    // Double equality is Double.equals
+                    return -1;
+            }
+        } else if (type == TypeTokenVariant.STRING) {
+            return -1;
+        }
+        switch (op) {
+            case EQL:
+                return CodeBuilder.IF_ICMPEQ;
+            case NEQ:
+                return CodeBuilder.IF_ICMPNE;
+            case LSS:
+                return CodeBuilder.IF_ICMPLT;
+            case GEQ:
+                return CodeBuilder.IF_ICMPGE;
+            case GTR:
+                return CodeBuilder.IF_ICMPGT;
+            case LEQ:
+                return CodeBuilder.IF_ICMPLE;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Get the jump opcode of a double ordering operator after the comparison instruction.
+     *
+     * @param op The operator.
+     * @return The jump opcode.
+     */
+    private static int doubleJump(SymbolTokenVariant op) {
+        switch (op) {
+            case LSS:
+                return CodeBuilder.IFLT;
+            case GEQ:
+                return CodeBuilder.IFGE;
+            case GTR:
+                return CodeBuilder.IFGT;
+            case LEQ:
+                return CodeBuilder.IFLE;
+            default:
+                throw new InternalException("Unhandled double comparison: " + op);
+        }
+    }
+
+    /**
+     * Emit an expression whose value is not used.
+     *
+     * @param node The expression node.
+     */
+    private void discard(ExpressionNode node) {
+        if (node instanceof ExpressionNode.Binary && isAssignment(((ExpressionNode.Binary) node).getOperator())) {
+            assignment((ExpressionNode.Binary) node, false);
+        } else if (!(node instanceof ExpressionNode.Literal) && !(node instanceof ExpressionNode.VariableReference)) {
+            expression(node);
+            TypeTokenVariant type = analysis.getType(node);
+            if (type != TypeTokenVariant.VOID) {
+                code.op(type == TypeTokenVariant.DOUBLE ? CodeBuilder.POP2 : CodeBuilder.POP, -CodeBuilder.words(type));
+            }
+        }
+    }
+
+    /**
+     * Emit an expression, pushing its value.
+     *
+     * @param node The expression node.
+     */
+    private void expression(ExpressionNode node) {
+        // Literal
+        if (node instanceof ExpressionNode.Literal) {
+            Value<?> value = ((ExpressionNode.Literal) node).getValue();
+            switch (value.getType()) {
+                case BOOLEAN:
+                    code.pushInt(((Value.Boolean) value).getValue() ? 1 : 0);
+                    break;
+                case CHAR:
+                    code.pushInt(((Value.Char) value).getValue());
+                    break;
+                case INT:
+                    code.pushInt(((Value.Int) value).getValue());
+                    break;
+                case DOUBLE:
+                    code.pushDouble(((Value.Double) value).getValue());
+                    break;
+                case STRING:
+                    code.pushString(((Value.String) value).getValue());
+                    break;
+                default:
+                    throw new InternalException("Unhandled literal: " + value);
+            }
+        }
+        // VariableReference
+        else if (node instanceof ExpressionNode.VariableReference) {
+            int slot = ((ExpressionNode.VariableReference) node).getSlot();
+            code.load(analysis.getSlotTypes()[slot], slotLocals[slot]);
+        }
+        // FunctionCall
+        else if (node instanceof ExpressionNode.FunctionCall) {
+            ExpressionNode.FunctionCall funcCall = (ExpressionNode.FunctionCall) node;
+            for (ExpressionNode arg : funcCall.getArgs()) {
+                expression(arg);
+            }
+            code.invoke(CodeBuilder.INVOKESTATIC, owner.getName(), funcCall.getTarget().getName(),
+                    descriptor(funcCall.getTarget()));
+        }
+        // Binary
+        else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            if (isAssignment(binary.getOperator())) {
+                assignment(binary, true);
+            } else {
+                operator(binary.getOperator(), binary.getLeftExpr(), binary.getRightExpr());
+            }
+        }
+        // Unary
+        else if (node instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+            expression(unary.getExpr());
+            if (unary.getOperator() == SymbolTokenVariant.NOT) {
+                code.pushInt(1);
+                code.op(CodeBuilder.IXOR, -1);
+            } else if (analysis.getType(unary) == TypeTokenVariant.DOUBLE) {
+                code.op(CodeBuilder.DNEG, 0);
+            } else {
+                code.op(CodeBuilder.INEG, 0);
+            }
+        }
+        // Unhandled
+        else {
+            throw new InternalException("Unhandled expression: " + node.getNodeName());
+        }
+    }
+
+    /**
+     * Emit an assignment to a variable.
+     *
+     * @param binary The assignment expression node.
+     * @param used   If the assigned value is used, so it is pushed.
+     */
+    private void assignment(ExpressionNode.Binary binary, boolean used) {
+        int slot = ((ExpressionNode.VariableReference) binary.getLeftExpr()).getSlot();
+        TypeTokenVariant type = analysis.getSlotTypes()[slot];
+        if (binary.getOperator() == SymbolTokenVariant.ASSIGN) {
+            expression(binary.getRightExpr());
+        } else {
+            operator(binary.getOperator(), binary.getLeftExpr(), binary.getRightExpr());
+        }
+        if (used) {
+            code.op(type == TypeTokenVariant.DOUBLE ? CodeBuilder.DUP2 : CodeBuilder.DUP, CodeBuilder.words(type));
+        }
+        code.store(type, slotLocals[slot]);
+    }
+
+    /**
+     * Emit a value operator, or the operation of a compound assignment.
+     *
+     * @param op    The operator.
+     * @param left  The left operand expression node.
+     * @param right The right operand expression node.
+     */
+    private void operator(SymbolTokenVariant op, ExpressionNode left, ExpressionNode right) {
+        TypeTokenVariant type = analysis.getType(left);
+        // Chars and booleans are compared as ints
+        String operands = type == TypeTokenVariant.DOUBLE || type == TypeTokenVariant.STRING
+                ? descriptor(type) + descriptor(type) : "II";
+        expression(left);
+        expression(right);
+        boolean isDouble = type == TypeTokenVariant.DOUBLE;
+        switch (op) {
+            case ADD:
+            case ADD_ASSIGN:
+                if (type == TypeTokenVariant.STRING) {
+                    code.invoke(CodeBuilder.INVOKESTATIC, JitOperations.NAME, "add",
+                            "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;");
+                } else {
+                    code.op(isDouble ? CodeBuilder.DADD : CodeBuilder.IADD, isDouble ? -2 : -1);
+                }
+                break;
+            case SUB:
+            case SUB_ASSIGN:
+                code.op(isDouble ? CodeBuilder.DSUB : CodeBuilder.ISUB, isDouble ? -2 : -1);
+                break;
+            case MUL:
+            case MUL_ASSIGN:
+                code.op(isDouble ? CodeBuilder.DMUL : CodeBuilder.IMUL, isDouble ? -2 : -1);
+                break;
+            case QUO:
+            case QUO_ASSIGN:
+                code.op(isDouble ? CodeBuilder.DDIV : CodeBuilder.IDIV, isDouble ? -2 : -1);
+                break;
+            case REM:
+            case REM_ASSIGN:
+                code.op(isDouble ? CodeBuilder.DREM : CodeBuilder.IREM, isDouble ? -2 : -1);
+                break;
+            case EQL:
+            case NEQ:
+                code.invoke(CodeBuilder.INVOKESTATIC, JitOperations.NAME, "eql",
+                        "(" + operands + ")Z");
+                break;
+            case LSS:
+            case GEQ:
+                code.invoke(CodeBuilder.INVOKESTATIC, JitOperations.NAME, "lss",
+                        "(" + operands + ")Z");
+                break;
+            case GTR:
+            case LEQ:
+                code.invoke(CodeBuilder.INVOKESTATIC, JitOperations.NAME, "gtr",
+                        "(" + operands + ")Z");
+                break;
+            case LAND:
+                code.op(CodeBuilder.IAND, -1);
+                break;
+            case LOR:
+                code.op(CodeBuilder.IOR, -1);
+                break;
+            default:
+                throw new InternalException("Unhandled binary: " + op);
+        }
+        // Negated comparisons
+        if (op == SymbolTokenVariant.NEQ || op == SymbolTokenVariant.LEQ || op == SymbolTokenVariant.GEQ) {
+            code.pushInt(1);
+            code.op(CodeBuilder.IXOR, -1);
+        }
+    }
+
+    /**
+     * Zero a local, pushing the default value of its type.
+     *
+     * @param type The local type.
+     */
+    private void zero(TypeTokenVariant type) {
+        if (type == TypeTokenVariant.DOUBLE) {
+            code.pushDouble(0);
+        } else if (type == TypeTokenVariant.STRING) {
+            code.op(CodeBuilder.ACONST_NULL, 1);
+        } else {
+            code.pushInt(0);
+        }
+    }
+
+    /**
+     * Get the name of the bridge method of a function.
+     * <p>
+     * Function names are identifiers, so they never have the dash of the prefix.
+     *
+     * @param function The function node.
+     * @return The bridge method name.
+     */
+    static String bridgeName(FunctionNode function) {
+        return BRIDGE_PREFIX + function.getName();
+    }
+
+    /**
+     * Get the method descriptor of a function.
+     *
+     * @param function The function node.
+     * @return The method descriptor.
+     */
+    private static String descriptor(FunctionNode function) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Var parameter : function.getParameters()) {
+            descriptor.append(descriptor(parameter.getType()));
+        }
+        return descriptor.append(')').append(descriptor(function.getReturnType())).toString();
+    }
+
+    /**
+     * Get the field descriptor of a type.
+     *
+     * @param type The type.
+     * @return The JVM field descriptor.
+     */
+    private static String descriptor(TypeTokenVariant type) {
+        switch (type) {
+            case BOOLEAN:
+                return "Z";
+            case CHAR:
+                return "C";
+            case INT:
+                return "I";
+            case DOUBLE:
+                return "D";
+            case STRING:
+                return "Ljava/lang/String;";
+            case VOID:
+                return "V";
+            default:
+                throw new InternalException("Unhandled type: " + type);
+        }
+    }
+
+    /**
+     * Get the return opcode of a type.
+     *
+     * @param type The return type.
+     * @return The return opcode.
+     */
+    private static int returnOpcode(TypeTokenVariant type) {
+        return type == TypeTokenVariant.DOUBLE ? CodeBuilder.DRETURN
+                : type == TypeTokenVariant.STRING ? CodeBuilder.ARETURN : CodeBuilder.IRETURN;
+    }
+
+    /**
+     * Check if an operator assigns to its left hand variable.
+     *
+     * @param op The operator.
+     * @return If the operator is an assignment or compound assignment.
+     */
+    private static boolean isAssignment(SymbolTokenVariant op) {
+        return op.ordinal() >= SymbolTokenVariant.ADD_ASSIGN.ordinal()
+                && op.ordinal() <= SymbolTokenVariant.ASSIGN.ordinal();
+    }
+}
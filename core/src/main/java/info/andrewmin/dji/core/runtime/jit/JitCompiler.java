@@ -0,0 +1,175 @@
+package info.andrewmin.dji.core.runtime.jit;
+
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.runtime.ResolvedFunction;
+import info.andrewmin.dji.core.runtime.Value;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+
+/**
+ * A just in time compiler of hot functions to JVM bytecode.
+ * <p>
+ * A function is compiled on its first call if it has a loop, otherwise once it has been called enough times.
+ * It is compiled with every function it calls into a hidden class, so calls between them are plain static calls,
+ * and run by the JVM instead of the tree walking engine, which stays the fallback for every unsupported function
+ * (see {@link FunctionAnalysis}).
+ * Functions are only compiled once, a function that is not supported is never compiled again.
+ *
+ * @see info.andrewmin.dji.core.runtime.Runtime
+ */
+public final class JitCompiler {
+    private static final Logger LOGGER = Logger.getLogger(JitCompiler.class.getName());
+    // Calls of a function without loops before it is compiled
+    static final int COMPILE_THRESHOLD = 100;
+    // The hidden classes are in this package, so they can call the operations
+    private static final String CLASS_NAME = "info/andrewmin/dji/core/runtime/jit/Compiled";
+    private static final MethodType BRIDGE_TYPE = MethodType.methodType(Value.class, List.class);
+
+    private final IntFunction<ResolvedFunction> functions;
+    // Call counts, bridge method handles and unsupported functions indexed by the identifier ID of their name
+    private final int[] calls;
+    private final MethodHandle[] compiled;
+    private final boolean[] unsupported;
+
+    /**
+     * Construct a new just in time compiler.
+     *
+     * @param size      The number of identifier IDs.
+     * @param functions The resolved functions by the identifier ID of their name, null if they have not been resolved.
+     */
+    public JitCompiler(int size, IntFunction<ResolvedFunction> functions) {
+        this.functions = functions;
+        this.calls = new int[size];
+        this.compiled = new MethodHandle[size];
+        this.unsupported = new boolean[size];
+    }
+
+    /**
+     * Count a call of a function, and get its compiled code once it is hot.
+     *
+     * @param resolved The resolved function.
+     * @return The bridge method handle, which takes the argument list and returns the return value,
+     * or null if the function is not compiled.
+     */
+    public MethodHandle getCompiled(ResolvedFunction resolved) {
+        int id = resolved.getFunction().getId();
+        if (compiled[id] != null || unsupported[id]) {
+            return compiled[id];
+        }
+        int count = ++calls[id];
+        if (count == 1 ? !hasLoops(resolved) : count < COMPILE_THRESHOLD) {
+            return null;
+        }
+        return compile(resolved);
+    }
+
+    /**
+     * Run compiled code.
+     *
+     * @param handle The bridge method handle.
+     * @param args   The arguments, of the parameter types.
+     * @return The function's return value.
+     */
+    public static Value<?> invoke(MethodHandle handle, List<Value<?>> args) {
+        try {
+            return (Value<?>) handle.invokeExact(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InternalException("Compiled code threw " + e);
+        }
+    }
+
+    /**
+     * Compile a function with the functions it calls.
+     *
+     * @param root The resolved function.
+     * @return The bridge method handle, or null if the function is not supported.
+     */
+    private MethodHandle compile(ResolvedFunction root) {
+        FunctionNode function = root.getFunction();
+        Map<FunctionNode, FunctionAnalysis> unit = new LinkedHashMap<>();
+        List<ResolvedFunction> pending = new ArrayList<>(List.of(root));
+        while (!pending.isEmpty()) {
+            ResolvedFunction resolved = pending.remove(pending.size() - 1);
+            FunctionAnalysis analysis = new FunctionAnalysis(resolved);
+            String reason = analysis.analyse();
+            if (reason != null) {
+                unsupported[resolved.getFunction().getId()] = true;
+                return unsupported(function, resolved.getFunction().getName() + ": " + reason);
+            }
+            unit.put(resolved.getFunction(), analysis);
+            for (FunctionNode callee : analysis.getCallees()) {
+                if (unit.containsKey(callee) || pending.stream().anyMatch(r -> r.getFunction() == callee)) {
+                    continue;
+                }
+                ResolvedFunction resolvedCallee = functions.apply(callee.getId());
+                if (resolvedCallee == null) {
+                    // Lazily parsed functions are resolved on their first call, try again once it has run
+                    LOGGER.fine("Not compiling " + function.getName() + " yet, " + callee.getName() + " has not run");
+                    calls[function.getId()] = 1;
+                    return null;
+                }
+                pending.add(resolvedCallee);
+            }
+        }
+
+        ClassBuilder builder = new ClassBuilder(CLASS_NAME);
+        for (FunctionAnalysis analysis : unit.values()) {
+            if (!new FunctionEmitter(builder, analysis).emit()) {
+                return unsupported(function, analysis.getResolved().getFunction().getName() + ": too large");
+            }
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(builder.toByteArray(), true);
+            for (FunctionNode node : unit.keySet()) {
+                if (compiled[node.getId()] == null) {
+                    compiled[node.getId()] = lookup.findStatic(lookup.lookupClass(), FunctionEmitter.bridgeName(node),
+                            BRIDGE_TYPE);
+                }
+            }
+        } catch (IllegalAccessException | NoSuchMethodException | LinkageError e) {
+            throw new InternalException("Invalid compiled class for " + function.getName() + ": " + e);
+        }
+        LOGGER.fine("Compiled " + function.getName() + " with " + (unit.size() - 1) + " called functions");
+        return compiled[function.getId()];
+    }
+
+    /**
+     * Stop compiling a function that is not supported.
+     *
+     * @param function The function node.
+     * @param reason   The reason it is not supported.
+     * @return Null, the function is not compiled.
+     */
+    private MethodHandle unsupported(FunctionNode function, String reason) {
+        LOGGER.fine("Not compiling " + function.getName() + ", " + reason);
+        unsupported[function.getId()] = true;
+        return null;
+    }
+
+    /**
+     * Check if a function has a loop.
+     *
+     * @param resolved The resolved function.
+     * @return If any statement of the function has a for or while loop.
+     */
+    private static boolean hasLoops(ResolvedFunction resolved) {
+        for (StatementNode statement : resolved.getStatements()) {
+            if (FunctionAnalysis.hasLoops(statement)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
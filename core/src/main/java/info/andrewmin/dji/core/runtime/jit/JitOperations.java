@@ -0,0 +1,222 @@
+package info.andrewmin.dji.core.runtime.jit;
+
+import info.andrewmin.dji.core.exceptions.MissingReturnException;
+import info.andrewmin.dji.core.runtime.Value;
+
+import java.util.List;
+
+/**
+ * The operations compiled code calls instead of inlining them, with the results of the {@link Value} operations.
+ */
+final class JitOperations {
+    static final String NAME = "info/andrewmin/dji/core/runtime/jit/JitOperations";
+
+    /**
+     * Utility class.
+     */
+    private JitOperations() {
+    }
+
+    /**
+     * Compare ints (or chars or booleans) for equality.
+     *
+     * @param left  The left operand.
+     * @param right The right operand.
+     * @return If the operands are equal.
+     */
+    static boolean eql(int left, int right) {
+        return left == right;
+    }
+
+    /**
+     * Compare ints.
+     *
+     * @param left  The left operand.
+     * @param right The right operand.
+     * @return If the left operand is less than the right operand.
+     */
+    static boolean lss(int left, int right) {
+        return left < right;
+    }
+
+    /**
+     * Compare ints.
+     *
+     * @param left  The left operand.
+     * @param right The right operand.
+     * @return If the left operand is greater than the right operand.
+     */
+    static boolean gtr(int left, int right) {
+        return left > right;
+    }
+
+    /**
+     * Compare doubles for equality like {@link Double#equals(Object)}, so not a number equals itself.
+     *
+     * @param left  The left operand.
+     * @param right The right operand.
+     * @return If the operands are equal.
+     */
+    static boolean eql(double left, double right) {
+        return Double.compare(left, right) == 0;
+    }
+
+    /**
+     * Compare doubles.
+     *
+     * @param left  The left operand.
+     * @param right The right operand.
+     * @return If the left operand is less than the right operand.
+     */
+    static boolean lss(double left, double right) {
+        return left < right;
+    }
+
+    /**
+     * Compare doubles.
+     *
+     * @param left  The left operand.
+     * @param right The right operand.
+     * @return If the left operand is greater than the right operand.
+     */
+    static boolean gtr(double left, double right) {
+        return left > right;
+    }
+
+    /**
+     * Compare strings for equality.
+     *
+     * @param left  The left operand.
+     * @param right The right operand.
+     * @return If the operands are equal.
+     */
+    static boolean eql(String left, String right) {
+        return left.equals(right);
+    }
+
+    /**
+     * Concatenate strings.
+     *
+     * @param left  The left operand.
+     * @param right The right operand.
+     * @return The concatenated string.
+     */
+    static String add(String left, String right) {
+        return left + right;
+    }
+
+    /**
+     * Get an int argument.
+     *
+     * @param args  The arguments.
+     * @param index The argument index.
+     * @return The int.
+     */
+    static int intArg(List<Value<?>> args, int index) {
+        return ((Value.Int) args.get(index)).getValue();
+    }
+
+    /**
+     * Get a double argument.
+     *
+     * @param args  The arguments.
+     * @param index The argument index.
+     * @return The double.
+     */
+    static double doubleArg(List<Value<?>> args, int index) {
+        return ((Value.Double) args.get(index)).getValue();
+    }
+
+    /**
+     * Get a boolean argument.
+     *
+     * @param args  The arguments.
+     * @param index The argument index.
+     * @return The boolean.
+     */
+    static boolean booleanArg(List<Value<?>> args, int index) {
+        return ((Value.Boolean) args.get(index)).getValue();
+    }
+
+    /**
+     * Get a char argument.
+     *
+     * @param args  The arguments.
+     * @param index The argument index.
+     * @return The char.
+     */
+    static char charArg(List<Value<?>> args, int index) {
+        return ((Value.Char) args.get(index)).getValue();
+    }
+
+    /**
+     * Get a string argument.
+     *
+     * @param args  The arguments.
+     * @param index The argument index.
+     * @return The string.
+     */
+    static String stringArg(List<Value<?>> args, int index) {
+        return ((Value.String) args.get(index)).getValue();
+    }
+
+    /**
+     * Get the value of an int.
+     *
+     * @param value The int.
+     * @return The value.
+     */
+    static Value<?> toValue(int value) {
+        return new Value.Int(value);
+    }
+
+    /**
+     * Get the value of a double.
+     *
+     * @param value The double.
+     * @return The value.
+     */
+    static Value<?> toValue(double value) {
+        return new Value.Double(value);
+    }
+
+    /**
+     * Get the value of a boolean.
+     *
+     * @param value The boolean.
+     * @return The value.
+     */
+    static Value<?> toValue(boolean value) {
+        return new Value.Boolean(value);
+    }
+
+    /**
+     * Get the value of a char.
+     *
+     * @param value The char.
+     * @return The value.
+     */
+    static Value<?> toValue(char value) {
+        return new Value.Char(value);
+    }
+
+    /**
+     * Get the value of a string.
+     *
+     * @param value The string.
+     * @return The value.
+     */
+    static Value<?> toValue(String value) {
+        return new Value.String(value);
+    }
+
+    /**
+     * Get the error of a function that ended without returning.
+     *
+     * @param function The function name.
+     * @return The error to throw.
+     */
+    static MissingReturnException missingReturn(String function) {
+        return new MissingReturnException(function);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * This package provides the just in time compiler of hot functions to JVM bytecode.
+ */
+package info.andrewmin.dji.core.runtime.jit;
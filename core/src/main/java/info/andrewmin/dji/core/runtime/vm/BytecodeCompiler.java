@@ -0,0 +1,146 @@
+package info.andrewmin.dji.core.runtime.vm;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.runtime.ResolvedFunction;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+
+/**
+ * Compiles a resolved function to stack code for the {@link VirtualMachine}.
+ * <p>
+ * Expressions are compiled in evaluation order, each operand pushing its value for the instruction that uses it.
+ *
+ * @see Opcode
+ */
+final class BytecodeCompiler extends FunctionCompiler {
+    private int stackSize;
+    private int maxStack;
+
+    /**
+     * Construct a new stack code compiler.
+     *
+     * @param resolved The resolved function.
+     */
+    BytecodeCompiler(ResolvedFunction resolved) {
+        super(resolved, false);
+        this.stackSize = 0;
+        this.maxStack = 0;
+    }
+
+    @Override
+    int[] value(ExpressionNode expr) {
+        expression(expr);
+        // Popped by the next instruction
+        stack(-1);
+        return NO_OPERANDS;
+    }
+
+    @Override
+    void discard(ExpressionNode expr) {
+        expression(expr);
+        emit(Opcode.POP);
+        stack(-1);
+    }
+
+    @Override
+    int finish(int[] code) {
+        return maxStack;
+    }
+
+    /**
+     * Compile an expression, pushing its value.
+     *
+     * @param node The expression node.
+     */
+    private void expression(ExpressionNode node) {
+        // Literal
+        if (node instanceof ExpressionNode.Literal) {
+            emit(Opcode.CONST, constant(((ExpressionNode.Literal) node).getValue()));
+            stack(1);
+        }
+        // VariableReference
+        else if (node instanceof ExpressionNode.VariableReference) {
+            emit(Opcode.LOAD, ((ExpressionNode.VariableReference) node).getSlot());
+            stack(1);
+        }
+        // FunctionCall
+        else if (node instanceof ExpressionNode.FunctionCall) {
+            ExpressionNode.FunctionCall funcCall = (ExpressionNode.FunctionCall) node;
+            for (ExpressionNode arg : funcCall.getArgs()) {
+                expression(arg);
+            }
+            // Checked functions only pass arguments of the parameter types
+            emit(resolved.isChecked() ? Opcode.CALL : Opcode.CALL_CHECK, funcCall.getTarget().getId());
+            stack(1 - funcCall.getArgs().size());
+        }
+        // Binary
+        else if (node instanceof ExpressionNode.Binary) {
+            binary((ExpressionNode.Binary) node);
+        }
+        // Unary
+        else if (node instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+            expression(unary.getExpr());
+            if (unary.getOperator() == SymbolTokenVariant.SUB) {
+                emit(Opcode.NEGATE);
+            } else if (unary.getOperator() == SymbolTokenVariant.NOT) {
+                emit(Opcode.NOT);
+            } else {
+                emit(Opcode.BAD_UNARY, unary.getOperator().ordinal());
+            }
+        }
+        // Unhandled
+        else {
+            throw new InternalException("Unhandled expression: " + node.getNodeName());
+        }
+    }
+
+    /**
+     * Compile a binary expression, pushing its value.
+     * <p>
+     * Both operands are evaluated first, even when assigning to a variable,
+     * so reading a variable that does not exist fails before the value is evaluated.
+     *
+     * @param binary The binary expression node.
+     */
+    private void binary(ExpressionNode.Binary binary) {
+        SymbolTokenVariant op = binary.getOperator();
+        ExpressionNode left = binary.getLeftExpr();
+
+        // Left hand variable
+        if (left instanceof ExpressionNode.VariableReference && isAssignment(op)) {
+            int slot = ((ExpressionNode.VariableReference) left).getSlot();
+            expression(left);
+            expression(binary.getRightExpr());
+            if (op == SymbolTokenVariant.ASSIGN) {
+                emit(Opcode.ASSIGN, slot);
+            } else {
+                emit(operator(op));
+                emit(Opcode.STORE, slot);
+            }
+            stack(-1);
+            return;
+        }
+
+        expression(left);
+        expression(binary.getRightExpr());
+        // Assignments without a left hand variable always fail
+        int opcode = isAssignment(op) ? -1 : operator(op);
+        if (opcode >= 0) {
+            emit(opcode);
+        } else {
+            emit(Opcode.BAD_BINARY, op.ordinal());
+        }
+        stack(-1);
+    }
+
+    /**
+     * Track the operand stack size.
+     *
+     * @param change The number of values pushed, negative if popped.
+     */
+    private void stack(int change) {
+        stackSize += change;
+        maxStack = Math.max(maxStack, stackSize);
+    }
+}
@@ -0,0 +1,138 @@
+package info.andrewmin.dji.core.runtime.vm;
+
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.runtime.Value;
+
+/**
+ * A function compiled to bytecode.
+ *
+ * @see FunctionCompiler
+ * @see Opcode
+ */
+final class CompiledFunction {
+    private final FunctionNode function;
+    private final int[] code;
+    private final Value<?>[] constants;
+    private final int[] parameterSlots;
+    private final String[] slotNames;
+    private final int temporaries;
+    private final int skip;
+    private final boolean registerCode;
+    private final boolean parametersInPlace;
+
+    /**
+     * Construct a new compiled function.
+     *
+     * @param function       The function node.
+     * @param code           The instructions.
+     * @param constants      The constant pool.
+     * @param parameterSlots The slots of the parameters.
+     * @param slotNames      The variable names indexed by slot.
+     * @param temporaries    The maximum operand stack size, or temporary register count for register code.
+     * @param skip           The code index to start at when called while breaking or continuing.
+     * @param registerCode   If the code is register code.
+     */
+    CompiledFunction(FunctionNode function, int[] code, Value<?>[] constants, int[] parameterSlots,
+                     String[] slotNames, int temporaries, int skip, boolean registerCode) {
+        this.function = function;
+        this.code = code;
+        this.constants = constants;
+        this.parameterSlots = parameterSlots;
+        this.slotNames = slotNames;
+        this.temporaries = temporaries;
+        this.skip = skip;
+        this.registerCode = registerCode;
+        boolean inPlace = true;
+        for (int i = 0; i < parameterSlots.length; i++) {
+            inPlace &= parameterSlots[i] == i;
+        }
+        this.parametersInPlace = inPlace;
+    }
+
+    /**
+     * Get the function node.
+     *
+     * @return The function node.
+     */
+    FunctionNode getFunction() {
+        return function;
+    }
+
+    /**
+     * Get the instructions.
+     *
+     * @return The instructions.
+     */
+    int[] getCode() {
+        return code;
+    }
+
+    /**
+     * Get the constant pool.
+     *
+     * @return The constant values.
+     */
+    Value<?>[] getConstants() {
+        return constants;
+    }
+
+    /**
+     * Get the slots of the parameters.
+     *
+     * @return The parameter slots, in parameter order.
+     */
+    int[] getParameterSlots() {
+        return parameterSlots;
+    }
+
+    /**
+     * Check if each parameter's slot is its index, so the arguments are already in their slots when passed in place.
+     * <p>
+     * Parameters get the first slots, but repeated parameter names share one.
+     *
+     * @return If the parameter slots are in parameter order.
+     */
+    boolean hasParametersInPlace() {
+        return parametersInPlace;
+    }
+
+    /**
+     * Get the variable names.
+     *
+     * @return The variable names indexed by slot.
+     */
+    String[] getSlotNames() {
+        return slotNames;
+    }
+
+    /**
+     * Get the number of stack entries or registers used by a call of the function.
+     * <p>
+     * Repeated parameter names share a slot, but every argument is passed.
+     *
+     * @return The variable slot (or argument) count plus the temporary count.
+     */
+    int getFrameSize() {
+        return Math.max(slotNames.length, parameterSlots.length) + temporaries;
+    }
+
+    /**
+     * Get the code index to start at when the function is called while breaking or continuing.
+     * <p>
+     * Every statement is skipped then, but the return value may still be pending from the caller.
+     *
+     * @return The code index.
+     */
+    int getSkip() {
+        return skip;
+    }
+
+    /**
+     * Check if the code is register code.
+     *
+     * @return If the code is register code, otherwise it is stack code.
+     */
+    boolean isRegisterCode() {
+        return registerCode;
+    }
+}
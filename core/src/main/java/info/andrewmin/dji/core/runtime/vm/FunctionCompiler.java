@@ -0,0 +1,462 @@
+package info.andrewmin.dji.core.runtime.vm;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.runtime.ResolvedFunction;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Compiles the statements of a resolved function to bytecode, leaving expressions to the instruction set.
+ * <p>
+ * The tree walking engine skips every statement while breaking or continuing until the loop checks its condition,
+ * and only returns when a top level statement of the function ends.
+ * The compiled code jumps to the same places instead:
+ * a break or continue jumps to the post expression or condition of its loop,
+ * and the return value is checked after each top level statement.
+ * A call may break or continue the loop of its caller (the flow state is global),
+ * so the flow state is checked after statements with calls and in the conditions of loops with calls.
+ * Loops without breaks, continues or calls do not touch the flow state or the loop count at all.
+ *
+ * @see Opcode
+ */
+abstract class FunctionCompiler {
+    private static final Logger LOGGER = Logger.getLogger(FunctionCompiler.class.getName());
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The operands of an instruction that uses a value on the operand stack.
+     */
+    static final int[] NO_OPERANDS = new int[0];
+
+    final ResolvedFunction resolved;
+    private final boolean registerCode;
+
+    private int[] code;
+    private int size;
+
+    private final List<Value<?>> constants;
+    // Constant indices by raw value, so equal literals share one value
+    private final Map<Object, Integer> constantIndices;
+
+    // Where statements skip to while breaking or continuing
+    private Label skip;
+
+    /**
+     * A jump target that may not be known yet.
+     */
+    private static final class Label {
+        private int target = -1;
+        // Code indices of the jump operands waiting for the target
+        private final List<Integer> uses = new ArrayList<>();
+    }
+
+    /**
+     * To be invoked by subclass constructors only.
+     *
+     * @param resolved     The resolved function.
+     * @param registerCode If the subclass compiles register code.
+     */
+    FunctionCompiler(ResolvedFunction resolved, boolean registerCode) {
+        this.resolved = resolved;
+        this.registerCode = registerCode;
+        this.code = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.constants = new ArrayList<>();
+        this.constantIndices = new HashMap<>();
+    }
+
+    /**
+     * Compile the function.
+     *
+     * @return The compiled function.
+     */
+    CompiledFunction compile() {
+        FunctionNode function = resolved.getFunction();
+        List<StatementNode> statements = resolved.getStatements();
+
+        // Skipping the remaining statements only leaves the return value check of each of them
+        skip = new Label();
+        for (int i = 0; i < statements.size(); i++) {
+            statement(statements.get(i));
+            if (i == statements.size() - 1) {
+                bind(skip);
+            }
+            emit(Opcode.CHECK_RETURN);
+        }
+        if (statements.isEmpty()) {
+            bind(skip);
+        }
+        emit(function.getReturnType() != TypeTokenVariant.VOID ? Opcode.MISSING_RETURN : Opcode.RETURN_VOID);
+
+        int[] finalCode = Arrays.copyOf(code, size);
+        int temporaries = finish(finalCode);
+        CompiledFunction compiled = new CompiledFunction(function, finalCode, constants.toArray(new Value<?>[0]),
+                resolved.getParameterSlots(), resolved.getSlotNames(), temporaries, skip.target, registerCode);
+        LOGGER.fine("Compiled " + Opcode.disassemble(compiled));
+        return compiled;
+    }
+
+    /**
+     * Compile an expression whose value is used by the next instruction.
+     *
+     * @param expr The expression node.
+     * @return The operands that pass the value to the instruction.
+     */
+    abstract int[] value(ExpressionNode expr);
+
+    /**
+     * Compile an expression whose value is not used.
+     *
+     * @param expr The expression node.
+     */
+    abstract void discard(ExpressionNode expr);
+
+    /**
+     * Finish the compiled code.
+     *
+     * @param code The compiled code, may be rewritten in place.
+     * @return The maximum operand stack size, or temporary register count for register code.
+     */
+    abstract int finish(int[] code);
+
+    /**
+     * Compile a statement.
+     *
+     * @param node The statement node, may be null.
+     */
+    private void statement(StatementNode node) {
+        // Block
+        if (node instanceof StatementNode.Block) {
+            for (StatementNode statement : ((StatementNode.Block) node).getStatements()) {
+                statement(statement);
+            }
+        }
+        // VariableDeclaration
+        else if (node instanceof StatementNode.VariableDeclaration) {
+            StatementNode.VariableDeclaration declaration = (StatementNode.VariableDeclaration) node;
+            int[] value = value(declaration.getExpr());
+            // Checked functions only declare variables with values of their type
+            if (resolved.isChecked()) {
+                emit(Opcode.DECLARE, value, declaration.getSlot());
+            } else {
+                emit(Opcode.DECLARE_CHECK, value, declaration.getSlot(), declaration.getType().ordinal());
+            }
+            skipFlow(declaration.getExpr());
+        }
+        // If
+        else if (node instanceof StatementNode.If) {
+            StatementNode.If _if = (StatementNode.If) node;
+            Label _else = new Label();
+            Label end = new Label();
+            jump(Opcode.JUMP_FALSE, value(_if.getCondition()), _else);
+            skipFlow(_if.getCondition());
+            statement(_if.getBody());
+            if (_if.getElse() != null || hasCall(_if.getCondition())) {
+                jump(Opcode.JUMP, NO_OPERANDS, end);
+            }
+            bind(_else);
+            skipFlow(_if.getCondition());
+            statement(_if.getElse());
+            bind(end);
+        }
+        // For
+        else if (node instanceof StatementNode.For) {
+            StatementNode.For _for = (StatementNode.For) node;
+            loop(_for.getInit(), _for.getCondition(), _for.getPost(), _for.getBody());
+        }
+        // While
+        else if (node instanceof StatementNode.While) {
+            StatementNode.While _while = (StatementNode.While) node;
+            loop(null, _while.getCondition(), null, _while.getBody());
+        }
+        // Break
+        else if (node instanceof StatementNode.Break) {
+            jump(Opcode.BREAK, NO_OPERANDS, skip);
+        }
+        // Continue
+        else if (node instanceof StatementNode.Continue) {
+            jump(Opcode.CONTINUE, NO_OPERANDS, skip);
+        }
+        // Return
+        else if (node instanceof StatementNode.Return) {
+            StatementNode.Return ret = (StatementNode.Return) node;
+            emit(Opcode.SET_RETURN, value(ret.getExpr()));
+            skipFlow(ret.getExpr());
+        }
+        // Expression
+        else if (node instanceof StatementNode.Expression) {
+            StatementNode.Expression expr = (StatementNode.Expression) node;
+            discard(expr.getExpr());
+            skipFlow(expr.getExpr());
+        }
+    }
+
+    /**
+     * Compile a for or while loop.
+     * <p>
+     * The condition is compiled after the body, so each iteration takes a single conditional jump.
+     *
+     * @param init      The init statement node, null for while loops.
+     * @param condition The condition expression node.
+     * @param post      The post expression node, null for while loops.
+     * @param body      The body statement node.
+     */
+    private void loop(StatementNode init, ExpressionNode condition, ExpressionNode post, StatementNode body) {
+        boolean flow = hasFlow(init) || hasCall(condition) || (post != null && hasCall(post)) || hasFlow(body);
+        boolean scope = hasDeclarations(init) || hasDeclarations(body);
+        Label start = new Label();
+        Label next = new Label();
+        Label check = new Label();
+        Label outerSkip = skip;
+
+        if (flow) {
+            emit(Opcode.ENTER_LOOP);
+        }
+        if (scope) {
+            emit(Opcode.PUSH_SCOPE);
+        }
+        // Breaking or continuing in the init statement still checks the condition
+        skip = check;
+        statement(init);
+        skip = post != null ? next : check;
+        jump(Opcode.JUMP, NO_OPERANDS, check);
+
+        bind(start);
+        statement(body);
+        if (post != null) {
+            bind(next);
+            discard(post);
+        }
+        bind(check);
+        jump(flow ? Opcode.LOOP_TRUE : Opcode.JUMP_TRUE, value(condition), start);
+
+        if (scope) {
+            emit(Opcode.POP_SCOPE);
+        }
+        if (flow) {
+            emit(Opcode.EXIT_LOOP);
+        }
+        skip = outerSkip;
+    }
+
+    /**
+     * Get the opcode of a binary value operator, or of the operation of a compound assignment.
+     *
+     * @param op The operator.
+     * @return The opcode, or -1 if the operator does not compute a value from its operands.
+     */
+    static int operator(SymbolTokenVariant op) {
+        switch (op) {
+            case ADD:
+            case ADD_ASSIGN:
+                return Opcode.ADD;
+            case SUB:
+            case SUB_ASSIGN:
+                return Opcode.SUB;
+            case MUL:
+            case MUL_ASSIGN:
+                return Opcode.MUL;
+            case QUO:
+            case QUO_ASSIGN:
+                return Opcode.QUO;
+            case REM:
+            case REM_ASSIGN:
+                return Opcode.REM;
+            case EQL:
+                return Opcode.EQL;
+            case NEQ:
+                return Opcode.NEQ;
+            case LSS:
+                return Opcode.LSS;
+            case GTR:
+                return Opcode.GTR;
+            case LEQ:
+                return Opcode.LEQ;
+            case GEQ:
+                return Opcode.GEQ;
+            case LAND:
+                return Opcode.LAND;
+            case LOR:
+                return Opcode.LOR;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Check if an operator assigns to its left operand.
+     *
+     * @param op The operator.
+     * @return If the operator is an assignment.
+     */
+    static boolean isAssignment(SymbolTokenVariant op) {
+        return op.ordinal() >= SymbolTokenVariant.ADD_ASSIGN.ordinal()
+                && op.ordinal() <= SymbolTokenVariant.ASSIGN.ordinal();
+    }
+
+    /**
+     * Check if a statement may break or continue the loop it is in.
+     * <p>
+     * Nested loops stop breaking and continuing when they end, so they are not searched.
+     *
+     * @param node The statement node, may be null.
+     * @return If the statement has a break, continue or function call outside of nested loops.
+     */
+    private static boolean hasFlow(StatementNode node) {
+        if (node instanceof StatementNode.Block) {
+            for (StatementNode statement : ((StatementNode.Block) node).getStatements()) {
+                if (hasFlow(statement)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (node instanceof StatementNode.VariableDeclaration) {
+            return hasCall(((StatementNode.VariableDeclaration) node).getExpr());
+        } else if (node instanceof StatementNode.If) {
+            StatementNode.If _if = (StatementNode.If) node;
+            return hasCall(_if.getCondition()) || hasFlow(_if.getBody()) || hasFlow(_if.getElse());
+        } else if (node instanceof StatementNode.Break || node instanceof StatementNode.Continue) {
+            return true;
+        } else if (node instanceof StatementNode.Return) {
+            return hasCall(((StatementNode.Return) node).getExpr());
+        } else if (node instanceof StatementNode.Expression) {
+            return hasCall(((StatementNode.Expression) node).getExpr());
+        }
+        // Loop or null
+        return false;
+    }
+
+    /**
+     * Check if an expression has a function call.
+     *
+     * @param node The expression node.
+     * @return If the expression has a function call.
+     */
+    private static boolean hasCall(ExpressionNode node) {
+        if (node instanceof ExpressionNode.FunctionCall) {
+            return true;
+        } else if (node instanceof ExpressionNode.Binary) {
+            return hasCall(((ExpressionNode.Binary) node).getLeftExpr())
+                    || hasCall(((ExpressionNode.Binary) node).getRightExpr());
+        } else if (node instanceof ExpressionNode.Unary) {
+            return hasCall(((ExpressionNode.Unary) node).getExpr());
+        }
+        return false;
+    }
+
+    /**
+     * Check if a loop scope has variable declarations.
+     * <p>
+     * Nested loops are scopes of their own, so they are not searched.
+     *
+     * @param node The statement node in the loop scope, may be null.
+     * @return If the statement declares a variable in the loop scope.
+     */
+    private static boolean hasDeclarations(StatementNode node) {
+        if (node instanceof StatementNode.Block) {
+            for (StatementNode statement : ((StatementNode.Block) node).getStatements()) {
+                if (hasDeclarations(statement)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (node instanceof StatementNode.If) {
+            return hasDeclarations(((StatementNode.If) node).getBody())
+                    || hasDeclarations(((StatementNode.If) node).getElse());
+        }
+        return node instanceof StatementNode.VariableDeclaration;
+    }
+
+    /**
+     * Skip the remaining statements if an expression's function call started breaking or continuing.
+     *
+     * @param expr The expression node that was just evaluated.
+     */
+    private void skipFlow(ExpressionNode expr) {
+        if (hasCall(expr)) {
+            jump(Opcode.SKIP_FLOW, NO_OPERANDS, skip);
+        }
+    }
+
+    /**
+     * Get the constant pool index of a value, adding it if it is not in the pool.
+     *
+     * @param value The value.
+     * @return The constant pool index.
+     */
+    int constant(Value<?> value) {
+        Integer index = constantIndices.get(value.getValue());
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndices.put(value.getValue(), index);
+        }
+        return index;
+    }
+
+    /**
+     * Emit a jump instruction.
+     *
+     * @param opcode The jump opcode.
+     * @param value  The operands of the value the jump uses.
+     * @param label  The jump target.
+     */
+    private void jump(int opcode, int[] value, Label label) {
+        emit(opcode, value, label.target);
+        if (label.target < 0) {
+            label.uses.add(size - 1);
+        }
+    }
+
+    /**
+     * Bind a label to the next instruction.
+     *
+     * @param label The label.
+     */
+    private void bind(Label label) {
+        label.target = size;
+        for (int use : label.uses) {
+            code[use] = size;
+        }
+        label.uses.clear();
+    }
+
+    /**
+     * Emit an instruction that uses a value.
+     *
+     * @param opcode   The opcode.
+     * @param value    The operands of the value.
+     * @param operands The other operands.
+     */
+    private void emit(int opcode, int[] value, int... operands) {
+        int[] all = Arrays.copyOf(value, value.length + operands.length);
+        System.arraycopy(operands, 0, all, value.length, operands.length);
+        emit(opcode, all);
+    }
+
+    /**
+     * Emit an instruction.
+     *
+     * @param opcode   The opcode.
+     * @param operands The operands.
+     */
+    void emit(int opcode, int... operands) {
+        if (size + 1 + operands.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + 1 + operands.length));
+        }
+        code[size++] = opcode;
+        for (int operand : operands) {
+            code[size++] = operand;
+        }
+    }
+}
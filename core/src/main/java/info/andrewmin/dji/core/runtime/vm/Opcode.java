@@ -0,0 +1,183 @@
+package info.andrewmin.dji.core.runtime.vm;
+
+/**
+ * The instruction sets of the bytecode virtual machines.
+ * <p>
+ * An instruction is an opcode followed by its operands in the code array of a function.
+ * Stack code pushes values onto and pops them from an operand stack ({@link VirtualMachine}),
+ * register code names the registers it reads and writes in its operands ({@link RegisterMachine}).
+ * The first registers of a function are its variable slots (see {@link info.andrewmin.dji.core.runtime.SlotResolver}),
+ * the rest hold temporary values.
+ * A register operand may also be a constant, stored as the bitwise complement of its constant pool index.
+ * <p>
+ * The return value, the loop flow state (break or continue) and the loop count are global like in the
+ * tree walking engine, so the instructions reproduce its behavior exactly.
+ *
+ * <pre>
+ * Opcode          Stack code     Register code        Effect
+ * CONST           constant                            pushes a constant
+ * LOAD            slot                                pushes a variable, unresolved identifier if it does not exist
+ * STORE           slot                                stores the top value
+ * MOVE                           dst, src             copies the source to the destination
+ * CHECK                          slot                 unresolved identifier if the variable does not exist
+ * ASSIGN          slot           slot, src            ASSIGN pops the old value too, expected variable for void
+ * DECLARE         slot           src, slot            creates the variable if it does not exist
+ * DECLARE_CHECK   slot, type     src, slot, type      DECLARE, checking the value type first
+ * POP                                                 pops a value
+ * ADD ... LOR                    dst, left, right
+ * NEGATE, NOT                    dst, src
+ * BAD_BINARY      operator       operator, l, r       always throws
+ * BAD_UNARY       operator       operator, src        always throws
+ * JUMP            target         target
+ * JUMP_FALSE      target         src, target
+ * JUMP_TRUE       target         src, target
+ * LOOP_TRUE       target         src, target          JUMP_TRUE, unless breaking, and stops continuing
+ * ENTER_LOOP, EXIT_LOOP                               counts loops, EXIT_LOOP also stops breaking or continuing
+ * PUSH_SCOPE, POP_SCOPE                               POP_SCOPE deletes the variables created since PUSH_SCOPE
+ * BREAK, CONTINUE target         target               sets the flow state and jumps
+ * SKIP_FLOW       target         target               jumps if breaking or continuing
+ * CALL            function       dst, function,       function by identifier ID, register code lists the
+ *                                count, args...       argument registers after their count
+ * CALL_CHECK      function       (as CALL)            CALL, checking the argument types first
+ * SET_RETURN                     src                  sets the global return value
+ * CHECK_RETURN                                        returns the global return value if it is set
+ * RETURN_VOID                                         returns nothing
+ * MISSING_RETURN                                      always throws
+ * </pre>
+ * Stack code operators pop their operands and push their result.
+ */
+final class Opcode {
+    // Values and variables
+    static final int CONST = 0;
+    static final int LOAD = 1;
+    static final int STORE = 2;
+    static final int MOVE = 3;
+    static final int CHECK = 4;
+    static final int ASSIGN = 5;
+    static final int DECLARE = 6;
+    static final int DECLARE_CHECK = 7;
+    static final int POP = 8;
+
+    // Operators
+    static final int ADD = 9;
+    static final int SUB = 10;
+    static final int MUL = 11;
+    static final int QUO = 12;
+    static final int REM = 13;
+    static final int EQL = 14;
+    static final int NEQ = 15;
+    static final int LSS = 16;
+    static final int GTR = 17;
+    static final int LEQ = 18;
+    static final int GEQ = 19;
+    static final int LAND = 20;
+    static final int LOR = 21;
+    static final int NEGATE = 22;
+    static final int NOT = 23;
+    static final int BAD_BINARY = 24;
+    static final int BAD_UNARY = 25;
+
+    // Control flow
+    static final int JUMP = 26;
+    static final int JUMP_FALSE = 27;
+    static final int JUMP_TRUE = 28;
+    static final int LOOP_TRUE = 29;
+    static final int ENTER_LOOP = 30;
+    static final int EXIT_LOOP = 31;
+    static final int PUSH_SCOPE = 32;
+    static final int POP_SCOPE = 33;
+    static final int BREAK = 34;
+    static final int CONTINUE = 35;
+    static final int SKIP_FLOW = 36;
+
+    // Functions
+    static final int CALL = 37;
+    static final int CALL_CHECK = 38;
+    static final int SET_RETURN = 39;
+    static final int CHECK_RETURN = 40;
+    static final int RETURN_VOID = 41;
+    static final int MISSING_RETURN = 42;
+
+    private static final String[] NAMES = {
+            "CONST", "LOAD", "STORE", "MOVE", "CHECK", "ASSIGN", "DECLARE", "DECLARE_CHECK", "POP",
+            "ADD", "SUB", "MUL", "QUO", "REM", "EQL", "NEQ", "LSS", "GTR", "LEQ", "GEQ", "LAND", "LOR",
+            "NEGATE", "NOT", "BAD_BINARY", "BAD_UNARY",
+            "JUMP", "JUMP_FALSE", "JUMP_TRUE", "LOOP_TRUE", "ENTER_LOOP", "EXIT_LOOP", "PUSH_SCOPE", "POP_SCOPE",
+            "BREAK", "CONTINUE", "SKIP_FLOW",
+            "CALL", "CALL_CHECK", "SET_RETURN", "CHECK_RETURN", "RETURN_VOID", "MISSING_RETURN",
+    };
+
+    // Operand layouts indexed by opcode, one character per operand:
+    // a register or constant (r), a count followed by as many registers (n),
+    // a constant (k), variable slot (s), type (t), operator (o), jump target (j) or function (f)
+    private static final String[] STACK_LAYOUTS = {
+            "k", "s", "s", null, null, "s", "s", "st", "",
+            "", "", "", "", "", "", "", "", "", "", "", "", "",
+            "", "", "o", "o",
+            "j", "j", "j", "j", "", "", "", "",
+            "j", "j", "j",
+            "f", "f", "", "", "", "",
+    };
+    private static final String[] REGISTER_LAYOUTS = {
+            null, null, null, "rr", "s", "sr", "rs", "rst", null,
+            "rrr", "rrr", "rrr", "rrr", "rrr", "rrr", "rrr", "rrr", "rrr", "rrr", "rrr", "rrr", "rrr",
+            "rr", "rr", "orr", "or",
+            "j", "rj", "rj", "rj", "", "", "", "",
+            "j", "j", "j",
+            "rfn", "rfn", "r", "", "", "",
+    };
+
+    /**
+     * Utility class.
+     */
+    private Opcode() {
+    }
+
+    /**
+     * Get the operand layout of an opcode.
+     *
+     * @param opcode    The opcode.
+     * @param registers If the code is register code.
+     * @return The operand layout, or null if the instruction set does not have the opcode.
+     */
+    static String layout(int opcode, boolean registers) {
+        return registers ? REGISTER_LAYOUTS[opcode] : STACK_LAYOUTS[opcode];
+    }
+
+    /**
+     * Get a readable listing of the instructions of a function.
+     *
+     * @param compiled The compiled function.
+     * @return The instruction listing, one instruction per line.
+     */
+    static String disassemble(CompiledFunction compiled) {
+        int[] code = compiled.getCode();
+        StringBuilder builder = new StringBuilder(compiled.getFunction().getName()).append(':');
+        int pc = 0;
+        while (pc < code.length) {
+            builder.append("\n  ").append(pc).append(' ').append(NAMES[code[pc]]);
+            String layout = layout(code[pc++], compiled.isRegisterCode());
+            for (int i = 0; i < layout.length(); i++) {
+                int operand = code[pc++];
+                if (layout.charAt(i) == 'n') {
+                    for (int j = 0; j < operand; j++) {
+                        builder.append(' ').append(register(code[pc++]));
+                    }
+                } else {
+                    builder.append(' ').append(layout.charAt(i) == 'r' ? register(operand) : operand);
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Get a readable register operand.
+     *
+     * @param operand The register, or complemented constant index.
+     * @return The register (r) or constant (k) name.
+     */
+    private static String register(int operand) {
+        return operand >= 0 ? "r" + operand : "k" + ~operand;
+    }
+}
@@ -0,0 +1,352 @@
+package info.andrewmin.dji.core.runtime.vm;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.runtime.ResolvedFunction;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles a resolved function to register code for the {@link RegisterMachine}.
+ * <p>
+ * Variables are read and written in their slot registers and literals are constant operands,
+ * so only the results of calls and operators take instructions and temporary registers.
+ * Temporaries are numbered in order while compiling, then packed into as few registers as possible
+ * by a linear scan over their live ranges.
+ * <p>
+ * A variable operand is read by the instruction that uses it,
+ * so it is copied to a temporary first if evaluating a later operand could fail or assign to it,
+ * keeping the evaluation order of the tree walking engine.
+ *
+ * @see Opcode
+ */
+final class RegisterCompiler extends FunctionCompiler {
+    private final int slots;
+    // The first temporary register, registers below are variable slots (or repeated parameter arguments)
+    private final int firstTemporary;
+    private int temporaries;
+
+    /**
+     * Construct a new register code compiler.
+     *
+     * @param resolved The resolved function.
+     */
+    RegisterCompiler(ResolvedFunction resolved) {
+        super(resolved, true);
+        this.slots = resolved.getSlotNames().length;
+        this.firstTemporary = Math.max(slots, resolved.getParameterSlots().length);
+        this.temporaries = 0;
+    }
+
+    @Override
+    int[] value(ExpressionNode expr) {
+        return new int[]{operand(expr, -1)};
+    }
+
+    @Override
+    void discard(ExpressionNode expr) {
+        if (expr instanceof ExpressionNode.VariableReference) {
+            emit(Opcode.CHECK, ((ExpressionNode.VariableReference) expr).getSlot());
+        } else if (!(expr instanceof ExpressionNode.Literal)) {
+            operand(expr, -1);
+        }
+    }
+
+    /**
+     * Allocate registers for the temporaries with a linear scan over their live ranges.
+     * <p>
+     * Expressions do not jump, so a temporary is live from its first to its last instruction.
+     * Instructions read their operands before writing their result,
+     * so a temporary may take the register of one whose last read is the instruction that writes it.
+     *
+     * @param code The compiled code, rewritten in place.
+     * @return The temporary register count.
+     */
+    @Override
+    int finish(int[] code) {
+        int[] starts = new int[temporaries];
+        int[] ends = new int[temporaries];
+        Arrays.fill(starts, -1);
+        forEachTemporary(code, (pc, index) -> {
+            int temporary = code[index] - firstTemporary;
+            if (starts[temporary] < 0) {
+                starts[temporary] = pc;
+            }
+            ends[temporary] = pc;
+        });
+
+        // Temporaries are numbered in the order they are first written
+        int[] registers = new int[temporaries];
+        int[] registerEnds = new int[temporaries];
+        int count = 0;
+        for (int temporary = 0; temporary < temporaries; temporary++) {
+            if (starts[temporary] < 0) {
+                continue;
+            }
+            int register = 0;
+            while (register < count && registerEnds[register] > starts[temporary]) {
+                register++;
+            }
+            if (register == count) {
+                count++;
+            }
+            registers[temporary] = register;
+            registerEnds[register] = ends[temporary];
+        }
+
+        forEachTemporary(code, (pc, index) -> code[index] = firstTemporary + registers[code[index] - firstTemporary]);
+        return count;
+    }
+
+    /**
+     * A consumer of temporary register operands.
+     */
+    @FunctionalInterface
+    private interface TemporaryConsumer {
+        /**
+         * Accept a temporary register operand.
+         *
+         * @param pc    The code index of the instruction.
+         * @param index The code index of the operand.
+         */
+        void accept(int pc, int index);
+    }
+
+    /**
+     * Visit every temporary register operand in code order.
+     *
+     * @param code     The compiled code.
+     * @param consumer The operand consumer.
+     */
+    private void forEachTemporary(int[] code, TemporaryConsumer consumer) {
+        int pc = 0;
+        while (pc < code.length) {
+            String layout = Opcode.layout(code[pc], true);
+            int index = pc + 1;
+            for (int i = 0; i < layout.length(); i++) {
+                char kind = layout.charAt(i);
+                if (kind == 'n') {
+                    int count = code[index++];
+                    for (int j = 0; j < count; j++, index++) {
+                        if (code[index] >= firstTemporary) {
+                            consumer.accept(pc, index);
+                        }
+                    }
+                    continue;
+                } else if (kind == 'r' && code[index] >= firstTemporary) {
+                    consumer.accept(pc, index);
+                }
+                index++;
+            }
+            pc = index;
+        }
+    }
+
+    /**
+     * Compile an expression, getting the operand with its value.
+     *
+     * @param node   The expression node.
+     * @param target The register to write an operator result to, or -1 for a new temporary.
+     * @return The register or constant operand.
+     */
+    private int operand(ExpressionNode node, int target) {
+        // Literal
+        if (node instanceof ExpressionNode.Literal) {
+            return ~constant(((ExpressionNode.Literal) node).getValue());
+        }
+        // VariableReference
+        else if (node instanceof ExpressionNode.VariableReference) {
+            return ((ExpressionNode.VariableReference) node).getSlot();
+        }
+        // FunctionCall
+        else if (node instanceof ExpressionNode.FunctionCall) {
+            ExpressionNode.FunctionCall funcCall = (ExpressionNode.FunctionCall) node;
+            List<ExpressionNode> args = funcCall.getArgs();
+            int[] operands = new int[3 + args.size()];
+            for (int i = 0; i < args.size(); i++) {
+                operands[3 + i] = operand(args.get(i), -1);
+                if (i + 1 < args.size()) {
+                    operands[3 + i] = keep(operands[3 + i], args.subList(i + 1, args.size()));
+                }
+            }
+            operands[0] = temporary();
+            operands[1] = funcCall.getTarget().getId();
+            operands[2] = args.size();
+            // Checked functions only pass arguments of the parameter types
+            emit(resolved.isChecked() ? Opcode.CALL : Opcode.CALL_CHECK, operands);
+            return operands[0];
+        }
+        // Binary
+        else if (node instanceof ExpressionNode.Binary) {
+            return binary((ExpressionNode.Binary) node, target);
+        }
+        // Unary
+        else if (node instanceof ExpressionNode.Unary) {
+            ExpressionNode.Unary unary = (ExpressionNode.Unary) node;
+            int operand = operand(unary.getExpr(), -1);
+            if (unary.getOperator() == SymbolTokenVariant.SUB || unary.getOperator() == SymbolTokenVariant.NOT) {
+                int result = target >= 0 ? target : temporary();
+                emit(unary.getOperator() == SymbolTokenVariant.SUB ? Opcode.NEGATE : Opcode.NOT, result, operand);
+                return result;
+            }
+            emit(Opcode.BAD_UNARY, unary.getOperator().ordinal(), operand);
+            return operand;
+        }
+        // Unhandled
+        else {
+            throw new InternalException("Unhandled expression: " + node.getNodeName());
+        }
+    }
+
+    /**
+     * Compile a binary expression, getting the operand with its value.
+     * <p>
+     * The left variable of an assignment is checked before the value is evaluated,
+     * so assigning to a variable that does not exist fails first.
+     *
+     * @param binary The binary expression node.
+     * @param target The register to write an operator result to, or -1 for a new temporary.
+     * @return The register or constant operand.
+     */
+    private int binary(ExpressionNode.Binary binary, int target) {
+        SymbolTokenVariant op = binary.getOperator();
+        ExpressionNode left = binary.getLeftExpr();
+        ExpressionNode right = binary.getRightExpr();
+
+        // Left hand variable
+        if (left instanceof ExpressionNode.VariableReference && isAssignment(op)) {
+            int slot = ((ExpressionNode.VariableReference) left).getSlot();
+            if (op == SymbolTokenVariant.ASSIGN) {
+                if (isSimple(right)) {
+                    emit(Opcode.ASSIGN, slot, operand(right, -1));
+                } else {
+                    check(slot, right);
+                    int value = operand(right, slot);
+                    if (value != slot) {
+                        emit(Opcode.ASSIGN, slot, value);
+                    }
+                }
+            } else if (isSimple(right)) {
+                emit(operator(op), slot, slot, operand(right, -1));
+            } else if (assigns(right, slot)) {
+                // The old value is read before the right hand side assigns a new one
+                int old = temporary();
+                emit(Opcode.MOVE, old, slot);
+                emit(operator(op), slot, old, operand(right, -1));
+            } else {
+                check(slot, right);
+                emit(operator(op), slot, slot, operand(right, -1));
+            }
+            return slot;
+        }
+
+        int leftOperand = keep(operand(left, -1), List.of(right));
+        int rightOperand = operand(right, -1);
+        // Assignments without a left hand variable always fail
+        int opcode = isAssignment(op) ? -1 : operator(op);
+        if (opcode < 0) {
+            emit(Opcode.BAD_BINARY, op.ordinal(), leftOperand, rightOperand);
+            return leftOperand;
+        }
+        int result = target >= 0 ? target : temporary();
+        emit(opcode, result, leftOperand, rightOperand);
+        return result;
+    }
+
+    /**
+     * Copy a variable operand to a temporary if it may not be read as is after evaluating the later operands.
+     *
+     * @param operand The operand.
+     * @param later   The expression nodes of the later operands.
+     * @return The operand, or the temporary it was copied to.
+     */
+    private int keep(int operand, List<ExpressionNode> later) {
+        if (operand < 0 || operand >= slots) {
+            return operand;
+        }
+        for (ExpressionNode expr : later) {
+            if (!isSimple(expr)) {
+                int temporary = temporary();
+                emit(Opcode.MOVE, temporary, operand);
+                return temporary;
+            }
+        }
+        return operand;
+    }
+
+    /**
+     * Check that a variable exists before evaluating an expression, unless the expression reads it first.
+     *
+     * @param slot The variable slot.
+     * @param expr The expression node.
+     */
+    private void check(int slot, ExpressionNode expr) {
+        ExpressionNode first = expr;
+        while (true) {
+            if (first instanceof ExpressionNode.Binary) {
+                first = ((ExpressionNode.Binary) first).getLeftExpr();
+            } else if (first instanceof ExpressionNode.Unary) {
+                first = ((ExpressionNode.Unary) first).getExpr();
+            } else if (first instanceof ExpressionNode.FunctionCall
+                    && !((ExpressionNode.FunctionCall) first).getArgs().isEmpty()) {
+                first = ((ExpressionNode.FunctionCall) first).getArgs().get(0);
+            } else {
+                break;
+            }
+        }
+        if (!(first instanceof ExpressionNode.VariableReference)
+                || ((ExpressionNode.VariableReference) first).getSlot() != slot) {
+            emit(Opcode.CHECK, slot);
+        }
+    }
+
+    /**
+     * Get a new temporary register.
+     *
+     * @return The temporary register, numbered in order until registers are allocated.
+     */
+    private int temporary() {
+        return firstTemporary + temporaries++;
+    }
+
+    /**
+     * Check if an expression is evaluated without instructions, so it is read by the instruction that uses it.
+     *
+     * @param node The expression node.
+     * @return If the expression is a literal or variable reference.
+     */
+    private static boolean isSimple(ExpressionNode node) {
+        return node instanceof ExpressionNode.Literal || node instanceof ExpressionNode.VariableReference;
+    }
+
+    /**
+     * Check if an expression assigns to a variable.
+     * <p>
+     * Function calls have variables of their own, so only assignments in the expression itself are searched.
+     *
+     * @param node The expression node.
+     * @param slot The variable slot.
+     * @return If the expression assigns to the variable.
+     */
+    private static boolean assigns(ExpressionNode node, int slot) {
+        if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            if (isAssignment(binary.getOperator()) && binary.getLeftExpr() instanceof ExpressionNode.VariableReference
+                    && ((ExpressionNode.VariableReference) binary.getLeftExpr()).getSlot() == slot) {
+                return true;
+            }
+            return assigns(binary.getLeftExpr(), slot) || assigns(binary.getRightExpr(), slot);
+        } else if (node instanceof ExpressionNode.Unary) {
+            return assigns(((ExpressionNode.Unary) node).getExpr(), slot);
+        } else if (node instanceof ExpressionNode.FunctionCall) {
+            for (ExpressionNode arg : ((ExpressionNode.FunctionCall) node).getArgs()) {
+                if (assigns(arg, slot)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,466 @@
+package info.andrewmin.dji.core.runtime.vm;
+
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.checker.TypeChecker;
+import info.andrewmin.dji.core.exceptions.*;
+import info.andrewmin.dji.core.runtime.SlotResolver;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.runtime.Var;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A register based bytecode virtual machine engine.
+ * <p>
+ * Runs programs exactly like {@link VirtualMachine}, but its instructions name the registers they read and write,
+ * so variables and constants are used in place instead of being pushed onto and popped from an operand stack.
+ * The registers of every running call are kept in one array, each call's after its caller's,
+ * and arguments are copied to the registers of the callee by the call instruction.
+ *
+ * @see RegisterCompiler
+ * @see Opcode
+ */
+public final class RegisterMachine {
+    private static final Logger LOGGER = Logger.getLogger(RegisterMachine.class.getName());
+    private static final int INITIAL_REGISTERS = 256;
+    private static final int INITIAL_SCOPES = 16;
+    private static final SymbolTokenVariant[] SYMBOLS = SymbolTokenVariant.values();
+    private static final TypeTokenVariant[] TYPES = TypeTokenVariant.values();
+    private static final Value<?> TRUE = new Value.Boolean(true);
+    private static final Value<?> FALSE = new Value.Boolean(false);
+
+    // Loop flow states
+    private static final int NONE = 0;
+    private static final int BREAK = 1;
+    private static final int CONTINUE = 2;
+
+    private final ProgramNode program;
+    private final TypeChecker checker;
+    // Compiled functions indexed by the identifier ID of their name
+    private final CompiledFunction[] functions;
+
+    // The registers of every running call
+    private Value<?>[] registers;
+
+    // The slots of the variables created in every running call, in creation order
+    private int[] created;
+    private int createdCount;
+
+    // The created variable count when each loop scope was pushed
+    private int[] scopeStarts;
+    private int scopes;
+
+    private Value<?> returnValue;
+    private int flow;
+    private int loops;
+
+    /**
+     * Construct a new register based bytecode virtual machine engine.
+     *
+     * @param program The program node.
+     */
+    public RegisterMachine(ProgramNode program) {
+        this.program = program;
+        this.checker = new TypeChecker(program);
+        this.functions = new CompiledFunction[program.getSymbols().size()];
+        this.registers = new Value<?>[INITIAL_REGISTERS];
+        this.created = new int[INITIAL_REGISTERS];
+        this.createdCount = 0;
+        this.scopeStarts = new int[INITIAL_SCOPES];
+        this.scopes = 0;
+        this.returnValue = null;
+        this.flow = NONE;
+        this.loops = 0;
+    }
+
+    /**
+     * Run the program and get the return value of the main function.
+     * <p>
+     * Every parsed function is checked, resolved and compiled first,
+     * so type errors, unresolved identifiers and calls with the wrong number of arguments
+     * are reported before the program runs.
+     * Lazily parsed functions are compiled on their first call.
+     *
+     * @return The return value of the main function.
+     */
+    public Value<?> runProgram() {
+        FunctionNode main = program.getMain();
+        if (main == null) {
+            throw new NoMainException();
+        } else if (!main.getParameters().isEmpty()) {
+            throw new InvalidArgumentException(main.getName(), main.getParameters(), List.of());
+        }
+        checker.checkAll();
+        for (FunctionNode function : program.getDeclaredFunctions()) {
+            if (function.isParsed()) {
+                function(function.getId());
+            }
+        }
+        return execute(function(main.getId()), 0, false);
+    }
+
+    /**
+     * Get a compiled function, checking, resolving and compiling it on first use.
+     *
+     * @param id The identifier ID of the function name.
+     * @return The compiled function.
+     */
+    private CompiledFunction function(int id) {
+        CompiledFunction compiled = functions[id];
+        if (compiled == null) {
+            FunctionNode function = program.getFunction(id);
+            compiled = new RegisterCompiler(new SlotResolver(program, function, checker.check(function)).resolve())
+                    .compile();
+            functions[id] = compiled;
+        }
+        return compiled;
+    }
+
+
+    /**
+     * Run a function with the arguments in its first registers.
+     *
+     * @param compiled    The compiled function.
+     * @param base        The index of the first register of the call.
+     * @param checkedArgs If the argument types are known to match the parameters (i.e. the caller is checked).
+     * @return The function's return value.
+     */
+    private Value<?> execute(CompiledFunction compiled, int base, boolean checkedArgs) {
+        FunctionNode function = compiled.getFunction();
+        LOGGER.info("Running function " + function.getName());
+        int[] code = compiled.getCode();
+        Value<?>[] constants = compiled.getConstants();
+        String[] names = compiled.getSlotNames();
+        int frameSize = compiled.getFrameSize();
+        int createdStart = createdCount;
+
+        if (base + frameSize > registers.length) {
+            registers = Arrays.copyOf(registers, Math.max(registers.length * 2, base + frameSize));
+        }
+        Value<?>[] registers = this.registers;
+
+        // Move arguments to their parameter slots, calls are linked to functions with as many parameters
+        List<Var> parameters = function.getParameters();
+        int[] parameterSlots = compiled.getParameterSlots();
+        if (!checkedArgs) {
+            for (int i = 0; i < parameterSlots.length; i++) {
+                if (parameters.get(i).getType() != registers[base + i].getType()) {
+                    throw new InvalidArgumentException(function.getName(), parameters,
+                            Arrays.asList(Arrays.copyOfRange(registers, base, base + parameterSlots.length)));
+                }
+            }
+        }
+        if (compiled.hasParametersInPlace()) {
+            Arrays.fill(registers, base + parameterSlots.length, base + names.length, null);
+        } else {
+            Value<?>[] args = Arrays.copyOfRange(registers, base, base + parameterSlots.length);
+            Arrays.fill(registers, base, base + Math.max(names.length, args.length), null);
+            for (int i = 0; i < args.length; i++) {
+                registers[base + parameterSlots[i]] = args[i];
+            }
+        }
+
+        // Every statement is skipped when called while breaking or continuing
+        int pc = flow == NONE ? 0 : compiled.getSkip();
+        while (true) {
+            switch (code[pc]) {
+                // Values and variables
+                case Opcode.MOVE:
+                    registers[base + code[pc + 1]] = read(registers, base, constants, names, code[pc + 2]);
+                    pc += 3;
+                    break;
+                case Opcode.CHECK:
+                    read(registers, base, constants, names, code[pc + 1]);
+                    pc += 2;
+                    break;
+                case Opcode.ASSIGN: {
+                    read(registers, base, constants, names, code[pc + 1]);
+                    Value<?> value = read(registers, base, constants, names, code[pc + 2]);
+                    if (value == null) {
+                        // Assigning nothing (a void call) is not an assignment
+                        throw new ExpectedVariableException(SymbolTokenVariant.ASSIGN);
+                    }
+                    registers[base + code[pc + 1]] = value;
+                    pc += 3;
+                    break;
+                }
+                case Opcode.DECLARE_CHECK: {
+                    TypeTokenVariant type = TYPES[code[pc + 3]];
+                    Value<?> value = read(registers, base, constants, names, code[pc + 1]);
+                    if (type == TypeTokenVariant.VOID) {
+                        throw new VoidTypeException(names[code[pc + 2]]);
+                    } else if (type != value.getType()) {
+                        throw new TypeMismatchException(type, value.getType());
+                    }
+                    declare(registers, base, code[pc + 2], value);
+                    pc += 4;
+                    break;
+                }
+                case Opcode.DECLARE:
+                    declare(registers, base, code[pc + 2], read(registers, base, constants, names, code[pc + 1]));
+                    pc += 3;
+                    break;
+
+                // Operators
+                case Opcode.ADD: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] = left.add(read(registers, base, constants, names, code[pc + 3]));
+                    pc += 4;
+                    break;
+                }
+                case Opcode.SUB: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] = left.sub(read(registers, base, constants, names, code[pc + 3]));
+                    pc += 4;
+                    break;
+                }
+                case Opcode.MUL: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] = left.mul(read(registers, base, constants, names, code[pc + 3]));
+                    pc += 4;
+                    break;
+                }
+                case Opcode.QUO: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] = left.quo(read(registers, base, constants, names, code[pc + 3]));
+                    pc += 4;
+                    break;
+                }
+                case Opcode.REM: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] = left.rem(read(registers, base, constants, names, code[pc + 3]));
+                    pc += 4;
+                    break;
+                }
+                case Opcode.EQL: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] =
+                            left.eql(read(registers, base, constants, names, code[pc + 3])) ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                }
+                case Opcode.NEQ: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] =
+                            left.neq(read(registers, base, constants, names, code[pc + 3])) ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                }
+                case Opcode.LSS: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] =
+                            left.lss(read(registers, base, constants, names, code[pc + 3])) ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                }
+                case Opcode.GTR: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] =
+                            left.gtr(read(registers, base, constants, names, code[pc + 3])) ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                }
+                case Opcode.LEQ: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] =
+                            left.leq(read(registers, base, constants, names, code[pc + 3])) ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                }
+                case Opcode.GEQ: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] =
+                            left.geq(read(registers, base, constants, names, code[pc + 3])) ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                }
+                case Opcode.LAND: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] =
+                            left.land(read(registers, base, constants, names, code[pc + 3])) ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                }
+                case Opcode.LOR: {
+                    Value<?> left = read(registers, base, constants, names, code[pc + 2]);
+                    registers[base + code[pc + 1]] =
+                            left.lor(read(registers, base, constants, names, code[pc + 3])) ? TRUE : FALSE;
+                    pc += 4;
+                    break;
+                }
+                case Opcode.NEGATE:
+                    registers[base + code[pc + 1]] = read(registers, base, constants, names, code[pc + 2]).negate();
+                    pc += 3;
+                    break;
+                case Opcode.NOT:
+                    registers[base + code[pc + 1]] = read(registers, base, constants, names, code[pc + 2]).not();
+                    pc += 3;
+                    break;
+                case Opcode.BAD_BINARY: {
+                    SymbolTokenVariant op = SYMBOLS[code[pc + 1]];
+                    read(registers, base, constants, names, code[pc + 2]);
+                    read(registers, base, constants, names, code[pc + 3]);
+                    if (FunctionCompiler.isAssignment(op)) {
+                        throw new ExpectedVariableException(op);
+                    }
+                    throw new InternalException("Unhandled binary: " + op);
+                }
+                case Opcode.BAD_UNARY:
+                    read(registers, base, constants, names, code[pc + 2]);
+                    throw new InternalException("Unhandled unary: " + SYMBOLS[code[pc + 1]]);
+
+                // Control flow
+                case Opcode.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case Opcode.JUMP_FALSE:
+                    pc = read(registers, base, constants, names, code[pc + 1]).isTrue() ? pc + 3 : code[pc + 2];
+                    break;
+                case Opcode.JUMP_TRUE:
+                    pc = read(registers, base, constants, names, code[pc + 1]).isTrue() ? code[pc + 2] : pc + 3;
+                    break;
+                case Opcode.LOOP_TRUE:
+                    if (read(registers, base, constants, names, code[pc + 1]).isTrue() && flow != BREAK) {
+                        flow = NONE;
+                        pc = code[pc + 2];
+                    } else {
+                        pc += 3;
+                    }
+                    break;
+                case Opcode.ENTER_LOOP:
+                    loops++;
+                    pc++;
+                    break;
+                case Opcode.EXIT_LOOP:
+                    loops--;
+                    flow = NONE;
+                    pc++;
+                    break;
+                case Opcode.PUSH_SCOPE:
+                    if (scopes == scopeStarts.length) {
+                        scopeStarts = Arrays.copyOf(scopeStarts, scopes * 2);
+                    }
+                    scopeStarts[scopes++] = createdCount;
+                    pc++;
+                    break;
+                case Opcode.POP_SCOPE: {
+                    int start = scopeStarts[--scopes];
+                    for (int i = start; i < createdCount; i++) {
+                        registers[base + created[i]] = null;
+                    }
+                    createdCount = start;
+                    pc++;
+                    break;
+                }
+                case Opcode.BREAK:
+                    if (loops == 0) {
+                        throw new InvalidFlowStatementException("break");
+                    }
+                    flow = BREAK;
+                    pc = code[pc + 1];
+                    break;
+                case Opcode.CONTINUE:
+                    if (loops == 0) {
+                        throw new InvalidFlowStatementException("continue");
+                    }
+                    flow = CONTINUE;
+                    pc = code[pc + 1];
+                    break;
+                case Opcode.SKIP_FLOW:
+                    pc = flow != NONE ? code[pc + 1] : pc + 2;
+                    break;
+
+                // Functions
+                case Opcode.CALL:
+                case Opcode.CALL_CHECK: {
+                    CompiledFunction callee = function(code[pc + 2]);
+                    int argc = code[pc + 3];
+                    int calleeBase = base + frameSize;
+                    if (calleeBase + argc > registers.length) {
+                        registers = Arrays.copyOf(registers, Math.max(registers.length * 2, calleeBase + argc));
+                        this.registers = registers;
+                    }
+                    for (int i = 0; i < argc; i++) {
+                        registers[calleeBase + i] = read(registers, base, constants, names, code[pc + 4 + i]);
+                    }
+                    Value<?> ret = execute(callee, calleeBase, code[pc] == Opcode.CALL);
+                    // The call may have grown the registers
+                    registers = this.registers;
+                    registers[base + code[pc + 1]] = ret;
+                    pc += 4 + argc;
+                    break;
+                }
+                case Opcode.SET_RETURN:
+                    returnValue = read(registers, base, constants, names, code[pc + 1]);
+                    pc += 2;
+                    break;
+                case Opcode.CHECK_RETURN:
+                    if (returnValue != null) {
+                        Value<?> ret = returnValue;
+                        returnValue = null;
+
+                        if (function.getReturnType() != ret.getType()) {
+                            throw new TypeMismatchException(function.getReturnType(), ret.getType());
+                        }
+                        createdCount = createdStart;
+                        return ret;
+                    }
+                    pc++;
+                    break;
+                case Opcode.RETURN_VOID:
+                    createdCount = createdStart;
+                    return null;
+                case Opcode.MISSING_RETURN:
+                    throw new MissingReturnException(function.getName());
+
+                default:
+                    throw new InternalException("Unhandled opcode: " + code[pc]);
+            }
+        }
+    }
+
+    /**
+     * Read a register or constant operand.
+     *
+     * @param registers The registers.
+     * @param base      The index of the first register of the call.
+     * @param constants The constant pool.
+     * @param names     The variable names indexed by slot.
+     * @param operand   The register, or complemented constant index.
+     * @return The value, null for the result of a void call.
+     */
+    private static Value<?> read(Value<?>[] registers, int base, Value<?>[] constants, String[] names, int operand) {
+        if (operand < 0) {
+            return constants[~operand];
+        }
+        Value<?> value = registers[base + operand];
+        if (value == null && operand < names.length) {
+            // Declared, but not yet or no longer in scope (e.g. declared in an untaken branch)
+            throw new UnresolvedIdentifierException(names[operand]);
+        }
+        return value;
+    }
+
+    /**
+     * Declare a variable, creating it in the current scope if it does not exist.
+     *
+     * @param registers The registers.
+     * @param base      The index of the first register of the call.
+     * @param slot      The variable slot.
+     * @param value     The variable value.
+     */
+    private void declare(Value<?>[] registers, int base, int slot, Value<?> value) {
+        if (registers[base + slot] == null) {
+            if (createdCount == created.length) {
+                created = Arrays.copyOf(created, createdCount * 2);
+            }
+            created[createdCount++] = slot;
+        }
+        registers[base + slot] = value;
+    }
+}
@@ -0,0 +1,414 @@
+package info.andrewmin.dji.core.runtime.vm;
+
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.checker.TypeChecker;
+import info.andrewmin.dji.core.exceptions.*;
+import info.andrewmin.dji.core.runtime.SlotResolver;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.runtime.Var;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A bytecode virtual machine engine.
+ * <p>
+ * Runs programs exactly like {@link info.andrewmin.dji.core.runtime.Runtime} (including its control flow and error
+ * behavior), but compiles each function to bytecode on its first call and runs it in a single dispatch loop
+ * over an operand stack, instead of walking the syntax tree.
+ * The variables of a call are kept in the same stack array, below its operands,
+ * and arguments are passed in place.
+ * Only function calls are logged, per node logging is left to the tree walking engine.
+ *
+ * @see BytecodeCompiler
+ * @see Opcode
+ */
+public final class VirtualMachine {
+    private static final Logger LOGGER = Logger.getLogger(VirtualMachine.class.getName());
+    private static final int INITIAL_STACK = 256;
+    private static final int INITIAL_SCOPES = 16;
+    private static final SymbolTokenVariant[] SYMBOLS = SymbolTokenVariant.values();
+    private static final TypeTokenVariant[] TYPES = TypeTokenVariant.values();
+    private static final Value<?> TRUE = new Value.Boolean(true);
+    private static final Value<?> FALSE = new Value.Boolean(false);
+
+    // Loop flow states
+    private static final int NONE = 0;
+    private static final int BREAK = 1;
+    private static final int CONTINUE = 2;
+
+    private final ProgramNode program;
+    private final TypeChecker checker;
+    // Compiled functions indexed by the identifier ID of their name
+    private final CompiledFunction[] functions;
+
+    // The variables and operands of every running call
+    private Value<?>[] stack;
+
+    // The slots of the variables created in every running call, in creation order
+    private int[] created;
+    private int createdCount;
+
+    // The created variable count when each loop scope was pushed
+    private int[] scopeStarts;
+    private int scopes;
+
+    private Value<?> returnValue;
+    private int flow;
+    private int loops;
+
+    /**
+     * Construct a new bytecode virtual machine engine.
+     *
+     * @param program The program node.
+     */
+    public VirtualMachine(ProgramNode program) {
+        this.program = program;
+        this.checker = new TypeChecker(program);
+        this.functions = new CompiledFunction[program.getSymbols().size()];
+        this.stack = new Value<?>[INITIAL_STACK];
+        this.created = new int[INITIAL_STACK];
+        this.createdCount = 0;
+        this.scopeStarts = new int[INITIAL_SCOPES];
+        this.scopes = 0;
+        this.returnValue = null;
+        this.flow = NONE;
+        this.loops = 0;
+    }
+
+    /**
+     * Run the program and get the return value of the main function.
+     * <p>
+     * Every parsed function is checked, resolved and compiled first,
+     * so type errors, unresolved identifiers and calls with the wrong number of arguments
+     * are reported before the program runs.
+     * Lazily parsed functions are compiled on their first call.
+     *
+     * @return The return value of the main function.
+     */
+    public Value<?> runProgram() {
+        FunctionNode main = program.getMain();
+        if (main == null) {
+            throw new NoMainException();
+        } else if (!main.getParameters().isEmpty()) {
+            throw new InvalidArgumentException(main.getName(), main.getParameters(), List.of());
+        }
+        checker.checkAll();
+        for (FunctionNode function : program.getDeclaredFunctions()) {
+            if (function.isParsed()) {
+                function(function.getId());
+            }
+        }
+        return execute(function(main.getId()), 0, false);
+    }
+
+    /**
+     * Get a compiled function, checking, resolving and compiling it on first use.
+     *
+     * @param id The identifier ID of the function name.
+     * @return The compiled function.
+     */
+    private CompiledFunction function(int id) {
+        CompiledFunction compiled = functions[id];
+        if (compiled == null) {
+            FunctionNode function = program.getFunction(id);
+            compiled = new BytecodeCompiler(new SlotResolver(program, function, checker.check(function)).resolve())
+                    .compile();
+            functions[id] = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * Run a function with the arguments on top of the stack.
+     *
+     * @param compiled    The compiled function.
+     * @param base        The stack index of the first argument, and of the variables of the call.
+     * @param checkedArgs If the argument types are known to match the parameters (i.e. the caller is checked).
+     * @return The function's return value.
+     */
+    private Value<?> execute(CompiledFunction compiled, int base, boolean checkedArgs) {
+        FunctionNode function = compiled.getFunction();
+        LOGGER.info("Running function " + function.getName());
+        int[] code = compiled.getCode();
+        Value<?>[] constants = compiled.getConstants();
+        String[] names = compiled.getSlotNames();
+        int createdStart = createdCount;
+
+        if (base + compiled.getFrameSize() > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, base + compiled.getFrameSize()));
+        }
+        Value<?>[] stack = this.stack;
+
+        // Move arguments to their parameter slots, calls are linked to functions with as many parameters
+        List<Var> parameters = function.getParameters();
+        int[] parameterSlots = compiled.getParameterSlots();
+        if (!checkedArgs) {
+            for (int i = 0; i < parameterSlots.length; i++) {
+                if (parameters.get(i).getType() != stack[base + i].getType()) {
+                    throw new InvalidArgumentException(function.getName(), parameters,
+                            Arrays.asList(Arrays.copyOfRange(stack, base, base + parameterSlots.length)));
+                }
+            }
+        }
+        if (compiled.hasParametersInPlace()) {
+            Arrays.fill(stack, base + parameterSlots.length, base + names.length, null);
+        } else {
+            Value<?>[] args = Arrays.copyOfRange(stack, base, base + parameterSlots.length);
+            Arrays.fill(stack, base, base + Math.max(names.length, args.length), null);
+            for (int i = 0; i < args.length; i++) {
+                stack[base + parameterSlots[i]] = args[i];
+            }
+        }
+
+        // Every statement is skipped when called while breaking or continuing
+        int pc = flow == NONE ? 0 : compiled.getSkip();
+        int sp = base + names.length;
+        while (true) {
+            switch (code[pc++]) {
+                // Values and variables
+                case Opcode.CONST:
+                    stack[sp++] = constants[code[pc++]];
+                    break;
+                case Opcode.LOAD: {
+                    Value<?> value = stack[base + code[pc]];
+                    if (value == null) {
+                        // Declared, but not yet or no longer in scope (e.g. declared in an untaken branch)
+                        throw new UnresolvedIdentifierException(names[code[pc]]);
+                    }
+                    stack[sp++] = value;
+                    pc++;
+                    break;
+                }
+                case Opcode.STORE:
+                    stack[base + code[pc++]] = stack[sp - 1];
+                    break;
+                case Opcode.ASSIGN: {
+                    Value<?> value = stack[--sp];
+                    if (value == null) {
+                        // Assigning nothing (a void call) is not an assignment
+                        throw new ExpectedVariableException(SymbolTokenVariant.ASSIGN);
+                    }
+                    stack[base + code[pc++]] = value;
+                    stack[sp - 1] = value;
+                    break;
+                }
+                case Opcode.DECLARE_CHECK: {
+                    TypeTokenVariant type = TYPES[code[pc + 1]];
+                    Value<?> value = stack[sp - 1];
+                    if (type == TypeTokenVariant.VOID) {
+                        throw new VoidTypeException(names[code[pc]]);
+                    } else if (type != value.getType()) {
+                        throw new TypeMismatchException(type, value.getType());
+                    }
+                    declare(stack, base, code[pc], stack[--sp]);
+                    pc += 2;
+                    break;
+                }
+                case Opcode.DECLARE:
+                    declare(stack, base, code[pc++], stack[--sp]);
+                    break;
+                case Opcode.POP:
+                    sp--;
+                    break;
+
+                // Operators
+                case Opcode.ADD: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].add(right);
+                    break;
+                }
+                case Opcode.SUB: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].sub(right);
+                    break;
+                }
+                case Opcode.MUL: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].mul(right);
+                    break;
+                }
+                case Opcode.QUO: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].quo(right);
+                    break;
+                }
+                case Opcode.REM: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].rem(right);
+                    break;
+                }
+                case Opcode.EQL: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].eql(right) ? TRUE : FALSE;
+                    break;
+                }
+                case Opcode.NEQ: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].neq(right) ? TRUE : FALSE;
+                    break;
+                }
+                case Opcode.LSS: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].lss(right) ? TRUE : FALSE;
+                    break;
+                }
+                case Opcode.GTR: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].gtr(right) ? TRUE : FALSE;
+                    break;
+                }
+                case Opcode.LEQ: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].leq(right) ? TRUE : FALSE;
+                    break;
+                }
+                case Opcode.GEQ: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].geq(right) ? TRUE : FALSE;
+                    break;
+                }
+                case Opcode.LAND: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].land(right) ? TRUE : FALSE;
+                    break;
+                }
+                case Opcode.LOR: {
+                    Value<?> right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1].lor(right) ? TRUE : FALSE;
+                    break;
+                }
+                case Opcode.NEGATE:
+                    stack[sp - 1] = stack[sp - 1].negate();
+                    break;
+                case Opcode.NOT:
+                    stack[sp - 1] = stack[sp - 1].not();
+                    break;
+                case Opcode.BAD_BINARY: {
+                    SymbolTokenVariant op = SYMBOLS[code[pc]];
+                    if (FunctionCompiler.isAssignment(op)) {
+                        throw new ExpectedVariableException(op);
+                    }
+                    throw new InternalException("Unhandled binary: " + op);
+                }
+                case Opcode.BAD_UNARY:
+                    throw new InternalException("Unhandled unary: " + SYMBOLS[code[pc]]);
+
+                // Control flow
+                case Opcode.JUMP:
+                    pc = code[pc];
+                    break;
+                case Opcode.JUMP_FALSE:
+                    pc = stack[--sp].isTrue() ? pc + 1 : code[pc];
+                    break;
+                case Opcode.JUMP_TRUE:
+                    pc = stack[--sp].isTrue() ? code[pc] : pc + 1;
+                    break;
+                case Opcode.LOOP_TRUE:
+                    if (stack[--sp].isTrue() && flow != BREAK) {
+                        flow = NONE;
+                        pc = code[pc];
+                    } else {
+                        pc++;
+                    }
+                    break;
+                case Opcode.ENTER_LOOP:
+                    loops++;
+                    break;
+                case Opcode.EXIT_LOOP:
+                    loops--;
+                    flow = NONE;
+                    break;
+                case Opcode.PUSH_SCOPE:
+                    if (scopes == scopeStarts.length) {
+                        scopeStarts = Arrays.copyOf(scopeStarts, scopes * 2);
+                    }
+                    scopeStarts[scopes++] = createdCount;
+                    break;
+                case Opcode.POP_SCOPE: {
+                    int start = scopeStarts[--scopes];
+                    for (int i = start; i < createdCount; i++) {
+                        stack[base + created[i]] = null;
+                    }
+                    createdCount = start;
+                    break;
+                }
+                case Opcode.BREAK:
+                    if (loops == 0) {
+                        throw new InvalidFlowStatementException("break");
+                    }
+                    flow = BREAK;
+                    pc = code[pc];
+                    break;
+                case Opcode.CONTINUE:
+                    if (loops == 0) {
+                        throw new InvalidFlowStatementException("continue");
+                    }
+                    flow = CONTINUE;
+                    pc = code[pc];
+                    break;
+                case Opcode.SKIP_FLOW:
+                    pc = flow != NONE ? code[pc] : pc + 1;
+                    break;
+
+                // Functions
+                case Opcode.CALL:
+                case Opcode.CALL_CHECK: {
+                    CompiledFunction callee = function(code[pc]);
+                    sp -= callee.getParameterSlots().length;
+                    Value<?> ret = execute(callee, sp, code[pc - 1] == Opcode.CALL);
+                    // The call may have grown the stack
+                    stack = this.stack;
+                    stack[sp++] = ret;
+                    pc++;
+                    break;
+                }
+                case Opcode.SET_RETURN:
+                    returnValue = stack[--sp];
+                    break;
+                case Opcode.CHECK_RETURN:
+                    if (returnValue != null) {
+                        Value<?> ret = returnValue;
+                        returnValue = null;
+
+                        if (function.getReturnType() != ret.getType()) {
+                            throw new TypeMismatchException(function.getReturnType(), ret.getType());
+                        }
+                        createdCount = createdStart;
+                        return ret;
+                    }
+                    break;
+                case Opcode.RETURN_VOID:
+                    createdCount = createdStart;
+                    return null;
+                case Opcode.MISSING_RETURN:
+                    throw new MissingReturnException(function.getName());
+
+                default:
+                    throw new InternalException("Unhandled opcode: " + code[pc - 1]);
+            }
+        }
+    }
+
+    /**
+     * Declare a variable, creating it in the current scope if it does not exist.
+     *
+     * @param stack The stack.
+     * @param base  The stack index of the variables of the call.
+     * @param slot  The variable slot.
+     * @param value The variable value.
+     */
+    private void declare(Value<?>[] stack, int base, int slot, Value<?> value) {
+        if (stack[base + slot] == null) {
+            if (createdCount == created.length) {
+                created = Arrays.copyOf(created, createdCount * 2);
+            }
+            created[createdCount++] = slot;
+        }
+        stack[base + slot] = value;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * This package provides the bytecode compilers and virtual machine runtime engines.
+ */
+package info.andrewmin.dji.core.runtime.vm;
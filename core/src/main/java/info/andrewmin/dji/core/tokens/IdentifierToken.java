@@ -1,6 +1,6 @@
 package info.andrewmin.dji.core.tokens;
 
-import info.andrewmin.dji.core.lexer.FileLoc;
+import info.andrewmin.dji.core.lexer.SourceBuffer;
 
 /**
  * An identifier token.
@@ -16,12 +16,13 @@ public final class IdentifierToken extends Token {
     /**
      * Construct a new identifier token.
      *
-     * @param startLoc   The starting location of the first character of the token (inclusive).
-     * @param endLoc     The ending location of the first character of the token (exclusive).
+     * @param source     The source buffer.
+     * @param start      The starting offset of the token (inclusive).
+     * @param end        The ending offset of the token (exclusive).
      * @param identifier The identifier.
      */
-    public IdentifierToken(FileLoc startLoc, FileLoc endLoc, String identifier) {
-        super("Identifier", startLoc, endLoc);
+    public IdentifierToken(SourceBuffer source, int start, int end, String identifier) {
+        super("Identifier", source, start, end);
         this.identifier = identifier;
     }
 
@@ -1,7 +1,7 @@
 package info.andrewmin.dji.core.tokens;
 
 import info.andrewmin.dji.core.exceptions.InternalException;
-import info.andrewmin.dji.core.lexer.FileLoc;
+import info.andrewmin.dji.core.lexer.SourceBuffer;
 
 /**
  * A keyword token.
@@ -14,12 +14,13 @@ public final class KeywordToken extends Token {
     /**
      * Construct a new keyword token.
      *
-     * @param startLoc The starting location of the first character of the token (inclusive).
-     * @param endLoc   The ending location of the first character of the token (exclusive).
+     * @param source   The source buffer.
+     * @param start    The starting offset of the token (inclusive).
+     * @param end      The ending offset of the token (exclusive).
      * @param variant  The token variant.
      */
-    public KeywordToken(FileLoc startLoc, FileLoc endLoc, KeywordTokenVariant variant) {
-        super("Keyword", startLoc, endLoc);
+    public KeywordToken(SourceBuffer source, int start, int end, KeywordTokenVariant variant) {
+        super("Keyword", source, start, end);
         this.variant = variant;
 
         if (variant == KeywordTokenVariant.FALSE || variant == KeywordTokenVariant.TRUE) {
@@ -1,6 +1,6 @@
 package info.andrewmin.dji.core.tokens;
 
-import info.andrewmin.dji.core.lexer.FileLoc;
+import info.andrewmin.dji.core.lexer.SourceBuffer;
 
 /**
  * A token with a literal value.
@@ -16,12 +16,13 @@ public abstract class LiteralToken<T> extends Token {
      * To be invoked by subclass constructors only.
      *
      * @param name     The name of the literal token.
-     * @param startLoc The starting location of the first character of the token (inclusive).
-     * @param endLoc   The ending location of the first character of the token (exclusive).
+     * @param source   The source buffer.
+     * @param start    The starting offset of the token (inclusive).
+     * @param end      The ending offset of the token (exclusive).
      * @param value    The literal value.
      */
-    private LiteralToken(java.lang.String name, FileLoc startLoc, FileLoc endLoc, T value) {
-        super(name + "Literal", startLoc, endLoc);
+    private LiteralToken(java.lang.String name, SourceBuffer source, int start, int end, T value) {
+        super(name + "Literal", source, start, end);
         this.value = value;
     }
 
@@ -46,12 +47,13 @@ public abstract class LiteralToken<T> extends Token {
         /**
          * Construct a new boolean literal.
          *
-         * @param startLoc The starting location of the first character of the token (inclusive).
-         * @param endLoc   The ending location of the first character of the token (exclusive).
+         * @param source   The source buffer.
+         * @param start    The starting offset of the token (inclusive).
+         * @param end      The ending offset of the token (exclusive).
          * @param value    The boolean value.
          */
-        public Boolean(FileLoc startLoc, FileLoc endLoc, boolean value) {
-            super("Boolean", startLoc, endLoc, value);
+        public Boolean(SourceBuffer source, int start, int end, boolean value) {
+            super("Boolean", source, start, end, value);
         }
     }
 
@@ -62,12 +64,13 @@ public abstract class LiteralToken<T> extends Token {
         /**
          * Construct a new integer literal.
          *
-         * @param startLoc The starting location of the first character of the token (inclusive).
-         * @param endLoc   The ending location of the first character of the token (exclusive).
+         * @param source   The source buffer.
+         * @param start    The starting offset of the token (inclusive).
+         * @param end      The ending offset of the token (exclusive).
          * @param value    The integer value.
          */
-        public Int(FileLoc startLoc, FileLoc endLoc, int value) {
-            super("Int", startLoc, endLoc, value);
+        public Int(SourceBuffer source, int start, int end, int value) {
+            super("Int", source, start, end, value);
         }
     }
 
@@ -78,12 +81,13 @@ public abstract class LiteralToken<T> extends Token {
         /**
          * Construct a new double literal.
          *
-         * @param startLoc The starting location of the first character of the token (inclusive).
-         * @param endLoc   The ending location of the first character of the token (exclusive).
+         * @param source   The source buffer.
+         * @param start    The starting offset of the token (inclusive).
+         * @param end      The ending offset of the token (exclusive).
          * @param value    The double value.
          */
-        public Double(FileLoc startLoc, FileLoc endLoc, double value) {
-            super("Double", startLoc, endLoc, value);
+        public Double(SourceBuffer source, int start, int end, double value) {
+            super("Double", source, start, end, value);
         }
     }
 
@@ -94,12 +98,13 @@ public abstract class LiteralToken<T> extends Token {
         /**
          * Construct a new character literal.
          *
-         * @param startLoc The starting location of the first character of the token (inclusive).
-         * @param endLoc   The ending location of the first character of the token (exclusive).
+         * @param source   The source buffer.
+         * @param start    The starting offset of the token (inclusive).
+         * @param end      The ending offset of the token (exclusive).
          * @param value    The character value.
          */
-        public Char(FileLoc startLoc, FileLoc endLoc, char value) {
-            super("Char", startLoc, endLoc, value);
+        public Char(SourceBuffer source, int start, int end, char value) {
+            super("Char", source, start, end, value);
         }
     }
 
@@ -110,12 +115,13 @@ public abstract class LiteralToken<T> extends Token {
         /**
          * Construct a new string literal.
          *
-         * @param startLoc The starting location of the first character of the token (inclusive).
-         * @param endLoc   The ending location of the first character of the token (exclusive).
+         * @param source   The source buffer.
+         * @param start    The starting offset of the token (inclusive).
+         * @param end      The ending offset of the token (exclusive).
          * @param value    The string value.
          */
-        public String(FileLoc startLoc, FileLoc endLoc, java.lang.String value) {
-            super("String", startLoc, endLoc, value);
+        public String(SourceBuffer source, int start, int end, java.lang.String value) {
+            super("String", source, start, end, value);
         }
     }
 
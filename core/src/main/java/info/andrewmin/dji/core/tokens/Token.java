@@ -1,26 +1,59 @@
 package info.andrewmin.dji.core.tokens;
 
 import info.andrewmin.dji.core.lexer.FileLoc;
+import info.andrewmin.dji.core.lexer.SourceBuffer;
 
 /**
  * A base token.
+ * <p>
+ * The location is stored as source offsets, line and column numbers are only looked up when requested.
  */
 public abstract class Token {
     private final String name;
-    private final FileLoc startLoc;
-    private final FileLoc endLoc;
+    private final SourceBuffer source;
+    private final int start;
+    private final int end;
 
     /**
      * Construct a new token.
      *
-     * @param name     The token name.
-     * @param startLoc The starting location.
-     * @param endLoc   The ending location.
+     * @param name   The token name.
+     * @param source The source buffer.
+     * @param start  The starting offset (inclusive).
+     * @param end    The ending offset (exclusive).
      */
-    protected Token(String name, FileLoc startLoc, FileLoc endLoc) {
+    protected Token(String name, SourceBuffer source, int start, int end) {
         this.name = name;
-        this.startLoc = startLoc;
-        this.endLoc = endLoc;
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Get the token name.
+     *
+     * @return The token name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the starting offset.
+     *
+     * @return The starting offset (inclusive).
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Get the ending offset.
+     *
+     * @return The ending offset (exclusive).
+     */
+    public int getEnd() {
+        return end;
     }
 
     /**
@@ -29,7 +62,7 @@ public abstract class Token {
      * @return The starting location.
      */
     public FileLoc getStartLoc() {
-        return startLoc;
+        return source.locate(start);
     }
 
     /**
@@ -38,7 +71,7 @@ public abstract class Token {
      * @return The ending location.
      */
     public FileLoc getEndLoc() {
-        return endLoc;
+        return source.locateEnd(end);
     }
 
     /**
@@ -0,0 +1,73 @@
+package info.andrewmin.dji.core.tokens;
+
+/**
+ * The kind of a token, used to identify tokens stored without a token object.
+ *
+ * @see Token
+ */
+public enum TokenKind {
+    /**
+     * An identifier token.
+     *
+     * @see IdentifierToken
+     */
+    IDENTIFIER,
+    /**
+     * A keyword token.
+     *
+     * @see KeywordToken
+     */
+    KEYWORD,
+    /**
+     * A symbol token.
+     *
+     * @see SymbolToken
+     */
+    SYMBOL,
+    /**
+     * A type token.
+     *
+     * @see TypeToken
+     */
+    TYPE,
+    /**
+     * A boolean literal token.
+     *
+     * @see LiteralToken.Boolean
+     */
+    BOOLEAN_LITERAL,
+    /**
+     * An integer literal token.
+     *
+     * @see LiteralToken.Int
+     */
+    INT_LITERAL,
+    /**
+     * A double literal token.
+     *
+     * @see LiteralToken.Double
+     */
+    DOUBLE_LITERAL,
+    /**
+     * A character literal token.
+     *
+     * @see LiteralToken.Char
+     */
+    CHAR_LITERAL,
+    /**
+     * A string literal token.
+     *
+     * @see LiteralToken.String
+     */
+    STRING_LITERAL,
+    ;
+
+    /**
+     * Check if the kind is a literal.
+     *
+     * @return If the kind is a literal.
+     */
+    public boolean isLiteral() {
+        return ordinal() >= BOOLEAN_LITERAL.ordinal();
+    }
+}
@@ -1,6 +1,6 @@
 package info.andrewmin.dji.core.tokens;
 
-import info.andrewmin.dji.core.lexer.FileLoc;
+import info.andrewmin.dji.core.lexer.SourceBuffer;
 
 /**
  * A type token.
@@ -13,12 +13,13 @@ public final class TypeToken extends Token {
     /**
      * Construct a new variant token.
      *
-     * @param startLoc The starting location of the first character of the token (inclusive).
-     * @param endLoc   The ending location of the first character of the token (exclusive).
+     * @param source   The source buffer.
+     * @param start    The starting offset of the token (inclusive).
+     * @param end      The ending offset of the token (exclusive).
      * @param variant  The variant.
      */
-    public TypeToken(FileLoc startLoc, FileLoc endLoc, TypeTokenVariant variant) {
-        super("Type", startLoc, endLoc);
+    public TypeToken(SourceBuffer source, int start, int end, TypeTokenVariant variant) {
+        super("Type", source, start, end);
         this.variant = variant;
     }
 
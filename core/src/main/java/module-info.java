@@ -3,10 +3,15 @@
  */
 module info.andrewmin.dji.core {
     requires java.logging;
+    requires static jdk.incubator.vector;
     exports info.andrewmin.dji.core.ast;
+    exports info.andrewmin.dji.core.cache;
+    exports info.andrewmin.dji.core.checker;
     exports info.andrewmin.dji.core.exceptions;
     exports info.andrewmin.dji.core.lexer;
+    exports info.andrewmin.dji.core.optimizer;
     exports info.andrewmin.dji.core.parser;
     exports info.andrewmin.dji.core.runtime;
+    exports info.andrewmin.dji.core.runtime.vm;
     exports info.andrewmin.dji.core.tokens;
 }
\ No newline at end of file
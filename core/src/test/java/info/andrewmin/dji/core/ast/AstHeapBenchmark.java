@@ -0,0 +1,111 @@
+package info.andrewmin.dji.core.ast;
+
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.parser.ProgramParser;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.logging.LogManager;
+
+/**
+ * A benchmark of the heap retained by the syntax tree of a large generated program,
+ * with and without sharing identical expressions.
+ * <p>
+ * Run with {@code ./gradlew :core:benchmark -Pbenchmark=info.andrewmin.dji.core.ast.AstHeapBenchmark}.
+ */
+public final class AstHeapBenchmark {
+    private static final int FUNCTIONS = 12_000;
+
+    /**
+     * Utility class.
+     */
+    private AstHeapBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The number of functions (optional).
+     */
+    public static void main(String[] args) {
+        // Do not time logging
+        LogManager.getLogManager().reset();
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : FUNCTIONS;
+        String source = generate(functions);
+
+        int nodes = FlatProgram.flatten(parse(source, false)).size();
+        System.out.printf("%d functions, %d nodes, %.1f MB%n", functions, nodes, source.length() / 1e6);
+        measure("Tree", source, false, nodes);
+        measure("Shared tree", source, true, nodes);
+    }
+
+    /**
+     * Measure the heap retained by a parsed program and the parse time.
+     *
+     * @param name        The tree name.
+     * @param source      The source.
+     * @param hashConsing If identical expressions are shared.
+     * @param nodes       The number of nodes of the unshared tree.
+     */
+    private static void measure(String name, String source, boolean hashConsing, int nodes) {
+        long baseline = usedHeap();
+        long start = System.nanoTime();
+        ProgramNode program = parse(source, hashConsing);
+        long parseTime = System.nanoTime() - start;
+        long retained = usedHeap() - baseline;
+        System.out.printf("%-13s %7.1f MB retained (%.0f bytes per node), parsed in %.2f ms%n", name + ":",
+                retained / 1e6, (double) retained / nodes, parseTime / 1e6);
+        if (program.getFunctions().isEmpty()) {
+            throw new AssertionError("Parsed no functions");
+        }
+    }
+
+    /**
+     * Parse a program.
+     *
+     * @param source      The source.
+     * @param hashConsing If identical expressions are shared.
+     * @return The program.
+     */
+    private static ProgramNode parse(String source, boolean hashConsing) {
+        return new ProgramParser(new Lexer(new FileCharIterator(source)), false, hashConsing).parse();
+    }
+
+    /**
+     * Get the heap used after a full garbage collection.
+     *
+     * @return The used heap in bytes.
+     */
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Generate a program of functions with similar bodies, like generated code.
+     *
+     * @param functions The number of functions.
+     * @return The source.
+     */
+    private static String generate(int functions) {
+        Random random = new Random(16);
+        StringBuilder source = new StringBuilder("int main() {\n    return 0;\n}\n\n");
+        for (int i = 0; i < functions; i++) {
+            source.append("int f").append(i).append("(int a, int b) {\n")
+                    .append("    int x = a * ").append(random.nextInt(4)).append(" + b;\n")
+                    .append("    for (int j = 0; j < 4; j += 1) {\n")
+                    .append("        if (x % 2 == 0 && j < b) {\n")
+                    .append("            x = x / 2 + j;\n")
+                    .append("        } else {\n")
+                    .append("            x -= (a + j) * 2 - ").append(random.nextInt(4)).append(";\n")
+                    .append("        }\n")
+                    .append("    }\n")
+                    .append("    return f").append(random.nextInt(functions)).append("(x % 1000, a);\n")
+                    .append("}\n\n");
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,232 @@
+package info.andrewmin.dji.core.ast;
+
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.parser.ProgramParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the {@link AstPrinter}.
+ */
+public class AstPrinterTest {
+    private static final Set<String> TYPE_KEYWORDS = Set.of("boolean", "char", "int", "double", "String", "void");
+
+    /**
+     * Print the tree of the test program.
+     *
+     * @param json If the tree should be printed as JSON.
+     * @return The printed tree.
+     * @throws IOException If the program could not be read.
+     */
+    private static String print(boolean json) throws IOException {
+        ProgramNode program = new ProgramParser(new Lexer(new FileCharIterator(NodeTest.resource("AllNodes.djava"))))
+                .parse();
+        StringWriter out = new StringWriter();
+        new AstPrinter(out, json).print(program);
+        return out.toString();
+    }
+
+    @Test
+    public void printsTextLikeToString() throws IOException {
+        assertEquals(NodeTest.resource("AllNodes.txt").trim(), print(false));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void printsValidJson() throws IOException {
+        JsonParser parser = new JsonParser(print(true));
+        Map<String, Object> program = (Map<String, Object>) parser.parse();
+        assertEquals("Program", program.get("node"));
+
+        Map<String, Map<String, Object>> functions = new LinkedHashMap<>();
+        for (Object function : (List<Object>) program.get("functions")) {
+            functions.put((String) ((Map<String, Object>) function).get("name"), (Map<String, Object>) function);
+        }
+        assertEquals(Set.of("main", "greet", "nothing"), functions.keySet());
+        assertEquals("String", functions.get("greet").get("return"));
+        assertEquals(Map.of("name", "c", "type", "char"),
+                ((List<Object>) functions.get("greet").get("parameters")).get(1));
+
+        Map<String, Object> declaration = (Map<String, Object>) ((List<Object>) functions.get("main").get("body")).get(0);
+        assertEquals("Statement.VariableDeclaration", declaration.get("node"));
+        assertEquals("int", declaration.get("type"));
+        assertEquals(Map.of("node", "Expression.Literal", "value", Map.of("type", "int", "value", 0L)),
+                declaration.get("value"));
+    }
+
+    @Test
+    public void typesAreKeywords() throws IOException {
+        List<String> types = new ArrayList<>();
+        collectTypes(new JsonParser(print(true)).parse(), types);
+        assertTrue(types.size() > 10);
+        for (String type : types) {
+            assertTrue(type, TYPE_KEYWORDS.contains(type));
+        }
+    }
+
+    /**
+     * Collect the values of every type and return type property.
+     *
+     * @param json  The parsed JSON.
+     * @param types The types.
+     */
+    private static void collectTypes(Object json, List<String> types) {
+        if (json instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) json).entrySet()) {
+                if (entry.getKey().equals("type") || entry.getKey().equals("return")) {
+                    types.add((String) entry.getValue());
+                } else {
+                    collectTypes(entry.getValue(), types);
+                }
+            }
+        } else if (json instanceof List) {
+            for (Object o : (List<?>) json) {
+                collectTypes(o, types);
+            }
+        }
+    }
+
+    /**
+     * A strict parser of the JSON the printer writes, numbers are parsed as longs or doubles.
+     */
+    private static final class JsonParser {
+        private final String json;
+        private int pos;
+
+        /**
+         * Construct a new JSON parser.
+         *
+         * @param json The JSON text.
+         */
+        JsonParser(String json) {
+            this.json = json;
+            this.pos = 0;
+        }
+
+        /**
+         * Parse the whole text as a single value.
+         *
+         * @return The value.
+         */
+        Object parse() {
+            Object value = value();
+            assertEquals("Trailing text", json.length(), pos);
+            return value;
+        }
+
+        /**
+         * Parse a value.
+         *
+         * @return The value.
+         */
+        private Object value() {
+            char c = json.charAt(pos);
+            if (c == '{') {
+                Map<String, Object> object = new LinkedHashMap<>();
+                pos++;
+                if (json.charAt(pos) != '}') {
+                    do {
+                        String key = string();
+                        expect(':');
+                        assertFalse("Duplicate key " + key, object.containsKey(key));
+                        object.put(key, value());
+                    } while (json.charAt(pos++) == ',');
+                    pos--;
+                }
+                expect('}');
+                return object;
+            } else if (c == '[') {
+                List<Object> array = new ArrayList<>();
+                pos++;
+                if (json.charAt(pos) != ']') {
+                    do {
+                        array.add(value());
+                    } while (json.charAt(pos++) == ',');
+                    pos--;
+                }
+                expect(']');
+                return array;
+            } else if (c == '"') {
+                return string();
+            } else if (json.startsWith("true", pos) || json.startsWith("false", pos) || json.startsWith("null", pos)) {
+                String literal = json.startsWith("true", pos) ? "true" : json.startsWith("false", pos) ? "false" : "null";
+                pos += literal.length();
+                return literal.equals("null") ? null : Boolean.valueOf(literal);
+            }
+            int start = pos;
+            while (pos < json.length() && "-+.eE0123456789".indexOf(json.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String number = json.substring(start, pos);
+            assertTrue("Unexpected " + c + " at " + start, !number.isEmpty());
+            return number.matches("-?\\d+") ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+        }
+
+        /**
+         * Parse a string.
+         *
+         * @return The string.
+         */
+        private String string() {
+            expect('"');
+            StringBuilder s = new StringBuilder();
+            while (json.charAt(pos) != '"') {
+                char c = json.charAt(pos++);
+                if (c == '\\') {
+                    char escape = json.charAt(pos++);
+                    switch (escape) {
+                        case 'n':
+                            s.append('\n');
+                            break;
+                        case 'r':
+                            s.append('\r');
+                            break;
+                        case 't':
+                            s.append('\t');
+                            break;
+                        case 'b':
+                            s.append('\b');
+                            break;
+                        case 'f':
+                            s.append('\f');
+                            break;
+                        case 'u':
+                            s.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                            pos += 4;
+                            break;
+                        default:
+                            assertTrue("Invalid escape " + escape, "\"\\/".indexOf(escape) >= 0);
+                            s.append(escape);
+                    }
+                } else {
+                    assertTrue("Control character in string", c >= ' ');
+                    s.append(c);
+                }
+            }
+            pos++;
+            return s.toString();
+        }
+
+        /**
+         * Consume an expected character.
+         *
+         * @param c The character.
+         */
+        private void expect(char c) {
+            assertEquals("At " + pos, c, json.charAt(pos));
+            pos++;
+        }
+    }
+}
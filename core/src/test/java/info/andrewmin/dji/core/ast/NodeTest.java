@@ -0,0 +1,66 @@
+package info.andrewmin.dji.core.ast;
+
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.parser.ProgramParser;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the debug properties of {@link Node}s, which are built when printing.
+ */
+public class NodeTest {
+
+    /**
+     * Read a test resource.
+     *
+     * @param name The resource name.
+     * @return The resource text.
+     * @throws IOException If the resource could not be read.
+     */
+    static String resource(String name) throws IOException {
+        try (InputStream in = NodeTest.class.getResourceAsStream(name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void printsLikeEagerProperties() throws IOException {
+        // Printed before the properties were built on demand
+        String expected = resource("AllNodes.txt");
+        ProgramNode program = new ProgramParser(new Lexer(new FileCharIterator(resource("AllNodes.djava")))).parse();
+        assertEquals(expected.trim(), program.toString());
+    }
+
+    @Test
+    public void propertiesReflectFields() {
+        ExpressionNode.VariableReference a = new ExpressionNode.VariableReference("a", 0);
+        ExpressionNode.Binary binary = new ExpressionNode.Binary(SymbolTokenVariant.ADD, a,
+                new ExpressionNode.VariableReference("b", 1));
+        List<NodeProp> props = binary.getProps();
+        assertEquals(3, props.size());
+        assertEquals("operator", props.get(0).getKey());
+        assertEquals("+", props.get(0).getObjs().get(0).toString());
+        assertSame(a, props.get(1).getObjs().get(0));
+    }
+
+    @Test
+    public void lazyBodiesPrintOnceParsed() throws IOException {
+        ProgramNode program = new ProgramParser(new Lexer(new FileCharIterator(resource("AllNodes.djava"))))
+                .parseLazily();
+        FunctionNode main = program.getFunctions().get("main");
+        assertFalse(main.isParsed());
+        assertEquals(resource("AllNodes.txt").trim(), program.toString());
+        assertTrue(main.isParsed());
+    }
+}
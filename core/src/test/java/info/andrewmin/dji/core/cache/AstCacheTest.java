@@ -0,0 +1,72 @@
+package info.andrewmin.dji.core.cache;
+
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.lexer.SourceBuffer;
+import info.andrewmin.dji.core.parser.ProgramParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests of {@link AstCache}.
+ */
+public class AstCacheTest {
+    private static final String SOURCE = "int main() { return 1; }";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameSourceAndVersionHaveSameKey() {
+        assertEquals(AstCache.key(SourceBuffer.of(SOURCE), "0.1.1"),
+                AstCache.key(SourceBuffer.of(SOURCE), "0.1.1"));
+    }
+
+    @Test
+    public void differentVersionsHaveDifferentKeys() {
+        assertNotEquals(AstCache.key(SourceBuffer.of(SOURCE), "0.1.1"),
+                AstCache.key(SourceBuffer.of(SOURCE), "0.1.2"));
+    }
+
+    @Test
+    public void differentSourcesHaveDifferentKeys() {
+        assertNotEquals(AstCache.key(SourceBuffer.of(SOURCE), "0.1.1"),
+                AstCache.key(SourceBuffer.of("int main() { return 2; }"), "0.1.1"));
+    }
+
+    @Test
+    public void keyIsHexSha256() {
+        String key = AstCache.key(SourceBuffer.of(SOURCE), "0.1.1");
+        assertEquals(64, key.length());
+        assertEquals(key, key.replaceAll("[^0-9a-f]", ""));
+    }
+
+    @Test
+    public void storedProgramIsLoaded() throws IOException {
+        AstCache cache = new AstCache(folder.getRoot().toPath());
+        String key = AstCache.key(SourceBuffer.of(SOURCE));
+        assertNull(cache.load(key));
+        cache.store(key, new ProgramParser(new Lexer(new FileCharIterator(SOURCE))).parse(), 0);
+        assertNotNull(cache.load(key));
+    }
+
+    @Test
+    public void invalidLazyBodyIsNotStored() {
+        String source = "int main() { return 1; }\nint unused() { return 1 +; }";
+        AstCache cache = new AstCache(folder.getRoot().toPath());
+        String key = AstCache.key(SourceBuffer.of(source));
+        ProgramNode program = new ProgramParser(new Lexer(new FileCharIterator(source))).parseLazily();
+        cache.store(key, program, 0);
+        assertNull(cache.load(key));
+        assertEquals(0, folder.getRoot().list().length);
+    }
+}
@@ -0,0 +1,179 @@
+package info.andrewmin.dji.core.checker;
+
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.exceptions.*;
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.parser.ProgramParser;
+import info.andrewmin.dji.core.runtime.Runtime;
+import info.andrewmin.dji.core.runtime.SlotResolver;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the {@link TypeChecker} and {@link FunctionTypes}.
+ */
+public class TypeCheckerTest {
+    /**
+     * Parse a program.
+     *
+     * @param source The source.
+     * @return The program.
+     */
+    private static ProgramNode parse(String source) {
+        return new ProgramParser(new Lexer(new FileCharIterator(source))).parse();
+    }
+
+    /**
+     * Check a function of a program.
+     *
+     * @param source The program source.
+     * @param name   The function name.
+     * @return The types of the function.
+     */
+    private static FunctionTypes check(String source, String name) {
+        ProgramNode program = parse(source);
+        return new TypeChecker(program).check(program.getFunctions().get(name));
+    }
+
+    /**
+     * Check a program has a single type error.
+     *
+     * @param source   The program source.
+     * @param expected The expected error class.
+     * @param message  The expected error message.
+     */
+    private static void assertError(String source, Class<? extends BaseUserException> expected, String message) {
+        ProgramNode program = parse(source);
+        BaseUserException e = assertThrows(expected, () -> new TypeChecker(program).checkAll());
+        assertEquals(message, e.getMessage());
+    }
+
+    /**
+     * Run a program.
+     *
+     * @param source The program source.
+     * @return The return value of main.
+     */
+    private static Value<?> run(String source) {
+        return new Runtime(parse(source)).runProgram();
+    }
+
+    @Test
+    public void passesCleanProgram() {
+        String source = "int f(int a, double b) { if (b > 1.0) { return a; } return a * 2; }\n"
+                + "int main() { String s = \"s\"; boolean t = !(1 == 2) && s == \"s\"; "
+                + "for (int i = 0; i < 3; i += 1) { t = t || i > 1; } return f(1, 2.0); }";
+        new TypeChecker(parse(source)).checkAll();
+
+        FunctionTypes types = check(source, "main");
+        assertTrue(types.isChecked());
+        assertEquals(TypeTokenVariant.STRING, types.getVariableType(parse(source).getSymbols().intern("s")));
+        assertTrue(check(source, "f").isChecked());
+    }
+
+    @Test
+    public void reportsEachMismatch() {
+        assertError("int main() { void x = 1; return 0; }",
+                VoidTypeException.class, "Variable x cannot have a void type");
+        assertError("int main() { int x = 1.0; return 0; }",
+                TypeMismatchException.class, "Expected INT, but received DOUBLE");
+        assertError("int main() { return true; }",
+                TypeMismatchException.class, "Expected INT, but received BOOLEAN");
+        assertError("int main() { while (1) { return 0; } return 0; }",
+                TypeMismatchException.class, "Expected BOOLEAN, but received INT");
+        assertError("int f(int a) { return a; }\nint main() { return f(1.0); }",
+                InvalidArgumentException.class, "f expected [INT], but received [DOUBLE]");
+        assertError("int main() { 1 = 2; return 0; }",
+                ExpectedVariableException.class, "Excepted a variable before =");
+        assertError("int main() { return 1 + true; }",
+                BinaryTypeMismatchException.class, "Cannot apply ADD to INT and BOOLEAN");
+        assertError("int main() { return -true; }",
+                UnaryTypeMismatchException.class, "Cannot apply - to BOOLEAN");
+    }
+
+    @Test
+    public void reportsErrorsInCodeThatNeverRuns() {
+        String source = "int main() { if (false) { int x = true; } return 0; }";
+        assertThrows(TypeMismatchException.class, () -> run(source));
+    }
+
+    @Test
+    public void ignoresErrorsOfSomeTypes() {
+        // x is an int or a string, only a string fails to subtract
+        String source = "int main() { int x = 1; if (false) { x = \"s\"; } x - 1; return 0; }";
+        new TypeChecker(parse(source)).checkAll();
+        FunctionTypes types = check(source, "main");
+        assertFalse(types.isChecked());
+        assertNull(types.getVariableType(parse(source).getSymbols().intern("x")));
+        assertEquals(0, run(source).getValue());
+
+        // The runtime still reports the error if it happens
+        String failing = "int main() { int x = 1; if (true) { x = \"s\"; } x - 1; return 0; }";
+        new TypeChecker(parse(failing)).checkAll();
+        BaseUserException e = assertThrows(BinaryTypeMismatchException.class, () -> run(failing));
+        assertEquals("Cannot apply SUB to STRING and INT", e.getMessage());
+    }
+
+    @Test
+    public void ignoresNestedReturnsOfAnotherType() {
+        // A nested return is only returned after the top level statement, so a later return may replace it
+        String source = "int main() { { return true; return 1; } }";
+        new TypeChecker(parse(source)).checkAll();
+        assertFalse(check(source, "main").isChecked());
+        assertEquals(1, run(source).getValue());
+    }
+
+    @Test
+    public void aggregatesErrors() {
+        String source = "int g() { return true; }\nint f() { int x = 1.0; return -\"s\"; }\n"
+                + "int main() { return 0; }";
+        TypeCheckException e = assertThrows(TypeCheckException.class, () -> run(source));
+        List<String> messages = e.getErrors().stream().map(Throwable::getMessage).collect(Collectors.toList());
+        assertEquals(List.of("Expected INT, but received BOOLEAN", "Expected INT, but received DOUBLE",
+                "Cannot apply - to STRING"), messages);
+        assertEquals("Found 3 type errors\n    " + String.join("\n    ", messages), e.getMessage());
+
+        // Checking a single function only reports its own errors
+        ProgramNode program = parse(source);
+        FunctionNode f = program.getFunctions().get("f");
+        assertEquals(2, assertThrows(TypeCheckException.class, () -> new TypeChecker(program).check(f))
+                .getErrors().size());
+    }
+
+    @Test
+    public void skipsChecksOfCheckedFunctions() {
+        String source = "int f(int a) { int b = a + 1; return b; }\n"
+                + "int g(int a) { int b = 1; if (a > 0) { b = \"s\"; } return a; }\n"
+                + "int main() { return f(1) + g(1); }";
+        ProgramNode program = parse(source);
+        TypeChecker checker = new TypeChecker(program);
+        for (String name : List.of("f", "main")) {
+            FunctionNode function = program.getFunctions().get(name);
+            assertTrue(name, new SlotResolver(program, function, checker.check(function)).resolve().isChecked());
+        }
+        FunctionNode g = program.getFunctions().get("g");
+        assertFalse(new SlotResolver(program, g, checker.check(g)).resolve().isChecked());
+        assertEquals(3, new Runtime(program).runProgram().getValue());
+    }
+
+    @Test
+    public void checksReturnsOfCheckedFunctionsCalledWhileReturning() {
+        // h is checked, but is called while the return value of main is pending and returns it instead
+        String source = "void h() { int x = 1; }\nint main() { { return 1; h(); } return 2; }";
+        assertTrue(check(source, "h").isChecked());
+        BaseUserException e = assertThrows(TypeMismatchException.class, () -> run(source));
+        assertEquals("Expected VOID, but received INT", e.getMessage());
+    }
+}
@@ -0,0 +1,86 @@
+package info.andrewmin.dji.core.lexer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests of the {@link CharScanner} implementations.
+ */
+public class CharScannerTest {
+    // ASCII classes and their boundaries, and non-ASCII characters that stop the scans
+    private static final String ALPHABET = " \t\n\r\u000B\f\u001Cazaz_$09AZ`{@[/:! \u3000\u00E9\u0660";
+
+    @Test
+    public void scalarWhitespace() {
+        char[] chars = "  \t\n x".toCharArray();
+        CharScanner scanner = new CharScanner.Scalar();
+        assertEquals(5, scanner.skipWhitespace(chars, 0, chars.length));
+        assertEquals(3, scanner.skipWhitespace(chars, 0, 3));
+        assertEquals(6, scanner.skipWhitespace(chars, 6, 6));
+    }
+
+    @Test
+    public void scalarIdentifier() {
+        char[] chars = "ab_$9Z+c".toCharArray();
+        CharScanner scanner = new CharScanner.Scalar();
+        assertEquals(6, scanner.skipIdentifier(chars, 0, chars.length));
+        assertEquals(6, scanner.skipIdentifier(chars, 6, chars.length));
+        assertEquals(8, scanner.skipIdentifier(chars, 7, chars.length));
+    }
+
+    @Test
+    public void vectorMatchesScalar() {
+        assumeTrue("The Vector API is not available", ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                && VectorCharScanner.isSupported());
+        CharScanner scalar = new CharScanner.Scalar();
+        CharScanner vector = new VectorCharScanner();
+        Random random = new Random(9);
+        for (int i = 0; i < 20000; i++) {
+            char[] chars = randomRuns(random);
+            int from = random.nextInt(chars.length + 1);
+            int to = from + random.nextInt(chars.length - from + 1);
+            assertScanned(chars, scalar.skipWhitespace(chars, from, to), vector.skipWhitespace(chars, from, to));
+            assertScanned(chars, scalar.skipIdentifier(chars, from, to), vector.skipIdentifier(chars, from, to));
+        }
+    }
+
+    /**
+     * Check the end of a scan matches the scalar scan, or stops early at a non-ASCII character.
+     *
+     * @param chars  The characters.
+     * @param scalar The end of the scalar scan.
+     * @param end    The end of the scan.
+     */
+    private static void assertScanned(char[] chars, int scalar, int end) {
+        if (end != scalar) {
+            assertTrue("Stopped at " + end + " instead of " + scalar, end < scalar && chars[end] >= 128);
+        }
+    }
+
+    /**
+     * Generate characters in runs of one class, long enough to fill several vectors.
+     *
+     * @param random The random number generator.
+     * @return The characters.
+     */
+    private static char[] randomRuns(Random random) {
+        char[] chars = new char[random.nextInt(200)];
+        int i = 0;
+        while (i < chars.length) {
+            String run = random.nextBoolean() ? " \t\n\r" : "abcXYZ_$019";
+            int length = Math.min(chars.length - i, random.nextInt(80));
+            for (int j = 0; j < length; j++) {
+                chars[i++] = run.charAt(random.nextInt(run.length()));
+            }
+            if (i < chars.length) {
+                chars[i++] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            }
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,104 @@
+package info.andrewmin.dji.core.lexer;
+
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * A benchmark of lexer throughput with the scalar and vectorized character scanners.
+ * <p>
+ * The scanners are timed skipping every run of the source, then the whole lexer is timed with the scanner chosen
+ * for this runtime. Run with and without {@code --add-modules jdk.incubator.vector} to compare the lexers, e.g.
+ * {@code ./gradlew :core:benchmark -Pbenchmark=info.andrewmin.dji.core.lexer.LexerBenchmark}.
+ */
+public final class LexerBenchmark {
+    private static final int FUNCTIONS = 20_000;
+    private static final int RUNS = 20;
+
+    /**
+     * Utility class.
+     */
+    private LexerBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The number of functions (optional).
+     */
+    public static void main(String[] args) {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : FUNCTIONS;
+        String source = generate(functions);
+        char[] chars = source.toCharArray();
+        System.out.printf("%d functions, %.1f MB%n", functions, source.length() / 1e6);
+
+        time("Scalar scanner", () -> scan(new CharScanner.Scalar(), chars));
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() && VectorCharScanner.isSupported()) {
+            time("Vector scanner", () -> scan(new VectorCharScanner(), chars));
+        } else {
+            System.out.printf("%-28s unavailable%n", "Vector scanner:");
+        }
+        time("Lexer (" + CharScanner.create().getClass().getSimpleName() + ")",
+                () -> new TokenBuffer(new Lexer(new FileCharIterator(source))).has(0) ? 1 : 0);
+    }
+
+    /**
+     * Time the best of several runs of a task.
+     *
+     * @param name The task name.
+     * @param task The task, returning a result that is checked so it is not optimized away.
+     */
+    private static void time(String name, IntSupplier task) {
+        long best = Long.MAX_VALUE;
+        int result = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            int runResult = task.getAsInt();
+            best = Math.min(best, System.nanoTime() - start);
+            if (run > 0 && runResult != result) {
+                throw new AssertionError(name + " is not deterministic");
+            }
+            result = runResult;
+        }
+        System.out.printf("%-28s %7.2f ms (best of %d)%n", name + ":", best / 1e6, RUNS);
+    }
+
+    /**
+     * Skip every whitespace and identifier run of the characters.
+     *
+     * @param scanner The scanner.
+     * @param chars   The characters.
+     * @return The number of runs.
+     */
+    private static int scan(CharScanner scanner, char[] chars) {
+        int runs = 0;
+        int i = 0;
+        while (i < chars.length) {
+            int end = scanner.skipIdentifier(chars, scanner.skipWhitespace(chars, i, chars.length), chars.length);
+            // Skip the symbol ending the runs
+            i = end == i ? i + 1 : end;
+            runs++;
+        }
+        return runs;
+    }
+
+    /**
+     * Generate a source with deeply indented code and long identifiers.
+     *
+     * @param functions The number of functions.
+     * @return The source.
+     */
+    private static String generate(int functions) {
+        Random random = new Random(9);
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            source.append("int function_with_a_long_descriptive_name_").append(i).append("(int argument) {\n");
+            for (int j = 0; j < 5; j++) {
+                String indent = " ".repeat(4 * (1 + random.nextInt(8)));
+                source.append(indent).append("int local_variable_with_a_long_name_").append(j)
+                        .append(" = argument + ").append(random.nextInt(1000)).append(";\n");
+            }
+            source.append("    return argument;\n}\n\n");
+        }
+        return source.toString();
+    }
+}
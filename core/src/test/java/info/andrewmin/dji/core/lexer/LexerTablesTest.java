@@ -0,0 +1,122 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.tokens.KeywordTokenVariant;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TokenKind;
+import info.andrewmin.dji.core.tokens.TypeTokenVariant;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests that the {@link LexerTables} accept exactly the tokens of the token variant maps.
+ */
+public class LexerTablesTest {
+    /**
+     * Walk the word trie.
+     *
+     * @param word The word.
+     * @return The state after the word, {@link LexerTables#NONE} if no keyword or type starts with it.
+     */
+    private static int walkWord(String word) {
+        int state = LexerTables.START;
+        // The start state is also the missing transition, so stop once the walk falls off the trie
+        for (int i = 0; i < word.length() && (i == 0 || state != LexerTables.NONE); i++) {
+            state = LexerTables.nextWord(state, word.charAt(i));
+        }
+        return state;
+    }
+
+    /**
+     * Lex a source of tokens separated by spaces.
+     *
+     * @param words The tokens.
+     * @return The token buffer.
+     */
+    private static TokenBuffer lex(Iterable<String> words) {
+        return new TokenBuffer(new Lexer(new FileCharIterator(String.join(" ", words))));
+    }
+
+    @Test
+    public void acceptsEverySymbol() {
+        for (Map.Entry<String, SymbolTokenVariant> entry : SymbolTokenVariant.map.entrySet()) {
+            String symbol = entry.getKey();
+            int state = LexerTables.START;
+            for (int i = 0; i < symbol.length(); i++) {
+                state = LexerTables.nextSymbol(state, symbol.charAt(i));
+                assertFalse(symbol, state == LexerTables.NONE);
+            }
+            assertEquals(symbol, entry.getValue().ordinal(), LexerTables.symbolVariant(state));
+        }
+
+        List<String> symbols = List.copyOf(SymbolTokenVariant.map.keySet());
+        TokenBuffer tokens = lex(symbols);
+        for (int i = 0; i < symbols.size(); i++) {
+            assertEquals(symbols.get(i), TokenKind.SYMBOL, tokens.kind(i));
+            assertEquals(SymbolTokenVariant.map.get(symbols.get(i)), tokens.symbol(i));
+        }
+    }
+
+    @Test
+    public void acceptsEveryKeyword() {
+        for (Map.Entry<String, KeywordTokenVariant> entry : KeywordTokenVariant.map.entrySet()) {
+            KeywordTokenVariant keyword = entry.getValue();
+            int state = walkWord(entry.getKey());
+            TokenKind kind = keyword == KeywordTokenVariant.TRUE || keyword == KeywordTokenVariant.FALSE
+                    ? TokenKind.BOOLEAN_LITERAL
+                    : TokenKind.KEYWORD;
+            assertEquals(entry.getKey(), kind, LexerTables.wordKind(state));
+            assertEquals(entry.getKey(), keyword.ordinal(), LexerTables.wordVariant(state));
+        }
+
+        List<String> keywords = List.copyOf(KeywordTokenVariant.map.keySet());
+        TokenBuffer tokens = lex(keywords);
+        for (int i = 0; i < keywords.size(); i++) {
+            KeywordTokenVariant keyword = KeywordTokenVariant.map.get(keywords.get(i));
+            if (keyword == KeywordTokenVariant.TRUE || keyword == KeywordTokenVariant.FALSE) {
+                assertEquals(TokenKind.BOOLEAN_LITERAL, tokens.kind(i));
+                assertEquals(keyword == KeywordTokenVariant.TRUE, tokens.booleanValue(i));
+            } else {
+                assertEquals(keyword, tokens.peekKeyword(i));
+            }
+        }
+    }
+
+    @Test
+    public void acceptsEveryType() {
+        for (Map.Entry<String, TypeTokenVariant> entry : TypeTokenVariant.map.entrySet()) {
+            int state = walkWord(entry.getKey());
+            assertEquals(entry.getKey(), TokenKind.TYPE, LexerTables.wordKind(state));
+            assertEquals(entry.getKey(), entry.getValue().ordinal(), LexerTables.wordVariant(state));
+        }
+
+        List<String> types = List.copyOf(TypeTokenVariant.map.keySet());
+        TokenBuffer tokens = lex(types);
+        for (int i = 0; i < types.size(); i++) {
+            assertEquals(types.get(i), TokenKind.TYPE, tokens.kind(i));
+            assertEquals(TypeTokenVariant.map.get(types.get(i)), tokens.type(i));
+        }
+    }
+
+    @Test
+    public void lexesPrefixesAndExtensionsAsIdentifiers() {
+        List<String> identifiers = List.of("in", "intx", "returned", "i", "f", "whil", "whiles", "Strin", "String_",
+                "string", "voids", "truex", "falsey", "If", "_if", "$int", "int1", "e", "elsewhere");
+        for (String identifier : identifiers) {
+            int state = walkWord(identifier);
+            assertNull(identifier, state == LexerTables.NONE ? null : LexerTables.wordKind(state));
+        }
+
+        TokenBuffer tokens = lex(identifiers);
+        for (int i = 0; i < identifiers.size(); i++) {
+            assertEquals(identifiers.get(i), TokenKind.IDENTIFIER, tokens.kind(i));
+            assertEquals(identifiers.get(i), tokens.getSymbols().name(tokens.identifier(i)));
+        }
+        assertFalse(tokens.has(identifiers.size()));
+    }
+}
@@ -0,0 +1,100 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.tokens.TokenKind;
+
+import java.util.Random;
+
+/**
+ * A benchmark of lexing number literal dense sources.
+ * <p>
+ * Times lexing the whole source, next to the work the lexer used to do on top of that for each literal:
+ * copying it into a string and parsing it.
+ * Run with {@code ./gradlew :core:benchmark -Pbenchmark=info.andrewmin.dji.core.lexer.NumberLiteralBenchmark}.
+ */
+public final class NumberLiteralBenchmark {
+    private static final int LITERALS = 400_000;
+    private static final int RUNS = 20;
+
+    /**
+     * Utility class.
+     */
+    private NumberLiteralBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The number of literals (optional).
+     */
+    public static void main(String[] args) {
+        int literals = args.length > 0 ? Integer.parseInt(args[0]) : LITERALS;
+        String source = generate(literals);
+        System.out.printf("%d literals, %.1f MB%n", literals, source.length() / 1e6);
+
+        long lexerBest = Long.MAX_VALUE;
+        long parseBest = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator(source)));
+            double lexerSum = 0;
+            for (int i = 0; tokens.has(i); i++) {
+                lexerSum += tokens.kind(i) == TokenKind.INT_LITERAL ? tokens.intValue(i) : tokens.doubleValue(i);
+            }
+            lexerBest = Math.min(lexerBest, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            double parseSum = parseWithStrings(source);
+            parseBest = Math.min(parseBest, System.nanoTime() - start);
+
+            if (lexerSum != parseSum) {
+                throw new AssertionError("The lexer and the parsed strings disagree");
+            }
+        }
+        System.out.printf("Lexing:                    %7.2f ms (best of %d)%n", lexerBest / 1e6, RUNS);
+        System.out.printf("Copying and parsing only:  %7.2f ms (best of %d)%n", parseBest / 1e6, RUNS);
+    }
+
+    /**
+     * Generate a source of int and double literals.
+     *
+     * @param literals The number of literals.
+     * @return The source.
+     */
+    private static String generate(int literals) {
+        Random random = new Random(8);
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < literals; i++) {
+            source.append(random.nextInt(1_000_000));
+            if (random.nextBoolean()) {
+                source.append('.').append(random.nextInt(100_000));
+            }
+            source.append(i % 10 == 9 ? '\n' : ' ');
+        }
+        return source.toString();
+    }
+
+    /**
+     * Scan the literals by copying each into a string builder and parsing it.
+     *
+     * @param source The source.
+     * @return The sum of the literals.
+     */
+    private static double parseWithStrings(String source) {
+        double sum = 0;
+        int i = 0;
+        while (i < source.length()) {
+            if (source.charAt(i) == ' ' || source.charAt(i) == '\n') {
+                i++;
+                continue;
+            }
+            StringBuilder literal = new StringBuilder();
+            boolean hasDecimal = false;
+            while (i < source.length() && (Character.isDigit(source.charAt(i)) || source.charAt(i) == '.')) {
+                hasDecimal |= source.charAt(i) == '.';
+                literal.append(source.charAt(i++));
+            }
+            sum += hasDecimal ? Double.parseDouble(literal.toString()) : Integer.parseInt(literal.toString());
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,121 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.exceptions.InvalidNumberException;
+import info.andrewmin.dji.core.tokens.LiteralToken;
+import info.andrewmin.dji.core.tokens.Token;
+import info.andrewmin.dji.core.tokens.TokenKind;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of number literal scanning in the {@link Lexer} and the values kept by the {@link TokenBuffer}.
+ */
+public class NumberLiteralTest {
+
+    /**
+     * Lex a single token.
+     *
+     * @param raw The source.
+     * @return The token.
+     */
+    private static Token lex(String raw) {
+        return new Lexer(new FileCharIterator(raw)).next();
+    }
+
+    /**
+     * Lex a double literal with the lexer and the token buffer, checking they agree.
+     *
+     * @param raw The literal.
+     * @return The value.
+     */
+    private static double lexDouble(String raw) {
+        double value = ((LiteralToken.Double) lex(raw)).getValue();
+        TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator(raw)));
+        assertEquals(TokenKind.DOUBLE_LITERAL, tokens.peekKind());
+        assertEquals(Double.doubleToRawLongBits(value), Double.doubleToRawLongBits(tokens.doubleValue(0)));
+        return value;
+    }
+
+    @Test
+    public void intLiterals() {
+        assertEquals(0, (int) ((LiteralToken.Int) lex("0")).getValue());
+        assertEquals(42, (int) ((LiteralToken.Int) lex("42")).getValue());
+        assertEquals(7, (int) ((LiteralToken.Int) lex("007")).getValue());
+        assertEquals(Integer.MAX_VALUE, (int) ((LiteralToken.Int) lex("2147483647")).getValue());
+    }
+
+    @Test
+    public void intValuesInTokenBuffer() {
+        TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator("1 2147483647 'x'")));
+        assertEquals(1, tokens.intValue(0));
+        assertEquals(Integer.MAX_VALUE, tokens.intValue(1));
+        assertEquals('x', tokens.charValue(2));
+    }
+
+    @Test(expected = InvalidNumberException.class)
+    public void intOverflow() {
+        lex("2147483648");
+    }
+
+    @Test(expected = InvalidNumberException.class)
+    public void intOverflowPastLong() {
+        lex("99999999999999999999999999");
+    }
+
+    @Test(expected = InvalidNumberException.class)
+    public void intOverflowInTokenBuffer() {
+        TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator("1 2147483648")));
+        assertTrue(tokens.hasError());
+        // The error is thrown once the tokens before it are consumed
+        tokens.advance();
+    }
+
+    @Test
+    public void doubleLiteralsMatchParseDouble() {
+        String[] literals = {
+                "0.0", "1.", "0.1", "0.3", "3.14159", "123456.789", "1.7976931348623157",
+                // Exact mantissa limit and power of ten limit
+                "9007199254740991.0", "0.0000000000000000000001",
+                // Past the limits, parsed with Double.parseDouble
+                "9007199254740993.0", "0.00000000000000000000001", "123456789012345678901234567890.5",
+        };
+        for (String literal : literals) {
+            assertEquals(literal, Double.parseDouble(literal), lexDouble(literal), 0);
+        }
+    }
+
+    @Test
+    public void randomDoubleLiteralsMatchParseDouble() {
+        Random random = new Random(8);
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder literal = new StringBuilder();
+            int intDigits = 1 + random.nextInt(10);
+            int decimalDigits = random.nextInt(25);
+            for (int j = 0; j < intDigits; j++) {
+                literal.append((char) ('0' + random.nextInt(10)));
+            }
+            literal.append('.');
+            for (int j = 0; j < decimalDigits; j++) {
+                literal.append((char) ('0' + random.nextInt(10)));
+            }
+            String raw = literal.toString();
+            assertEquals(raw, Double.parseDouble(raw), lexDouble(raw), 0);
+        }
+    }
+
+    @Test
+    public void nonAsciiIntDigits() {
+        // Arabic-Indic digits are valued like ASCII digits, as by Integer.parseInt
+        assertEquals(12, (int) ((LiteralToken.Int) lex("\u0661\u0662")).getValue());
+    }
+
+    @Test(expected = InvalidNumberException.class)
+    public void nonAsciiDoubleDigits() {
+        // Double.parseDouble only accepts ASCII digits
+        lex("\u0661.\u0665");
+    }
+}
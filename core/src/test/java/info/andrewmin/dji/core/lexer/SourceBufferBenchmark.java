@@ -0,0 +1,181 @@
+package info.andrewmin.dji.core.lexer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.function.IntSupplier;
+import java.util.logging.LogManager;
+
+/**
+ * A benchmark of reading and lexing a source file through a memory-mapped {@link SourceBuffer}.
+ * <p>
+ * A generated program is written to a temporary file, then reading every character through a
+ * {@link BufferedReader} (the previous source reader) is timed against the mapped buffer and its iterator views,
+ * and lexing the mapped file against lexing it as a stream.
+ * Run with {@code ./gradlew :core:benchmark -Pbenchmark=info.andrewmin.dji.core.lexer.SourceBufferBenchmark}.
+ */
+public final class SourceBufferBenchmark {
+    // About 19 MB
+    private static final int FUNCTIONS = 48_000;
+    private static final int RUNS = 5;
+
+    /**
+     * Utility class.
+     */
+    private SourceBufferBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The number of functions (optional).
+     * @throws IOException If the temporary source file could not be written.
+     */
+    public static void main(String[] args) throws IOException {
+        // Do not time logging
+        LogManager.getLogManager().reset();
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : FUNCTIONS;
+        File file = File.createTempFile("dji-benchmark", ".java");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), generate(functions));
+        long bytes = file.length();
+        System.out.printf("%d functions, %.1f MB%n", functions, bytes / 1e6);
+
+        time("BufferedReader read()", bytes, () -> readAll(file));
+        time("Map and decode", bytes, () -> SourceBuffer.map(file).length());
+        time("FileChar iteration", bytes, () -> iterate(new FileCharIterator(file)));
+        time("nextChar() iteration", bytes, () -> scan(new FileCharIterator(file)));
+        time("Lexer (mapped)", bytes, () -> drain(new TokenBuffer(new Lexer(new FileCharIterator(file)))));
+        time("Lexer (streamed)", bytes, () -> {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return drain(new TokenBuffer(new Lexer(new FileCharIterator(channel, file.getName()))));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Time the best of several runs of a task and print its throughput.
+     *
+     * @param name  The task name.
+     * @param bytes The size of the source file in bytes.
+     * @param task  The task, returning a result that is checked so it is not optimized away.
+     */
+    private static void time(String name, long bytes, IntSupplier task) {
+        long best = Long.MAX_VALUE;
+        int result = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            int runResult = task.getAsInt();
+            best = Math.min(best, System.nanoTime() - start);
+            if (run > 0 && runResult != result) {
+                throw new AssertionError(name + " is not deterministic");
+            }
+            result = runResult;
+        }
+        System.out.printf("%-24s %8.2f ms %7.1f MB/s (best of %d)%n", name + ":", best / 1e6,
+                bytes / (best / 1e9) / 1e6, RUNS);
+    }
+
+    /**
+     * Count the lines of a file one character at a time through a reader.
+     *
+     * @param file The file.
+     * @return The number of newlines.
+     */
+    private static int readAll(File file) {
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            for (int c = reader.read(); c >= 0; c = reader.read()) {
+                if (c == '\n') {
+                    lines++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines;
+    }
+
+    /**
+     * Count the lines of a source through the file character view.
+     *
+     * @param chars The character iterator.
+     * @return The number of newlines.
+     */
+    private static int iterate(FileCharIterator chars) {
+        int lines = 0;
+        while (chars.hasNext()) {
+            if (chars.next().getC() == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Count the lines of a source through the raw characters used by the lexer.
+     *
+     * @param chars The character iterator.
+     * @return The number of newlines.
+     */
+    private static int scan(FileCharIterator chars) {
+        int lines = 0;
+        while (chars.hasNext()) {
+            if (chars.nextChar() == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Consume every token of a token buffer.
+     *
+     * @param tokens The token buffer.
+     * @return The number of tokens.
+     */
+    private static int drain(TokenBuffer tokens) {
+        int count = 0;
+        while (tokens.hasNext()) {
+            tokens.advance();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Generate a source with literals of every kind and long identifiers.
+     *
+     * @param functions The number of functions.
+     * @return The source.
+     */
+    private static String generate(int functions) {
+        Random random = new Random(1);
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            source.append("double compute_value_").append(i).append("(int count, double scale) {\n")
+                    .append("    double total = ").append(random.nextInt(1000)).append('.')
+                    .append(random.nextInt(100)).append(";\n")
+                    .append("    boolean verbose = ").append(random.nextBoolean()).append(";\n")
+                    .append("    String label = \"function ").append(i).append(" of the generated program\";\n")
+                    .append("    for (int index = 0; index < count; index += 1) {\n")
+                    .append("        if (index % ").append(2 + random.nextInt(9)).append(" == 0 && label != \"\") {\n")
+                    .append("            total += scale * index - ").append(random.nextInt(100)).append(";\n")
+                    .append("        } else {\n")
+                    .append("            char separator = '").append((char) ('a' + random.nextInt(26))).append("';\n")
+                    .append("        }\n")
+                    .append("    }\n")
+                    .append("    return total;\n")
+                    .append("}\n\n");
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.tokens.Token;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Tests of locating offsets in a {@link SourceBuffer}.
+ */
+public class SourceBufferTest {
+    /**
+     * Generate a source of several streaming windows, with lines of different lengths.
+     *
+     * @return The source.
+     */
+    private static String generate() {
+        StringBuilder raw = new StringBuilder();
+        for (int i = 0; raw.length() < 3 * SourceBuffer.STREAM_CAPACITY; i++) {
+            raw.append("int x").append(i).append(" = ").append(i).append(";\n");
+            raw.append("\t".repeat(i % 5)).append("\n");
+        }
+        return raw.toString();
+    }
+
+    /**
+     * Create a lexer of a streaming source.
+     *
+     * @param raw The source.
+     * @return The lexer.
+     */
+    private static Lexer streaming(String raw) {
+        ByteArrayInputStream in = new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8));
+        return new Lexer(new FileCharIterator(Channels.newChannel(in), "test"));
+    }
+
+    @Test
+    public void locatesLikeMappedSource() {
+        String raw = generate();
+        Lexer expected = new Lexer(new FileCharIterator(raw));
+        Lexer lexer = streaming(raw);
+        while (expected.hasNext()) {
+            Token expectedToken = expected.next();
+            Token token = lexer.next();
+            assertEquals(expectedToken.rawString(), token.rawString());
+            assertEquals(expectedToken.getStartLoc(), token.getStartLoc());
+            assertEquals(expectedToken.getEndLoc(), token.getEndLoc());
+        }
+        assertFalse(lexer.hasNext());
+    }
+
+    @Test
+    public void rejectsDiscardedOffsets() {
+        Lexer lexer = streaming(generate());
+        Token first = lexer.next();
+        assertEquals(new FileLoc(1, 1), first.getStartLoc());
+        Token last = first;
+        while (lexer.hasNext()) {
+            last = lexer.next();
+        }
+
+        // The first window was discarded, so the first token can no longer be located
+        assertThrows(InternalException.class, first::getStartLoc);
+        assertThrows(InternalException.class, first::getEndLoc);
+        assertEquals(SourceBuffer.of(generate()).locate(last.getStart()), last.getStartLoc());
+    }
+}
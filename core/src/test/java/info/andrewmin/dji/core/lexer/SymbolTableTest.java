@@ -0,0 +1,67 @@
+package info.andrewmin.dji.core.lexer;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of interning identifiers in a {@link SymbolTable}.
+ */
+public class SymbolTableTest {
+    // More identifiers than the initial capacity, so the table grows several times
+    private static final int COUNT = 1000;
+
+    @Test
+    public void assignsDenseIdsInFirstSeenOrder() {
+        SymbolTable symbols = new SymbolTable();
+        assertEquals(0, symbols.intern("b"));
+        assertEquals(1, symbols.intern("a"));
+        assertEquals(0, symbols.intern("b"));
+        assertEquals(2, symbols.intern("ab"));
+        assertEquals(1, symbols.intern("a"));
+        assertEquals(3, symbols.size());
+        assertEquals("b", symbols.name(0));
+        assertEquals("a", symbols.name(1));
+        assertEquals("ab", symbols.name(2));
+        assertEquals(-1, symbols.lookup("c"));
+        assertEquals(3, symbols.size());
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        SymbolTable symbols = new SymbolTable();
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(i, symbols.intern("x" + i));
+        }
+        assertEquals(COUNT, symbols.size());
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(i, symbols.intern("x" + i));
+            assertEquals(i, symbols.lookup("x" + i));
+            assertEquals("x" + i, symbols.name(i));
+        }
+        assertEquals(COUNT, symbols.size());
+    }
+
+    @Test
+    public void internsCharactersLikeStrings() {
+        // Aa and BB have the same string hash
+        String source = "x Aa BB y Aa x BB " + String.join(" ", Collections.nCopies(3, "longer_name"));
+        char[] chars = ("  " + source).toCharArray();
+        SymbolTable fromChars = new SymbolTable();
+        SymbolTable fromStrings = new SymbolTable();
+        int start = 2;
+        for (String name : source.split(" ")) {
+            int id = fromChars.intern(chars, start, start + name.length());
+            assertEquals(name, fromStrings.intern(name), id);
+            assertEquals(name, fromChars.name(id));
+            // Either form finds an identifier added by the other
+            assertEquals(id, fromChars.intern(name));
+            assertEquals(id, fromStrings.intern(chars, start, start + name.length()));
+            start += name.length() + 1;
+        }
+        assertEquals(5, fromChars.size());
+        assertEquals(5, fromStrings.size());
+    }
+}
@@ -0,0 +1,102 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.tokens.KeywordTokenVariant;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TokenKind;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the lookahead of the {@link TokenBuffer}.
+ */
+public class TokenBufferTest {
+
+    /**
+     * Create a token buffer of a streaming source, which is lexed into a sliding window.
+     *
+     * @param raw The source.
+     * @return The token buffer.
+     */
+    private static TokenBuffer streaming(String raw) {
+        ByteArrayInputStream in = new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8));
+        return new TokenBuffer(new Lexer(new FileCharIterator(Channels.newChannel(in), "test")));
+    }
+
+    @Test
+    public void lookaheadDoesNotConsume() {
+        TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator("if (x) else")));
+        assertEquals(KeywordTokenVariant.IF, tokens.peekKeyword(0));
+        assertEquals(SymbolTokenVariant.LPAREN, tokens.peekSymbol(1));
+        assertEquals(TokenKind.IDENTIFIER, tokens.peekKind(2));
+        assertEquals(KeywordTokenVariant.ELSE, tokens.peekKeyword(4));
+        assertEquals(0, tokens.position());
+
+        tokens.advance();
+        assertEquals(SymbolTokenVariant.LPAREN, tokens.peekSymbol(0));
+        assertEquals(KeywordTokenVariant.ELSE, tokens.peekKeyword(3));
+    }
+
+    @Test
+    public void lookaheadOfOtherKinds() {
+        TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator("if (x")));
+        assertNull(tokens.peekSymbol(0));
+        assertNull(tokens.peekKeyword(1));
+        assertNull(tokens.peekSymbol(2));
+    }
+
+    @Test
+    public void lookaheadPastEnd() {
+        TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator("x;")));
+        assertTrue(tokens.has(1));
+        assertFalse(tokens.has(2));
+        assertNull(tokens.peekKind(2));
+        assertNull(tokens.peekSymbol(2));
+        assertNull(tokens.peekKeyword(2));
+    }
+
+    @Test
+    public void streamingLookaheadAcrossWindows() {
+        StringBuilder raw = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            raw.append(i % 3 == 0 ? "while " : "x; ");
+        }
+        TokenBuffer expected = new TokenBuffer(new Lexer(new FileCharIterator(raw.toString())));
+        TokenBuffer tokens = streaming(raw.toString());
+        while (expected.hasNext()) {
+            for (int k : new int[]{0, 1, 2, 100, 1500}) {
+                assertEquals(expected.peekKind(k), tokens.peekKind(k));
+                assertEquals(expected.peekSymbol(k), tokens.peekSymbol(k));
+                assertEquals(expected.peekKeyword(k), tokens.peekKeyword(k));
+            }
+            expected.advance();
+            tokens.advance();
+        }
+        assertFalse(tokens.hasNext());
+    }
+
+    @Test
+    public void pipelinedLookahead() {
+        StringBuilder raw = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            raw.append("if (x) ");
+        }
+        TokenBuffer expected = new TokenBuffer(new Lexer(new FileCharIterator(raw.toString())));
+        TokenBuffer tokens = TokenBuffer.pipelined(new Lexer(new FileCharIterator(raw.toString())));
+        try {
+            for (int k = 0; k < 20000; k += 7) {
+                assertEquals(expected.peekKind(k), tokens.peekKind(k));
+                assertEquals(expected.peekSymbol(k), tokens.peekSymbol(k));
+            }
+        } finally {
+            tokens.close();
+        }
+    }
+}
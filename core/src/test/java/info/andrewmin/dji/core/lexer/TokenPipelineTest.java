@@ -0,0 +1,125 @@
+package info.andrewmin.dji.core.lexer;
+
+import info.andrewmin.dji.core.exceptions.InternalException;
+import info.andrewmin.dji.core.tokens.TokenKind;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the sides of a {@link TokenPipeline} never wait forever for each other.
+ */
+public class TokenPipelineTest {
+    private static final long TIMEOUT = 10_000;
+
+    /**
+     * Take, check and release the next batch.
+     *
+     * @param pipeline The pipeline.
+     * @param variant  The expected variant of the single token of the batch.
+     */
+    private static void takeBatch(TokenPipeline pipeline, int variant) {
+        TokenBatch batch = pipeline.take();
+        assertNull(batch.failure);
+        assertEquals(1, batch.count);
+        assertEquals(variant, batch.variants[0]);
+        pipeline.release();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void publishesProducerFailure() {
+        RuntimeException failure = new IllegalStateException("Lexer bug");
+        AtomicInteger batches = new AtomicInteger();
+        TokenPipeline pipeline = new TokenPipeline(batch -> {
+            int i = batches.getAndIncrement();
+            if (i == 3) {
+                throw failure;
+            }
+            batch.add(TokenKind.IDENTIFIER, i, 0, i, i + 1);
+        });
+
+        for (int i = 0; i < 3; i++) {
+            takeBatch(pipeline, i);
+        }
+        TokenBatch last = pipeline.take();
+        assertSame(failure, last.failure);
+        assertTrue(last.last);
+        pipeline.release();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void publishesProducerErrors() {
+        TokenPipeline pipeline = new TokenPipeline(batch -> {
+            throw new StackOverflowError();
+        });
+        TokenBatch last = pipeline.take();
+        assertTrue(last.failure instanceof StackOverflowError);
+        assertTrue(last.last);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void takeFailsIfProducerStops() {
+        // A checked exception thrown without being declared escapes the failure handling, stopping the thread
+        TokenPipeline pipeline = new TokenPipeline(batch -> TokenPipelineTest.<RuntimeException>sneakyThrow(
+                new IOException("Undeclared")));
+        InternalException e = assertThrows(InternalException.class, pipeline::take);
+        assertEquals("Lexer thread stopped before the last batch", e.getMessage());
+    }
+
+    /**
+     * Throw any exception without declaring it.
+     *
+     * @param e   The exception.
+     * @param <E> The type the exception is thrown as.
+     * @throws E Always.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> void sneakyThrow(Throwable e) throws E {
+        throw (E) e;
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void closeStopsWaitingProducer() throws InterruptedException {
+        AtomicReference<Thread> producerThread = new AtomicReference<>();
+        CountDownLatch full = new CountDownLatch(16);
+        TokenPipeline pipeline = new TokenPipeline(batch -> {
+            producerThread.set(Thread.currentThread());
+            batch.add(TokenKind.IDENTIFIER, 0, 0, 0, 1);
+            full.countDown();
+        });
+
+        // The ring is full, so the producer waits for a free slot until it is closed
+        assertTrue(full.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        takeBatch(pipeline, 0);
+        pipeline.close();
+        producerThread.get().join(TIMEOUT);
+        assertFalse(producerThread.get().isAlive());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void takeFailsOnceClosed() {
+        CountDownLatch taken = new CountDownLatch(1);
+        TokenPipeline pipeline = new TokenPipeline(batch -> {
+            try {
+                taken.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        pipeline.close();
+        InternalException e = assertThrows(InternalException.class, pipeline::take);
+        assertEquals("Token pipeline is closed", e.getMessage());
+        taken.countDown();
+    }
+}
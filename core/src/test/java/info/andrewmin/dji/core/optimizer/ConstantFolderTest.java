@@ -0,0 +1,184 @@
+package info.andrewmin.dji.core.optimizer;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.parser.ProgramParser;
+import info.andrewmin.dji.core.runtime.Runtime;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the {@link ConstantFolder}.
+ */
+public class ConstantFolderTest {
+    // Functions whose calls have a known type
+    private static final String FUNCTIONS = "int f() { return 1; }\ndouble d() { return 1.0; }\n"
+            + "boolean g() { return true; }\nString s() { return \"s\"; }\n";
+
+    /**
+     * Parse a program.
+     *
+     * @param source The source.
+     * @return The program.
+     */
+    private static ProgramNode parse(String source) {
+        return new ProgramParser(new Lexer(new FileCharIterator(source))).parse();
+    }
+
+    /**
+     * Get the statements of main.
+     *
+     * @param program The program.
+     * @return The statements.
+     */
+    private static List<StatementNode> main(ProgramNode program) {
+        return program.getFunctions().get("main").getStatements();
+    }
+
+    /**
+     * Get the returned expression of a main function returning an expression.
+     *
+     * @param expr   The expression, which may use the functions and an int variable a.
+     * @param folded If the program is folded.
+     * @return The returned expression.
+     */
+    private static ExpressionNode returned(String expr, boolean folded) {
+        ProgramNode program = parse(FUNCTIONS + "int main() { int a = 1; return " + expr + "; }");
+        if (folded) {
+            program = new ConstantFolder(program).fold();
+        }
+        return ((StatementNode.Return) main(program).get(1)).getExpr();
+    }
+
+    /**
+     * Check an expression folds to another expression.
+     *
+     * @param expr     The expression.
+     * @param expected The folded expression.
+     */
+    private static void assertFolds(String expr, String expected) {
+        assertEquals(expr, returned(expected, false).toString(), returned(expr, true).toString());
+    }
+
+    /**
+     * Check an expression folds to a literal.
+     *
+     * @param expr     The expression.
+     * @param expected The literal value.
+     */
+    private static void assertFoldsTo(String expr, String expected) {
+        ExpressionNode folded = returned(expr, true);
+        assertTrue(expr, folded instanceof ExpressionNode.Literal);
+        assertEquals(expr, expected, ((ExpressionNode.Literal) folded).getValue().toString());
+    }
+
+    @Test
+    public void foldsLiterals() {
+        assertFoldsTo("1 + 2 * 3", "INT(7)");
+        assertFoldsTo("7 / 2 % 2", "INT(1)");
+        assertFoldsTo("1.5 * 2.0 - 0.5", "DOUBLE(2.5)");
+        assertFoldsTo("\"a\" + \"b\"", "STRING(ab)");
+        assertFoldsTo("!true || 1 < 2 && 'a' == 'a'", "BOOLEAN(true)");
+        assertFoldsTo("-3", "INT(-3)");
+        assertFoldsTo("-(2147483647 + 1)", "INT(-2147483648)");
+    }
+
+    @Test
+    public void foldsInsideOtherExpressions() {
+        assertFolds("a + 2 * 3", "a + 6");
+        assertFolds("f() + (1 + 1)", "f() + 2");
+        assertFolds("a = 2 * 2", "a = 4");
+    }
+
+    @Test
+    public void leavesErrorsToRuntime() {
+        assertFolds("1 / 0", "1 / 0");
+        assertFolds("1 % 0", "1 % 0");
+        assertFolds("1 + 1.5", "1 + 1.5");
+        assertFolds("true + 1", "true + 1");
+        assertFolds("-true", "-true");
+    }
+
+    @Test
+    public void simplifiesTypedIdentities() {
+        assertFolds("f() * 1", "f()");
+        assertFolds("1 * f()", "f()");
+        assertFolds("f() + 0", "f()");
+        assertFolds("d() / 1.0", "d()");
+        assertFolds("d() - 0.0", "d()");
+        assertFolds("s() + \"\"", "s()");
+        assertFolds("g() && true", "g()");
+        assertFolds("false || g()", "g()");
+        assertFolds("!!g()", "g()");
+        assertFolds("-(-f())", "f()");
+        assertFolds("(f() + 1) * 1", "f() + 1");
+    }
+
+    @Test
+    public void keepsUntypedOrInexactIdentities() {
+        // Variables may hold any type
+        assertFolds("a * 1", "a * 1");
+        assertFolds("!!a", "!!a");
+        // -0.0 + 0.0 is 0.0
+        assertFolds("d() + 0.0", "d() + 0.0");
+        // Mismatched identity types are errors
+        assertFolds("d() * 1", "d() * 1");
+        assertFolds("f() * 1.0", "f() * 1.0");
+    }
+
+    @Test
+    public void prunesConstantBranches() {
+        ProgramNode program = new ConstantFolder(parse(
+                "int main() { if (1 < 2) { return 1; } else { return 2; } if (false) { return 3; } return 4; }"))
+                .fold();
+        List<StatementNode> statements = main(program);
+        assertTrue(statements.get(0) instanceof StatementNode.Block);
+        assertEquals(parse("int main() { { return 1; } }").getFunctions().get("main").getStatements().get(0).toString(),
+                statements.get(0).toString());
+        assertEquals("Statement.Block {\n    statements: []\n}", statements.get(1).toString());
+    }
+
+    @Test
+    public void sharesUnchangedNodes() {
+        ProgramNode program = parse(FUNCTIONS + "int main() { int a = f(); return a + 1; }");
+        ProgramNode folded = new ConstantFolder(program).fold();
+        assertSame(program.getFunctions().get("f"), folded.getFunctions().get("f"));
+        assertSame(main(program).get(1), main(folded).get(1));
+    }
+
+    @Test
+    public void foldsLazyBodiesWhenParsed() {
+        String source = "int main() { return 2 * 3; }";
+        ProgramNode program = new ProgramParser(new Lexer(new FileCharIterator(source))).parseLazily();
+        FunctionNode main = new ConstantFolder(program).fold().getFunctions().get("main");
+        assertFalse(main.isParsed());
+        ExpressionNode expr = ((StatementNode.Return) main.getStatements().get(0)).getExpr();
+        assertEquals("INT(6)", ((ExpressionNode.Literal) expr).getValue().toString());
+    }
+
+    @Test
+    public void foldedProgramsRunTheSame() {
+        String[] programs = {
+                "int main() { int s = 0; for (int i = 0; i < 2 * 5; i += 1 * 1) { if (i % 2 == 0 && true) {"
+                        + " s += i * 1 + 0; } } return s; }",
+                "String main() { String s = \"\" + \"a\"; while (false) { s += \"b\"; } return s + \"\"; }",
+                "double main() { double x = 1.5 * 2.0; return -(-x) + 0.0; }",
+                "int f(int n) { if (n < 1 + 1) { return n; } return f(n - 1) + f(n - 2); }\n"
+                        + "int main() { return f(10) * 1; }",
+        };
+        for (String source : programs) {
+            assertEquals(source, new Runtime(parse(source)).runProgram().toString(),
+                    new Runtime(new ConstantFolder(parse(source)).fold()).runProgram().toString());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package info.andrewmin.dji.core.parser;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.lexer.TokenBuffer;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of hash-consing expressions with the {@link ExpressionInterner}.
+ */
+public class ExpressionInternerTest {
+
+    /**
+     * Parse expressions separated by semicolons with a shared interner.
+     *
+     * @param raw The source.
+     * @return The expressions.
+     */
+    private static List<ExpressionNode> parse(String raw) {
+        TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator(raw)));
+        ExpressionParser parser = new ExpressionParser(tokens, new ExpressionInterner());
+        List<ExpressionNode> expressions = new ArrayList<>();
+        while (tokens.hasNext()) {
+            expressions.add(parser.parse());
+            tokens.next(SymbolTokenVariant.SEMICOLON);
+        }
+        return expressions;
+    }
+
+    @Test
+    public void leavesAreInterned() {
+        ExpressionInterner interner = new ExpressionInterner();
+        assertSame(interner.literal(new Value.Int(1)), interner.literal(new Value.Int(1)));
+        assertSame(interner.variableReference("a", 0), interner.variableReference("a", 0));
+        assertNotSame(interner.literal(new Value.Int(1)), interner.literal(new Value.Int(2)));
+        assertNotSame(interner.variableReference("a", 0), interner.variableReference("b", 1));
+        assertEquals(4, interner.size());
+    }
+
+    @Test
+    public void literalsOfDifferentTypesAreNotShared() {
+        ExpressionInterner interner = new ExpressionInterner();
+        assertNotSame(interner.literal(new Value.Int(1)), interner.literal(new Value.Double(1.0)));
+        assertNotSame(interner.literal(new Value.Int('a')), interner.literal(new Value.Char('a')));
+    }
+
+    @Test
+    public void pureExpressionsAreInterned() {
+        List<ExpressionNode> expressions = parse("a + 1 * b; a + 1 * b; -(a < b); -(a < b); !c; !c;");
+        assertSame(expressions.get(0), expressions.get(1));
+        assertSame(expressions.get(2), expressions.get(3));
+        assertSame(expressions.get(4), expressions.get(5));
+    }
+
+    @Test
+    public void differentExpressionsAreNotShared() {
+        List<ExpressionNode> expressions = parse("a + b; b + a; a - b; a + b + c;");
+        assertNotSame(expressions.get(0), expressions.get(1));
+        assertNotSame(expressions.get(0), expressions.get(2));
+        assertSame(expressions.get(0), ((ExpressionNode.Binary) expressions.get(3)).getLeftExpr());
+    }
+
+    @Test
+    public void callsAreNotInterned() {
+        List<ExpressionNode> expressions = parse("f(a + 1); f(a + 1); f() + 1; f() + 1;");
+        assertNotSame(expressions.get(0), expressions.get(1));
+        assertNotSame(expressions.get(2), expressions.get(3));
+        // Pure arguments are still shared
+        assertSame(((ExpressionNode.FunctionCall) expressions.get(0)).getArgs().get(0),
+                ((ExpressionNode.FunctionCall) expressions.get(1)).getArgs().get(0));
+    }
+
+    @Test
+    public void assignmentsAreNotInterned() {
+        List<ExpressionNode> expressions = parse("a = b + 1; a = b + 1; a += 1; a += 1; (a = 1) + 2; (a = 1) + 2;");
+        assertNotSame(expressions.get(0), expressions.get(1));
+        assertNotSame(expressions.get(2), expressions.get(3));
+        assertNotSame(expressions.get(4), expressions.get(5));
+        // Pure operands are still shared
+        assertSame(((ExpressionNode.Binary) expressions.get(0)).getRightExpr(),
+                ((ExpressionNode.Binary) expressions.get(1)).getRightExpr());
+    }
+
+    @Test
+    public void sharedAcrossFunctions() {
+        String source = "int f(int a) { return a * 2 + 1; }\nint g(int a) { return a * 2 + 1; }\n"
+                + "int main() { return f(1) + g(2); }";
+        ProgramNode program = new ProgramParser(new Lexer(new FileCharIterator(source)), false, true).parse();
+        assertSame(returned(program.getFunctions().get("f")), returned(program.getFunctions().get("g")));
+
+        ProgramNode unshared = new ProgramParser(new Lexer(new FileCharIterator(source)), false, false).parse();
+        assertNotSame(returned(unshared.getFunctions().get("f")), returned(unshared.getFunctions().get("g")));
+    }
+
+    /**
+     * Get the expression returned by a function's first statement.
+     *
+     * @param function The function.
+     * @return The returned expression.
+     */
+    private static ExpressionNode returned(FunctionNode function) {
+        return ((StatementNode.Return) function.getStatements().get(0)).getExpr();
+    }
+}
@@ -0,0 +1,91 @@
+package info.andrewmin.dji.core.parser;
+
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.lexer.TokenBuffer;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+
+import java.util.Random;
+import java.util.function.Function;
+import java.util.logging.LogManager;
+
+/**
+ * A benchmark of the Pratt expression parser against the precedence climbing parser it replaced,
+ * on operator dense expressions.
+ * <p>
+ * Run with {@code ./gradlew :core:benchmark -Pbenchmark=info.andrewmin.dji.core.parser.ExpressionParserBenchmark}.
+ */
+public final class ExpressionParserBenchmark {
+    private static final int EXPRESSIONS = 100_000;
+    private static final int RUNS = 20;
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "%", "==", "!=", "<", ">", "<=", ">=", "&&", "||"};
+
+    /**
+     * Utility class.
+     */
+    private ExpressionParserBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The number of expressions (optional).
+     */
+    public static void main(String[] args) {
+        // Do not time logging
+        LogManager.getLogManager().reset();
+        int expressions = args.length > 0 ? Integer.parseInt(args[0]) : EXPRESSIONS;
+        String source = generate(expressions);
+        System.out.printf("%d expressions, %.1f MB%n", expressions, source.length() / 1e6);
+
+        for (int round = 0; round < 2; round++) {
+            time("Pratt", source, tokens -> new ExpressionParser(tokens).parse());
+            time("Precedence climbing", source, tokens -> new PrecedenceClimbingParser(tokens).parse());
+        }
+    }
+
+    /**
+     * Time parsing every expression of a pre-lexed source.
+     *
+     * @param name   The parser name.
+     * @param source The source.
+     * @param parser Parses the next expression of a token buffer.
+     */
+    private static void time(String name, String source, Function<TokenBuffer, Object> parser) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator(source)));
+            long start = System.nanoTime();
+            while (tokens.hasNext()) {
+                parser.apply(tokens);
+                tokens.next(SymbolTokenVariant.SEMICOLON);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-20s %7.2f ms (best of %d)%n", name + ":", best / 1e6, RUNS);
+    }
+
+    /**
+     * Generate expressions of 12 binary operators each, with some unary operators and parentheses.
+     *
+     * @param expressions The number of expressions.
+     * @return The source.
+     */
+    private static String generate(int expressions) {
+        Random random = new Random(12);
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < expressions; i++) {
+            source.append(random.nextInt(4) == 0 ? "-a" : "a");
+            for (int j = 0; j < 12; j++) {
+                source.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+                if (random.nextInt(6) == 0) {
+                    source.append("(b * ").append(j).append(')');
+                } else {
+                    source.append(random.nextBoolean() ? "b" : Integer.toString(j));
+                }
+            }
+            source.append(";\n");
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package info.andrewmin.dji.core.parser;
+
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.lexer.TokenBuffer;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the Pratt {@link ExpressionParser} against the {@link PrecedenceClimbingParser} it replaced.
+ */
+public class ExpressionParserTest {
+    private static final String[] OPERANDS = {"a", "b", "1", "2.5", "'c'", "\"s\"", "true", "f()", "g(a, b)"};
+    private static final String[] OPERATORS = {
+            "+", "-", "*", "/", "%", "=", "+=", "-=", "*=", "/=", "%=",
+            "==", "!=", "<", ">", "<=", ">=", "&&", "||", "!", "++", "--",
+    };
+
+    /**
+     * Parse an expression, describing the tree, the tokens left and any error.
+     *
+     * @param raw    The source.
+     * @param parser Parses the next expression of a token buffer, returning its tree.
+     * @return The description.
+     */
+    private static String parse(String raw, Function<TokenBuffer, Object> parser) {
+        TokenBuffer tokens;
+        try {
+            tokens = new TokenBuffer(new Lexer(new FileCharIterator(raw)));
+        } catch (RuntimeException e) {
+            return "Lexer " + e;
+        }
+        try {
+            Object tree = parser.apply(tokens);
+            return tree + " at " + tokens.position();
+        } catch (RuntimeException e) {
+            return e + " at " + tokens.position();
+        }
+    }
+
+    /**
+     * Parse an expression with the Pratt parser.
+     *
+     * @param raw The source.
+     * @return The description of the tree.
+     */
+    private static String pratt(String raw) {
+        return parse(raw, tokens -> new ExpressionParser(tokens).parse());
+    }
+
+    /**
+     * Parse an expression with the precedence climbing parser.
+     *
+     * @param raw The source.
+     * @return The description of the tree.
+     */
+    private static String climbing(String raw) {
+        return parse(raw, tokens -> new PrecedenceClimbingParser(tokens).parse());
+    }
+
+    /**
+     * Check an expression parses to the same tree as an explicitly parenthesized expression.
+     *
+     * @param raw      The expression.
+     * @param expected The parenthesized expression.
+     */
+    private static void assertGrouped(String raw, String expected) {
+        String tree = pratt(raw);
+        String expectedTree = pratt(expected);
+        // The parenthesized expression has more tokens
+        assertEquals(expectedTree.substring(0, expectedTree.lastIndexOf(" at ")),
+                tree.substring(0, tree.lastIndexOf(" at ")));
+        assertEquals(climbing(raw), tree);
+    }
+
+    @Test
+    public void precedence() {
+        assertGrouped("a + b * c", "a + (b * c)");
+        assertGrouped("a * b + c", "(a * b) + c");
+        assertGrouped("a + b % c - d / e", "(a + (b % c)) - (d / e)");
+        assertGrouped("a < b + 1 == c", "(a < (b + 1)) == c");
+        assertGrouped("a || b && c == d", "a || (b && (c == d))");
+        assertGrouped("a = b + c * d", "a = (b + (c * d))");
+    }
+
+    @Test
+    public void leftAssociativity() {
+        assertGrouped("a - b - c", "(a - b) - c");
+        assertGrouped("a / b / c", "(a / b) / c");
+        assertGrouped("a == b != c", "(a == b) != c");
+        assertGrouped("a = b = c", "(a = b) = c");
+    }
+
+    @Test
+    public void unary() {
+        assertGrouped("-a * b", "(-a) * b");
+        assertGrouped("!a && b", "(!a) && b");
+        assertGrouped("- -a", "-(-a)");
+    }
+
+    @Test
+    public void calls() {
+        assertGrouped("f(a + b, c * d) + g()", "(f((a + b), (c * d))) + (g())");
+    }
+
+    @Test
+    public void randomExpressionsMatchPrecedenceClimbing() {
+        Random random = new Random(12);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder raw = new StringBuilder();
+            int length = 1 + random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                int choice = random.nextInt(10);
+                if (choice < 4) {
+                    raw.append(OPERANDS[random.nextInt(OPERANDS.length)]);
+                } else if (choice < 8) {
+                    raw.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+                } else {
+                    raw.append(choice == 8 ? "(" : ")");
+                }
+                raw.append(' ');
+            }
+            String source = raw.toString();
+            assertEquals(source, climbing(source), pratt(source));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package info.andrewmin.dji.core.parser;
+
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.exceptions.BaseUserException;
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.runtime.Runtime;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the {@link LazyProgramParser} only parses function bodies on their first call.
+ */
+public class LazyProgramParserTest {
+    /**
+     * Create a program parser.
+     *
+     * @param source The source.
+     * @return The program parser.
+     */
+    private static ProgramParser parser(String source) {
+        return new ProgramParser(new Lexer(new FileCharIterator(source)));
+    }
+
+    /**
+     * Check that parsing lazily fails with the same error as parsing sequentially.
+     *
+     * @param source The source.
+     */
+    private static void assertSameError(String source) {
+        BaseUserException expected = assertThrows(source, BaseUserException.class, () -> parser(source).parse());
+        BaseUserException actual = assertThrows(source, BaseUserException.class, () -> parser(source).parseLazily());
+        assertEquals(source, expected.getClass(), actual.getClass());
+        assertEquals(source, expected.getMessage(), actual.getMessage());
+    }
+
+    @Test
+    public void neverParsesUncalledFunctions() {
+        String source = "int unused() { return 1 +; }\n"
+                + "int f(int a) { String s = \"}\"; char c = '{'; return a * 2; }\n"
+                + "int main() { return f(2); }";
+        ProgramNode program = parser(source).parseLazily();
+        assertFalse(program.getFunctions().get("unused").isParsed());
+        assertFalse(program.getFunctions().get("f").isParsed());
+
+        assertEquals(4, new Runtime(program).runProgram().getValue());
+        assertTrue(program.getFunctions().get("main").isParsed());
+        assertTrue(program.getFunctions().get("f").isParsed());
+        assertFalse(program.getFunctions().get("unused").isParsed());
+    }
+
+    @Test
+    public void reportsBodyErrorsOnFirstCall() {
+        String source = "int main() { if (false) { return f(); } return g(1); }\n"
+                + "int f() { return 0; }\n"
+                + "int g(int a) {\n    int b = a;\n    return b +;\n}";
+        ProgramNode program = parser(source).parseLazily();
+        assertFalse(program.getFunctions().get("g").isParsed());
+
+        BaseUserException expected = assertThrows(BaseUserException.class, () -> parser(source).parse());
+        BaseUserException actual = assertThrows(BaseUserException.class, () -> new Runtime(program).runProgram());
+        assertEquals(expected.getClass(), actual.getClass());
+        // Reported at the same location in the whole source
+        assertEquals(expected.getMessage(), actual.getMessage());
+        assertTrue(actual.getMessage(), actual.getMessage().contains("line 5,"));
+        assertFalse(program.getFunctions().get("f").isParsed());
+    }
+
+    @Test
+    public void reportsSplitAndSignatureErrorsLikeSequentialParse() {
+        for (String source : List.of(
+                // Unbalanced braces
+                "int main() { return 0;",
+                "int main() { return 0; } }",
+                // Invalid signatures
+                "int main(int) { return 0; }",
+                "main() { return 0; }",
+                "int f(int a,) { return a; } int main() { return 0; }",
+                "int 'ab'() { return 0; }",
+                // Tokens after the last function
+                "int main() { return 0; } int",
+                "int main() { return 0; } 'a",
+                // A signature error after a body error
+                "int f() { return 1 +; } int main(int) { return 0; }",
+                // A duplicate function after an invalid one
+                "int f(int) { return 0; } int f() { return 1; } int main() { return 0; }",
+                "int f() { return 0; } int f() { return 1; } int main() { return 0; }")) {
+            assertSameError(source);
+        }
+    }
+}
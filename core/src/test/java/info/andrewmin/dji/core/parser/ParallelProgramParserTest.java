@@ -0,0 +1,122 @@
+package info.andrewmin.dji.core.parser;
+
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.exceptions.BaseUserException;
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.lexer.SymbolTable;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the {@link ParallelProgramParser} parses programs like the sequential parser.
+ */
+public class ParallelProgramParserTest {
+    /**
+     * Generate a program of several batches.
+     * <p>
+     * Each function has its own local names, calls a later function and has literals with braces and quotes,
+     * so the batches intern different identifiers and only split at function boundaries.
+     *
+     * @return The source.
+     */
+    private static String generate() {
+        StringBuilder source = new StringBuilder();
+        int functions = 0;
+        while (source.length() < 5 * ParallelProgramParser.BATCH_SIZE) {
+            source.append("int f").append(functions).append("(int a) {\n")
+                    .append("    int local").append(functions).append(" = a * 2 + 1;\n")
+                    .append("    String s = \"} { '\";\n")
+                    .append("    char c = '{';\n")
+                    .append("    char q = '\"';\n")
+                    .append("    if (a > 0) { return f").append(functions + 1).append("(a - 1) + local")
+                    .append(functions).append("; }\n")
+                    .append("    return local").append(functions).append(";\n")
+                    .append("}\n");
+            functions++;
+        }
+        source.append("int f").append(functions).append("(int a) { return a; }\n");
+        return source.append("int main() { return f0(3); }\n").toString();
+    }
+
+    /**
+     * Parse a program.
+     *
+     * @param source   The source.
+     * @param parallel If large sources are parsed in parallel.
+     * @return The program.
+     */
+    private static ProgramNode parse(String source, boolean parallel) {
+        return new ProgramParser(new Lexer(new FileCharIterator(source)), false, false, parallel).parse();
+    }
+
+    /**
+     * Get the names of a symbol table by identifier ID.
+     *
+     * @param symbols The symbol table.
+     * @return The names.
+     */
+    private static List<String> names(SymbolTable symbols) {
+        return IntStream.range(0, symbols.size()).mapToObj(symbols::name).collect(Collectors.toList());
+    }
+
+    @Test
+    public void parsesInBatches() {
+        String source = generate();
+        SymbolTable symbols = new SymbolTable();
+        List<FunctionNode> functions = new ParallelProgramParser(new FileCharIterator(source).getSource(), null)
+                .parse(symbols);
+        assertNotNull(functions);
+
+        ProgramNode sequential = parse(source, false);
+        assertEquals(names(sequential.getSymbols()), names(symbols));
+        assertEquals(sequential.getDeclaredFunctions().toString(), functions.toString());
+    }
+
+    @Test
+    public void parsesLikeSequentialParser() {
+        String source = generate();
+        ProgramNode sequential = parse(source, false);
+        ProgramNode parallel = parse(source, true);
+        assertEquals(names(sequential.getSymbols()), names(parallel.getSymbols()));
+        assertEquals(sequential.toString(), parallel.toString());
+        for (FunctionNode function : sequential.getDeclaredFunctions()) {
+            assertEquals(function.getId(), parallel.getFunctions().get(function.getName()).getId());
+        }
+    }
+
+    @Test
+    public void reportsErrorsOfLaterBatches() {
+        String source = generate();
+        int line = (int) source.chars().filter(c -> c == '\n').count() + 1;
+        for (String error : List.of("int bad() { return 1 +; }", "int bad() { char c = 'ab'; return 0; }")) {
+            String invalid = source + error;
+            assertNull(error, new ParallelProgramParser(new FileCharIterator(invalid).getSource(), null)
+                    .parse(new SymbolTable()));
+
+            BaseUserException expected = assertThrows(BaseUserException.class, () -> parse(invalid, false));
+            BaseUserException actual = assertThrows(BaseUserException.class, () -> parse(invalid, true));
+            assertEquals(expected.getClass(), actual.getClass());
+            assertEquals(expected.getMessage(), actual.getMessage());
+            assertTrue(actual.getMessage(), actual.getMessage().contains("line " + line + ","));
+        }
+    }
+
+    @Test
+    public void reportsDuplicateFunctions() {
+        String invalid = generate() + "int f1(int a) { return a; }";
+        BaseUserException expected = assertThrows(BaseUserException.class, () -> parse(invalid, false));
+        BaseUserException actual = assertThrows(BaseUserException.class, () -> parse(invalid, true));
+        assertEquals(expected.getMessage(), actual.getMessage());
+    }
+}
@@ -0,0 +1,85 @@
+package info.andrewmin.dji.core.parser;
+
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.lexer.TokenBuffer;
+
+import java.util.Random;
+import java.util.logging.LogManager;
+
+/**
+ * A benchmark of parser throughput on a pre-lexed generated program, so lexing is not timed.
+ * <p>
+ * Run with {@code ./gradlew :core:benchmark -Pbenchmark=info.andrewmin.dji.core.parser.ParserBenchmark}.
+ */
+public final class ParserBenchmark {
+    private static final int FUNCTIONS = 5_000;
+    private static final int RUNS = 20;
+
+    /**
+     * Utility class.
+     */
+    private ParserBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The number of functions (optional).
+     */
+    public static void main(String[] args) {
+        // Do not time logging
+        LogManager.getLogManager().reset();
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : FUNCTIONS;
+        String source = generate(functions);
+        System.out.printf("%d functions, %.1f MB%n", functions, source.length() / 1e6);
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            TokenBuffer tokens = new TokenBuffer(new Lexer(new FileCharIterator(source)));
+            long start = System.nanoTime();
+            ProgramNode program = new ProgramParser(tokens).parse();
+            best = Math.min(best, System.nanoTime() - start);
+            if (program.getFunctions().size() != functions) {
+                throw new AssertionError("Parsed " + program.getFunctions().size() + " functions");
+            }
+        }
+        System.out.printf("Parse: %7.2f ms (best of %d), %.1f MB/s%n", best / 1e6, RUNS,
+                source.length() / (best / 1e3));
+    }
+
+    /**
+     * Generate a program of statements that need lookahead to classify: calls, declarations,
+     * assignments and if/else chains.
+     *
+     * @param functions The number of functions.
+     * @return The source.
+     */
+    private static String generate(int functions) {
+        Random random = new Random(11);
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            source.append("int f").append(i).append("(int a, int b) {\n");
+            source.append("    int x = a;\n");
+            for (int j = 0; j < 10; j++) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        source.append("    x = f").append(random.nextInt(functions)).append("(x, b);\n");
+                        break;
+                    case 1:
+                        source.append("    x += (a * ").append(j).append(") - b;\n");
+                        break;
+                    case 2:
+                        source.append("    if (x < b) { x = x + 1; } else if (x > a) { x = x - 1; } else { b = b + 1; }\n");
+                        break;
+                    default:
+                        source.append("    while (x < ").append(j).append(") { x += 1; }\n");
+                        break;
+                }
+            }
+            source.append("    return x;\n}\n\n");
+        }
+        return source.toString();
+    }
+}
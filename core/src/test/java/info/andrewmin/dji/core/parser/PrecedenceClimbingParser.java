@@ -0,0 +1,146 @@
+package info.andrewmin.dji.core.parser;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.exceptions.ExpectedEntityException;
+import info.andrewmin.dji.core.exceptions.UnexpectedCharacterException;
+import info.andrewmin.dji.core.lexer.SymbolTable;
+import info.andrewmin.dji.core.lexer.TokenBuffer;
+import info.andrewmin.dji.core.runtime.Value;
+import info.andrewmin.dji.core.tokens.SymbolTokenVariant;
+import info.andrewmin.dji.core.tokens.TokenKind;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The precedence climbing expression parser that {@link ExpressionParser} replaced, as a reference for tests.
+ * <p>
+ * Operators are checked with the {@link SymbolTokenVariant} operator lists and precedence switch.
+ */
+final class PrecedenceClimbingParser {
+    private final TokenBuffer tokens;
+    private final SymbolTable symbols;
+
+    /**
+     * Construct a new precedence climbing expression parser.
+     *
+     * @param tokens The token buffer.
+     */
+    PrecedenceClimbingParser(TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.symbols = tokens.getSymbols();
+    }
+
+    /**
+     * Parse the next expression.
+     *
+     * @return The next expression.
+     */
+    ExpressionNode parse() {
+        if (!tokens.hasNext()) {
+            throw new ExpectedEntityException("an expression", tokens.current().getEndLoc());
+        }
+        return parseBinaryRightExpr(0, parseWithoutBinary());
+    }
+
+    /**
+     * Parse the next expression ignoring binary operations.
+     *
+     * @return The next expression.
+     */
+    private ExpressionNode parseWithoutBinary() {
+        TokenKind kind = tokens.peekKind();
+        int next = tokens.position();
+        tokens.advance();
+
+        // Literal
+        if (kind.isLiteral()) {
+            return new ExpressionNode.Literal(Value.fromToken(tokens, next));
+        }
+        // VariableReference or FunctionCall
+        else if (kind == TokenKind.IDENTIFIER) {
+            int id = tokens.identifier(next);
+            String name = symbols.name(id);
+
+            if (tokens.peekSymbol(0) == SymbolTokenVariant.LPAREN) {
+                tokens.advance();
+                List<ExpressionNode> args = new ArrayList<>();
+
+                // Get argument expressions, unless the function call has no args
+                if (!tokens.hasNext()) {
+                    throw new ExpectedEntityException(")", tokens.current().getEndLoc());
+                } else if (tokens.peekIsSymbol(SymbolTokenVariant.RPAREN)) {
+                    tokens.advance();
+                } else {
+                    while (true) {
+                        args.add(parse());
+                        if (!tokens.hasNext()) {
+                            throw new ExpectedEntityException(") or ,", tokens.current().getEndLoc());
+                        }
+                        SymbolTokenVariant symbol = tokens.peekSymbol(0);
+                        if (symbol == SymbolTokenVariant.RPAREN) {
+                            tokens.advance();
+                            break;
+                        } else if (symbol == SymbolTokenVariant.COMMA) {
+                            tokens.advance();
+                        } else {
+                            throw new UnexpectedCharacterException(tokens.peek());
+                        }
+                    }
+                }
+
+                return new ExpressionNode.FunctionCall(name, id, args);
+            }
+            return new ExpressionNode.VariableReference(name, id);
+        }
+        // Unary
+        else if (kind == TokenKind.SYMBOL && SymbolTokenVariant.unaryOps.contains(tokens.symbol(next))) {
+            return new ExpressionNode.Unary(tokens.symbol(next), parseWithoutBinary());
+        }
+        // Parenthesis
+        else if (kind == TokenKind.SYMBOL && tokens.symbol(next) == SymbolTokenVariant.LPAREN) {
+            ExpressionNode node = parse();
+            tokens.next(SymbolTokenVariant.RPAREN);
+            return node;
+        }
+
+        throw new UnexpectedCharacterException(tokens.token(next));
+    }
+
+    /**
+     * Parse any binary operations.
+     *
+     * @param prevPrecedence The previous binary operation precedence
+     * @param leftExpr       The previously parsed expression node.
+     * @return The full expression.
+     */
+    private ExpressionNode parseBinaryRightExpr(int prevPrecedence, ExpressionNode leftExpr) {
+        while (true) {
+            SymbolTokenVariant op = tokens.peekSymbol();
+            if (op == null || !SymbolTokenVariant.binaryOps.contains(op)) {
+                return leftExpr;
+            }
+
+            int precedence = SymbolTokenVariant.binaryOpPrecedence(op);
+
+            if (precedence < prevPrecedence) {
+                return leftExpr;
+            }
+
+            tokens.advance(); // eat operator token
+
+            ExpressionNode rightExpr = parseWithoutBinary();
+
+            SymbolTokenVariant nextOp = tokens.peekSymbol();
+            int nextPrecedence = (nextOp != null)
+                    ? SymbolTokenVariant.binaryOpPrecedence(nextOp)
+                    : -1;
+
+            if (precedence < nextPrecedence) {
+                rightExpr = parseBinaryRightExpr(precedence + 1, rightExpr);
+            }
+
+            leftExpr = new ExpressionNode.Binary(op, leftExpr, rightExpr);
+        }
+    }
+}
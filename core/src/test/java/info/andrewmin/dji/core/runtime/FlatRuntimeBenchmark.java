@@ -0,0 +1,128 @@
+package info.andrewmin.dji.core.runtime;
+
+import info.andrewmin.dji.core.ast.FlatProgram;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.parser.ProgramParser;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+import java.util.logging.LogManager;
+
+/**
+ * A benchmark of the heap footprint and throughput of the flat array-encoded syntax tree against the object tree.
+ * <p>
+ * Run with {@code ./gradlew :core:benchmark -Pbenchmark=info.andrewmin.dji.core.runtime.FlatRuntimeBenchmark}.
+ */
+public final class FlatRuntimeBenchmark {
+    // About 700k nodes
+    private static final int HEAP_FUNCTIONS = 12_000;
+    private static final int CALLED_FUNCTIONS = 50;
+    private static final int RUNS = 20;
+
+    /**
+     * Utility class.
+     */
+    private FlatRuntimeBenchmark() {
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The number of functions of the heap benchmark (optional).
+     */
+    public static void main(String[] args) {
+        // Do not time logging
+        LogManager.getLogManager().reset();
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : HEAP_FUNCTIONS;
+
+        // Heap
+        String source = generate(functions, 1);
+        long baseline = usedHeap();
+        ProgramNode program = parse(source);
+        long objectHeap = usedHeap() - baseline;
+        FlatProgram flat = FlatProgram.flatten(program);
+        program = null;
+        long flatHeap = usedHeap() - baseline;
+        System.out.printf("%d functions, %d flat nodes%n", functions, flat.size());
+        System.out.printf("Object tree:   %7.1f MB retained%n", objectHeap / 1e6);
+        System.out.printf("Flat program:  %7.1f MB retained%n", flatHeap / 1e6);
+        flat = null;
+
+        // Throughput
+        ProgramNode loops = parse(generate(CALLED_FUNCTIONS, 400));
+        FlatRuntime flatLoops = new FlatRuntime(loops);
+        time("Runtime", () -> new Runtime(loops).runProgram());
+        time("FlatRuntime", flatLoops::runProgram);
+    }
+
+    /**
+     * Parse a program.
+     *
+     * @param source The source.
+     * @return The program.
+     */
+    private static ProgramNode parse(String source) {
+        return new ProgramParser(new Lexer(new FileCharIterator(source))).parse();
+    }
+
+    /**
+     * Get the heap used after a full garbage collection.
+     *
+     * @return The used heap in bytes.
+     */
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Time the best of several runs of a program.
+     *
+     * @param name    The runtime name.
+     * @param program Runs the program.
+     */
+    private static void time(String name, Supplier<Value<?>> program) {
+        long best = Long.MAX_VALUE;
+        Value<?> result = null;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            result = program.get();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-14s %7.2f ms (best of %d), returned %s%n", name + ":", best / 1e6, RUNS, result);
+    }
+
+    /**
+     * Generate a program whose main calls every function a number of times.
+     *
+     * @param functions The number of functions.
+     * @param calls     The number of times each function is called.
+     * @return The source.
+     */
+    private static String generate(int functions, int calls) {
+        StringBuilder source = new StringBuilder();
+        source.append("int main() {\n    int s = 0;\n    for (int i = 0; i < ").append(calls).append("; i += 1) {\n");
+        for (int i = 0; i < functions; i++) {
+            source.append("        s += f").append(i).append("(i, ").append(i).append(");\n");
+        }
+        source.append("    }\n    return s;\n}\n\n");
+        for (int i = 0; i < functions; i++) {
+            source.append("int f").append(i).append("(int a, int b) {\n")
+                    .append("    int x = a * 3 + b;\n")
+                    .append("    for (int j = 0; j < 4; j += 1) {\n")
+                    .append("        if (x % 2 == 0 && j < b) {\n")
+                    .append("            x = x / 2 + j;\n")
+                    .append("        } else {\n")
+                    .append("            x -= (a + j) * 2 - 1;\n")
+                    .append("        }\n")
+                    .append("    }\n")
+                    .append("    return x % 1000;\n")
+                    .append("}\n\n");
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package info.andrewmin.dji.core.runtime;
+
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.parser.ProgramParser;
+import org.junit.Test;
+
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the {@link FlatRuntime} runs programs like the {@link Runtime}.
+ */
+public class FlatRuntimeTest {
+    private static final String[] PROGRAMS = {
+            // Loops, break and continue
+            "int main() { int s = 0; for (int i = 0; i < 10; i += 1) { if (i == 3) { continue; }"
+                    + " if (i == 7) { break; } s += i; } return s; }",
+            "int main() { int s = 0; for (int i = 0; i < 3; i += 1) { for (int j = 0; j < 5; j += 1) {"
+                    + " if (j == 2) { break; } s += 1; } s += 10; } return s; }",
+            "int main() { int s = 0; int i = 0; while (i < 10) { i += 1; if (i > 5) { return s; } s += i; }"
+                    + " return 99; }",
+            // Calls and recursion
+            "int f(int n) { if (n < 2) { return n; } return f(n - 1) + f(n - 2); }\n"
+                    + "int main() { int s = 0; for (int i = 0; i < 15; i += 1) { s += f(i); } return s; }",
+            "int main() { int a = 1; int b = sum(a, 2 + 3 * 4); return b; }\n"
+                    + "int sum(int number1, int number2) { int sum = number1 + number2; return sum; }",
+            "void g(int n) { int q = n; }\n"
+                    + "int main() { int s = 0; for (int i = 0; i < 5; i += 1) { g(i); s -= i; } return s; }",
+            // Values
+            "String main() { String s = \"a\"; for (int i = 0; i < 3; i += 1) { s += \"b\"; s = s + \"c\"; }"
+                    + " return s; }",
+            "int main() { int x = 1; int y = 0; for (int i = 0; i < 3; i += 1) { y = (x += 2) * (x = x + 1); }"
+                    + " return y + x; }",
+            "int main() { int x = 2147483647; x += 1; x = -x; x %= 1000; return x; }",
+            "double main() { double d = 1.5; d *= 3.0; d /= 0.5; return d - 0.25; }",
+            "boolean main() { char c = 'x'; return c == 'x' && !(c != 'x') || false; }",
+            // Errors
+            "int main() { int s = 0; for (int i = 5; i > -2; i -= 1) { s += 10 / i; } return s; }",
+            "int f(int n) { if (n > 0) { return n; } }\nint main() { return f(0); }",
+            "int main() { return x; }",
+            // Type errors, reported before running
+            "int main() { if (false) { int x = true; } return 0; }",
+            "int g() { return true; }\nint f() { int x = 1.0; return -\"s\"; }\nint main() { return 0; }",
+            "int f() { return true; }",
+            "int main(int a) { return true; }",
+    };
+
+    /**
+     * Run a program, describing its result or error.
+     *
+     * @param source The source.
+     * @param runner Runs the program, returning the return value of main.
+     * @return The description.
+     */
+    private static String run(String source, Function<ProgramNode, Value<?>> runner) {
+        return run(new ProgramParser(new Lexer(new FileCharIterator(source))).parse(), runner);
+    }
+
+    /**
+     * Run a program, describing its result or error.
+     *
+     * @param program The program node.
+     * @param runner  Runs the program, returning the return value of main.
+     * @return The description.
+     */
+    private static String run(ProgramNode program, Function<ProgramNode, Value<?>> runner) {
+        try {
+            return runner.apply(program).toString();
+        } catch (RuntimeException e) {
+            return e.toString();
+        }
+    }
+
+    @Test
+    public void runsLikeRuntime() {
+        for (String source : PROGRAMS) {
+            assertEquals(source, run(source, program -> new Runtime(program).runProgram()),
+                    run(source, program -> new FlatRuntime(program).runProgram()));
+        }
+    }
+
+    @Test
+    public void checksLazilyParsedBodies() {
+        // Flattening parses every body, so they are all checked up front like an eagerly parsed program
+        for (String source : PROGRAMS) {
+            ProgramNode lazy = new ProgramParser(new Lexer(new FileCharIterator(source))).parseLazily();
+            assertEquals(source, run(source, program -> new Runtime(program).runProgram()),
+                    run(lazy, program -> new FlatRuntime(program).runProgram()));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package info.andrewmin.dji.core.runtime;
+
+import info.andrewmin.dji.core.ast.ExpressionNode;
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.ast.StatementNode;
+import info.andrewmin.dji.core.checker.TypeChecker;
+import info.andrewmin.dji.core.exceptions.BaseUserException;
+import info.andrewmin.dji.core.exceptions.InvalidArgumentException;
+import info.andrewmin.dji.core.exceptions.UnresolvedIdentifierException;
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.parser.ProgramParser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Tests of the {@link SlotResolver} resolving variables to slots.
+ */
+public class SlotResolverTest {
+    /**
+     * Parse a program.
+     *
+     * @param source      The source.
+     * @param hashConsing If identical expressions are shared.
+     * @return The program.
+     */
+    private static ProgramNode parse(String source, boolean hashConsing) {
+        return new ProgramParser(new Lexer(new FileCharIterator(source)), false, hashConsing).parse();
+    }
+
+    /**
+     * Resolve a function of a program.
+     *
+     * @param program The program.
+     * @param name    The function name.
+     * @return The resolved function.
+     */
+    private static ResolvedFunction resolve(ProgramNode program, String name) {
+        FunctionNode function = program.getFunctions().get(name);
+        return new SlotResolver(program, function, new TypeChecker(program).check(function)).resolve();
+    }
+
+    /**
+     * Run a program with the resolving runtime and the flat runtime, which looks variables up by name.
+     *
+     * @param source The source.
+     * @return The return value of main, the same for both runtimes.
+     */
+    private static String run(String source) {
+        String resolved = new Runtime(parse(source, false)).runProgram().toString();
+        assertEquals(source, new FlatRuntime(parse(source, false)).runProgram().toString(), resolved);
+        return resolved;
+    }
+
+    /**
+     * Collect the variable declarations of a list of statements, in program order.
+     *
+     * @param statements   The statement nodes.
+     * @param declarations The declarations found so far.
+     * @return The declarations.
+     */
+    private static List<StatementNode.VariableDeclaration> declarations(
+            List<StatementNode> statements, List<StatementNode.VariableDeclaration> declarations) {
+        for (StatementNode statement : statements) {
+            if (statement instanceof StatementNode.VariableDeclaration) {
+                declarations.add((StatementNode.VariableDeclaration) statement);
+            } else if (statement instanceof StatementNode.Block) {
+                declarations(((StatementNode.Block) statement).getStatements(), declarations);
+            } else if (statement instanceof StatementNode.For) {
+                StatementNode.For _for = (StatementNode.For) statement;
+                declarations(List.of(_for.getInit(), _for.getBody()), declarations);
+            } else if (statement instanceof StatementNode.While) {
+                declarations(List.of(((StatementNode.While) statement).getBody()), declarations);
+            }
+        }
+        return declarations;
+    }
+
+    /**
+     * Get the returned expression of the last statement of a function.
+     *
+     * @param statements The function statements.
+     * @return The returned expression.
+     */
+    private static ExpressionNode returned(List<StatementNode> statements) {
+        return ((StatementNode.Return) statements.get(statements.size() - 1)).getExpr();
+    }
+
+    @Test
+    public void redeclaresInNestedLoops() {
+        String source = "int main() { int s = 0;\n"
+                + "for (int i = 0; i < 3; i += 1) { int x = i;\n"
+                + "  for (int j = 0; j < 2; j += 1) { { int x = j * 10; s += x; } }\n"
+                + "  while (s < 0) { int x = 5; }\n"
+                + "  s += x; }\n"
+                + "return s; }";
+        ResolvedFunction main = resolve(parse(source, false), "main");
+        List<StatementNode.VariableDeclaration> declarations = declarations(main.getStatements(), new ArrayList<>());
+        assertEquals(6, declarations.size());
+
+        // Every declaration of x updates the same variable, so they share a slot
+        int slot = declarations.get(2).getSlot();
+        assertEquals(slot, declarations.get(4).getSlot());
+        assertEquals(slot, declarations.get(5).getSlot());
+        assertArrayEquals(new String[]{"s", "i", "x", "j"}, main.getSlotNames());
+        assertEquals("INT(60)", run(source));
+    }
+
+    @Test
+    public void rejectsUsesAfterLoopScope() {
+        for (String use : List.of("y", "i", "y + 1", "f(y)")) {
+            String source = "int f(int a) { return a; }\n"
+                    + "int main() { for (int i = 0; i < 2; i += 1) { int y = i; } return " + use + "; }";
+            BaseUserException e = assertThrows(use, UnresolvedIdentifierException.class,
+                    () -> resolve(parse(source, false), "main"));
+            assertEquals("Unable to resolve identifier " + (use.equals("i") ? "i" : "y"), e.getMessage());
+        }
+
+        // Declared before the loop, so still visible after it
+        assertEquals("INT(1)", run("int main() { int y = 0; for (int i = 0; i < 2; i += 1) { y = i; }"
+                + " return y; }"));
+        // Declared later in the loop body, so visible on the next iteration
+        assertEquals("INT(1)", run("int main() { int s = 0; int k = 0; while (k < 3) {"
+                + " if (k > 0) { s = prev; } int prev = k; k += 1; } return s; }"));
+    }
+
+    @Test
+    public void copiesSharedExpressionsPerFunction() {
+        String source = "int f(int a) { int b = 2; return a * b + a * b; }\n"
+                + "int g(int z, int a) { int b = 3; return a * b + a * b; }\n"
+                + "int main() { return f(1) + g(0, 1); }";
+        ProgramNode program = parse(source, true);
+        ExpressionNode shared = returned(program.getFunctions().get("f").getStatements());
+        assertSame(shared, returned(program.getFunctions().get("g").getStatements()));
+        assertSame(((ExpressionNode.Binary) shared).getLeftExpr(), ((ExpressionNode.Binary) shared).getRightExpr());
+
+        ExpressionNode.Binary f = (ExpressionNode.Binary) returned(resolve(program, "f").getStatements());
+        ExpressionNode.Binary g = (ExpressionNode.Binary) returned(resolve(program, "g").getStatements());
+        assertNotSame(shared, f);
+        assertNotSame(f, g);
+        // Shared subtrees are copied once per function
+        assertSame(f.getLeftExpr(), f.getRightExpr());
+        assertSame(g.getLeftExpr(), g.getRightExpr());
+
+        ExpressionNode.Binary fProduct = (ExpressionNode.Binary) f.getLeftExpr();
+        ExpressionNode.Binary gProduct = (ExpressionNode.Binary) g.getLeftExpr();
+        assertEquals(0, ((ExpressionNode.VariableReference) fProduct.getLeftExpr()).getSlot());
+        assertEquals(1, ((ExpressionNode.VariableReference) fProduct.getRightExpr()).getSlot());
+        assertEquals(1, ((ExpressionNode.VariableReference) gProduct.getLeftExpr()).getSlot());
+        assertEquals(2, ((ExpressionNode.VariableReference) gProduct.getRightExpr()).getSlot());
+        assertEquals(10, new Runtime(program).runProgram().getValue());
+    }
+
+    @Test
+    public void linksCalls() {
+        String source = "int f(int a, int b) { return a - b; }\nint main() { return f(3, 1) + f(f(2, 1), 1); }";
+        ProgramNode program = parse(source, false);
+        ExpressionNode.Binary sum = (ExpressionNode.Binary) returned(resolve(program, "main").getStatements());
+        ExpressionNode.FunctionCall outer = (ExpressionNode.FunctionCall) sum.getRightExpr();
+        assertSame(program.getFunctions().get("f"), outer.getTarget());
+        assertSame(program.getFunctions().get("f"), ((ExpressionNode.FunctionCall) outer.getArgs().get(0)).getTarget());
+        assertEquals("INT(2)", run(source));
+    }
+
+    @Test
+    public void rejectsInvalidCallsBeforeRunning() {
+        String f = "int f(int a, int b) { return a; }\n";
+        // Even in a branch that is never taken, so the program fails before it runs
+        for (String call : List.of("return %s;", "if (false) { return %s; }", "while (false) { %s; }")) {
+            assertLinkError(f + "int main() { " + String.format(call, "g(1)") + " return 0; }",
+                    UnresolvedIdentifierException.class, "Unable to resolve identifier g");
+            assertLinkError(f + "int main() { " + String.format(call, "f(1)") + " return 0; }",
+                    InvalidArgumentException.class, "f expected [INT, INT], but received [INT]");
+            assertLinkError(f + "int main() { " + String.format(call, "f(1, 2, 3.0)") + " return 0; }",
+                    InvalidArgumentException.class, "f expected [INT, INT], but received [INT, INT, DOUBLE]");
+        }
+
+        // Lazily parsed functions are only linked on their first call
+        String lazy = "int h() { return g(1); }\nint main() { return 0; }";
+        assertEquals(0, new Runtime(new ProgramParser(new Lexer(new FileCharIterator(lazy))).parseLazily())
+                .runProgram().getValue());
+    }
+
+    /**
+     * Check that running a program fails to link a call.
+     *
+     * @param source   The source.
+     * @param expected The expected error class.
+     * @param message  The expected error message.
+     */
+    private static void assertLinkError(String source, Class<? extends BaseUserException> expected, String message) {
+        ProgramNode program = parse(source, false);
+        BaseUserException e = assertThrows(source, expected, () -> resolve(program, "main"));
+        assertEquals(message, e.getMessage());
+        assertEquals(message, assertThrows(source, expected, () -> new Runtime(program).runProgram()).getMessage());
+    }
+}
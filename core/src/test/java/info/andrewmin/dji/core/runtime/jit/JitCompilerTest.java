@@ -0,0 +1,179 @@
+package info.andrewmin.dji.core.runtime.jit;
+
+import info.andrewmin.dji.core.ast.FunctionNode;
+import info.andrewmin.dji.core.ast.ProgramNode;
+import info.andrewmin.dji.core.checker.TypeChecker;
+import info.andrewmin.dji.core.lexer.FileCharIterator;
+import info.andrewmin.dji.core.lexer.Lexer;
+import info.andrewmin.dji.core.parser.ProgramParser;
+import info.andrewmin.dji.core.runtime.ResolvedFunction;
+import info.andrewmin.dji.core.runtime.Runtime;
+import info.andrewmin.dji.core.runtime.SlotResolver;
+import info.andrewmin.dji.core.runtime.Value;
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of when the {@link JitCompiler} compiles functions, and that compiled code runs like the tree walker.
+ */
+public class JitCompilerTest {
+    // Unchecked, b is an int or a string
+    private static final String UNSUPPORTED = "int g(int a) { int b = 1;"
+            + " for (int i = 0; i < a; i += 1) { if (i > a) { b = \"s\"; } } return a + b; }\n";
+
+    /**
+     * A compiler of the functions of a program, which counts the lookups of resolved callees.
+     */
+    private static final class Compiler {
+        private final ProgramNode program;
+        private final ResolvedFunction[] functions;
+        private final JitCompiler jit;
+        private int lookups;
+
+        /**
+         * Construct a new compiler with no resolved functions.
+         *
+         * @param program The program.
+         */
+        Compiler(ProgramNode program) {
+            this.program = program;
+            this.functions = new ResolvedFunction[program.getSymbols().size()];
+            this.jit = new JitCompiler(functions.length, id -> {
+                lookups++;
+                return functions[id];
+            });
+        }
+
+        /**
+         * Check and resolve a function.
+         *
+         * @param name The function name.
+         * @return The resolved function.
+         */
+        ResolvedFunction resolve(String name) {
+            FunctionNode function = program.getFunctions().get(name);
+            ResolvedFunction resolved = new SlotResolver(program, function, new TypeChecker(program).check(function))
+                    .resolve();
+            functions[function.getId()] = resolved;
+            return resolved;
+        }
+
+        /**
+         * Count calls of a function until it is compiled.
+         *
+         * @param resolved The resolved function.
+         * @param limit    The most calls to count.
+         * @return The number of calls until the function was compiled, 0 if it was not compiled.
+         */
+        int callsUntilCompiled(ResolvedFunction resolved, int limit) {
+            for (int call = 1; call <= limit; call++) {
+                if (jit.getCompiled(resolved) != null) {
+                    return call;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Parse a program.
+     *
+     * @param source The source.
+     * @return The program.
+     */
+    private static ProgramNode parse(String source) {
+        return new ProgramParser(new Lexer(new FileCharIterator(source))).parse();
+    }
+
+    /**
+     * Run a program with and without the compiler.
+     *
+     * @param program  The program.
+     * @param expected The expected return value of main.
+     */
+    private static void assertRuns(ProgramNode program, Object expected) {
+        assertEquals(expected, new Runtime(program).runProgram().getValue());
+        assertEquals(expected, new Runtime(program, true).runProgram().getValue());
+    }
+
+    @Test
+    public void compilesLoopsOnFirstCall() {
+        Compiler compiler = new Compiler(parse("int f(int n) { int s = 0;"
+                + " for (int i = 0; i < n; i += 1) { s += i; } return s; }\nint main() { return f(10); }"));
+        MethodHandle handle = compiler.jit.getCompiled(compiler.resolve("f"));
+        assertNotNull(handle);
+        assertSame(handle, compiler.jit.getCompiled(compiler.resolve("f")));
+        assertEquals(45, JitCompiler.invoke(handle, List.of(new Value.Int(10))).getValue());
+    }
+
+    @Test
+    public void compilesOtherFunctionsAtThreshold() {
+        String source = "int f(int a) { if (a > 2) { return a * 2; } return a; }\n"
+                + "int main() { int s = 0; for (int i = 0; i < 3 * 100; i += 1) { s += f(i); } return s; }";
+        Compiler compiler = new Compiler(parse(source));
+        ResolvedFunction f = compiler.resolve("f");
+        assertEquals(JitCompiler.COMPILE_THRESHOLD,
+                compiler.callsUntilCompiled(f, 3 * JitCompiler.COMPILE_THRESHOLD));
+        assertEquals(14, JitCompiler.invoke(compiler.jit.getCompiled(f), List.of(new Value.Int(7))).getValue());
+
+        // main has a loop, so it is compiled with f on its first call
+        assertRuns(parse(source), 89697);
+    }
+
+    @Test
+    public void fallsBackForUnsupportedFunctions() {
+        String source = UNSUPPORTED + "int main() { int s = 0; for (int i = 0; i < 200; i += 1) { s += g(i); }"
+                + " return s; }";
+        Compiler compiler = new Compiler(parse(source));
+        ResolvedFunction g = compiler.resolve("g");
+        assertFalse(g.isChecked());
+        assertEquals(0, compiler.callsUntilCompiled(g, 3 * JitCompiler.COMPILE_THRESHOLD));
+
+        // main is compiled with g, so neither is compiled
+        assertRuns(parse(source), 20100);
+    }
+
+    @Test
+    public void marksRootOfUnsupportedCallee() {
+        String source = UNSUPPORTED + "int f(int n) { int s = 0; for (int i = 0; i < n; i += 1) { s += g(i); }"
+                + " return s; }\nint main() { return f(200); }";
+        Compiler compiler = new Compiler(parse(source));
+        ResolvedFunction f = compiler.resolve("f");
+        ResolvedFunction g = compiler.resolve("g");
+        assertNull(compiler.jit.getCompiled(f));
+        assertEquals(1, compiler.lookups);
+
+        // Neither function is analysed again
+        assertEquals(0, compiler.callsUntilCompiled(f, 3 * JitCompiler.COMPILE_THRESHOLD));
+        assertEquals(0, compiler.callsUntilCompiled(g, 3 * JitCompiler.COMPILE_THRESHOLD));
+        assertEquals(1, compiler.lookups);
+        assertRuns(parse(source), 20100);
+    }
+
+    @Test
+    public void retriesAfterLazyCalleeRuns() {
+        String source = "int h(int a) { return a + 1; }\n"
+                + "int f(int n) { int s = 0; for (int i = 0; i < n; i += 1) { s += h(i); } return s; }\n"
+                + "int main() { int s = 0; for (int i = 0; i < 3 * 100; i += 1) { s += f(3); } return s; }";
+        Compiler compiler = new Compiler(parse(source));
+        ResolvedFunction f = compiler.resolve("f");
+        // h has not run, so f is counted as called once and tried again at the threshold
+        assertNull(compiler.jit.getCompiled(f));
+        compiler.resolve("h");
+        assertEquals(JitCompiler.COMPILE_THRESHOLD - 1,
+                compiler.callsUntilCompiled(f, 3 * JitCompiler.COMPILE_THRESHOLD));
+        assertEquals(6, JitCompiler.invoke(compiler.jit.getCompiled(f), List.of(new Value.Int(3))).getValue());
+
+        // Lazily parsed functions are only resolved on their first call
+        ProgramNode lazy = new ProgramParser(new Lexer(new FileCharIterator(source))).parseLazily();
+        assertRuns(lazy, 1800);
+    }
+}